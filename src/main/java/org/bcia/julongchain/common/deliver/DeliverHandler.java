@@ -20,10 +20,10 @@ import org.bcia.julongchain.common.exception.ConsenterException;
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.exception.ValidateException;
 import org.bcia.julongchain.common.ledger.blockledger.IIterator;
-import org.bcia.julongchain.common.ledger.blockledger.file.FileLedgerIterator;
+import org.bcia.julongchain.common.ledger.blockledger.ReadWriteBase;
+import org.bcia.julongchain.common.ledger.blockledger.file.FileLedger;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
-import org.bcia.julongchain.consenter.Consenter;
 import org.bcia.julongchain.consenter.common.multigroup.ChainSupport;
 import org.bcia.julongchain.consenter.util.CommonUtils;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
@@ -32,9 +32,16 @@ import org.bcia.julongchain.protos.consenter.Ab;
 
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Deliver服务处理
+ * 每个请求打开一个账本迭代器, 从起始位置连续发送到结束位置; 客户端暂不可接收时暂停,
+ * 区块未写入时按BLOCK_UNTIL_READY登记账本高度通知, 等待期间不占用线程
  *
  * @author zhangmingyang
  * @Date: 2018/5/29
@@ -42,176 +49,186 @@ import java.util.Map;
  */
 public class DeliverHandler implements IDeliverHandler {
     private static JulongChainLog log = JulongChainLogFactory.getLog(DeliverHandler.class);
+
+    /**
+     * 发送区块的线程, 只在读取和发送时占用
+     */
+    private static final ExecutorService DELIVER_EXECUTOR = newDeliverExecutor();
+
     private ISupportManager sm;
     private long timeWindow;
     private boolean mutualTLS;
+    private final Executor executor;
 
     public DeliverHandler(ISupportManager sm, long timeWindow) {
-        this.sm = sm;
-        this.timeWindow = timeWindow;
+        this(sm, timeWindow, false);
     }
 
     public DeliverHandler(ISupportManager sm, long timeWindow, boolean mutualTLS) {
+        this(sm, timeWindow, mutualTLS, DELIVER_EXECUTOR);
+    }
+
+    public DeliverHandler(ISupportManager sm, long timeWindow, boolean mutualTLS, Executor executor) {
         this.sm = sm;
         this.timeWindow = timeWindow;
         this.mutualTLS = mutualTLS;
+        this.executor = executor;
+    }
+
+    public static ExecutorService newDeliverExecutor() {
+        AtomicInteger index = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "deliver-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
+    /**
+     * 同一个流中的请求依次处理, 不阻塞gRPC线程
+     */
     @Override
     public void handle(DeliverServer server) throws ConsenterException {
+        server.getStream().submit(() -> deliverBlocks(server, server.getEnvelope()));
+    }
+
+    /**
+     * 处理一个deliver请求
+     *
+     * @return 发送到结束位置、出错或流被取消时完成
+     */
+    public CompletableFuture<Void> deliverBlocks(DeliverServer server, Common.Envelope envelope) {
         try {
-            deliverBlocks(server, server.getEnvelope());
+            BlockDelivery delivery = newDelivery(server, envelope);
+            if (delivery == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            Runnable listener = delivery::schedule;
+            server.getStream().setListener(listener);
+            //done完成时下一个请求可能已登记自己的回调, 只清除本请求的
+            delivery.done.whenComplete((v, e) -> server.getStream().clearListener(listener));
+            delivery.schedule();
+            return delivery.done;
         } catch (ConsenterException e) {
-            throw new ConsenterException(e);
+            log.error(e.getMessage(), e);
+            return CompletableFuture.completedFuture(null);
         }
     }
 
-    public void deliverBlocks(DeliverServer server, Common.Envelope envelope) throws ConsenterException {
-        Common.Payload payload = null;
+    /**
+     * 校验请求并打开迭代器, 校验失败时回复状态并返回null
+     */
+    private BlockDelivery newDelivery(DeliverServer server, Common.Envelope envelope) throws ConsenterException {
+        Common.Payload payload;
         try {
             payload = CommonUtils.unmarshalPayload(envelope.getPayload().toByteArray());
         } catch (InvalidProtocolBufferException e) {
             log.error(e.getMessage());
             sendStatusReply(server, Common.Status.BAD_REQUEST);
+            return null;
         }
-        if (payload.getHeader() == null) {
-            try {
-                log.warn(String.format("Malformed envelope received bad header"));
-                sendStatusReply(server, Common.Status.BAD_REQUEST);
-            } catch (ConsenterException e) {
-                log.error(e.getMessage());
-            }
-        }
-        Common.GroupHeader chdr = CommonUtils.unmarshalGroupHeader(payload.getHeader().getGroupHeader().toByteArray());
-        if (chdr == null) {
-            try {
-                sendStatusReply(server, Common.Status.BAD_REQUEST);
-            } catch (ConsenterException e) {
-                log.error(e.getMessage());
-            }
+        if (!payload.hasHeader()) {
+            log.warn("Malformed envelope received bad header");
+            sendStatusReply(server, Common.Status.BAD_REQUEST);
+            return null;
         }
+        Common.GroupHeader chdr;
         try {
+            chdr = CommonUtils.unmarshalGroupHeader(payload.getHeader().getGroupHeader().toByteArray());
             validateGroupHeader(server, chdr);
-        } catch (ValidateException e) {
-            sendStatusReply(server, Common.Status.BAD_REQUEST);
+        } catch (ConsenterException | ValidateException e) {
             log.error(e.getMessage());
+            sendStatusReply(server, Common.Status.BAD_REQUEST);
+            return null;
         }
         ChainSupport chain = sm.getChain(chdr.getGroupId());
         if (chain == null) {
             log.debug(String.format("Rejecting deliver group %s not found", chdr.getGroupId()));
-            try {
-                sendStatusReply(server, Common.Status.NOT_FOUND);
-            } catch (ConsenterException e) {
-                log.error(e.getMessage());
-            }
+            sendStatusReply(server, Common.Status.NOT_FOUND);
+            return null;
         }
-        //TODO select case  erroredChan
-//        SessionAc accessControl = null;
-//        try {
-//            accessControl = new SessionAc(chain, server.getPolicyChecker(), chdr.getGroupId(), envelope, new Expiration());
-//        } catch (InvalidProtocolBufferException e) {
-//            log.error(e.getMessage());
-//            sendStatusReply(server, Common.Status.BAD_REQUEST);
-//        }
-        //TODO 先去掉权限控制部分
-//        try {
-//            accessControl.enaluate();
-//        } catch (ValidateException e) {
-//            log.error(e.getMessage());
-//            sendStatusReply(server, Common.Status.FORBIDDEN);
-//        }
-        Ab.SeekInfo seekInfo = null;
+        //TODO 先去掉权限控制部分(SessionAc)
+        Ab.SeekInfo seekInfo;
         try {
-            seekInfo = Ab.SeekInfo.parseFrom(payload.getData().toByteArray());
+            seekInfo = Ab.SeekInfo.parseFrom(payload.getData());
         } catch (InvalidProtocolBufferException e) {
             log.error(e.getMessage(), e);
             sendStatusReply(server, Common.Status.BAD_REQUEST);
-            throw new ConsenterException(e);
+            return null;
         }
-
-        if (seekInfo.getStart() == null || seekInfo.getStop() == null) {
+        if (!seekInfo.hasStart() || !seekInfo.hasStop()) {
             sendStatusReply(server, Common.Status.BAD_REQUEST);
+            return null;
         }
 
-        IIterator cursor = null;
+        ReadWriteBase ledger = chain.getLedgerResources().getReadWriteBase();
+        long number;
+        long stopNumber;
         try {
-            cursor = chain.getLedgerResources().getReadWriteBase().iterator(seekInfo.getStart());
-        } catch (LedgerException e) {
-          throw new ConsenterException(e);
-        }
-        if (cursor instanceof FileLedgerIterator) {
-            FileLedgerIterator fileLedgerIterator = (FileLedgerIterator) cursor;
-            long number = fileLedgerIterator.getBlockNum();
-            long stopNumber = 0;
-            Ab.SeekPosition.TypeCase stop = seekInfo.getStop().getTypeCase();
-            switch (stop) {
+            long height = ledger.height();
+            if (height == 0 && (seekInfo.getStart().getTypeCase() == Ab.SeekPosition.TypeCase.NEWEST
+                    || seekInfo.getStop().getTypeCase() == Ab.SeekPosition.TypeCase.NEWEST)) {
+                log.warn(String.format("[group: %s] Received seekInfo message for newest block on empty ledger", chdr.getGroupId()));
+                sendStatusReply(server, Common.Status.NOT_FOUND);
+                return null;
+            }
+            number = seekNumber(seekInfo.getStart(), height);
+            switch (seekInfo.getStop().getTypeCase()) {
                 case OLDEST:
                     stopNumber = number;
                     break;
                 case NEWEST:
-                    try {
-                        stopNumber = chain.getLedgerResources().getReadWriteBase().height() - 1;
-                    } catch (LedgerException e) {
-                        throw new ConsenterException(e);
-                    }
+                    //结束位置取请求时的最新区块
+                    stopNumber = height - 1;
                     break;
                 case SPECIFIED:
-                    stopNumber = stop.getNumber();
+                    stopNumber = seekInfo.getStop().getSpecified().getNumber();
                     if (stopNumber < number) {
-                        log.warn(String.format("[group: %s] Received invalid seekInfo message from %s: start number %d greater than stop number %d", chdr.getGroupId(), number, stopNumber));
+                        log.warn(String.format("[group: %s] Received invalid seekInfo message: start number %d greater than stop number %d",
+                                chdr.getGroupId(), number, stopNumber));
                         sendStatusReply(server, Common.Status.BAD_REQUEST);
+                        return null;
                     }
+                    break;
                 default:
+                    sendStatusReply(server, Common.Status.BAD_REQUEST);
+                    return null;
             }
-            {
-                if (seekInfo.getBehavior() == Ab.SeekInfo.SeekBehavior.FAIL_IF_NOT_READY) {
-                    try {
-                        if (number > chain.getLedgerResources().getReadWriteBase().height() - 1) {
-                            sendStatusReply(server, Common.Status.NOT_FOUND);
-                        }
-                    } catch (LedgerException e) {
-                        throw new ConsenterException(e);
-                    }
-                }
-                QueryResult queryResult = nextBlock(cursor);
-                Map.Entry<QueryResult, Common.Status> block = (Map.Entry<QueryResult, Common.Status>) queryResult.getObj();
-                try {
-                    cursor.close();
-                } catch (LedgerException e) {
-                    e.printStackTrace();
-                }
-                Common.Block blockData = (Common.Block) block.getKey().getObj();
-                Common.Status status = block.getValue();
-                blockData.getHeader().getNumber();
-                if (status != Common.Status.SUCCESS) {
-                    log.error(String.format("[group: %s] Error reading from group, cause was: %s", chdr.getGroupId(), status));
-                    sendStatusReply(server, status);
-                }
-                number++;
-                //TODO 去掉权限控制部分
-//                try {
-//                    accessControl.enaluate();
-//                } catch (ValidateException e) {
-//                    sendStatusReply(server, Common.Status.FORBIDDEN);
-//                }
-                log.debug(String.format("[group: %s] Delivering block for %s", chdr.getGroupId(), seekInfo));
-                try {
-                    sendBlockReply(server, blockData);
-                } catch (ConsenterException e) {
-                    log.error(e.getMessage());
-                }
-                if (stopNumber == blockData.getHeader().getNumber()) {
-                    return;
-                }
+            if (seekInfo.getBehavior() == Ab.SeekInfo.SeekBehavior.FAIL_IF_NOT_READY && number > height - 1) {
+                sendStatusReply(server, Common.Status.NOT_FOUND);
+                return null;
             }
+            log.debug(String.format("[group: %s] Delivering blocks for %s", chdr.getGroupId(), seekInfo));
+            //按已解析的起始区块号打开迭代器, 避免账本再次解析NEWEST时高度已变化
+            Ab.SeekPosition start = Ab.SeekPosition.newBuilder()
+                    .setSpecified(Ab.SeekSpecified.newBuilder().setNumber(number))
+                    .build();
+            return new BlockDelivery(server, chdr.getGroupId(), ledger, ledger.iterator(start),
+                    number, stopNumber, seekInfo.getBehavior() == Ab.SeekInfo.SeekBehavior.FAIL_IF_NOT_READY);
+        } catch (LedgerException e) {
+            log.error(e.getMessage(), e);
+            sendStatusReply(server, Common.Status.SERVICE_UNAVAILABLE);
+            return null;
         }
-
-
     }
 
+    /**
+     * 按请求时读取的账本高度解析位置
+     */
+    private static long seekNumber(Ab.SeekPosition position, long height) throws ConsenterException {
+        switch (position.getTypeCase()) {
+            case OLDEST:
+                return 0;
+            case NEWEST:
+                return height - 1;
+            case SPECIFIED:
+                return position.getSpecified().getNumber();
+            default:
+                throw new ConsenterException("Unknown seek position " + position.getTypeCase());
+        }
+    }
 
     public QueryResult nextBlock(IIterator cursor) throws ConsenterException {
-        // FIXME: 2018/5/31
         try {
             return cursor.next();
         } catch (LedgerException e) {
@@ -220,18 +237,15 @@ public class DeliverHandler implements IDeliverHandler {
     }
 
     public void validateGroupHeader(DeliverServer server, Common.GroupHeader chdr) throws ConsenterException, ValidateException {
-        if (chdr.getTimestamp() == null) {
+        if (chdr == null || !chdr.hasTimestamp()) {
             throw new ConsenterException("group header in envelope must contain timestamp");
         }
         Date nowDate = new Date();
-        if (chdr.getTimestamp() != null) {
-            long nowMilliseconds = nowDate.getTime();
-            long chdrMilliseconds = chdr.getTimestamp().getSeconds() * 1000 + chdr.getTimestamp().getNanos() / 1000000;
-            if (nowMilliseconds - chdrMilliseconds > timeWindow) {
-                throw new ValidateException("out of range");
-            }
+        long nowMilliseconds = nowDate.getTime();
+        long chdrMilliseconds = chdr.getTimestamp().getSeconds() * 1000 + chdr.getTimestamp().getNanos() / 1000000;
+        if (nowMilliseconds - chdrMilliseconds > timeWindow) {
+            throw new ValidateException("out of range");
         }
-
     }
 
     public void sendStatusReply(DeliverServer srv, Common.Status status) throws ConsenterException {
@@ -239,7 +253,7 @@ public class DeliverHandler implements IDeliverHandler {
     }
 
     public void sendBlockReply(DeliverServer srv, Common.Block block) throws ConsenterException {
-        log.info("Send the block");
+        log.debug("Send the block {}", block.getHeader().getNumber());
         srv.send(new DeliverHandlerSupport().createBlockReply(block));
     }
 
@@ -251,4 +265,117 @@ public class DeliverHandler implements IDeliverHandler {
         return timeWindow;
     }
 
+    /**
+     * 一个deliver请求的发送过程
+     * schedule可由onReady、账本高度通知和取消回调并发触发, 同一时刻只有一个线程在发送
+     */
+    private class BlockDelivery implements Runnable {
+        private final DeliverServer server;
+        private final String groupId;
+        private final ReadWriteBase ledger;
+        private final IIterator cursor;
+        private final long stopNumber;
+        private final boolean failIfNotReady;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private long number;
+        /**
+         * 已知的账本高度, 发送到该高度后才重新读取
+         */
+        private long available;
+        private volatile CompletableFuture<Long> waiting;
+
+        BlockDelivery(DeliverServer server, String groupId, ReadWriteBase ledger, IIterator cursor,
+                      long number, long stopNumber, boolean failIfNotReady) {
+            this.server = server;
+            this.groupId = groupId;
+            this.ledger = ledger;
+            this.cursor = cursor;
+            this.number = number;
+            this.stopNumber = stopNumber;
+            this.failIfNotReady = failIfNotReady;
+        }
+
+        void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                pump();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void pump() {
+            try {
+                while (!done.isDone()) {
+                    if (server.isCancelled()) {
+                        finish(null);
+                        return;
+                    }
+                    if (number > stopNumber) {
+                        finish(Common.Status.SUCCESS);
+                        return;
+                    }
+                    if (!server.isReady()) {
+                        //等待onReady
+                        return;
+                    }
+                    if (number >= available) {
+                        available = ledger.height();
+                    }
+                    if (number >= available) {
+                        if (failIfNotReady) {
+                            finish(Common.Status.NOT_FOUND);
+                            return;
+                        }
+                        if (ledger instanceof FileLedger) {
+                            CompletableFuture<Long> future = ((FileLedger) ledger).awaitHeight(number + 1);
+                            waiting = future;
+                            future.thenRun(this::schedule);
+                            return;
+                        }
+                        cursor.readyChain();
+                    }
+                    Map.Entry<QueryResult, Common.Status> entry =
+                            (Map.Entry<QueryResult, Common.Status>) nextBlock(cursor).getObj();
+                    if (entry.getValue() != Common.Status.SUCCESS || entry.getKey() == null) {
+                        log.error(String.format("[group: %s] Error reading from group, cause was: %s", groupId, entry.getValue()));
+                        finish(entry.getValue() == Common.Status.SUCCESS ? Common.Status.SERVICE_UNAVAILABLE : entry.getValue());
+                        return;
+                    }
+                    sendBlockReply(server, (Common.Block) entry.getKey().getObj());
+                    number++;
+                }
+            } catch (Exception e) {
+                log.error(String.format("[group: %s] Deliver failed: %s", groupId, e.getMessage()), e);
+                finish(Common.Status.SERVICE_UNAVAILABLE);
+            }
+        }
+
+        private void finish(Common.Status status) {
+            CompletableFuture<Long> future = waiting;
+            if (future != null) {
+                future.cancel(false);
+            }
+            try {
+                cursor.close();
+            } catch (LedgerException e) {
+                log.error(e.getMessage(), e);
+            }
+            if (status != null && !server.isCancelled()) {
+                try {
+                    sendStatusReply(server, status);
+                } catch (Exception e) {
+                    log.error(e.getMessage(), e);
+                }
+            }
+            done.complete(null);
+        }
+    }
 }
@@ -34,9 +34,15 @@ public class DeliverServer implements ISender {
     private IPolicyChecker policyChecker;
     private ISender sender;
     private Common.Envelope envelope;
+    private DeliverStream stream;
 
     public DeliverServer(StreamObserver<Ab.DeliverResponse> responseObserver, Common.Envelope envelope) {
-        this.responseObserver = responseObserver;
+        this(new DeliverStream(responseObserver), envelope);
+    }
+
+    public DeliverServer(DeliverStream stream, Common.Envelope envelope) {
+        this.responseObserver = stream.getResponseObserver();
+        this.stream = stream;
         this.envelope = envelope;
     }
 
@@ -56,8 +62,25 @@ public class DeliverServer implements ISender {
         return envelope;
     }
 
+    public DeliverStream getStream() {
+        return stream;
+    }
+
+    public boolean isReady() {
+        return stream.isReady();
+    }
+
+    public boolean isCancelled() {
+        return stream.isCancelled();
+    }
+
     @Override
     public void send(Message msg) throws ConsenterException {
+        if (msg instanceof Ab.DeliverResponse) {
+            //区块回复无需再序列化后解析
+            responseObserver.onNext((Ab.DeliverResponse) msg);
+            return;
+        }
         Ab.DeliverResponse deliverResponse = null;
         try {
             deliverResponse = Ab.DeliverResponse.parseFrom(msg.toByteArray());
@@ -0,0 +1,117 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.common.deliver;
+
+import io.grpc.stub.CallStreamObserver;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.protos.consenter.Ab;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 一个deliver gRPC流
+ * 流中的请求按接收顺序依次处理; 注册gRPC的onReady/onCancel回调, 发送方在isReady为false时暂停,
+ * 由回调唤醒当前请求继续发送, 慢消费者的区块不会在堆中积压
+ *
+ * @author zhangmingyang
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class DeliverStream {
+    private static JulongChainLog log = JulongChainLogFactory.getLog(DeliverStream.class);
+
+    private final StreamObserver<Ab.DeliverResponse> responseObserver;
+    private final boolean flowControl;
+    private volatile boolean cancelled;
+    /**
+     * 当前请求的唤醒回调
+     */
+    private final AtomicReference<Runnable> listener = new AtomicReference<>();
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+    /**
+     * 须在gRPC服务方法返回前创建, 之后无法再注册回调, 此时不做流量控制
+     */
+    public DeliverStream(StreamObserver<Ab.DeliverResponse> responseObserver) {
+        this.responseObserver = responseObserver;
+        boolean registered = false;
+        if (responseObserver instanceof ServerCallStreamObserver) {
+            ServerCallStreamObserver<Ab.DeliverResponse> call = (ServerCallStreamObserver<Ab.DeliverResponse>) responseObserver;
+            try {
+                call.setOnReadyHandler(this::signal);
+                call.setOnCancelHandler(this::cancel);
+                registered = true;
+            } catch (IllegalStateException e) {
+                log.warn("Deliver stream created after call started, flow control disabled");
+            }
+        }
+        this.flowControl = registered;
+    }
+
+    public StreamObserver<Ab.DeliverResponse> getResponseObserver() {
+        return responseObserver;
+    }
+
+    /**
+     * 客户端可以接收更多消息
+     */
+    public boolean isReady() {
+        return !flowControl || ((CallStreamObserver<Ab.DeliverResponse>) responseObserver).isReady();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 客户端取消或流出错
+     */
+    public void cancel() {
+        cancelled = true;
+        signal();
+    }
+
+    /**
+     * 在之前的请求处理完后处理请求, 返回的future在本请求处理完时完成
+     */
+    public synchronized CompletableFuture<Void> submit(Supplier<CompletableFuture<Void>> request) {
+        tail = tail.handle((v, e) -> null).thenCompose(v -> request.get());
+        return tail;
+    }
+
+    void setListener(Runnable listener) {
+        this.listener.set(listener);
+    }
+
+    /**
+     * 仍是该回调时才清除, 不影响之后请求已登记的回调
+     */
+    void clearListener(Runnable listener) {
+        this.listener.compareAndSet(listener, null);
+    }
+
+    private void signal() {
+        Runnable current = listener.get();
+        if (current != null) {
+            current.run();
+        }
+    }
+}
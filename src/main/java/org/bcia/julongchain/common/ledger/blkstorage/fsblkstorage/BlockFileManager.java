@@ -20,6 +20,7 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import org.apache.commons.lang3.ArrayUtils;
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.blkstorage.IndexConfig;
+import org.bcia.julongchain.common.ledger.util.HeightNotifier;
 import org.bcia.julongchain.common.ledger.util.IDBProvider;
 import org.bcia.julongchain.common.ledger.util.IoUtil;
 import org.bcia.julongchain.core.ledger.util.Util;
@@ -50,17 +51,25 @@ public class BlockFileManager {
     public static final int LAST_BLOCK_BYTES = 0;
     public static final int CURRENT_OFFSET = 1;
     public static final int NUM_BLOCKS = 2;
-    public static final Object LOCK = new Object();
 	public static final int PEEK_BYTES_LEN = 8;
 
     private String rootDir;
     private Config config;
     private IDBProvider db;
     private Index index;
-    private CheckpointInfo cpInfo;
+    /**
+     * 检查点与区块链信息提交时整体替换, 查询线程无需加锁读取
+     * 索引只在区块写入文件后更新, 查询到的位置总是完整的区块
+     */
+    private volatile CheckpointInfo cpInfo;
     private BlockFileWriter currentFileWriter;
-    private Ledger.BlockchainInfo bcInfo;
+    private BlockFileReaderCache sealedFileReaders;
+    private volatile Ledger.BlockchainInfo bcInfo;
     private String ledgerId;
+    /**
+     * 本账本的高度通知, 迭代器在此等待新区块
+     */
+    private final HeightNotifier heightNotifier = new HeightNotifier();
 
     /**
      * 默认构造方法
@@ -81,6 +90,7 @@ public class BlockFileManager {
         this.config = config;
         this.rootDir = config.getLedgerBlockDir(id);
         this.db = indexStore;
+        this.sealedFileReaders = new BlockFileReaderCache(this.rootDir, config.getMaxOpenBlockFiles());
 		//检查区块链文件完整性以及是否被篡改
 		// TODO: 9/12/18 consenter中区块与node中不同
         cpInfo = loadCurrentInfo();
@@ -98,8 +108,10 @@ public class BlockFileManager {
         //保存检查点信息到leveldb中
         //blkMgrInfoKey-checkpointInfo
         saveCurrentInfo(cpInfo, true);
+        heightNotifier.update(height(cpInfo));
         //写入文件 writer类
-        this.currentFileWriter = new BlockFileWriter(deriveBlockfilePath(this.rootDir, cpInfo.getLastestFileChunkSuffixNum()));
+        this.currentFileWriter = new BlockFileWriter(deriveBlockfilePath(this.rootDir, cpInfo.getLastestFileChunkSuffixNum()),
+                config.getGroupCommitPolicy());
         //修剪文件为检查点保存的文件大小
         this.currentFileWriter.truncateFile(cpInfo.getLatestFileChunksize());
         //设置blockindex对象
@@ -146,7 +158,7 @@ public class BlockFileManager {
         List<Object> lastCompleteBlockInfo = scanForLastCompleteBlock(rootDir, cpInfo.getLastestFileChunkSuffixNum(), (long) cpInfo.getLatestFileChunksize());
         long endOffsetLastBlock = (long) lastCompleteBlockInfo.get(CURRENT_OFFSET);
         int numBlocks = (int) lastCompleteBlockInfo.get(NUM_BLOCKS);
-        cpInfo.setLastestFileChunkSuffixNum((int) endOffsetLastBlock);
+        cpInfo.setLatestFileChunksize((int) endOffsetLastBlock);
         if(numBlocks == 0){
             return;
         }
@@ -172,8 +184,18 @@ public class BlockFileManager {
 		return String.format("%s/%s_%s", rootDir, BLOCKFILE_PREFIX, sb.reverse().toString().toUpperCase());
     }
 
+    /**
+     * 关闭当前区块文件(持久通道模式下刷盘)
+     */
     public void close() {
-
+        try {
+            currentFileWriter.close();
+        } catch (LedgerException e) {
+            log.error("Got error when closing block file " + currentFileWriter.getFilePath(), e);
+        }
+        if (sealedFileReaders != null) {
+            sealedFileReaders.close();
+        }
     }
 
     /**
@@ -184,7 +206,10 @@ public class BlockFileManager {
                 0,
                 false,
                 cpInfo.getLastBlockNumber());
-        BlockFileWriter nextFileWriter = new BlockFileWriter(deriveBlockfilePath(this.rootDir, newCpInfo.getLastestFileChunkSuffixNum()));
+        //已写满的区块文件刷盘并关闭
+        currentFileWriter.close();
+        BlockFileWriter nextFileWriter = new BlockFileWriter(deriveBlockfilePath(this.rootDir, newCpInfo.getLastestFileChunkSuffixNum()),
+                config.getGroupCommitPolicy());
         saveCurrentInfo(newCpInfo, true);
         this.currentFileWriter = nextFileWriter;
         updateCheckpoint(newCpInfo);
@@ -219,15 +244,13 @@ public class BlockFileManager {
             currentOffset = 0;
         }
         try {
-            //添加区块长度
-            currentFileWriter.append(blockBytesLenEncoded, false);
+            //添加区块长度及区块
+            currentFileWriter.appendBlock(blockBytesLenEncoded, blockBytes);
         } catch (LedgerException e) {
             currentFileWriter.truncateFile(cpInfo.getLatestFileChunksize());
             log.error("Got error when appending block to file ", e);
             throw e;
         }
-        //添加区块
-        currentFileWriter.append(blockBytes, true);
         //本次提交区块位置应为之前提交区块位置后8位
         SerializedBlockInfo info = BlockSerialization.serializeBlock(block, cpInfo.getLatestFileChunksize() + BlockFileManager.PEEK_BYTES_LEN);
 		//block中包含的所有交易
@@ -299,49 +322,54 @@ public class BlockFileManager {
                 , startingBlockNum, cpInfo.getLastBlockNumber()));
         //初始化block流
         BlockStream stream = new BlockStream(rootDir, startFileNum, startOffset, endFileNum);
-        byte[] blockBytes;
-        BlockPlacementInfo blockPlacementInfo;
-        //读取区块文件
-        if(skipFirstBlock){
-            blockBytes = stream.nextBlockBytes();
-            if(blockBytes == null){
-            	log.error("Got null blockBytes for block num = [{}], but it is forbid");
-                throw new LedgerException(String.format("Block bytes for block num = [%d] should not be null here." +
-                        " The indexes for the block are already present", lastBlockIndexed));
-            }
-        }
         BlockIndexInfo blockIndexInfo = new BlockIndexInfo();
-        while(true){
-            AbstractMap.SimpleEntry<byte[], BlockPlacementInfo> entry = stream.nextBlockBytesAndPlacementInfo();
-            blockBytes = entry.getKey();
-            blockPlacementInfo = entry.getValue();
-            if(blockBytes == null || blockBytes.length == 0){
-                break;
+        try {
+            byte[] blockBytes;
+            BlockPlacementInfo blockPlacementInfo;
+            //读取区块文件
+            if(skipFirstBlock){
+                blockBytes = stream.nextBlockBytes();
+                if(blockBytes == null){
+                	log.error("Got null blockBytes for block num = [{}], but it is forbid");
+                    throw new LedgerException(String.format("Block bytes for block num = [%d] should not be null here." +
+                            " The indexes for the block are already present", lastBlockIndexed));
+                }
             }
-            //解码block
-            SerializedBlockInfo info = BlockSerialization.extractSerializedBlockInfo(blockBytes, cpInfo.getLatestFileChunksize() + 8);
+            while(true){
+                AbstractMap.SimpleEntry<byte[], BlockPlacementInfo> entry = stream.nextBlockBytesAndPlacementInfo();
+                blockBytes = entry.getKey();
+                blockPlacementInfo = entry.getValue();
+                if(blockBytes == null || blockBytes.length == 0){
+                    break;
+                }
+                //解码block
+                SerializedBlockInfo info = BlockSerialization.extractSerializedBlockInfo(blockBytes, cpInfo.getLatestFileChunksize() + 8);
 
-            long numBytesToShift = blockPlacementInfo.getBlockBytesOffset() - blockPlacementInfo.getBlockStartOffset();
-            for(TxIndexInfo offset : info.getTxOffsets()){
-                offset.getLoc().setOffset(offset.getLoc().getOffset() + numBytesToShift);
-            }
+                long numBytesToShift = blockPlacementInfo.getBlockBytesOffset() - blockPlacementInfo.getBlockStartOffset();
+                for(TxIndexInfo offset : info.getTxOffsets()){
+                    offset.getLoc().setOffset(offset.getLoc().getOffset() + numBytesToShift);
+                }
 
-            //更新blockIndexInfo
-            blockIndexInfo.setBlockHash(Util.getHashBytes(info.getBlockHeader().toByteArray()));
-            blockIndexInfo.setBlockNum(info.getBlockHeader().getNumber());
-            //封装文件信息
-            blockIndexInfo.setFlp(new FileLocPointer(blockPlacementInfo.getFileNum(),
-                    (int) blockPlacementInfo.getBlockStartOffset(),
-                    0));
-            blockIndexInfo.setTxOffsets(info.getTxOffsets());
-            blockIndexInfo.setMetadata(info.getMetadata());
-
-            log.debug(String.format("syncIndex() indexing block [%d]", blockIndexInfo.getBlockNum()));
-            //重新设置索引
-            index.indexBlock(blockIndexInfo);
-            if(blockIndexInfo.getBlockNum() % 10000 == 0){
-                log.info(String.format("Indexed block number [%d]", blockIndexInfo.getBlockNum()));
+                //更新blockIndexInfo
+                blockIndexInfo.setBlockHash(Util.getHashBytes(info.getBlockHeader().toByteArray()));
+                blockIndexInfo.setBlockNum(info.getBlockHeader().getNumber());
+                //封装文件信息
+                blockIndexInfo.setFlp(new FileLocPointer(blockPlacementInfo.getFileNum(),
+                        (int) blockPlacementInfo.getBlockStartOffset(),
+                        0));
+                blockIndexInfo.setTxOffsets(info.getTxOffsets());
+                blockIndexInfo.setMetadata(info.getMetadata());
+
+                log.debug(String.format("syncIndex() indexing block [%d]", blockIndexInfo.getBlockNum()));
+                //重新设置索引
+                index.indexBlock(blockIndexInfo);
+                if(blockIndexInfo.getBlockNum() % 10000 == 0){
+                    log.info(String.format("Indexed block number [%d]", blockIndexInfo.getBlockNum()));
+                }
             }
+        } finally {
+            //区块文件读取器持有文件通道, 用完关闭
+            stream.close();
         }
         log.info(String.format("Finished building index. Last block indexed [%d]", blockIndexInfo.getBlockNum()));
     }
@@ -350,19 +378,22 @@ public class BlockFileManager {
      * 更新检查点信息
      */
     private void updateCheckpoint(CheckpointInfo newCpInfo) {
-        synchronized (LOCK){
-            cpInfo = newCpInfo;
-            log.debug(String.format("Brodcasting about update checkpointInfo: %s", newCpInfo));
-            //通知所有等待区块的线程
-            LOCK.notifyAll();
-        }
+        cpInfo = newCpInfo;
+        log.debug(String.format("Brodcasting about update checkpointInfo: %s", newCpInfo));
+        //只通知本账本中等待区块的迭代器
+        heightNotifier.update(height(newCpInfo));
+    }
+
+    private static long height(CheckpointInfo cpInfo) {
+        return cpInfo.getChainEmpty() ? 0 : cpInfo.getLastBlockNumber() + 1;
     }
 
     /**
      * 更新区块链信息
      */
     private void updateBlockchainInfo(byte[] latestBlockHash, Common.Block latestBlock) {
-        Ledger.BlockchainInfo currentBCInfo = getBlockchainInfo(); bcInfo = Ledger.BlockchainInfo.newBuilder()
+        Ledger.BlockchainInfo currentBCInfo = getBlockchainInfo();
+        bcInfo = Ledger.BlockchainInfo.newBuilder()
                 .setHeight(currentBCInfo.getHeight() + 1)
                 .setCurrentBlockHash(ByteString.copyFrom(latestBlockHash))
                 .setPreviousBlockHash(latestBlock.getHeader().getPreviousHash())
@@ -521,6 +552,10 @@ public class BlockFileManager {
 		if (lp == null) {
 			return null;
 		}
+        //已写满的区块文件使用缓存的文件通道读取
+        if (isSealedFile(lp.getFileSuffixNum())) {
+            return sealedFileReaders.readBlockBytes(lp.getFileSuffixNum(), lp.getLocPointer().getOffset());
+        }
         BlockFileStream stream = null;
         try {
             stream = new BlockFileStream(rootDir, lp.getFileSuffixNum(), lp.getLocPointer().getOffset());
@@ -539,10 +574,24 @@ public class BlockFileManager {
 		if (lp == null) {
 			return null;
 		}
+        if (isSealedFile(lp.getFileSuffixNum())) {
+            return sealedFileReaders.read(lp.getFileSuffixNum(), lp.getLocPointer().getOffset(), lp.getLocPointer().getBytesLength());
+        }
         BlockFileReader reader;
         String filePath = deriveBlockfilePath(rootDir, lp.getFileSuffixNum());
         reader = new BlockFileReader(filePath);
-        return reader.read(lp.getLocPointer().getOffset(), lp.getLocPointer().getBytesLength());
+        try {
+            return reader.read(lp.getLocPointer().getOffset(), lp.getLocPointer().getBytesLength());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * 区块文件是否已写满(不再写入)
+     */
+    private boolean isSealedFile(int fileNum) {
+        return fileNum < cpInfo.getLastestFileChunkSuffixNum();
     }
 
     /**
@@ -579,7 +628,16 @@ public class BlockFileManager {
             int numBlock = 0;
             stream = new BlockFileStream(rootDir, fileNum, startingOffset);
             while (true) {
-                blockBytes = stream.nextBlockBytes();
+                try {
+                    blockBytes = stream.nextBlockBytes();
+                } catch (LedgerException e) {
+                    //文件尾部为未写完的区块(如写入时崩溃), 忽略该区块
+                    if (e.getMessage() == null || !e.getMessage().endsWith(BlockFileStream.ERR_UNEXPECTED_END_OF_BLOCKFILE)) {
+                        throw e;
+                    }
+                    log.debug("Ignoring incomplete block bytes at the end of file [{}]", stream.getFile().getName());
+                    break;
+                }
                 if(blockBytes == null){
                     break;
                 }
@@ -634,6 +692,10 @@ public class BlockFileManager {
         return cpInfo;
     }
 
+    public HeightNotifier getHeightNotifier() {
+        return heightNotifier;
+    }
+
     public BlockFileWriter getCurrentFileWriter() {
         return currentFileWriter;
     }
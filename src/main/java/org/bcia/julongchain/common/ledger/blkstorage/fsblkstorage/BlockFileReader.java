@@ -20,10 +20,14 @@ import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * 读取文件
+ * 首次读取时打开只读FileChannel, 之后的读取均为定位读取(pread), 直到close
  *
  * @author sunzongyu
  * @date 2018/04/09
@@ -32,6 +36,7 @@ import java.io.FileInputStream;
 public class BlockFileReader {
 	private static JulongChainLog log = JulongChainLogFactory.getLog(BlockFileReader.class);
     private File file;
+    private volatile FileChannel channel;
 
     public BlockFileReader(String filePath){
         this.file = new File(filePath);
@@ -41,30 +46,51 @@ public class BlockFileReader {
      * 从offset位起,读取length字节
      */
     public byte[] read(long offset, long length) throws LedgerException {
-		FileInputStream fis;
-		byte[] result;
+		byte[] result = new byte[(int) length];
+		ByteBuffer dst = ByteBuffer.wrap(result);
 		try {
-			result = new byte[(int) length];
-			fis = new FileInputStream(file);
-			//移动到指定位置
-			long skip = fis.skip(offset);
-			if (skip != offset) {
-				log.debug("Wrong file skip. Expect skip = [{}], actual skip = [{}]", offset, skip);
+			FileChannel fc = getChannel();
+			while (dst.hasRemaining()) {
+				int read = fc.read(dst, offset + dst.position());
+				if (read < 0) {
+					log.debug("Wrong file read. Except read = [{}], actual read = [{}]", length, dst.position());
+					break;
+				}
 			}
-			int read = fis.read(result);
-			if (read != length) {
-				log.debug("Wrong file read. Except read = [{}], actual read = [{}]", length, read);
-			}
-			fis.close();
-		} catch (Throwable e){
+		} catch (IOException e){
 			log.error(e.getMessage(), e);
 			throw new LedgerException(e);
 		}
 		return result;
     }
 
-    public void close(){
-    	//nothing to do
+    /**
+     * 关闭文件通道
+     */
+    public synchronized void close(){
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.error(e.getMessage(), e);
+		}
+		channel = null;
+	}
+
+	private FileChannel getChannel() throws IOException {
+		FileChannel fc = channel;
+		if (fc == null) {
+			synchronized (this) {
+				fc = channel;
+				if (fc == null) {
+					fc = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+					channel = fc;
+				}
+			}
+		}
+		return fc;
 	}
 
     public File getFile() {
@@ -0,0 +1,135 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.common.ledger.blkstorage.fsblkstorage;
+
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.core.ledger.util.Util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 已写满(sealed)区块文件的读取对象缓存
+ * 按最近使用顺序保留至多maxOpenFiles个打开的文件通道, 超出时关闭最久未使用的通道
+ * 正在使用中的通道被淘汰后, 在使用结束时关闭
+ *
+ * @author sunzongyu
+ * @date 2018/10/10
+ * @company Dingxuan
+ */
+public class BlockFileReaderCache {
+	private static JulongChainLog log = JulongChainLogFactory.getLog(BlockFileReaderCache.class);
+
+	private final String rootDir;
+	private final int maxOpenFiles;
+	private final LinkedHashMap<Integer, CachedReader> readers = new LinkedHashMap<>(16, 0.75f, true);
+	private boolean closed;
+
+	public BlockFileReaderCache(String rootDir, int maxOpenFiles) {
+		this.rootDir = rootDir;
+		this.maxOpenFiles = maxOpenFiles <= 0 ? Config.DEFAULT_MAX_OPEN_BLOCKFILES : maxOpenFiles;
+	}
+
+	/**
+	 * 从区块文件fileNum的offset位起,读取length字节
+	 */
+	public byte[] read(int fileNum, long offset, long length) throws LedgerException {
+		CachedReader cachedReader = acquire(fileNum);
+		try {
+			return cachedReader.reader.read(offset, length);
+		} finally {
+			release(cachedReader);
+		}
+	}
+
+	/**
+	 * 读取区块文件fileNum中offset位起的区块
+	 * blockBytesLenEncoded     8
+	 * blockbytes               blockBytesLen
+	 */
+	public byte[] readBlockBytes(int fileNum, long offset) throws LedgerException {
+		CachedReader cachedReader = acquire(fileNum);
+		try {
+			byte[] lenBytes = cachedReader.reader.read(offset, BlockFileManager.PEEK_BYTES_LEN);
+			long length = Util.bytesToLong(lenBytes, 0, BlockFileManager.PEEK_BYTES_LEN);
+			return cachedReader.reader.read(offset + BlockFileManager.PEEK_BYTES_LEN, length);
+		} finally {
+			release(cachedReader);
+		}
+	}
+
+	/**
+	 * 关闭所有文件通道
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (CachedReader cachedReader : readers.values()) {
+			evict(cachedReader);
+		}
+		readers.clear();
+	}
+
+	public synchronized int size() {
+		return readers.size();
+	}
+
+	private synchronized CachedReader acquire(int fileNum) throws LedgerException {
+		if (closed) {
+			throw new LedgerException("Block file reader cache is closed");
+		}
+		CachedReader cachedReader = readers.get(fileNum);
+		if (cachedReader == null) {
+			cachedReader = new CachedReader(new BlockFileReader(BlockFileManager.deriveBlockfilePath(rootDir, fileNum)));
+			readers.put(fileNum, cachedReader);
+			log.debug("Opened block file [{}], [{}] block files cached", fileNum, readers.size());
+			Iterator<Map.Entry<Integer, CachedReader>> itr = readers.entrySet().iterator();
+			while (readers.size() > maxOpenFiles && itr.hasNext()) {
+				CachedReader eldest = itr.next().getValue();
+				itr.remove();
+				evict(eldest);
+			}
+		}
+		cachedReader.refCount++;
+		return cachedReader;
+	}
+
+	private synchronized void release(CachedReader cachedReader) {
+		cachedReader.refCount--;
+		if (cachedReader.evicted && cachedReader.refCount == 0) {
+			cachedReader.reader.close();
+		}
+	}
+
+	private void evict(CachedReader cachedReader) {
+		cachedReader.evicted = true;
+		if (cachedReader.refCount == 0) {
+			cachedReader.reader.close();
+		}
+	}
+
+	private static class CachedReader {
+		private final BlockFileReader reader;
+		private int refCount;
+		private boolean evicted;
+
+		private CachedReader(BlockFileReader reader) {
+			this.reader = reader;
+		}
+	}
+}
@@ -32,6 +32,7 @@ import java.util.AbstractMap;
  */
 public class BlockFileStream {
     private static JulongChainLog log = JulongChainLogFactory.getLog(BlockFileStream.class);
+    public static final String ERR_UNEXPECTED_END_OF_BLOCKFILE = "unexpected end of blockfile";
 
     private int fileNum;
     private BlockFileReader reader;
@@ -70,9 +71,8 @@ public class BlockFileStream {
         //代表block长度的部分占8字节
         //剩余文件长度<8时抛出异常
         if(remainingBytes < BlockFileManager.PEEK_BYTES_LEN){
-        	String errMsg = String.format("Remaining bytes length =[%d], we need at least [%d] bytes to get block", remainingBytes, BlockFileManager.PEEK_BYTES_LEN);
-            log.error(errMsg);
-            throw new LedgerException(errMsg);
+            log.error(String.format("Remaining bytes length =[%d], we need at least [%d] bytes to get block", remainingBytes, BlockFileManager.PEEK_BYTES_LEN));
+            throw new LedgerException(ERR_UNEXPECTED_END_OF_BLOCKFILE);
         }
         log.debug(String.format("Remaining bytes=[%d], Going to peek [%d] bytes", remainingBytes, BlockFileManager.PEEK_BYTES_LEN));
         //读取8字节,并解析为block长度
@@ -83,7 +83,7 @@ public class BlockFileStream {
         long expectedBytes = length + BlockFileManager.PEEK_BYTES_LEN;
         if(expectedBytes > remainingBytes){
             log.error(String.format("At least [%d] bytes expected. Remaing bytes [%d]", expectedBytes, remainingBytes));
-            throw new LedgerException("unexpected end of blockfile");
+            throw new LedgerException(ERR_UNEXPECTED_END_OF_BLOCKFILE);
         }
         //读取block, 跳过前8位长度位
         byte[] blockBytes = reader.read(currentOffset + BlockFileManager.PEEK_BYTES_LEN, length);
@@ -21,9 +21,14 @@ import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * 写入文件
+ * 未设置组提交策略时, 每次写入均重新打开文件
+ * 设置组提交策略时, 保持一个打开的FileChannel, 并按策略刷盘
  *
  * @author sunzongyu
  * @date 2018/04/12
@@ -34,10 +39,19 @@ public class BlockFileWriter {
 
     private String filePath;
     private File file;
+    private GroupCommitPolicy groupCommitPolicy;
+    private FileChannel channel;
+    private int unsyncedBlocks;
+    private long lastSyncTime;
 
     public BlockFileWriter(String filePath) throws LedgerException{
+        this(filePath, null);
+    }
+
+    public BlockFileWriter(String filePath, GroupCommitPolicy groupCommitPolicy) throws LedgerException{
         this.filePath = filePath;
         this.file = new File(filePath);
+        this.groupCommitPolicy = groupCommitPolicy;
         open();
     }
 
@@ -49,6 +63,17 @@ public class BlockFileWriter {
         if(file.length() <= targetSize){
             return;
         }
+        if (channel != null) {
+            try {
+                channel.truncate(targetSize);
+                channel.force(false);
+                unsyncedBlocks = 0;
+                lastSyncTime = System.currentTimeMillis();
+            } catch (IOException e) {
+                throw new LedgerException(e);
+            }
+            return;
+        }
         FileInputStream fis;
         FileOutputStream fos;
         try {
@@ -71,6 +96,13 @@ public class BlockFileWriter {
 	 * 将字节b写入文件
 	 */
     public void append(byte[] b, Boolean sync) throws LedgerException {
+        if (channel != null) {
+            writeFully(new ByteBuffer[]{ByteBuffer.wrap(b)});
+            if (sync) {
+                sync();
+            }
+            return;
+        }
         FileOutputStream fos;
         try {
             fos = new FileOutputStream(file, true);
@@ -81,6 +113,58 @@ public class BlockFileWriter {
         }
     }
 
+	/**
+	 * 写入一个区块
+	 * 持久通道模式下区块长度与区块字节通过一次聚集写(gathering write)写入, 并按组提交策略刷盘
+	 */
+	public void appendBlock(byte[] blockBytesLenEncoded, byte[] blockBytes) throws LedgerException {
+		if (channel == null) {
+			FileOutputStream fos;
+			try {
+				fos = new FileOutputStream(file, true);
+				fos.write(blockBytesLenEncoded);
+				fos.write(blockBytes);
+				fos.close();
+			} catch (IOException e) {
+				throw new LedgerException(e);
+			}
+			return;
+		}
+		writeFully(new ByteBuffer[]{ByteBuffer.wrap(blockBytesLenEncoded), ByteBuffer.wrap(blockBytes)});
+		unsyncedBlocks++;
+		if (groupCommitPolicy.shouldSync(unsyncedBlocks, lastSyncTime, System.currentTimeMillis())) {
+			sync();
+		}
+	}
+
+	/**
+	 * 将已写入的数据刷盘
+	 */
+	public void sync() throws LedgerException {
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.force(false);
+		} catch (IOException e) {
+			throw new LedgerException(e);
+		}
+		log.debug("Synced {} blocks to file {}", unsyncedBlocks, filePath);
+		unsyncedBlocks = 0;
+		lastSyncTime = System.currentTimeMillis();
+	}
+
+	private void writeFully(ByteBuffer[] buffers) throws LedgerException {
+		ByteBuffer last = buffers[buffers.length - 1];
+		try {
+			while (last.hasRemaining()) {
+				channel.write(buffers);
+			}
+		} catch (IOException e) {
+			throw new LedgerException(e);
+		}
+	}
+
 	/**
 	 * 打开文件（文件不存在时创建文件）
 	 */
@@ -88,8 +172,36 @@ public class BlockFileWriter {
         if (!IoUtil.createFileIfMissing(filePath)) {
             throw new LedgerException("Can not create file " + filePath);
         }
+        if (groupCommitPolicy != null && channel == null) {
+            try {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                throw new LedgerException(e);
+            }
+            unsyncedBlocks = 0;
+            lastSyncTime = System.currentTimeMillis();
+        }
     }
 
+	/**
+	 * 刷盘并关闭文件通道
+	 */
+	public void close() throws LedgerException {
+		if (channel == null) {
+			return;
+		}
+		try {
+			sync();
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.error(e.getMessage(), e);
+			}
+			channel = null;
+		}
+	}
+
     public String getFilePath() {
         return filePath;
     }
@@ -105,4 +217,8 @@ public class BlockFileWriter {
     public void setFile(File file) {
         this.file = file;
     }
+
+	public GroupCommitPolicy getGroupCommitPolicy() {
+		return groupCommitPolicy;
+	}
 }
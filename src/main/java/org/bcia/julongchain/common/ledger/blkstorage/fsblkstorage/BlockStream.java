@@ -70,7 +70,10 @@ public class BlockStream {
     public AbstractMap.SimpleEntry<byte[], BlockPlacementInfo> nextBlockBytesAndPlacementInfo() throws LedgerException{
         AbstractMap.SimpleEntry<byte[], BlockPlacementInfo> entry = currentFileStream.nextBlockBytesAndPlacementInfo();
         byte[] blockBytes = entry.getKey();
-        log.debug(String.format("Blockbytes [%s] read from file [%d]", Hex.toHexString(blockBytes), currentFileNum));
+        //区块较大时转换十六进制开销明显, 只在调试时输出; 文件读完时blockBytes为null
+        if (log.isDebugEnabled() && blockBytes != null) {
+            log.debug(String.format("Blockbytes [%s] read from file [%d]", Hex.toHexString(blockBytes), currentFileNum));
+        }
         //当前文件无法读取出block
 		boolean expected = ((blockBytes == null || blockBytes.length == 0) && (currentFileNum < endFileNum || endFileNum < 0));
         if(expected){
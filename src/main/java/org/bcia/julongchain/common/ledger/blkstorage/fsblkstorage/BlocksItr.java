@@ -19,8 +19,13 @@ import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.IResultsIterator;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.common.ledger.util.HeightNotifier;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 /**
  *  区块迭代器
  *
@@ -36,7 +41,11 @@ public class BlocksItr implements IResultsIterator {
     private long maxBlockNumAvailable;
     private long blockNumToRetrieve;
     private BlockStream stream;
-    private Boolean closeMarker;
+    private volatile Boolean closeMarker;
+    /**
+     * 正在等待的高度通知, 关闭时取消以唤醒本迭代器
+     */
+    private volatile CompletableFuture<Long> waiting;
 
     public BlocksItr() {
     }
@@ -52,19 +61,32 @@ public class BlocksItr implements IResultsIterator {
      * 读取区块时, 区块长度不足将等待区块的添加
      */
     public long waitForBlock(long blockNum) throws LedgerException {
-        synchronized (BlockFileManager.LOCK){
-            while(mgr.getCpInfo().getLastBlockNumber() < blockNum && !shouldClose()){
-				log.debug(String.format("Going to wait for newer blocks.maxAvailaBlockNumber=[%d], waitForBlockNum=[%d]", mgr.getCpInfo().getLastBlockNumber(), blockNum));
-                try {
-                    BlockFileManager.LOCK.wait();
-                } catch (InterruptedException e) {
-                    log.error(e.getMessage(), e);
-                    throw new LedgerException(e);
+        HeightNotifier notifier = mgr.getHeightNotifier();
+        if (notifier.getHeight() <= blockNum && !shouldClose()) {
+            log.debug(String.format("Going to wait for newer blocks.maxAvailaBlockNumber=[%d], waitForBlockNum=[%d]", mgr.getCpInfo().getLastBlockNumber(), blockNum));
+            CompletableFuture<Long> future = notifier.awaitHeight(blockNum + 1);
+            waiting = future;
+            try {
+                //登记前已关闭时不会被唤醒
+                if (shouldClose()) {
+                    future.cancel(false);
+                } else {
+                    future.get();
                 }
-                log.debug("Coming out of wait. MaxViableBlockNumber=[{}]", mgr.getCpInfo().getLastBlockNumber());
+            } catch (CancellationException e) {
+                log.debug("Iterator closed while waiting for block " + blockNum);
+            } catch (InterruptedException e) {
+                future.cancel(false);
+                log.error(e.getMessage(), e);
+                throw new LedgerException(e);
+            } catch (ExecutionException e) {
+                throw new LedgerException(e);
+            } finally {
+                waiting = null;
             }
-            return mgr.getCpInfo().getLastBlockNumber();
+            log.debug("Coming out of wait. MaxViableBlockNumber=[{}]", mgr.getCpInfo().getLastBlockNumber());
         }
+        return mgr.getCpInfo().getLastBlockNumber();
     }
 
     /**
@@ -78,7 +100,7 @@ public class BlocksItr implements IResultsIterator {
     /**
      * 区块文件迭代器是否可以关闭
      */
-    public synchronized boolean shouldClose() {
+    public boolean shouldClose() {
         return closeMarker;
     }
 
@@ -106,10 +128,14 @@ public class BlocksItr implements IResultsIterator {
     }
 
     @Override
-    public synchronized void close() throws LedgerException{
+    public void close() throws LedgerException{
 		closeMarker = true;
-		synchronized (BlockFileManager.LOCK){
-			BlockFileManager.LOCK.notifyAll();
+		//先唤醒等待中的next, 再获取迭代器锁关闭文件流
+		CompletableFuture<Long> future = waiting;
+		if(future != null){
+			future.cancel(false);
+		}
+		synchronized (this){
 			if(stream != null){
 				stream.close();
 			}
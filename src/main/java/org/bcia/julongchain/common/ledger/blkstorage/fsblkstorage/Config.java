@@ -28,15 +28,29 @@ public class Config {
     public static final String CHAINS_DIR = "chains";
     public static final String INDEX_DIR = "index";
     public static final int DEFAULT_MAX_BLOCKFILE_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_OPEN_BLOCKFILES = 16;
 
     private String blockStorageDir;
     private int maxBlockFileSize;
+    /**
+     * 区块文件组提交策略, 为null时每次写入重新打开文件
+     */
+    private GroupCommitPolicy groupCommitPolicy;
+    /**
+     * 读取已写满区块文件时, 最多保持打开的文件数
+     */
+    private int maxOpenBlockFiles = DEFAULT_MAX_OPEN_BLOCKFILES;
 
     public Config(){}
 
     public Config(String blockStorageDir, int maxBlockFileSize){
+        this(blockStorageDir, maxBlockFileSize, null);
+    }
+
+    public Config(String blockStorageDir, int maxBlockFileSize, GroupCommitPolicy groupCommitPolicy){
         this.blockStorageDir = blockStorageDir;
         this.maxBlockFileSize = maxBlockFileSize <=0 ? DEFAULT_MAX_BLOCKFILE_SIZE : maxBlockFileSize;
+        this.groupCommitPolicy = groupCommitPolicy;
     }
 
     public String getIndexDir(){
@@ -66,4 +80,20 @@ public class Config {
     public void setMaxBlockFileSize(int maxBlockFileSize) {
         this.maxBlockFileSize = maxBlockFileSize;
     }
+
+    public GroupCommitPolicy getGroupCommitPolicy() {
+        return groupCommitPolicy;
+    }
+
+    public void setGroupCommitPolicy(GroupCommitPolicy groupCommitPolicy) {
+        this.groupCommitPolicy = groupCommitPolicy;
+    }
+
+    public int getMaxOpenBlockFiles() {
+        return maxOpenBlockFiles;
+    }
+
+    public void setMaxOpenBlockFiles(int maxOpenBlockFiles) {
+        this.maxOpenBlockFiles = maxOpenBlockFiles <= 0 ? DEFAULT_MAX_OPEN_BLOCKFILES : maxOpenBlockFiles;
+    }
 }
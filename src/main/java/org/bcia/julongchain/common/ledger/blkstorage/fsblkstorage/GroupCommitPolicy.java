@@ -0,0 +1,93 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.common.ledger.blkstorage.fsblkstorage;
+
+/**
+ * 区块文件组提交(group commit)策略
+ * 决定持久通道模式下的BlockFileWriter何时将写入的区块刷盘(fsync)
+ * syncBlocks       每写入N个区块刷盘一次, <=0表示不按区块数刷盘
+ * syncIntervalMs   距上次刷盘超过T毫秒后刷盘, <=0表示不按时间刷盘
+ * 两者均未设置时每个区块刷盘一次
+ *
+ * @author sunzongyu
+ * @date 2018/10/08
+ * @company Dingxuan
+ */
+public class GroupCommitPolicy {
+	private final int syncBlocks;
+	private final long syncIntervalMs;
+
+	public GroupCommitPolicy(int syncBlocks, long syncIntervalMs) {
+		if (syncBlocks <= 0 && syncIntervalMs <= 0) {
+			syncBlocks = 1;
+		}
+		this.syncBlocks = syncBlocks;
+		this.syncIntervalMs = syncIntervalMs;
+	}
+
+	/**
+	 * 每个区块刷盘一次
+	 */
+	public static GroupCommitPolicy everyBlock() {
+		return new GroupCommitPolicy(1, 0);
+	}
+
+	/**
+	 * 每N个区块刷盘一次
+	 */
+	public static GroupCommitPolicy everyNBlocks(int n) {
+		return new GroupCommitPolicy(n, 0);
+	}
+
+	/**
+	 * 每T毫秒刷盘一次
+	 */
+	public static GroupCommitPolicy everyMillis(long t) {
+		return new GroupCommitPolicy(0, t);
+	}
+
+	/**
+	 * 判断是否需要刷盘
+	 * @param unsyncedBlocks 上次刷盘后写入的区块数
+	 * @param lastSyncTime 上次刷盘时间(毫秒)
+	 * @param now 当前时间(毫秒)
+	 */
+	public boolean shouldSync(int unsyncedBlocks, long lastSyncTime, long now) {
+		if (unsyncedBlocks <= 0) {
+			return false;
+		}
+		if (syncBlocks > 0 && unsyncedBlocks >= syncBlocks) {
+			return true;
+		}
+		return syncIntervalMs > 0 && now - lastSyncTime >= syncIntervalMs;
+	}
+
+	public int getSyncBlocks() {
+		return syncBlocks;
+	}
+
+	public long getSyncIntervalMs() {
+		return syncIntervalMs;
+	}
+
+	@Override
+	public String toString() {
+		return "GroupCommitPolicy{" +
+				"syncBlocks=" + syncBlocks +
+				", syncIntervalMs=" + syncIntervalMs +
+				'}';
+	}
+}
@@ -50,7 +50,13 @@ public class Util {
                     .setNewest(Ab.SeekNewest.getDefaultInstance())
                     .build();
             IIterator itr = reader.iterator(startPosition);
-            Map.Entry<QueryResult, Common.Status> entry = (Map.Entry<QueryResult, Common.Status>) itr.next().getObj();
+            Map.Entry<QueryResult, Common.Status> entry;
+            try {
+                entry = (Map.Entry<QueryResult, Common.Status>) itr.next().getObj();
+            } finally {
+                //迭代器持有区块文件通道, 用完关闭
+                itr.close();
+            }
             Common.Block block =  (Common.Block) entry.getKey().getObj();
             Common.Status status = entry.getValue();
             if(!status.equals(Common.Status.SUCCESS)){
@@ -98,9 +104,14 @@ public class Util {
                         .setNumber(index)
                         .build())
                 .build());
-        //判断是否需要阻塞进程
-        i.readyChain();
-        Map.Entry<QueryResult, Common.Status> entry = (Map.Entry<QueryResult, Common.Status>) i.next().getObj();
+        Map.Entry<QueryResult, Common.Status> entry;
+        try {
+            //判断是否需要阻塞进程
+            i.readyChain();
+            entry = (Map.Entry<QueryResult, Common.Status>) i.next().getObj();
+        } finally {
+            i.close();
+        }
         Common.Block block = (Common.Block) entry.getKey().getObj();
         Common.Status status = entry.getValue();
         if (!Common.Status.SUCCESS.equals(status)) {
@@ -18,12 +18,15 @@ package org.bcia.julongchain.common.ledger.blockledger.file;
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.IResultsIterator;
 import org.bcia.julongchain.common.ledger.blockledger.*;
+import org.bcia.julongchain.common.ledger.util.HeightNotifier;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
 import org.bcia.julongchain.protos.common.Common;
 import org.bcia.julongchain.protos.common.Ledger;
 import org.bcia.julongchain.protos.consenter.Ab;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 文件账本
  *
@@ -32,10 +35,13 @@ import org.bcia.julongchain.protos.consenter.Ab;
  * @company Dingxuan
  */
 public class FileLedger extends ReadWriteBase {
-    public static final Object LOCK = new Object();
 	private static JulongChainLog log = JulongChainLogFactory.getLog(FileLedger.class);
 
     private IFileLedgerBlockStore blockStore;
+    /**
+     * 本账本的高度通知, 写入区块只唤醒等待本账本的迭代器
+     */
+    private final HeightNotifier heightNotifier = new HeightNotifier();
 
     public FileLedger(){}
 
@@ -82,9 +88,20 @@ public class FileLedger extends ReadWriteBase {
     @Override
     public void append(Common.Block block) throws LedgerException{
         blockStore.addBlock(block);
-        synchronized (LOCK){
-            LOCK.notifyAll();
-        }
+        heightNotifier.update(block.getHeader().getNumber() + 1);
+    }
+
+    /**
+     * 等待账本高度达到height
+     */
+    public CompletableFuture<Long> awaitHeight(long height) throws LedgerException {
+        //账本可能在创建通知前已有区块, 登记前同步一次当前高度
+        heightNotifier.update(height());
+        return heightNotifier.awaitHeight(height);
+    }
+
+    public HeightNotifier getHeightNotifier() {
+        return heightNotifier;
     }
 
     public IFileLedgerBlockStore getBlockStore() {
@@ -25,6 +25,9 @@ import org.bcia.julongchain.protos.common.Common;
 
 import java.util.AbstractMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * 文件账本迭代器
@@ -38,6 +41,11 @@ public class FileLedgerIterator implements IIterator {
     private FileLedger ledger;
     private long blockNum;
     private IResultsIterator commonIterator;
+    private volatile boolean closed;
+    /**
+     * 正在等待的高度通知, 关闭时取消
+     */
+    private volatile CompletableFuture<Long> waiting;
 
     public FileLedgerIterator(){}
 
@@ -68,20 +76,36 @@ public class FileLedgerIterator implements IIterator {
 
     @Override
     public void readyChain() throws LedgerException{
-        synchronized (FileLedger.LOCK) {
-            if (blockNum > ledger.height() - 1) {
-                try {
-                    log.debug("Require block num is [{}], ledger height is[{}], wait block append", blockNum, ledger.height());
-                    FileLedger.LOCK.wait();
-                } catch (InterruptedException e) {
-                    throw new LedgerException(e);
+        if (blockNum > ledger.height() - 1 && !closed) {
+            log.debug("Require block num is [{}], ledger height is[{}], wait block append", blockNum, ledger.height());
+            CompletableFuture<Long> future = ledger.awaitHeight(blockNum + 1);
+            waiting = future;
+            try {
+                if (closed) {
+                    future.cancel(false);
+                } else {
+                    future.get();
                 }
+            } catch (CancellationException e) {
+                log.debug("Iterator closed while waiting for block " + blockNum);
+            } catch (InterruptedException e) {
+                future.cancel(false);
+                throw new LedgerException(e);
+            } catch (ExecutionException e) {
+                throw new LedgerException(e);
+            } finally {
+                waiting = null;
             }
         }
     }
 
     @Override
     public void close() throws LedgerException{
+        closed = true;
+        CompletableFuture<Long> future = waiting;
+        if (future != null) {
+            future.cancel(false);
+        }
         commonIterator.close();
     }
 
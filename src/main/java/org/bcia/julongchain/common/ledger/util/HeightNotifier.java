@@ -0,0 +1,109 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.common.ledger.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 账本高度通知, 每个账本一个实例
+ * 等待者按所需高度登记, 账本高度更新时只唤醒所需高度已到达的等待者,
+ * 其他账本的写入和未到达高度的等待者不受影响
+ *
+ * @author sunzongyu
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class HeightNotifier {
+    private final NavigableMap<Long, List<CompletableFuture<Long>>> waiters = new TreeMap<>();
+    private volatile long height;
+
+    public HeightNotifier() {
+    }
+
+    public HeightNotifier(long height) {
+        this.height = height;
+    }
+
+    /**
+     * 等待账本高度达到height
+     * 返回的future以当时的账本高度完成; 调用方取消future时撤销登记
+     */
+    public CompletableFuture<Long> awaitHeight(long height) {
+        CompletableFuture<Long> waiter = new CompletableFuture<>();
+        synchronized (this) {
+            if (this.height >= height) {
+                waiter.complete(this.height);
+                return waiter;
+            }
+            waiters.computeIfAbsent(height, k -> new ArrayList<>()).add(waiter);
+        }
+        waiter.whenComplete((h, e) -> {
+            if (e != null) {
+                remove(height, waiter);
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * 更新账本高度, 唤醒所需高度不大于新高度的等待者
+     */
+    public void update(long newHeight) {
+        List<CompletableFuture<Long>> ready = new ArrayList<>();
+        synchronized (this) {
+            if (newHeight <= height) {
+                return;
+            }
+            height = newHeight;
+            Map<Long, List<CompletableFuture<Long>>> reached = waiters.headMap(newHeight, true);
+            for (List<CompletableFuture<Long>> list : reached.values()) {
+                ready.addAll(list);
+            }
+            reached.clear();
+        }
+        //在锁外完成, 避免等待者的后续处理阻塞写入线程
+        for (CompletableFuture<Long> waiter : ready) {
+            waiter.complete(newHeight);
+        }
+    }
+
+    public long getHeight() {
+        return height;
+    }
+
+    /**
+     * 当前登记的等待者数量
+     */
+    public synchronized int getWaiterCount() {
+        int count = 0;
+        for (List<CompletableFuture<Long>> list : waiters.values()) {
+            count += list.size();
+        }
+        return count;
+    }
+
+    private synchronized void remove(long height, CompletableFuture<Long> waiter) {
+        List<CompletableFuture<Long>> list = waiters.get(height);
+        if (list != null && list.remove(waiter) && list.isEmpty()) {
+            waiters.remove(height);
+        }
+    }
+}
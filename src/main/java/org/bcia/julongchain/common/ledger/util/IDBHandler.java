@@ -19,9 +19,6 @@ import org.bcia.julongchain.common.exception.LevelDBException;
 import org.bcia.julongchain.common.ledger.util.leveldbhelper.UpdateBatch;
 import org.iq80.leveldb.DB;
 
-import java.util.Iterator;
-import java.util.Map;
-
 /**
  * 操作DB接口
  *
@@ -66,9 +63,19 @@ public interface IDBHandler {
     void writeBatch(UpdateBatch batch, boolean sync) throws LevelDBException;
 
     /**
-     * 遍历
+     * 遍历, 迭代器持有自己的快照, 使用结束后需要close
+     */
+    IDBIterator getIterator(byte[] startKey) throws LevelDBException;
+
+    /**
+     * 遍历[startKey, endKey)范围, 迭代器持有自己的快照, 使用结束后需要close
+     */
+    IDBIterator getIterator(byte[] startKey, byte[] endKey) throws LevelDBException;
+
+    /**
+     * 创建快照, 使用结束后需要close
      */
-    Iterator<Map.Entry<byte[], byte[]>> getIterator(byte[] startKey) throws LevelDBException;
+    IDBSnapshot getSnapshot() throws LevelDBException;
 
     /**
      * 获取dbname
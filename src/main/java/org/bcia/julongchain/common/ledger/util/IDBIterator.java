@@ -0,0 +1,37 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+		 http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.bcia.julongchain.common.ledger.util;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 数据库迭代器接口
+ * 迭代器持有其创建时的数据库快照, 直到close时释放
+ * 设置了结束key时, 迭代至结束key(不包含)为止
+ *
+ * @author sunzongyu
+ * @date 2018/10/12
+ * @company Dingxuan
+ */
+public interface IDBIterator extends Iterator<Map.Entry<byte[], byte[]>>, Closeable {
+	/**
+	 * 释放迭代器及其持有的快照, 可重复调用
+	 */
+	@Override
+	void close();
+}
@@ -18,9 +18,6 @@ package org.bcia.julongchain.common.ledger.util;
 import org.bcia.julongchain.common.exception.LevelDBException;
 import org.bcia.julongchain.common.ledger.util.leveldbhelper.UpdateBatch;
 
-import java.util.Iterator;
-import java.util.Map;
-
 /**
  * 操作数据库辅助类接口
  *
@@ -55,9 +52,24 @@ public interface IDBProvider {
 	void writeBatch(UpdateBatch batch, boolean sync) throws LevelDBException;
 
 	/**
-	 * 迭代
+	 * 从startKey迭代至末尾, 迭代器持有自己的快照, 使用结束后需要close
+	 */
+	IDBIterator getIterator(byte[] startKey) throws LevelDBException;
+
+	/**
+	 * 迭代[startKey, endKey)范围, endKey为null时迭代至末尾, 迭代器持有自己的快照, 使用结束后需要close
+	 */
+	IDBIterator getIterator(byte[] startKey, byte[] endKey) throws LevelDBException;
+
+	/**
+	 * 迭代以keyPrefix开头的全部key, 迭代器持有自己的快照, 使用结束后需要close
+	 */
+	IDBIterator getPrefixIterator(byte[] keyPrefix) throws LevelDBException;
+
+	/**
+	 * 创建快照, 使用结束后需要close
 	 */
-	Iterator<Map.Entry<byte[], byte[]>> getIterator(byte[] startKey) throws LevelDBException;
+	IDBSnapshot getSnapshot() throws LevelDBException;
 
 	/**
 	 * 获取DB路径
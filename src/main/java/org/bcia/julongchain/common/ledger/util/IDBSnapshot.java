@@ -0,0 +1,48 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+		 http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.bcia.julongchain.common.ledger.util;
+
+import org.bcia.julongchain.common.exception.LevelDBException;
+
+import java.io.Closeable;
+
+/**
+ * 数据库快照接口
+ * 同一快照上的读取与迭代看到同一时刻的数据
+ * 由快照创建的迭代器各自引用快照, 快照与其全部迭代器均关闭后释放
+ *
+ * @author sunzongyu
+ * @date 2018/10/12
+ * @company Dingxuan
+ */
+public interface IDBSnapshot extends Closeable {
+	/**
+	 * 根据key获取快照中的value
+	 */
+	byte[] get(byte[] key) throws LevelDBException;
+
+	/**
+	 * 遍历快照中[startKey, endKey)范围内的kv
+	 * startKey为null时从头遍历, endKey为null时遍历至末尾
+	 */
+	IDBIterator getIterator(byte[] startKey, byte[] endKey) throws LevelDBException;
+
+	/**
+	 * 释放快照, 可重复调用
+	 */
+	@Override
+	void close();
+}
@@ -148,8 +148,12 @@ public class Utils {
 
 	private static TxSimulationResults constructTxSimulationResults(INodeLedger l,String namespace, String txID, String key, String value) throws Exception{
 		ITxSimulator simulator = l.newTxSimulator(txID);
-		simulator.setState(namespace, key, value.getBytes(StandardCharsets.UTF_8));
-		return simulator.getTxSimulationResults();
+		try {
+			simulator.setState(namespace, key, value.getBytes(StandardCharsets.UTF_8));
+			return simulator.getTxSimulationResults();
+		} finally {
+			simulator.done();
+		}
 	}
 
 	private static Common.Block constructBlock(Common.Block preBlock, String groupID, Common.HeaderType type, ByteString... rwsets) throws Exception {
@@ -17,16 +17,16 @@ package org.bcia.julongchain.common.ledger.util.leveldbhelper;
 
 import org.bcia.julongchain.common.exception.LevelDBException;
 import org.bcia.julongchain.common.ledger.util.IDBHandler;
+import org.bcia.julongchain.common.ledger.util.IDBIterator;
+import org.bcia.julongchain.common.ledger.util.IDBSnapshot;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
 import org.bcia.julongchain.core.ledger.leveldb.LevelDB;
 import org.bcia.julongchain.core.ledger.leveldb.LevelDBUtil;
 import org.iq80.leveldb.DB;
-import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.WriteOptions;
 
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.Map;
 
 /**
  * 提供操作leveldb的方法
@@ -41,6 +41,10 @@ public class LevelDBHandler implements IDBHandler {
     private String dbName = null;
     private DB db = null;
     private boolean opened = false;
+    /**
+     * 批量写入时单个WriteBatch的最大字节数, <=0时不拆分
+     */
+    private long maxBatchBytes = 0;
 
     public LevelDBHandler() {
     }
@@ -140,19 +144,40 @@ public class LevelDBHandler implements IDBHandler {
             throw new LevelDBException("No db created");
         }
         LevelDB db = LevelDBUtil.getDB(dbName);
-        LevelDBUtil.add(db, batch.getKvs(), sync);
+        LevelDBUtil.write(db, batch.getKvs(), new WriteOptions().sync(sync), maxBatchBytes);
+    }
+
+    public long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public void setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * 从给出的开始Key遍历
+     */
+    @Override
+    public IDBIterator getIterator(byte[] startKey) throws LevelDBException {
+        return getIterator(startKey, null);
     }
 
     /**
      * 根据给出的开始、结束Key遍历
      */
     @Override
-    public Iterator<Map.Entry<byte[], byte[]>> getIterator(byte[] startKey) throws LevelDBException {
+    public IDBIterator getIterator(byte[] startKey, byte[] endKey) throws LevelDBException {
         LevelDB db = LevelDBUtil.getDB(dbName);
-        DBIterator dbItr = LevelDBUtil.getIterator(db);
-        if(startKey != null){
-            dbItr.seek(startKey);
-        }
-        return dbItr;
+        return LevelDBUtil.getIterator(db, startKey, endKey);
+    }
+
+    /**
+     * 创建快照
+     */
+    @Override
+    public IDBSnapshot getSnapshot() throws LevelDBException {
+        LevelDB db = LevelDBUtil.getDB(dbName);
+        return LevelDBUtil.getSnapshot(db);
     }
 }
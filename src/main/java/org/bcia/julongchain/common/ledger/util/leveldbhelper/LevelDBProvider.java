@@ -15,16 +15,17 @@
  */
 package org.bcia.julongchain.common.ledger.util.leveldbhelper;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.bcia.julongchain.common.exception.LevelDBException;
 import org.bcia.julongchain.common.ledger.util.IDBHandler;
+import org.bcia.julongchain.common.ledger.util.IDBIterator;
 import org.bcia.julongchain.common.ledger.util.IDBProvider;
+import org.bcia.julongchain.common.ledger.util.IDBSnapshot;
 
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
  * 提供操作leveldb的方法
+ * 设置ledgerID后, 所有key添加ledgerID前缀, 迭代范围限定在本账本的key内
  *
  * @author sunzongyu
  * @date 2018/04/03
@@ -32,10 +33,12 @@ import java.util.*;
  */
 public class LevelDBProvider implements IDBProvider {
 	private IDBHandler db;
-	private static byte[] DB_NAME_KEY_SEP = new String(new char[]{Character.MIN_VALUE}).getBytes(StandardCharsets.UTF_8);
-	private static byte[] DB_LEDGERID_KEY_SEP = new String(new char[]{Character.MIN_VALUE}).getBytes(StandardCharsets.UTF_8);
 	private String dbPath;
 	private String ledgerID = null;
+	/**
+	 * ledgerID对应的key编解码, ledgerID为null时为null
+	 */
+	private LevelKeyCodec keyCodec = null;
 	static Map<String, IDBProvider> dbs = new HashMap<>();
 
 	public LevelDBProvider(String dbPath) throws LevelDBException {
@@ -79,52 +82,89 @@ public class LevelDBProvider implements IDBProvider {
 
 	@Override
 	public byte[] get(byte[] key) throws LevelDBException {
-		return db.get(constructLevelKey(ledgerID, key));
+		return db.get(encodeKey(keyCodec, key));
 	}
 
 	@Override
 	public void put(byte[] key, byte[] value, boolean sync) throws LevelDBException {
-		db.put(constructLevelKey(ledgerID, key), value, sync);
+		db.put(encodeKey(keyCodec, key), value, sync);
 	}
 
 	@Override
 	public void delete(byte[] key, boolean sync) throws LevelDBException {
-		db.delete(constructLevelKey(ledgerID, key), sync);
+		db.delete(encodeKey(keyCodec, key), sync);
 	}
 
 	@Override
 	public void writeBatch(UpdateBatch batch, boolean sync) throws LevelDBException {
 		UpdateBatch b = new UpdateBatch();
-		b.addAll(batch, ledgerID);
+		b.addAll(batch, keyCodec);
 		db.writeBatch(b, sync);
 	}
 
+	/**
+	 * 从startKey遍历至本账本的最后一个key
+	 */
 	@Override
-	public Iterator<Map.Entry<byte[], byte[]>> getIterator(byte[] startKey) throws LevelDBException {
-		return db.getIterator(constructLevelKey(ledgerID, startKey));
+	public IDBIterator getIterator(byte[] startKey) throws LevelDBException {
+		return getIterator(startKey, null);
 	}
 
+	/**
+	 * 遍历[startKey, endKey), endKey为null时遍历至本账本的最后一个key
+	 */
+	@Override
+	public IDBIterator getIterator(byte[] startKey, byte[] endKey) throws LevelDBException {
+		return db.getIterator(encodeKey(keyCodec, startKey), encodeEndKey(keyCodec, endKey));
+	}
+
+	/**
+	 * 遍历本账本中以keyPrefix开头的全部key
+	 */
+	@Override
+	public IDBIterator getPrefixIterator(byte[] keyPrefix) throws LevelDBException {
+		byte[] levelPrefix = keyCodec == null ? keyPrefix : keyCodec.encode(keyPrefix);
+		return db.getIterator(levelPrefix, levelPrefix == null ? null : LevelKeyCodec.prefixEnd(levelPrefix));
+	}
+
+	/**
+	 * 创建快照, 快照上的读取与迭代同样使用带ledgerID前缀的key
+	 */
+	@Override
+	public IDBSnapshot getSnapshot() throws LevelDBException {
+		return new LedgerSnapshot(db.getSnapshot(), keyCodec);
+	}
+
+	/**
+	 * 兼容方法, 每次调用都会重新编码ledgerID, 已知ledgerID时应使用LevelKeyCodec
+	 */
 	public static byte[] constructLevelKey(String ledgerID, byte[] key) {
 		if (ledgerID == null) {
 			return key;
 		}
-		byte[] arr = ArrayUtils.addAll(ledgerID.getBytes(StandardCharsets.UTF_8), DB_LEDGERID_KEY_SEP);
-		arr = ArrayUtils.addAll(arr, key);
-		return arr;
+		return new LevelKeyCodec(ledgerID).encode(key);
 	}
 
+	/**
+	 * 去除levelKey的ledgerID前缀
+	 * 不属于本账本的key, 返回最后一个分隔符之后的部分
+	 */
 	public byte[] retrieveAppKey(byte[] levelKey) {
 		if (levelKey == null) {
 			return null;
 		}
-		String str = new String(levelKey, StandardCharsets.UTF_8);
-		String follow = null;
-		int start = 0;
-		while(str.indexOf(new String(DB_NAME_KEY_SEP, StandardCharsets.UTF_8), start) != -1){
-			start++;
+		if (keyCodec != null && keyCodec.hasPrefix(levelKey)) {
+			return keyCodec.decode(levelKey);
 		}
-		follow = str.substring(start, str.length());
-		return follow.getBytes(StandardCharsets.UTF_8);
+		int start = levelKey.length;
+		while (start > 0 && levelKey[start - 1] != 0x00) {
+			start--;
+		}
+		return Arrays.copyOfRange(levelKey, start, levelKey.length);
+	}
+
+	public LevelKeyCodec getKeyCodec() {
+		return keyCodec;
 	}
 
 	@Override
@@ -135,5 +175,45 @@ public class LevelDBProvider implements IDBProvider {
 	@Override
 	public void setLedgerID(String ledgerID) {
 		this.ledgerID = ledgerID;
+		this.keyCodec = ledgerID == null ? null : new LevelKeyCodec(ledgerID);
+	}
+
+	private static byte[] encodeKey(LevelKeyCodec keyCodec, byte[] key) {
+		return keyCodec == null ? key : keyCodec.encode(key);
+	}
+
+	private static byte[] encodeEndKey(LevelKeyCodec keyCodec, byte[] endKey) {
+		if (keyCodec == null) {
+			return endKey;
+		}
+		return endKey == null ? keyCodec.getPrefixEnd() : keyCodec.encode(endKey);
+	}
+
+	/**
+	 * 为快照上的key添加ledgerID前缀
+	 */
+	private static class LedgerSnapshot implements IDBSnapshot {
+		private final IDBSnapshot snapshot;
+		private final LevelKeyCodec keyCodec;
+
+		private LedgerSnapshot(IDBSnapshot snapshot, LevelKeyCodec keyCodec) {
+			this.snapshot = snapshot;
+			this.keyCodec = keyCodec;
+		}
+
+		@Override
+		public byte[] get(byte[] key) throws LevelDBException {
+			return snapshot.get(encodeKey(keyCodec, key));
+		}
+
+		@Override
+		public IDBIterator getIterator(byte[] startKey, byte[] endKey) throws LevelDBException {
+			return snapshot.getIterator(encodeKey(keyCodec, startKey), encodeEndKey(keyCodec, endKey));
+		}
+
+		@Override
+		public void close() {
+			snapshot.close();
+		}
 	}
-}
\ No newline at end of file
+}
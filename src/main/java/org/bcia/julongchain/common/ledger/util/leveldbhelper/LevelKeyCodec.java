@@ -0,0 +1,129 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.common.ledger.util.leveldbhelper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 多账本共用leveldb时的key编解码
+ * levelKey = ledgerID(UTF-8) + 0x00 + appKey
+ * 前缀在创建时编码一次, 编码只分配一次目标数组, 解码可直接返回levelKey上的视图
+ *
+ * @author sunzongyu
+ * @date 2018/10/13
+ * @company Dingxuan
+ */
+public class LevelKeyCodec {
+	private static final byte LEDGERID_KEY_SEP = 0x00;
+
+	private final String ledgerID;
+	private final byte[] prefix;
+	private final byte[] prefixEnd;
+
+	public LevelKeyCodec(String ledgerID) {
+		this.ledgerID = ledgerID;
+		byte[] ledgerIDBytes = ledgerID.getBytes(StandardCharsets.UTF_8);
+		this.prefix = Arrays.copyOf(ledgerIDBytes, ledgerIDBytes.length + 1);
+		this.prefix[ledgerIDBytes.length] = LEDGERID_KEY_SEP;
+		this.prefixEnd = prefixEnd(prefix);
+	}
+
+	/**
+	 * appKey添加账本前缀, key为null时返回前缀
+	 */
+	public byte[] encode(byte[] key) {
+		if (key == null) {
+			return prefix.clone();
+		}
+		byte[] levelKey = new byte[prefix.length + key.length];
+		System.arraycopy(prefix, 0, levelKey, 0, prefix.length);
+		System.arraycopy(key, 0, levelKey, prefix.length, key.length);
+		return levelKey;
+	}
+
+	/**
+	 * 判断levelKey是否属于本账本
+	 */
+	public boolean hasPrefix(byte[] levelKey) {
+		if (levelKey == null || levelKey.length < prefix.length) {
+			return false;
+		}
+		for (int i = prefix.length - 1; i >= 0; i--) {
+			if (levelKey[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 去除账本前缀, 返回appKey的拷贝
+	 * levelKey不属于本账本时返回null
+	 */
+	public byte[] decode(byte[] levelKey) {
+		if (!hasPrefix(levelKey)) {
+			return null;
+		}
+		return Arrays.copyOfRange(levelKey, prefix.length, levelKey.length);
+	}
+
+	/**
+	 * 去除账本前缀, 返回levelKey上appKey部分的只读视图, 不拷贝数据
+	 * levelKey不属于本账本时返回null
+	 */
+	public ByteBuffer decodeView(byte[] levelKey) {
+		if (!hasPrefix(levelKey)) {
+			return null;
+		}
+		return ByteBuffer.wrap(levelKey, prefix.length, levelKey.length - prefix.length).slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * 本账本全部key的结束位置(不包含)
+	 */
+	public byte[] getPrefixEnd() {
+		return prefixEnd.clone();
+	}
+
+	public byte[] getPrefix() {
+		return prefix.clone();
+	}
+
+	public int getPrefixLength() {
+		return prefix.length;
+	}
+
+	public String getLedgerID() {
+		return ledgerID;
+	}
+
+	/**
+	 * 以prefix开头的全部key的结束位置(不包含)
+	 * 即大于所有以prefix开头的key的最小key, prefix全为0xff时返回null(遍历至末尾)
+	 */
+	public static byte[] prefixEnd(byte[] prefix) {
+		for (int i = prefix.length - 1; i >= 0; i--) {
+			if (prefix[i] != (byte) 0xff) {
+				byte[] end = Arrays.copyOf(prefix, i + 1);
+				end[i]++;
+				return end;
+			}
+		}
+		return null;
+	}
+}
@@ -15,11 +15,9 @@
  */
 package org.bcia.julongchain.common.ledger.util.leveldbhelper;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
 
-import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -57,13 +55,18 @@ public class UpdateBatch  {
 	 * 批量添加K-V
 	 */
 	public void addAll(UpdateBatch updateBatch, String ledgerID){
-		if(ledgerID == null){
+		addAll(updateBatch, ledgerID == null ? null : new LevelKeyCodec(ledgerID));
+	}
+
+	/**
+	 * 批量添加K-V, key使用keyCodec添加账本前缀
+	 */
+	public void addAll(UpdateBatch updateBatch, LevelKeyCodec keyCodec){
+		if(keyCodec == null){
 			kvs = updateBatch.getKvs();
 		} else {
-			byte[] b = ArrayUtils.addAll(ledgerID.getBytes(StandardCharsets.UTF_8), new byte[]{0x00});
-			updateBatch.getKvs().forEach((k, v) -> kvs.put(LevelDBProvider.constructLevelKey(ledgerID, k), v));
+			updateBatch.getKvs().forEach((k, v) -> kvs.put(keyCodec.encode(k), v));
 		}
-
 	}
 
 	public Map<byte[], byte[]> getKvs() {
@@ -67,6 +67,9 @@ public class BlockCutter implements IReceiver {
                 batchesMes.setMessageBatches((Common.Envelope[][]) ArrayUtils.add(batchesMes.getMessageBatches(), messageBatch));
             }
             batchesMes.setMessageBatches((Common.Envelope[][]) ArrayUtils.add(batchesMes.getMessageBatches(), new Common.Envelope[]{msg}));
+            //超大消息单独成块, 不再放入等待批次
+            batchesMes.setPending(false);
+            return batchesMes;
         }
 
         boolean messageWillOverflowBatchSizeBytes = pendingBatchSizeBytes + messageSizeBytes > sharedConfigManager.getBatchSize().getPreferredMaxBytes();
@@ -88,7 +91,7 @@ public class BlockCutter implements IReceiver {
             Common.Envelope[] messageBatch = cut();
             Common.Envelope[][] messageBatches = ArrayUtils.add(batchesMes.getMessageBatches(), messageBatch);
             batchesMes.setMessageBatches(messageBatches);
-            batchesMes.setPending(true);
+            batchesMes.setPending(false);
         }
         return batchesMes;
     }
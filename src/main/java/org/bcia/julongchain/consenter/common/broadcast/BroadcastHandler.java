@@ -17,6 +17,7 @@ package org.bcia.julongchain.consenter.common.broadcast;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import io.grpc.Grpc;
+import io.grpc.ServerCall;
 import io.grpc.stub.StreamObserver;
 import org.bcia.julongchain.common.exception.ConsenterException;
 import org.bcia.julongchain.common.exception.ValidateException;
@@ -28,17 +29,27 @@ import org.bcia.julongchain.consenter.common.server.IBroadcastHandler;
 import org.bcia.julongchain.consenter.consensus.singleton.Singleton;
 import org.bcia.julongchain.consenter.entity.ConfigMessage;
 import org.bcia.julongchain.consenter.entity.ConfigMsg;
+import org.bcia.julongchain.consenter.entity.Message;
 import org.bcia.julongchain.consenter.entity.NormalMessage;
 import org.bcia.julongchain.consenter.util.ConsenterConstants;
 import org.bcia.julongchain.protos.common.Common;
 import org.bcia.julongchain.protos.consenter.Ab;
 import org.bcia.julongchain.tools.configtxgen.entity.GenesisConfigFactory;
 
+import java.net.SocketAddress;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
  * broadcast服务对消息的排队
+ * 消息的群组查找、过滤规则校验等在过滤线程池中并行执行, 不再持有全局锁;
+ * 同一个流的消息按接收顺序放入链的队列并按顺序响应, 不同流之间互不等待
  *
  * @author zhangmingyang
  * @Date: 2018/3/8
@@ -46,84 +57,264 @@ import java.util.Map;
  */
 public class BroadcastHandler implements IBroadcastHandler {
     private static JulongChainLog log = JulongChainLogFactory.getLog(BroadcastHandler.class);
+
+    /**
+     * 已接收但尚未响应的消息数上限, 达到上限时阻塞gRPC线程, 由流控反压客户端
+     */
+    public static final int DEFAULT_MAX_PENDING = 10000;
+
+    private static final ExecutorService FILTER_EXECUTOR = newFilterExecutor(
+            Math.max(2, Runtime.getRuntime().availableProcessors()));
+
     private IGroupSupportRegistrar sm;
+    private final ExecutorService filterExecutor;
+    private final Semaphore pendingPermits;
+
+    /**
+     * 各个流待响应的消息, 流空闲后移除
+     */
+    private final Map<StreamObserver<Ab.BroadcastResponse>, BroadcastStream> streams = new ConcurrentHashMap<>();
 
     public BroadcastHandler(IGroupSupportRegistrar sm) {
+        this(sm, FILTER_EXECUTOR, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param sm             群组注册
+     * @param filterExecutor 执行消息校验的线程池
+     * @param maxPending     已接收但尚未响应的消息数上限
+     */
+    public BroadcastHandler(IGroupSupportRegistrar sm, ExecutorService filterExecutor, int maxPending) {
         this.sm = sm;
+        this.filterExecutor = filterExecutor;
+        this.pendingPermits = new Semaphore(maxPending);
+    }
+
+    /**
+     * 创建过滤线程池, 线程为守护线程
+     *
+     * @param threads 线程数
+     * @return
+     */
+    public static ExecutorService newFilterExecutor(int threads) {
+        AtomicInteger index = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "broadcast-filter-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
     public void handle(Common.Envelope envelope, StreamObserver<Ab.BroadcastResponse> responseObserver) throws ConsenterException {
-        synchronized (BroadcastHandler.class) {
-            if (ConsenterConstants.SINGLETON.equals(GenesisConfigFactory.getGenesisConfig().getConsenter().getConsenterType())) {
-                Common.GroupHeader groupHeader = null;
-                ChainSupport chainSupport = null;
-                boolean isConfig = false;
-                String remoteAddr = ConsenterServer.serverCallCapture.get().getAttributes()
-                        .get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR).toString();
-                if(envelope.toByteArray().length==0){
-                    throw new ConsenterException("Envelop Message length is:"+envelope.toByteArray().length);
-                }
+        if (!ConsenterConstants.SINGLETON.equals(GenesisConfigFactory.getGenesisConfig().getConsenter().getConsenterType())) {
+            return;
+        }
+        //调用方地址只能在gRPC线程中获取
+        String remoteAddr = remoteAddr();
+        if (envelope.getSerializedSize() == 0) {
+            throw new ConsenterException("Envelop Message length is:" + envelope.getSerializedSize());
+        }
+        try {
+            pendingPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConsenterException(e);
+        }
+        CompletableFuture<Processed> processed;
+        try {
+            processed = CompletableFuture.supplyAsync(() -> process(envelope, remoteAddr), filterExecutor);
+        } catch (RuntimeException e) {
+            pendingPermits.release();
+            throw new ConsenterException(e);
+        }
+        enqueue(responseObserver, processed, true);
+    }
+
+    @Override
+    public void complete(StreamObserver<Ab.BroadcastResponse> responseObserver) {
+        //已接收的消息全部响应后再结束流
+        enqueue(responseObserver, CompletableFuture.completedFuture(Processed.COMPLETE), false);
+    }
+
+    private void enqueue(StreamObserver<Ab.BroadcastResponse> responseObserver, CompletableFuture<Processed> processed,
+                         boolean holdsPermit) {
+        while (!streams.computeIfAbsent(responseObserver, BroadcastStream::new).enqueue(processed, holdsPermit)) {
+            //流恰好空闲被移除, 重新创建
+        }
+    }
+
+    /**
+     * 校验消息, 在过滤线程池中执行, 不抛出异常
+     */
+    private Processed process(Common.Envelope envelope, String remoteAddr) {
+        Common.GroupHeader groupHeader;
+        ChainSupport chainSupport;
+        boolean isConfig;
+        try {
+            Map<String, Object> map = sm.broadcastGroupSupport(envelope);
+            groupHeader = (Common.GroupHeader) map.get(ConsenterConstants.GROUPHEADER);
+            isConfig = (boolean) map.get(ConsenterConstants.ISCONFIG);
+            chainSupport = (ChainSupport) map.get(ConsenterConstants.CHAINSUPPORT);
+        } catch (InvalidProtocolBufferException e) {
+            log.warn(String.format("Rejecting broadcast of message from %s because of error: %s", remoteAddr, e.getMessage()));
+            return Processed.reject(Common.Status.INTERNAL_SERVER_ERROR, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error(String.format("Rejecting broadcast of message from %s because of error: %s", remoteAddr, e.getMessage()), e);
+            return Processed.reject(Common.Status.INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+        String groupId = groupHeader.getGroupId();
+        try {
+            chainSupport.getChain().waitReady();
+        } catch (ConsenterException e) {
+            log.warn(String.format("[group: %s] Rejecting broadcast of message from %s with SERVICE_UNAVAILABLE: rejected by Consenter: %s", groupId, remoteAddr, e.getMessage()));
+            return Processed.reject(Common.Status.SERVICE_UNAVAILABLE, e.getMessage());
+        }
+        try {
+            if (!isConfig) {
+                //普通消息
+                log.debug(String.format("[group: %s] Broadcast is processing normal message from %s with txid '%s' of type %s", groupId, remoteAddr, groupHeader.getTxId(), groupHeader.getType()));
+                long configSeq = chainSupport.getProcessor().processNormalMsg(envelope);
+                return new Processed(chainSupport, new NormalMessage(configSeq, envelope), groupId, remoteAddr, true);
+            } else {
+                //配置消息
+                log.info(String.format("[group: %s] Broadcast is processing config update message from %s", groupId, remoteAddr));
+                ConfigMsg configMsg = chainSupport.getProcessor().processConfigUpdateMsg(envelope);
+                return new Processed(chainSupport, new ConfigMessage(configMsg.getConfigSeq(), configMsg.getConfig()),
+                        groupId, remoteAddr, false);
+            }
+        } catch (InvalidProtocolBufferException | ConsenterException e) {
+            log.warn(String.format("[group: %s] Rejecting broadcast of %s message from %s because of error: %s", groupId, isConfig ? "config" : "normal", remoteAddr, e.getMessage()));
+            return Processed.reject(Common.Status.BAD_REQUEST, e.getMessage());
+        } catch (RuntimeException e) {
+            log.error(String.format("[group: %s] Rejecting broadcast of message from %s because of error: %s", groupId, remoteAddr, e.getMessage()), e);
+            return Processed.reject(Common.Status.INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+    }
+
+    private static String remoteAddr() {
+        ServerCall<?, ?> serverCall = ConsenterServer.serverCallCapture.get();
+        if (serverCall == null) {
+            return null;
+        }
+        SocketAddress address = serverCall.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+        return address == null ? null : address.toString();
+    }
+
+    /**
+     * 一个broadcast流, 按接收顺序将校验后的消息放入链的队列并响应
+     */
+    private class BroadcastStream {
+        private final StreamObserver<Ab.BroadcastResponse> responseObserver;
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        private int pending;
+        private boolean removed;
+        private volatile boolean completed;
+
+        BroadcastStream(StreamObserver<Ab.BroadcastResponse> responseObserver) {
+            this.responseObserver = responseObserver;
+        }
+
+        synchronized boolean enqueue(CompletableFuture<Processed> processed, boolean holdsPermit) {
+            if (removed) {
+                return false;
+            }
+            pending++;
+            //processed不会异常结束, 前一个消息处理完且本消息校验完后执行
+            tail = tail.thenCombine(processed, (previous, result) -> {
                 try {
-                    Map<String, Object> map = sm.broadcastGroupSupport(envelope);
-                    groupHeader = (Common.GroupHeader) map.get(ConsenterConstants.GROUPHEADER);
-                    isConfig = (boolean) map.get(ConsenterConstants.ISCONFIG);
-                    chainSupport = (ChainSupport) map.get(ConsenterConstants.CHAINSUPPORT);
-                } catch (InvalidProtocolBufferException e) {
-                    responseObserver.onNext(Ab.BroadcastResponse.newBuilder().setStatus(Common.Status.INTERNAL_SERVER_ERROR).build());
-                    responseObserver.onCompleted();
+                    deliver(result);
+                } finally {
+                    if (holdsPermit) {
+                        pendingPermits.release();
+                    }
+                    done();
                 }
+                return null;
+            });
+            return true;
+        }
+
+        private synchronized void done() {
+            if (--pending == 0) {
+                removed = true;
+                streams.remove(responseObserver, this);
+            }
+        }
+
+        private void deliver(Processed result) {
+            if (result.message != null) {
                 try {
-                    chainSupport.getChain().waitReady();
-                } catch (ConsenterException e) {
-                    log.warn(String.format("[group: %s] Rejecting broadcast of message from %s with SERVICE_UNAVAILABLE: rejected by Consenter: %s", groupHeader.getGroupId(), remoteAddr, e.getMessage()));
-                    responseObserver.onNext(Ab.BroadcastResponse.newBuilder().setStatus(Common.Status.SERVICE_UNAVAILABLE).build());
-                    responseObserver.onCompleted();
-                }
-                if (!isConfig) {
-                    //普通消息
-                    log.debug(String.format("[group: %s] Broadcast is processing normal message from %s with txid '%s' of type %s", groupHeader.getGroupId(), remoteAddr, groupHeader.getTxId(), groupHeader.getType()));
-                    long configSeq = 0;
-                    try {
-                        configSeq = chainSupport.getProcessor().processNormalMsg(envelope);
-                    } catch (InvalidProtocolBufferException e) {
-                        log.warn(String.format("[channel: %s] Rejecting broadcast of normal message from %s because of error: %s", groupHeader.getGroupId(), remoteAddr, e.getMessage()));
-                        responseObserver.onNext(Ab.BroadcastResponse.newBuilder().setInfo(e.getMessage()).build());
-                        responseObserver.onCompleted();
+                    Singleton chain = Singleton.getInstance(result.chainSupport);
+                    if (chain == null || !chain.pushToQueue(result.message)) {
+                        log.warn(String.format("[group: %s] Rejecting broadcast of message from %s with SERVICE_UNAVAILABLE: chain queue is not available", result.groupId, result.remoteAddr));
+                        respond(Common.Status.SERVICE_UNAVAILABLE, null, true);
+                        return;
                     }
-                    Singleton singleton = null;
-                    singleton = Singleton.getInstance(chainSupport);
-                    NormalMessage normalMessage = new NormalMessage(configSeq, envelope);
-
-                    try {
-                        singleton.pushToQueue(normalMessage);
-                    } catch (ValidateException e) {
-                        responseObserver.onNext(Ab.BroadcastResponse.newBuilder().setStatus(Common.Status.SERVICE_UNAVAILABLE).build());
-                        responseObserver.onCompleted();
+                } catch (ValidateException | RuntimeException e) {
+                    log.warn(String.format("[group: %s] Rejecting broadcast of message from %s with SERVICE_UNAVAILABLE: %s", result.groupId, result.remoteAddr, e.getMessage()));
+                    respond(Common.Status.SERVICE_UNAVAILABLE, e.getMessage(), true);
+                    return;
+                }
+            }
+            respond(result.status, result.info, result.complete);
+        }
+
+        private void respond(Common.Status status, String info, boolean complete) {
+            if (completed) {
+                return;
+            }
+            try {
+                if (status != null) {
+                    Ab.BroadcastResponse.Builder response = Ab.BroadcastResponse.newBuilder().setStatus(status);
+                    if (info != null) {
+                        response.setInfo(info);
                     }
-                    responseObserver.onNext(Ab.BroadcastResponse.newBuilder().setStatus(Common.Status.SUCCESS).build());
+                    responseObserver.onNext(response.build());
+                }
+                if (complete) {
+                    completed = true;
                     responseObserver.onCompleted();
-                } else {
-                    //配置消息
-                    ConfigMsg configMsg = null;
-                    try {
-                        log.info(String.format("[group: %s] Broadcast is processing config update message from %s", groupHeader.getGroupId(), remoteAddr));
-                        configMsg = chainSupport.getProcessor().processConfigUpdateMsg(envelope);
-                    } catch (ConsenterException e) {
-                        log.warn(String.format("[group: %s] Rejecting broadcast of config message from %s because of error: %s", groupHeader.getGroupId(), remoteAddr, e.getMessage()));
-                    }
-                    Singleton singleton = null;
-                    singleton = Singleton.getInstance(chainSupport);
-                    ConfigMessage configMessage = new ConfigMessage(configMsg.getConfigSeq(), configMsg.getConfig());
-                    try {
-                        singleton.pushToQueue(configMessage);
-
-                    } catch (ValidateException e) {
-                        throw new ConsenterException(e.getMessage());
-                    }
-                    responseObserver.onNext(Ab.BroadcastResponse.newBuilder().setStatus(Common.Status.SUCCESS).build());
                 }
+            } catch (RuntimeException e) {
+                //客户端已断开
+                completed = true;
+                log.warn("Send broadcast response failed: " + e.getMessage());
             }
         }
     }
+
+    /**
+     * 校验结果, 校验通过时包含待放入队列的消息
+     */
+    private static class Processed {
+        private static final Processed COMPLETE = new Processed(null, null, null, null, null, null, true);
+
+        private final ChainSupport chainSupport;
+        private final Message message;
+        private final String groupId;
+        private final String remoteAddr;
+        private final Common.Status status;
+        private final String info;
+        private final boolean complete;
+
+        Processed(ChainSupport chainSupport, Message message, String groupId, String remoteAddr, boolean complete) {
+            this(chainSupport, message, groupId, remoteAddr, Common.Status.SUCCESS, null, complete);
+        }
+
+        private Processed(ChainSupport chainSupport, Message message, String groupId, String remoteAddr,
+                          Common.Status status, String info, boolean complete) {
+            this.chainSupport = chainSupport;
+            this.message = message;
+            this.groupId = groupId;
+            this.remoteAddr = remoteAddr;
+            this.status = status;
+            this.info = info;
+            this.complete = complete;
+        }
+
+        static Processed reject(Common.Status status, String info) {
+            return new Processed(null, null, null, null, status, info, true);
+        }
+    }
 }
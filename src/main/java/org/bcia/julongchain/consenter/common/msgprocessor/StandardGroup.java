@@ -84,8 +84,11 @@ public class StandardGroup implements IProcessor {
     }
 
     @Override
-    public long processNormalMsg(Common.Envelope env) {
+    public long processNormalMsg(Common.Envelope env) throws InvalidProtocolBufferException, ConsenterException {
         long configSeq = standardGroupSupport.getSequence();
+        if (filters != null) {
+            filters.apply(env);
+        }
         return configSeq;
     }
 
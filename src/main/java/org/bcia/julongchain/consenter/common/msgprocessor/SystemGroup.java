@@ -83,7 +83,7 @@ public class SystemGroup  implements IProcessor {
     }
 
     @Override
-    public long processNormalMsg(Common.Envelope env) throws InvalidProtocolBufferException {
+    public long processNormalMsg(Common.Envelope env) throws InvalidProtocolBufferException, ConsenterException {
         String groupId = CommonUtils.groupId(env);
         if (groupId != standardGroup.getSupport().getGroupId()) {
             return 0;
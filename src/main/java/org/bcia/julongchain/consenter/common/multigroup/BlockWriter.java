@@ -24,14 +24,25 @@ import org.bcia.julongchain.common.exception.ValidateException;
 import org.bcia.julongchain.common.groupconfig.IGroupConfigBundle;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.consenter.consensus.IChain;
 import org.bcia.julongchain.consenter.util.BlockHelper;
 import org.bcia.julongchain.consenter.util.CommonUtils;
 import org.bcia.julongchain.consenter.util.Utils;
 import org.bcia.julongchain.protos.common.Common;
 import org.bcia.julongchain.protos.common.Configtx;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
- * 区块写入对象
+ * 区块写入对象, 每个群组一个
+ * writeBlock只记录区块头, 签名和写入账本在后台按区块号顺序执行, 链线程可同时组装下一个区块;
+ * 未写入账本的区块数达到maxPendingBlocks时writeBlock阻塞; 写入账本失败时停止群组的链
  *
  * @author zhangmingyang
  * @Date: 2018/3/16
@@ -40,6 +51,23 @@ import org.bcia.julongchain.protos.common.Configtx;
 public class BlockWriter {
     private static JulongChainLog log = JulongChainLogFactory.getLog(BlockWriter.class);
 
+    /**
+     * 默认最多未写入账本的区块数
+     */
+    public static final int DEFAULT_MAX_PENDING_BLOCKS = 4;
+
+    private static final ExecutorService COMMIT_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+                private final AtomicInteger index = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "block-writer-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     private ChainSupport support;
 
     private Registrar registrar;
@@ -50,38 +78,63 @@ public class BlockWriter {
 
     private  Common.Block lastBlock;
 
+    private final Executor commitExecutor;
+
+    private final Semaphore pendingBlocks;
+
+    /**
+     * 最后一个区块的签名和写入任务, 后续区块在其完成后执行
+     */
+    private CompletableFuture<Void> committing = CompletableFuture.completedFuture(null);
+
+    /**
+     * 区块写入账本失败的原因, 设置后链停止, 不再写入区块
+     */
+    private volatile ConsenterException failure;
+
     public BlockWriter(ChainSupport support, Registrar registrar, Common.Block lastBlock) {
-        synchronized (BlockWriter.class) {
-            this.support = support;
-            this.registrar = registrar;
-            this.lastBlock = lastBlock;
-            this.lastConfigSeq = support.getSequence();
-        }
+        this(support, registrar, lastBlock, COMMIT_EXECUTOR, DEFAULT_MAX_PENDING_BLOCKS);
     }
 
+    /**
+     * @param support          群组
+     * @param registrar        注册
+     * @param lastBlock        账本中最后一个区块
+     * @param commitExecutor   签名和写入账本的线程池
+     * @param maxPendingBlocks 最多未写入账本的区块数, 不大于0时在调用线程中同步写入
+     */
+    public BlockWriter(ChainSupport support, Registrar registrar, Common.Block lastBlock, Executor commitExecutor,
+                       int maxPendingBlocks) {
+        this.support = support;
+        this.registrar = registrar;
+        this.lastBlock = lastBlock;
+        this.lastConfigSeq = support.getSequence();
+        this.commitExecutor = commitExecutor;
+        this.pendingBlocks = maxPendingBlocks > 0 ? new Semaphore(maxPendingBlocks) : null;
+    }
 
-    public Common.Block createNextBlock(Common.Envelope[] messages) {
-        synchronized (BlockWriter.class) {
 
-            byte[] previousBlockHash = BlockHelper.hash(lastBlock.getHeader().toByteArray());
-            Common.BlockData.Builder data = Common.BlockData.newBuilder();
+    public synchronized Common.Block createNextBlock(Common.Envelope[] messages) {
+        byte[] previousBlockHash = BlockHelper.hash(lastBlock.getHeader().toByteArray());
+        Common.BlockData.Builder data = Common.BlockData.newBuilder();
 
-            for (int i = 0; i < messages.length; i++) {
-                data.addData(ByteString.copyFrom(messages[i].toByteArray()));
-            }
+        for (int i = 0; i < messages.length; i++) {
+            data.addData(messages[i].toByteString());
+        }
 
-            Common.Block block = BlockHelper.createBlock(lastBlock.getHeader().getNumber() + 1, previousBlockHash);
-            Common.BlockHeader.Builder header = Common.BlockHeader.newBuilder(block.getHeader())
-                    .setDataHash(ByteString.copyFrom(BlockHelper.hash(data.build().toByteArray())));
+        Common.Block block = BlockHelper.createBlock(lastBlock.getHeader().getNumber() + 1, previousBlockHash);
+        Common.BlockHeader.Builder header = Common.BlockHeader.newBuilder(block.getHeader())
+                .setDataHash(ByteString.copyFrom(BlockHelper.hash(data.build().toByteArray())));
 
 
-            Common.Block.Builder updateBlockBuilder = Common.Block.newBuilder(block);
-            updateBlockBuilder.setData(data).setHeader(header);
-            //   lastBlock=updateBlockBuilder.build();
-            return updateBlockBuilder.build();
-        }
+        Common.Block.Builder updateBlockBuilder = Common.Block.newBuilder(block);
+        updateBlockBuilder.setData(data).setHeader(header);
+        return updateBlockBuilder.build();
     }
 
+    /**
+     * 配置区块在应用新配置前写入账本, 之后读取账本的调用方(如新建群组)可以看到该区块
+     */
     public void writeConfigBlock(Common.Block block, byte[] encodedMetadataValue) throws ConsenterException {
         Common.Envelope ctx = CommonUtils.extractEnvelop(block, 0);
         Common.Payload payload = Utils.unmarshalPayload(ctx.getPayload().toByteArray());
@@ -92,6 +145,8 @@ public class BlockWriter {
         switch (groupHeader.getType()) {
             case Common.HeaderType.CONSENTER_TRANSACTION_VALUE:
                 Common.Envelope groupConfig = Utils.unmarshalEnvelope(payload.getData().toByteArray());
+                writeBlock(block, encodedMetadataValue);
+                flush();
                 registrar.newChain(groupConfig);
                 break;
             case Common.HeaderType.CONFIG_VALUE:
@@ -107,25 +162,99 @@ public class BlockWriter {
                 } catch (InvalidProtocolBufferException e) {
                     throw new ConsenterException(e);
                 }
+                writeBlock(block, encodedMetadataValue);
+                flush();
                 //  support.getLedgerResources().getMutableResources().update();
                 support.update(iGroupConfigBundle);
                 break;
             default:
                 log.error(String.format("Told to write a config block with unknown header type: %s", groupHeader.getType()));
+                writeBlock(block, encodedMetadataValue);
         }
+    }
 
-        writeBlock(block, encodedMetadataValue);
+    /**
+     * 写入区块, 之前的区块写入账本失败后抛出异常
+     */
+    public void writeBlock(Common.Block block, byte[] encodedMetadataValue) throws ConsenterException {
+        checkFailure();
+        long configSeq;
+        if (pendingBlocks == null) {
+            synchronized (this) {
+                lastBlock = block;
+                configSeq = support.getSequence();
+            }
+            try {
+                commitBlock(block, encodedMetadataValue, configSeq);
+            } catch (ConsenterException e) {
+                fail(e);
+                throw e;
+            }
+            return;
+        }
+        //取得许可后才推进lastBlock, 被中断时区块未写入, 下一个区块仍接在账本中的最后一个区块之后
+        try {
+            pendingBlocks.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConsenterException("Interrupted while waiting to write block " + block.getHeader().getNumber());
+        }
+        synchronized (this) {
+            lastBlock = block;
+            //配置序号在写入时确定, 后台签名时群组配置可能已更新
+            configSeq = support.getSequence();
+            committing = committing.thenRunAsync(() -> {
+                try {
+                    //之前的区块写入失败后不再写入, 账本高度已与区块号不符
+                    if (failure == null) {
+                        commitBlock(block, encodedMetadataValue, configSeq);
+                    }
+                } catch (ConsenterException e) {
+                    fail(e);
+                } catch (RuntimeException e) {
+                    fail(new ConsenterException(e));
+                } finally {
+                    pendingBlocks.release();
+                }
+            }, commitExecutor);
+        }
     }
 
-    public void writeBlock(Common.Block block, byte[] encodedMetadataValue) {
-        synchronized (BlockWriter.class) {
+    /**
+     * 等待已提交的区块全部写入账本
+     */
+    public void flush() throws ConsenterException {
+        CompletableFuture<Void> last;
+        synchronized (this) {
+            last = committing;
+        }
+        last.join();
+        checkFailure();
+    }
 
-            lastBlock = block;
-            commitBlock(encodedMetadataValue);
+    private void checkFailure() throws ConsenterException {
+        ConsenterException e = failure;
+        if (e != null) {
+            throw new ConsenterException(String.format("[group: %s] Block writer halted: %s", support.getGroupId(), e.getMessage()));
         }
     }
 
-    private  void commitBlock(byte[] encodedMetadataValue) {
+    /**
+     * 区块写入账本失败时停止群组的链, 不再写入之后的区块
+     */
+    private void fail(ConsenterException e) {
+        if (failure != null) {
+            return;
+        }
+        failure = e;
+        log.error(String.format("[group: %s] Write block failed, halting chain: %s", support.getGroupId(), e.getMessage()), e);
+        IChain chain = support.getChain();
+        if (chain != null) {
+            chain.halt();
+        }
+    }
+
+    private void commitBlock(Common.Block block, byte[] encodedMetadataValue, long configSeq) throws ConsenterException {
         if (encodedMetadataValue != null) {
             Common.Metadata metadata = null;
             try {
@@ -133,21 +262,22 @@ public class BlockWriter {
             } catch (InvalidProtocolBufferException e) {
                 e.printStackTrace();
             }
-            Common.Block.Builder block = Common.Block.newBuilder(lastBlock);
-            block.getMetadataBuilder().setMetadata(Common.BlockMetadataIndex.CONSENTER_VALUE, ByteString.copyFrom(Utils.marshalOrPanic(metadata)));
-            lastBlock = block.build();
+            Common.Block.Builder builder = Common.Block.newBuilder(block);
+            builder.getMetadataBuilder().setMetadata(Common.BlockMetadataIndex.CONSENTER_VALUE, ByteString.copyFrom(Utils.marshalOrPanic(metadata)));
+            block = builder.build();
         }
-        addBlockSignature(lastBlock);
-        addLastConfigSignature(lastBlock);
+        block = addBlockSignature(block);
+        block = addLastConfigSignature(block, configSeq);
         try {
-            support.getLedgerResources().getReadWriteBase().append(lastBlock);
+            support.getLedgerResources().getReadWriteBase().append(block);
         } catch (LedgerException e) {
-            e.printStackTrace();
+            throw new ConsenterException(String.format("Append block %d failed: %s",
+                    block.getHeader().getNumber(), e.getMessage()), e);
         }
     }
 
 
-    public  void addBlockSignature(Common.Block block) {
+    public  Common.Block addBlockSignature(Common.Block block) {
 
         try {
             Common.SignatureHeader signatureHeader = Common.SignatureHeader.parseFrom(Utils.marshalOrPanic(CommonUtils.newSignatureHeaderOrPanic(support.getLocalSigner())));
@@ -166,17 +296,18 @@ public class BlockWriter {
                     .setValue(ByteString.copyFrom(blockSignatureValue)).build();
             Common.Block.Builder updateBlockBuilder = Common.Block.newBuilder(block);
             updateBlockBuilder.getMetadataBuilder().setMetadata(Common.BlockMetadataIndex.SIGNATURES_VALUE, ByteString.copyFrom(metadata.toByteArray()));
-            Common.Block updateBlock = updateBlockBuilder.build();
-            //ProtoUtils.printMessageJson(block1);
-            lastBlock = updateBlock;
+            return updateBlockBuilder.build();
         } catch (InvalidProtocolBufferException e) {
             e.printStackTrace();
+            return block;
         }
 
     }
 
-     private void addLastConfigSignature(Common.Block block) {
-        long configSeq = support.getSequence();
+    /**
+     * 按区块顺序在签名线程中执行, lastConfigBlockNum和lastConfigSeq只在此处修改
+     */
+    private Common.Block addLastConfigSignature(Common.Block block, long configSeq) {
         if (configSeq > lastConfigSeq) {
             log.debug(String.format("[group: %s] Detected lastConfigSeq transitioning from %d to %d, setting lastConfigBlockNum from %d to %d",
                     support.getGroupId(), lastConfigSeq, configSeq, lastConfigBlockNum, block.getHeader().getNumber()));
@@ -194,9 +325,10 @@ public class BlockWriter {
                     .setValue(ByteString.copyFrom(lastConfigValue)).build();
             Common.Block.Builder updateblock = Common.Block.newBuilder(block);
             updateblock.getMetadataBuilder().setMetadata(Common.BlockMetadataIndex.LAST_CONFIG_VALUE, ByteString.copyFrom(metadata.toByteArray()));
-            lastBlock = updateblock.build();
+            return updateblock.build();
         } catch (InvalidProtocolBufferException e) {
             e.printStackTrace();
+            return block;
         }
     }
 
@@ -21,6 +21,7 @@ import io.grpc.*;
 import io.grpc.netty.NettyServerBuilder;
 import io.grpc.stub.StreamObserver;
 import org.bcia.julongchain.common.deliver.DeliverServer;
+import org.bcia.julongchain.common.deliver.DeliverStream;
 import org.bcia.julongchain.common.deliver.IDeliverHandler;
 import org.bcia.julongchain.common.exception.ConsenterException;
 import org.bcia.julongchain.common.exception.LedgerException;
@@ -129,26 +130,30 @@ public class ConsenterServer {
 
                 @Override
                 public void onCompleted() {
-                    responseObserver.onCompleted();
+                    broadcastHandler.complete(responseObserver);
                 }
             };
         }
 
         @Override
         public StreamObserver<Common.Envelope> deliver(StreamObserver<Ab.DeliverResponse> responseObserver) {
+            //在方法返回前注册onReady/onCancel回调
+            DeliverStream deliverStream = new DeliverStream(responseObserver);
             return new StreamObserver<Common.Envelope>() {
                 @Override
                 public void onNext(Common.Envelope envelope) {
-                    DeliverServer deliverServer = new DeliverServer(responseObserver, envelope);
+                    DeliverServer deliverServer = new DeliverServer(deliverStream, envelope);
                     try {
                         deliverHandler.handle(deliverServer);
                     } catch (ConsenterException e) {
+                        log.error(e.getMessage(), e);
                     }
                 }
 
                 @Override
                 public void onError(Throwable throwable) {
                     log.error(throwable.getMessage());
+                    deliverStream.cancel();
                 }
 
                 @Override
@@ -32,4 +32,10 @@ import java.io.IOException;
  */
 public interface IBroadcastHandler {
    void handle(Common.Envelope envelope, StreamObserver<Ab.BroadcastResponse> responseObserver) throws ConsenterException;
+
+   /**
+    * 客户端结束发送, 已接收的消息全部响应后结束流
+    * @param responseObserver
+    */
+   void complete(StreamObserver<Ab.BroadcastResponse> responseObserver);
 }
@@ -39,12 +39,13 @@ public interface IProcessor {
     boolean classifyMsg(Common.GroupHeader chdr);
 
     /**
-     * 处理普通消息
+     * 处理普通消息, 经过群组的过滤规则校验后返回当前配置序号
      *
      * @param env
      * @return
+     * @throws ConsenterException 消息被过滤规则拒绝
      */
-    long processNormalMsg(Common.Envelope env) throws InvalidProtocolBufferException;
+    long processNormalMsg(Common.Envelope env) throws InvalidProtocolBufferException, ConsenterException;
 
     /**
      * 将尝试将配置更新应用于当前配置，如果成功返回结果配置消息和configSeq，则从中计算配置
@@ -16,10 +16,7 @@
 package org.bcia.julongchain.consenter.consensus.singleton;
 
 import com.google.protobuf.InvalidProtocolBufferException;
-import org.apache.activemq.thread.SchedulerTimerTask;
 import org.bcia.julongchain.common.exception.ConsenterException;
-import org.bcia.julongchain.common.exception.LedgerException;
-import org.bcia.julongchain.common.exception.PolicyException;
 import org.bcia.julongchain.common.exception.ValidateException;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
@@ -30,17 +27,22 @@ import org.bcia.julongchain.consenter.common.multigroup.ChainSupport;
 import org.bcia.julongchain.consenter.consensus.IChain;
 import org.bcia.julongchain.consenter.consensus.IConsensusPlugin;
 import org.bcia.julongchain.consenter.entity.BatchesMes;
+import org.bcia.julongchain.consenter.entity.ConfigMessage;
 import org.bcia.julongchain.consenter.entity.Message;
 import org.bcia.julongchain.consenter.entity.NormalMessage;
 import org.bcia.julongchain.protos.common.Common;
 
-import java.sql.Time;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 简单排序插件
+ * 每个群组一个链实例, 拥有各自的消息队列和消费线程;
+ * 所有链共用一个定时线程处理批次超时, 超时只向链的队列放入切块消息, 由链的消费线程切块
  *
  * @author zhangmingyang
  * @Date: 2018/3/7
@@ -48,30 +50,56 @@ import java.util.concurrent.*;
  */
 public class Singleton implements IChain, IConsensusPlugin {
     private static JulongChainLog log = JulongChainLogFactory.getLog(Singleton.class);
+
+    private static final ScheduledExecutorService BATCH_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "singleton-batch-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private BlockingQueue<Message> blockingQueue;
     private Producer<Message> producer;
     private Consumer<Message> consumer;
-    private static Singleton instance;
-    private static ChainSupport support;
-    private volatile boolean needDelay;
+    private ChainSupport support;
+
+    /**
+     * 当前批次的超时任务, 由消费线程设置
+     */
+    private volatile TimeToCut pendingTimer;
 
+    /**
+     * 返回群组的排序链
+     *
+     * @param consenterSupport 群组
+     * @return 群组使用简单排序时返回其链, 否则返回null
+     */
     public static Singleton getInstance(ChainSupport consenterSupport) {
-        synchronized (Singleton.class) {
-            if (consenterSupport == null) {
-                return instance;
-            } else {
-                support = consenterSupport;
-            }
-            return instance;
+        if (consenterSupport == null || !(consenterSupport.getChain() instanceof Singleton)) {
+            return null;
         }
+        return (Singleton) consenterSupport.getChain();
     }
 
     @Override
     public void order(Common.Envelope env, long configSeq) {
+        try {
+            if (!pushToQueue(new NormalMessage(configSeq, env))) {
+                log.warn("Discarding normal message: queue is full");
+            }
+        } catch (ValidateException e) {
+            log.error(e.getMessage());
+        }
     }
 
     @Override
     public void configure(Common.Envelope config, long configSeq) {
+        try {
+            if (!pushToQueue(new ConfigMessage(configSeq, config))) {
+                log.warn("Discarding config message: queue is full");
+            }
+        } catch (ValidateException e) {
+            log.error(e.getMessage());
+        }
     }
 
     @Override
@@ -86,6 +114,11 @@ public class Singleton implements IChain, IConsensusPlugin {
 
     @Override
     public void halt() {
+        consumer.interrupt();
+        TimeToCut timer = pendingTimer;
+        if (timer != null) {
+            timer.cancel();
+        }
     }
 
     @Override
@@ -100,7 +133,6 @@ public class Singleton implements IChain, IConsensusPlugin {
 
     public Singleton(ChainSupport consenterSupport) {
         support = consenterSupport;
-        instance = this;
         blockingQueue = new LinkedBlockingQueue<>();
         producer = new Producer<Message>(blockingQueue);
         consumer = new Consumer<Message>(blockingQueue) {
@@ -114,6 +146,7 @@ public class Singleton implements IChain, IConsensusPlugin {
                 return true;
             }
         };
+        consumer.setName("singleton-consumer");
     }
 
     /**
@@ -123,6 +156,21 @@ public class Singleton implements IChain, IConsensusPlugin {
      * @throws ConsenterException
      */
     public void doProcess(Message message) throws ConsenterException {
+        if (message instanceof TimeToCut) {
+            if (message != pendingTimer) {
+                //批次已按大小切块, 超时任务过期
+                return;
+            }
+            pendingTimer = null;
+            Common.Envelope[] batch = support.getCutter().cut();
+            if (null == batch || batch.length == 0) {
+                log.warn("Batch timer expired with no pending requests, this might indicate a bug");
+                return;
+            }
+            log.debug("Batch timer expired, creating block");
+            support.writeBlock(support.createNextBlock(batch), null);
+            return;
+        }
 
         long seq = support.getSequence();
 
@@ -130,50 +178,26 @@ public class Singleton implements IChain, IConsensusPlugin {
             if (message.getConfigSeq() < seq) {
                 try {
                     support.getProcessor().processNormalMsg(message.getMessage());
-                } catch (InvalidProtocolBufferException e) {
+                } catch (InvalidProtocolBufferException | ConsenterException e) {
                     log.warn(String.format("Discarding bad normal message: %s", e.getMessage()));
                     throw new ConsenterException(e);
                 }
             }
             BatchesMes batchesMes = support.getCutter().ordered(message.getMessage());
             Common.Envelope[][] batches = batchesMes.getMessageBatches();
-            if (batches == null && !needDelay) {
-                needDelay = true;
-                Timer timer = new Timer();
-                timer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-
-                        if (needDelay) {
-                            needDelay = false;
-                            Common.Envelope[] batch = support.getCutter().cut();
-                            if (null == batch || batch.length == 0) {
-                                log.warn("Batch timer expired with no pending requests, this might indicate a bug");
-                                return;
-                            }
-                            log.debug("Batch timer expired, creating block");
-                            Common.Block block = support.createNextBlock(batch);
-                            support.writeBlock(block, null);
-                            return;
-                        }
-                    }
-                }, support.getLedgerResources().getMutableResources().getGroupConfig().getConsenterConfig().getBatchTimeout());
-
-            }
-            if (batches == null) {
-
-            } else {
+            if (batches != null) {
                 for (Common.Envelope[] env : batches) {
-                    log.info("Ready to cut the batches....");
+                    log.debug("Ready to cut the batches....");
                     Common.Block block = support.createNextBlock(env);
                     support.writeBlock(block, null);
-                    log.info("Write the Block finished");
-                }
-                if (batches.length > 0) {
-                    needDelay = false;
+                    log.debug("Write the Block finished");
                 }
             }
-
+            if (!batchesMes.isPending()) {
+                cancelTimer();
+            } else if (pendingTimer == null) {
+                startTimer();
+            }
         } else {
             if (message.getConfigSeq() < seq) {
                 try {
@@ -184,19 +208,33 @@ public class Singleton implements IChain, IConsensusPlugin {
                     //return;
                 }
             }
+            //先写入等待中的普通消息, 配置消息单独成块
             Common.Envelope[] batch = support.getCutter().cut();
             if (batch.length != 0) {
                 Common.Block block = support.createNextBlock(batch);
                 support.writeBlock(block, null);
-            } else {
-                Common.Block block = support.createNextBlock(new Common.Envelope[]{message.getMessage()});
-                support.writeConfigBlock(block, null);
             }
-            needDelay = false;
+            Common.Block block = support.createNextBlock(new Common.Envelope[]{message.getMessage()});
+            support.writeConfigBlock(block, null);
+            cancelTimer();
         }
 
     }
 
+    private void startTimer() {
+        long batchTimeout = support.getLedgerResources().getMutableResources().getGroupConfig().getConsenterConfig().getBatchTimeout();
+        TimeToCut timer = new TimeToCut();
+        timer.future = BATCH_TIMER.schedule(() -> producer.produce(timer), batchTimeout, TimeUnit.MILLISECONDS);
+        pendingTimer = timer;
+    }
+
+    private void cancelTimer() {
+        if (pendingTimer != null) {
+            pendingTimer.cancel();
+            pendingTimer = null;
+        }
+    }
+
     /**
      * 消息放入队列
      *
@@ -208,4 +246,22 @@ public class Singleton implements IChain, IConsensusPlugin {
         ValidateUtils.isNotNull(message, "message can not be null");
         return producer.produce(message);
     }
+
+    /**
+     * 批次超时后放入队列的切块消息
+     */
+    private static class TimeToCut extends Message {
+        private volatile ScheduledFuture<?> future;
+
+        TimeToCut() {
+            super(0, null);
+        }
+
+        void cancel() {
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
 }
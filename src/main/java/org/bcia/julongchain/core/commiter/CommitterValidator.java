@@ -30,6 +30,7 @@ import org.bcia.julongchain.common.util.proto.BlockUtils;
 import org.bcia.julongchain.core.common.sysscprovider.SmartContractInstance;
 import org.bcia.julongchain.core.common.validation.MsgValidation;
 import org.bcia.julongchain.core.ledger.util.TxValidationFlags;
+import org.bcia.julongchain.core.node.NodeConfigFactory;
 import org.bcia.julongchain.protos.common.Common;
 import org.bcia.julongchain.protos.node.ProposalPackage;
 import org.bcia.julongchain.protos.node.ProposalResponsePackage;
@@ -37,6 +38,11 @@ import org.bcia.julongchain.protos.node.SmartContractPackage;
 import org.bcia.julongchain.protos.node.TransactionPackage;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Committer节点校验器
@@ -48,15 +54,52 @@ import java.util.*;
 public class CommitterValidator implements ICommitterValidator {
     private static JulongChainLog log = JulongChainLogFactory.getLog(CommitterValidator.class);
 
+    /**
+     * 所有群组共用的交易验证线程池
+     */
+    private static ExecutorService sharedValidatorPool;
+
     private ICommitterSupport committerSupport;
     private IVsscValidator vsscValidator;
+    /**
+     * 交易验证线程池, 为null时在当前线程顺序验证
+     */
+    private ExecutorService validatorPool;
 
     public CommitterValidator(ICommitterSupport committerSupport) {
+        this(committerSupport, getSharedValidatorPool());
+    }
+
+    public CommitterValidator(ICommitterSupport committerSupport, ExecutorService validatorPool) {
         this.committerSupport = committerSupport;
+        this.validatorPool = validatorPool;
 
         this.vsscValidator = new VsscValidator(committerSupport);
     }
 
+    /**
+     * 按node.validatorPoolSize创建共用的交易验证线程池, 0为处理器数量, 1为顺序验证(返回null)
+     */
+    private static synchronized ExecutorService getSharedValidatorPool() {
+        int poolSize = NodeConfigFactory.getNodeConfig().getNode().getValidatorPoolSize();
+        if (poolSize <= 0) {
+            poolSize = Runtime.getRuntime().availableProcessors();
+        }
+        if (poolSize == 1) {
+            return null;
+        }
+        if (sharedValidatorPool == null) {
+            AtomicInteger threadNum = new AtomicInteger();
+            sharedValidatorPool = Executors.newFixedThreadPool(poolSize, r -> {
+                Thread t = new Thread(r, "tx-validator-" + threadNum.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            log.info("Created transaction validator pool with size " + poolSize);
+        }
+        return sharedValidatorPool;
+    }
+
     @Override
     public Common.Block validate(Common.Block block) throws ValidateException {
         ValidateUtils.isNotNull(block, "Block can not be null");
@@ -79,13 +122,11 @@ public class CommitterValidator implements ICommitterValidator {
         Map<Integer, SmartContractInstance> txInvokedSCInstances = new HashMap<>();
         Map<Integer, SmartContractInstance> txUpgradedSCInstances = new HashMap<>();
 
-        BlockValidationResult result = new BlockValidationResult();
+        //按交易顺序合并验证结果
+        BlockValidationResult[] results = validateTxs(block);
         for (int i = 0; i < txCount; i++) {
-            BlockValidationRequest request = new BlockValidationRequest(block, block.getData().getData(i)
-                    .toByteArray(), i, this);
-            validateTx(request, result);
-
-            if (result.getTxValidationCode().equals(TransactionPackage.TxValidationCode.VALID)) {
+            BlockValidationResult result = results[i];
+            if (TransactionPackage.TxValidationCode.VALID.equals(result.getTxValidationCode())) {
                 txIdArray[i] = result.getTxId();
 
                 if (result.getSmartContractInstance() != null) {
@@ -111,6 +152,47 @@ public class CommitterValidator implements ICommitterValidator {
         return newBlockBuilder.build();
     }
 
+    /**
+     * 验证区块中的每笔交易, 每笔交易使用独立的验证结果
+     * 只有一笔交易的区块(如配置区块)在当前线程验证
+     */
+    private BlockValidationResult[] validateTxs(Common.Block block) throws ValidateException {
+        int txCount = block.getData().getDataCount();
+        BlockValidationResult[] results = new BlockValidationResult[txCount];
+        if (validatorPool == null || txCount == 1) {
+            for (int i = 0; i < txCount; i++) {
+                results[i] = validateTx(newRequest(block, i));
+            }
+            return results;
+        }
+
+        List<Future<BlockValidationResult>> futures = new ArrayList<>(txCount);
+        for (int i = 0; i < txCount; i++) {
+            BlockValidationRequest request = newRequest(block, i);
+            futures.add(validatorPool.submit(() -> validateTx(request)));
+        }
+        try {
+            for (int i = 0; i < txCount; i++) {
+                results[i] = futures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValidateException("Interrupted when validating block " + block.getHeader().getNumber(), e);
+        } catch (ExecutionException e) {
+            throw new ValidateException("Fail to validate block " + block.getHeader().getNumber(), e.getCause());
+        } finally {
+            //不中断正在执行的验证, 中断会关闭其正在读取的区块文件通道
+            for (Future<BlockValidationResult> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    private BlockValidationRequest newRequest(Common.Block block, int txIndex) {
+        return new BlockValidationRequest(block, block.getData().getData(txIndex).toByteArray(), txIndex, this);
+    }
+
     private TxValidationFlags invalidTxsForUpgradeSC(Map<Integer, SmartContractInstance> txInvokedSCInstances,
                                                      Map<Integer, SmartContractInstance> txUpgradedSCInstances,
                                                      TxValidationFlags txValidationFlags) {
@@ -182,18 +264,25 @@ public class CommitterValidator implements ICommitterValidator {
      * @param txValidationFlags
      */
     private void markTxIdDuplicates(String[] txIdArray, TxValidationFlags txValidationFlags) {
-        List<String> existedTxList = new ArrayList<>();
+        Set<String> existedTxIds = new HashSet<>(txIdArray.length * 2);
         for (int i = 0; i < txIdArray.length; i++) {
             String txId = txIdArray[i];
 
-            if (existedTxList.contains(txId)) {
+            if (!existedTxIds.add(txId)) {
                 txValidationFlags.setFlag(i, TransactionPackage.TxValidationCode.DUPLICATE_TXID);
-            } else {
-                existedTxList.add(txId);
             }
         }
     }
 
+    /**
+     * 验证单笔交易, 可以在多个线程中并发执行
+     */
+    protected BlockValidationResult validateTx(BlockValidationRequest request) {
+        BlockValidationResult result = new BlockValidationResult();
+        validateTx(request, result);
+        return result;
+    }
+
     private void validateTx(BlockValidationRequest request, BlockValidationResult result) {
         if (request.getData() == null) {
             result.setTxIndex(request.getTxIndex());
@@ -271,54 +271,61 @@ public class Endorser implements IEndorserServer {
 
         ITxSimulator txSimulator = endorserSupport.getTxSimulator(groupId, txId);
 
-        String version = null;
-        ISmartContractDefinition scDefinition = null;
-        if (endorserSupport.isSysSmartContract(scName)) {
-            //TODO:从配置文件中读取?
-            version = CommConstant.METADATA_VERSION;
-        } else {
-            scDefinition = endorserSupport.getSmartContractDefinition(groupId, scName, txId, signedProposal,
-                    proposal, txSimulator);
-            version = scDefinition.getSmartContractVersion();
-
-            //TODO：检查实例化策略
-            endorserSupport.checkInstantiationPolicy(scName, version, scDefinition);
-        }
+        try {
+            String version = null;
+            ISmartContractDefinition scDefinition = null;
+            if (endorserSupport.isSysSmartContract(scName)) {
+                //TODO:从配置文件中读取?
+                version = CommConstant.METADATA_VERSION;
+            } else {
+                scDefinition = endorserSupport.getSmartContractDefinition(groupId, scName, txId, signedProposal,
+                        proposal, txSimulator);
+                version = scDefinition.getSmartContractVersion();
 
-        Object[] objs = callSmartContract(groupId, scName, version, txId, signedProposal, proposal, invocationSpec);
-        ProposalResponsePackage.Response response = (ProposalResponsePackage.Response) objs[0];
-        SmartContractEventPackage.SmartContractEvent scEvent = (SmartContractEventPackage.SmartContractEvent) objs[1];
+                //TODO：检查实例化策略
+                endorserSupport.checkInstantiationPolicy(scName, version, scDefinition);
+            }
 
-        if (response.getStatus() >= Common.Status.BAD_REQUEST_VALUE) {
-            throw new NodeException("Call smart contract fail");
-        }
+            Object[] objs = callSmartContract(groupId, scName, version, txId, signedProposal, proposal, invocationSpec);
+            ProposalResponsePackage.Response response = (ProposalResponsePackage.Response) objs[0];
+            SmartContractEventPackage.SmartContractEvent scEvent = (SmartContractEventPackage.SmartContractEvent) objs[1];
 
-        byte[] publicSimulateBytes = new byte[0];
-        if (groupId != null && txSimulator != null) {
-            TxSimulationResults simulationResults = null;
-            try {
-                simulationResults = txSimulator.getTxSimulationResults();
-            } catch (LedgerException e) {
-                log.error(e.getMessage(), e);
-                throw new NodeException("Get TxSimulation fail");
+            if (response.getStatus() >= Common.Status.BAD_REQUEST_VALUE) {
+                throw new NodeException("Call smart contract fail");
             }
 
-            if (simulationResults.getPrivateReadWriteSet() != null) {
-                if (scIDBuilder.getName().equals(CommConstant.LSSC)) {
-                    log.error("Should not be lssc here");
-                    throw new NodeException("Should not be lssc here");
+            byte[] publicSimulateBytes = new byte[0];
+            if (groupId != null && txSimulator != null) {
+                TxSimulationResults simulationResults = null;
+                try {
+                    simulationResults = txSimulator.getTxSimulationResults();
+                } catch (LedgerException e) {
+                    log.error(e.getMessage(), e);
+                    throw new NodeException("Get TxSimulation fail");
+                }
+
+                if (simulationResults.getPrivateReadWriteSet() != null) {
+                    if (scIDBuilder.getName().equals(CommConstant.LSSC)) {
+                        log.error("Should not be lssc here");
+                        throw new NodeException("Should not be lssc here");
+                    }
+
+                    distributor.distributePrivateData(groupId, txId, simulationResults.getPrivateReadWriteSet());
                 }
 
-                distributor.distributePrivateData(groupId, txId, simulationResults.getPrivateReadWriteSet());
+                Rwset.TxReadWriteSet readWriteSet = simulationResults.getPublicReadWriteSet();
+                if (readWriteSet != null) {
+                    publicSimulateBytes = readWriteSet.toByteArray();
+                }
             }
 
-            Rwset.TxReadWriteSet readWriteSet = simulationResults.getPublicReadWriteSet();
-            if (readWriteSet != null) {
-                publicSimulateBytes = readWriteSet.toByteArray();
+            return new Object[]{response, publicSimulateBytes, scDefinition, scEvent};
+        } finally {
+            //模拟失败时同样结束模拟器, 避免其阻塞区块提交
+            if (txSimulator != null) {
+                txSimulator.done();
             }
         }
-
-        return new Object[]{response, publicSimulateBytes, scDefinition, scEvent};
     }
 
     /**
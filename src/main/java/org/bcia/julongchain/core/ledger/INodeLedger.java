@@ -58,6 +58,11 @@ public interface INodeLedger extends ILedger {
      */
     ITxSimulator newTxSimulator(String txId) throws LedgerException;
 
+    /**
+     * 获取该交易已注册的模拟器, 不存在时返回null
+     */
+    ITxSimulator getTxSimulator(String txId);
+
     /**
      * 获取查询器
      */
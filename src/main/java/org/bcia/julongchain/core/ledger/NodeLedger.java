@@ -59,6 +59,11 @@ public class NodeLedger implements INodeLedger {
         return null;
     }
 
+    @Override
+    public ITxSimulator getTxSimulator(String txId) {
+        return null;
+    }
+
     @Override
     public IQueryExecutor newQueryExecutor() throws LedgerException {
         return null;
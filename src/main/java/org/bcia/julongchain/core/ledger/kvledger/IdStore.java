@@ -18,6 +18,7 @@ package org.bcia.julongchain.core.ledger.kvledger;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.apache.commons.lang3.ArrayUtils;
 import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.ledger.util.IDBIterator;
 import org.bcia.julongchain.common.ledger.util.IDBProvider;
 import org.bcia.julongchain.common.ledger.util.leveldbhelper.LevelDBProvider;
 import org.bcia.julongchain.common.ledger.util.leveldbhelper.UpdateBatch;
@@ -146,15 +147,19 @@ public class IdStore {
      */
     public List<String> getAllLedgerIDs() throws LedgerException {
         Map<Long, String> ids = new TreeMap<>();
-        Iterator<Map.Entry<byte[], byte[]>> itr = provider.getIterator(null);
-        while(itr.hasNext()){
-            Map.Entry<byte[], byte[]> entry = itr.next();
-	        if(Arrays.equals(entry.getKey(), UNDER_CONSTRUCTION_LEDGER_KEY)){
-		        continue;
-	        }
-            String ledgerID = decodeLedgerID(entry.getKey());
-            Long timeStamp  = decodeTime(entry.getValue());
-            ids.put(timeStamp, ledgerID);
+        IDBIterator itr = provider.getIterator(null);
+        try {
+            while(itr.hasNext()){
+                Map.Entry<byte[], byte[]> entry = itr.next();
+                if(Arrays.equals(entry.getKey(), UNDER_CONSTRUCTION_LEDGER_KEY)){
+                    continue;
+                }
+                String ledgerID = decodeLedgerID(entry.getKey());
+                Long timeStamp  = decodeTime(entry.getValue());
+                ids.put(timeStamp, ledgerID);
+            }
+        } finally {
+            itr.close();
         }
         return new ArrayList<>(ids.values());
     }
@@ -36,9 +36,14 @@ import org.bcia.julongchain.protos.common.Ledger;
 import org.bcia.julongchain.protos.node.TransactionPackage;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * kv账本
+ * 区块查询不持有账本锁, 与区块提交并发执行
  *
  * @author sunzongyu
  * @date 2018/04/13
@@ -52,6 +57,20 @@ public class KvLedger implements INodeLedger {
 	private IBlockStore blockStore;
 	private ITxManager txtmgmt;
 	private IHistoryDB historyDB;
+	/**
+	 * 流水线提交, 状态数据库与历史数据库在后台线程中写入
+	 */
+	private boolean pipelinedCommit;
+	private ExecutorService historyCommitter;
+	private Future<?> pendingHistoryCommit;
+	/**
+	 * 流水线提交中区块写入区块文件后发生的错误, 发生后账本需重新打开以恢复
+	 */
+	private LedgerException commitFailure;
+	/**
+	 * 最近一次提交后发布的区块链信息(不可变), 读取时不需要加锁
+	 */
+	private volatile Ledger.BlockchainInfo bcInfo;
 
 	/**
 	 * 创建新KvLedger
@@ -69,6 +88,7 @@ public class KvLedger implements INodeLedger {
 		this.blockStore = blockStore;
 		this.txtmgmt = txmgmt;
 		this.historyDB = historyDB;
+		this.pipelinedCommit = LedgerConfig.isPipelinedCommitEnabled();
 
 		ISmartContractLifecycleEventListener scEventListener = versionedDB.getSmartcontractEventListener();
 		log.debug("Register state db for smartcontract lifecycle event " + (scEventListener != null));
@@ -78,6 +98,7 @@ public class KvLedger implements INodeLedger {
 		}
 
 		recoverDBs();
+		this.bcInfo = blockStore.getBlockchainInfo();
 	}
 
 	/**
@@ -97,8 +118,9 @@ public class KvLedger implements INodeLedger {
 		recoverables.add(historyDB);
 		//循环添加需要恢复的db
 		for(IRecoverable recoverable : recoverables){
-			long firstBlockNum = recoverable.shouldRecover();
-			if(firstBlockNum  == -1 || firstBlockNum - 1 != lastAvailableBlockNum){
+			//没有保存点(-1)时从0号区块开始恢复
+			long firstBlockNum = Math.max(recoverable.shouldRecover(), 0);
+			if(firstBlockNum - 1 != lastAvailableBlockNum){
 				Recoverer recoverer = new Recoverer(firstBlockNum, recoverable);
 				recoverers.add(recoverer);
 			}
@@ -136,7 +158,7 @@ public class KvLedger implements INodeLedger {
 	 * 根据交易ID获取交易
 	 */
 	@Override
-	public synchronized TransactionPackage.ProcessedTransaction getTransactionByID(String txID) throws LedgerException {
+	public TransactionPackage.ProcessedTransaction getTransactionByID(String txID) throws LedgerException {
 		Common.Envelope tranEvn = null;
 		TransactionPackage.TxValidationCode txVResult = null;
 		if (txID == null) {
@@ -158,10 +180,11 @@ public class KvLedger implements INodeLedger {
 
 	/**
 	 * 获取当前区块链状态
+	 * 返回最近一次提交后发布的快照, 不等待正在进行的提交
 	 */
 	@Override
-	public synchronized Ledger.BlockchainInfo getBlockchainInfo() throws LedgerException {
-		Ledger.BlockchainInfo bcInfo = blockStore.getBlockchainInfo();
+	public Ledger.BlockchainInfo getBlockchainInfo() throws LedgerException {
+		Ledger.BlockchainInfo bcInfo = this.bcInfo;
 		if (bcInfo == null) {
 			log.info("Blockchain info not found");
 		}
@@ -172,7 +195,7 @@ public class KvLedger implements INodeLedger {
 	 * 根据区块号获取区块
 	 */
 	@Override
-	public synchronized Common.Block getBlockByNumber(long blockNumber) throws LedgerException {
+	public Common.Block getBlockByNumber(long blockNumber) throws LedgerException {
 		Common.Block block = blockStore.retrieveBlockByNumber(blockNumber);
 		if (block == null) {
 			log.info(String.format("block not found, using block num = [%d]", blockNumber));
@@ -196,7 +219,7 @@ public class KvLedger implements INodeLedger {
 	 * 根据区块Hash(headerHash)获取区块
 	 */
 	@Override
-	public synchronized Common.Block getBlockByHash(byte[] blockHash) throws LedgerException {
+	public Common.Block getBlockByHash(byte[] blockHash) throws LedgerException {
 		if (blockHash == null) {
 			String errMsg = "BlockHash cannot be null";
 			log.error(errMsg);
@@ -213,7 +236,7 @@ public class KvLedger implements INodeLedger {
 	 * 根据交易ID获取区块
 	 */
 	@Override
-	public synchronized Common.Block getBlockByTxID(String txID) throws LedgerException {
+	public Common.Block getBlockByTxID(String txID) throws LedgerException {
 		if (txID == null) {
 			String errMsg = "TxID cannot be null";
 			log.error(errMsg);
@@ -230,7 +253,7 @@ public class KvLedger implements INodeLedger {
 	 * 通过交易Id获取交易可行性代码
 	 */
 	@Override
-	public synchronized TransactionPackage.TxValidationCode getTxValidationCodeByTxID(String txID) throws LedgerException {
+	public TransactionPackage.TxValidationCode getTxValidationCodeByTxID(String txID) throws LedgerException {
 		if (txID == null) {
 			String errMsg = "TxID cannot be null";
 			log.error(errMsg);
@@ -251,6 +274,14 @@ public class KvLedger implements INodeLedger {
 		return txtmgmt.newTxSimulator(txId);
 	}
 
+	/**
+	 * 获取已注册的交易模拟器
+	 */
+	@Override
+	public ITxSimulator getTxSimulator(String txId) {
+		return txtmgmt.getTxSimulator(txId);
+	}
+
 	/**
 	 * TODO
 	 * 修剪策略
@@ -318,6 +349,16 @@ public class KvLedger implements INodeLedger {
 	 */
 	@Override
 	public void close() {
+		synchronized (this) {
+			try {
+				waitForHistoryCommit();
+			} catch (LedgerException e) {
+				log.error(e.getMessage(), e);
+			}
+			if(historyCommitter != null){
+				historyCommitter.shutdown();
+			}
+		}
 		blockStore.shutdown();
 		try {
 			txtmgmt.shutdown();
@@ -331,6 +372,19 @@ public class KvLedger implements INodeLedger {
 	 */
 	@Override
 	public synchronized void commitWithPvtData(BlockAndPvtData blockAndPvtData) throws LedgerException {
+		try {
+			if(pipelinedCommit){
+				commitPipelined(blockAndPvtData);
+			} else {
+				commit(blockAndPvtData);
+			}
+		} finally {
+			//区块写入区块文件后发布新的区块链信息
+			bcInfo = blockStore.getBlockchainInfo();
+		}
+	}
+
+	private void commit(BlockAndPvtData blockAndPvtData) throws LedgerException {
 		long blockNo = blockAndPvtData.getBlock().getHeader().getNumber();
 		log.debug(String.format("Group %s: Validating state for block %d", ledgerID, blockNo));
 		//执行校验工作, 并准备更新包
@@ -349,6 +403,85 @@ public class KvLedger implements INodeLedger {
 		}
 	}
 
+	/**
+	 * 流水线提交区块和pvtdata
+	 * 区块N写入区块文件后, 状态数据库与历史数据库的写入在后台进行, 区块N+1的验证与区块N的状态写入重叠
+	 * 崩溃后落后于区块文件的数据库由recoverDBs()恢复
+	 */
+	private void commitPipelined(BlockAndPvtData blockAndPvtData) throws LedgerException {
+		if(commitFailure != null){
+			throw new LedgerException(String.format("Group %s: previous commit failed, ledger must be reopened to recover", ledgerID), commitFailure);
+		}
+		long blockNo = blockAndPvtData.getBlock().getHeader().getNumber();
+		log.debug(String.format("Group %s: Validating state for block %d", ledgerID, blockNo));
+		//上一区块的状态写入未完成时, 从其更新中读取已提交版本
+		txtmgmt.validateAndPrepare(blockAndPvtData, true);
+		log.debug(String.format("Group %s: Committing block %d to storage", ledgerID, blockNo));
+		blockStore.commitWithPvtData(blockAndPvtData);
+		log.info(String.format("Group %s: Committed block %d to storage", ledgerID, blockNo));
+		try {
+			//等待上一区块写入状态数据库后, 异步写入本区块
+			txtmgmt.commitAsync();
+			if(LedgerConfig.isHistoryDBEnabled()){
+				commitHistoryAsync(blockAndPvtData.getBlock());
+			}
+		} catch (LedgerException e) {
+			commitFailure = e;
+			throw e;
+		}
+	}
+
+	private void commitHistoryAsync(Common.Block block) throws LedgerException {
+		waitForHistoryCommit();
+		if(historyCommitter == null){
+			historyCommitter = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "history-committer-" + ledgerID);
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		pendingHistoryCommit = historyCommitter.submit(() -> {
+			log.debug(String.format("Group %s: Committing block %d transaction to history db", ledgerID, block.getHeader().getNumber()));
+			historyDB.commit(block);
+			return null;
+		});
+	}
+
+	/**
+	 * 等待流水线中的状态数据库与历史数据库写入完成
+	 */
+	public synchronized void waitForPendingCommits() throws LedgerException {
+		txtmgmt.waitForPendingCommit();
+		waitForHistoryCommit();
+	}
+
+	private void waitForHistoryCommit() throws LedgerException {
+		if(pendingHistoryCommit == null){
+			return;
+		}
+		try {
+			pendingHistoryCommit.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LedgerException(e);
+		} catch (ExecutionException e) {
+			throw new LedgerException(String.format("Group %s: Failed to commit block to history db", ledgerID), e.getCause());
+		} finally {
+			pendingHistoryCommit = null;
+		}
+	}
+
+	public boolean isPipelinedCommit() {
+		return pipelinedCommit;
+	}
+
+	public synchronized void setPipelinedCommit(boolean pipelinedCommit) throws LedgerException {
+		if(!pipelinedCommit){
+			waitForPendingCommits();
+		}
+		this.pipelinedCommit = pipelinedCommit;
+	}
+
 	@Override
 	public String getLedgerID() {
 		return ledgerID;
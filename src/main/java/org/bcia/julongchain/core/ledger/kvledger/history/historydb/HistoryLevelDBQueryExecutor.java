@@ -19,11 +19,11 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.IResultsIterator;
 import org.bcia.julongchain.common.ledger.blkstorage.IBlockStore;
+import org.bcia.julongchain.common.ledger.util.IDBIterator;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
 import org.bcia.julongchain.core.ledger.kvledger.history.IHistoryQueryExecutor;
 import org.bcia.julongchain.core.ledger.ledgerconfig.LedgerConfig;
-import org.iq80.leveldb.DBIterator;
 
 /**
  * HistoryDB查询器
@@ -53,7 +53,8 @@ public class HistoryLevelDBQueryExecutor implements IHistoryQueryExecutor {
             throw new LedgerException(msg);
         }
         byte[] compositeStartKey = HistoryDBHelper.constructPartialCompositeHistoryKey(namespace, key, false);
-        DBIterator iterator = (DBIterator) historyDB.getProvider().getIterator((compositeStartKey));
+        //仅遍历ns~key~开头的key
+        IDBIterator iterator = historyDB.getProvider().getPrefixIterator(compositeStartKey);
 
 	    return new HistoryScanner(compositeStartKey, namespace, key, iterator, blockStore, ledgerID);
     }
@@ -19,6 +19,7 @@ import com.google.protobuf.Timestamp;
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.IResultsIterator;
 import org.bcia.julongchain.common.ledger.blkstorage.IBlockStore;
+import org.bcia.julongchain.common.ledger.util.IDBIterator;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
 import org.bcia.julongchain.common.util.proto.ProtoUtils;
@@ -30,9 +31,7 @@ import org.bcia.julongchain.protos.ledger.queryresult.KvQueryResult;
 import org.bcia.julongchain.protos.ledger.rwset.kvrwset.KvRwset;
 import org.bcia.julongchain.protos.node.ProposalPackage;
 import org.bcia.julongchain.protos.node.TransactionPackage;
-import org.iq80.leveldb.DBIterator;
 
-import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
@@ -52,7 +51,7 @@ public class HistoryScanner implements IResultsIterator {
     private byte[] compositePartialKey;
     private String nameSpace;
     private String key;
-    private DBIterator dbItr;
+    private IDBIterator dbItr;
     private IBlockStore blockStore;
     private long blockNum;
     private long tranNum;
@@ -61,7 +60,7 @@ public class HistoryScanner implements IResultsIterator {
     public HistoryScanner(byte[] compositePartialKey,
                           String nameSpace,
                           String key,
-                          DBIterator dbItr,
+                          IDBIterator dbItr,
                           IBlockStore blockStore,
                           String ledgerID){
         this.compositePartialKey = compositePartialKey;
@@ -95,12 +94,7 @@ public class HistoryScanner implements IResultsIterator {
 
     @Override
     public void close() throws LedgerException {
-	    try {
-		    dbItr.close();
-	    } catch (IOException e) {
-	    	log.error("Got error when close dbItr");
-	    	throw new RuntimeException(e);
-	    }
+	    dbItr.close();
     }
 
 	/**
@@ -178,11 +172,11 @@ public class HistoryScanner implements IResultsIterator {
         this.key = key;
     }
 
-    public DBIterator getDbItr() {
+    public IDBIterator getDbItr() {
         return dbItr;
     }
 
-    public void setDbItr(DBIterator dbItr) {
+    public void setDbItr(IDBIterator dbItr) {
         this.dbItr = dbItr;
     }
 
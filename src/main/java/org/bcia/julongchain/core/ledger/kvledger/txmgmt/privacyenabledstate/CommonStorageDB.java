@@ -17,6 +17,7 @@ package org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate;
 
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.IResultsIterator;
+import org.bcia.julongchain.common.ledger.util.IDBSnapshot;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.*;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.CompositeKey;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.VersionedValue;
@@ -52,6 +53,22 @@ public class CommonStorageDB implements IDB {
         return vdb instanceof IBulkOptimizable;
     }
 
+    @Override
+    public boolean isSnapshotReadable() {
+        return vdb instanceof ISnapshotReadable;
+    }
+
+    /**
+     * 数据库不支持快照时返回null
+     */
+    @Override
+    public IDBSnapshot getSnapshot() throws LedgerException {
+        if (!isSnapshotReadable()) {
+            return null;
+        }
+        return ((ISnapshotReadable) vdb).getSnapshot();
+    }
+
     @Override
     public void loadCommittedVersionsOfPubAndHashedKeys(List<CompositeKey> pubKeys,
                                                         List<HashedCompositeKey> hashKeys) throws LedgerException{
@@ -138,6 +155,11 @@ public class CommonStorageDB implements IDB {
         return getStateRangeScanIterator(derivePvtDataNs(ns, coll), startKey, endKey);
     }
 
+    @Override
+    public IResultsIterator getPrivateDataRangeScanIterator(String ns, String coll, String startKey, String endKey, IDBSnapshot snapshot) throws LedgerException {
+        return getStateRangeScanIterator(derivePvtDataNs(ns, coll), startKey, endKey, snapshot);
+    }
+
     @Override
     public IResultsIterator executeQueryOnPrivateData(String ns, String coll, String query) throws LedgerException{
         return executeQuery(derivePvtDataNs(ns, coll), query);
@@ -208,6 +230,17 @@ public class CommonStorageDB implements IDB {
         return vdb.getStateRangeScanIterator(namespace, startKey, endKey);
     }
 
+    /**
+     * snapshot为null或数据库不支持快照时, 不使用快照查询
+     */
+    @Override
+    public IResultsIterator getStateRangeScanIterator(String namespace, String startKey, String endKey, IDBSnapshot snapshot) throws LedgerException {
+        if (snapshot == null || !isSnapshotReadable()) {
+            return vdb.getStateRangeScanIterator(namespace, startKey, endKey);
+        }
+        return ((ISnapshotReadable) vdb).getStateRangeScanIterator(namespace, startKey, endKey, snapshot);
+    }
+
     @Override
     public IResultsIterator executeQuery(String namespace, String query) throws LedgerException {
         return vdb.executeQuery(namespace, query);
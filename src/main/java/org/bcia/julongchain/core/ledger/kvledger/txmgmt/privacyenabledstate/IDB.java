@@ -17,6 +17,7 @@ package org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate;
 
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.IResultsIterator;
+import org.bcia.julongchain.common.ledger.util.IDBSnapshot;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.*;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.CompositeKey;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.VersionedValue;
@@ -32,10 +33,12 @@ import java.util.List;
  * @date 2018/04/17
  * @company Dingxuan
  */
-public interface IDB extends IVersionedDB {
+public interface IDB extends IVersionedDB, ISnapshotReadable {
 
     boolean isBulkOptimizable();
 
+    boolean isSnapshotReadable();
+
     void loadCommittedVersionsOfPubAndHashedKeys(List<CompositeKey> pubKeys, List<HashedCompositeKey> hashKeys) throws LedgerException;
 
     LedgerHeight getCachedKeyHashVersion(String ns, String coll, byte[] keyHash) throws LedgerException;
@@ -54,6 +57,8 @@ public interface IDB extends IVersionedDB {
 
     IResultsIterator getPrivateDataRangeScanIterator(String ns, String coll, String startKey, String endKey) throws LedgerException;
 
+    IResultsIterator getPrivateDataRangeScanIterator(String ns, String coll, String startKey, String endKey, IDBSnapshot snapshot) throws LedgerException;
+
     IResultsIterator executeQueryOnPrivateData(String ns, String coll, String query) throws LedgerException;
 
     void applyPrivacyAwareUpdates(UpdateBatch updates, LedgerHeight height) throws LedgerException;
@@ -0,0 +1,40 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+		 http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb;
+
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.ledger.IResultsIterator;
+import org.bcia.julongchain.common.ledger.util.IDBSnapshot;
+
+/**
+ * 提供基于快照查询的数据库接口
+ * 同一查询器中的多个范围查询共用一个快照
+ *
+ * @author sunzongyu
+ * @date 2018/10/12
+ * @company Dingxuan
+ */
+public interface ISnapshotReadable {
+    /**
+     * 创建快照, 使用结束后需要close
+     */
+    IDBSnapshot getSnapshot() throws LedgerException;
+
+    /**
+     * 在快照上进行范围查询, 返回的迭代器关闭时不关闭快照
+     */
+    IResultsIterator getStateRangeScanIterator(String namespace, String startKey, String endKey, IDBSnapshot snapshot) throws LedgerException;
+}
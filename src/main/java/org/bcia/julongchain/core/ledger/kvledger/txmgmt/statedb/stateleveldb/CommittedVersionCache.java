@@ -0,0 +1,134 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+		 http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb;
+
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 已提交版本缓存
+ * 按最近使用顺序保留至多maxSize个key的已提交版本(包括不存在的key), 超出时淘汰最久未使用的key
+ * 提交时由UpdateBatch直接写入(write-through), 最近写入的key读取版本时不再访问数据库
+ * 只有持有该缓存的VersionedLevelDB写入状态数据库时, 缓存内容才与数据库一致
+ *
+ * @author sunzongyu
+ * @date 2018/10/14
+ * @company Dingxuan
+ */
+public class CommittedVersionCache {
+    private final int maxSize;
+    private final LinkedHashMap<CompositeKey, LedgerHeight> versions;
+    /**
+     * 每次提交递增, 读取数据库期间有提交时, 读取结果不放入缓存
+     */
+    private long commitSeq;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public CommittedVersionCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.versions = new LinkedHashMap<CompositeKey, LedgerHeight>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CompositeKey, LedgerHeight> eldest) {
+                if (size() > CommittedVersionCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 获取已提交版本, 未缓存时由loader读取数据库
+     */
+    public LedgerHeight getHeight(String ns, String key, IHeightLoader loader) throws LedgerException {
+        CompositeKey compositeKey = new CompositeKey(ns, key);
+        long seq;
+        synchronized (this) {
+            LedgerHeight height = versions.get(compositeKey);
+            if (height != null || versions.containsKey(compositeKey)) {
+                hits++;
+                return height;
+            }
+            misses++;
+            seq = commitSeq;
+        }
+        LedgerHeight height = loader.load(ns, key);
+        synchronized (this) {
+            if (seq == commitSeq) {
+                versions.put(compositeKey, height);
+            }
+        }
+        return height;
+    }
+
+    /**
+     * 写入数据库后, 更新batch中所有key的版本
+     */
+    public synchronized void update(UpdateBatch batch) {
+        for (Map.Entry<String, NsUpdates> nsEntry : batch.getUpdates().entrySet()) {
+            for (Map.Entry<String, VersionedValue> entry : nsEntry.getValue().getMap().entrySet()) {
+                VersionedValue vv = entry.getValue();
+                versions.put(new CompositeKey(nsEntry.getKey(), entry.getKey()), vv == null ? null : vv.getHeight());
+            }
+        }
+        commitSeq++;
+    }
+
+    public synchronized void clear() {
+        versions.clear();
+        commitSeq++;
+    }
+
+    public synchronized int size() {
+        return versions.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return String.format("size [%d/%d], hits [%d], misses [%d], hit ratio [%.2f%%], evictions [%d]",
+                versions.size(), maxSize, hits, misses, total == 0 ? 0.0 : hits * 100.0 / total, evictions);
+    }
+
+    /**
+     * 从数据库读取已提交版本
+     */
+    public interface IHeightLoader {
+        LedgerHeight load(String ns, String key) throws LedgerException;
+    }
+}
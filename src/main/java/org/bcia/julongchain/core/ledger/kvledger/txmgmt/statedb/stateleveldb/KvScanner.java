@@ -17,13 +17,13 @@ package org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb;
 
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.IResultsIterator;
+import org.bcia.julongchain.common.ledger.util.IDBIterator;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.VersionedKV;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
 import org.bcia.julongchain.core.ledger.util.Util;
 
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -35,10 +35,10 @@ import java.util.Map;
  */
 public class KvScanner implements IResultsIterator {
     private String nameSpace;
-    private Iterator dbItr;
+    private IDBIterator dbItr;
 	private String endKey;
 
-    public KvScanner(String nameSpace, Iterator dbItr, String endKey) {
+    public KvScanner(String nameSpace, IDBIterator dbItr, String endKey) {
         this.nameSpace = nameSpace;
         this.dbItr = dbItr;
         this.endKey = endKey;
@@ -49,7 +49,7 @@ public class KvScanner implements IResultsIterator {
         if(!dbItr.hasNext()){
             return null;
         }
-        Map.Entry<byte[], byte[]> iterator = (Map.Entry<byte[], byte[]>) dbItr.next();
+        Map.Entry<byte[], byte[]> iterator = dbItr.next();
         byte[] dbKey = iterator.getKey();
 	    byte[] dbVal = iterator.getValue();
         byte[] dbValCpy = Arrays.copyOf(dbVal, dbVal.length);
@@ -67,7 +67,7 @@ public class KvScanner implements IResultsIterator {
 
     @Override
     public void close() throws LedgerException {
-
+        dbItr.close();
     }
 
     public String getNameSpace() {
@@ -78,11 +78,11 @@ public class KvScanner implements IResultsIterator {
         this.nameSpace = nameSpace;
     }
 
-    public Iterator getDbItr() {
+    public IDBIterator getDbItr() {
         return dbItr;
     }
 
-    public void setDbItr(Iterator dbItr) {
+    public void setDbItr(IDBIterator dbItr) {
         this.dbItr = dbItr;
     }
 
@@ -21,6 +21,7 @@ import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.VersionedKV;
 import org.bcia.julongchain.core.ledger.util.Util;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -46,12 +47,12 @@ public class NsIterator implements IResultsIterator {
         if(startKey == null || ("").equals(startKey)){
             nextIndex = 0;
         } else {
-            nextIndex = sortKeys.indexOf(startKey);
+            nextIndex = searchKey(sortKeys, startKey);
         }
         if(endKey == null || ("").equals(endKey)){
             lastIndex = sortKeys.size();
         } else {
-            lastIndex = sortKeys.indexOf(endKey);
+            lastIndex = searchKey(sortKeys, endKey);
         }
         this.ns = ns;
         this.nsUpdates = nsUpdates;
@@ -60,6 +61,14 @@ public class NsIterator implements IResultsIterator {
         this.lastIndex = lastIndex;
     }
 
+    /**
+     * key在有序列表中的位置, 不存在时返回插入位置
+     */
+    private static int searchKey(List<String> sortedKeys, String key){
+        int index = Collections.binarySearch(sortedKeys, key);
+        return index < 0 ? -index - 1 : index;
+    }
+
     /** Next gives next key and versioned value. It returns a nil when exhausted
      *
      * @return
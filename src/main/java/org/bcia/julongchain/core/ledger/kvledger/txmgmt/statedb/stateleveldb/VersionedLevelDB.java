@@ -18,9 +18,13 @@ package org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb;
 import org.apache.commons.lang3.ArrayUtils;
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.IResultsIterator;
+import org.bcia.julongchain.common.ledger.util.IDBIterator;
 import org.bcia.julongchain.common.ledger.util.IDBProvider;
+import org.bcia.julongchain.common.ledger.util.IDBSnapshot;
+import org.bcia.julongchain.common.ledger.util.leveldbhelper.LevelKeyCodec;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.ISnapshotReadable;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.IVersionedDB;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
 import org.bcia.julongchain.core.ledger.util.Util;
@@ -28,7 +32,6 @@ import org.bouncycastle.util.encoders.Hex;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -39,7 +42,7 @@ import java.util.Map;
  * @date 2018/04/13
  * @company Dingxuan
  */
-public class VersionedLevelDB implements IVersionedDB {
+public class VersionedLevelDB implements IVersionedDB, ISnapshotReadable {
     private static final byte[] COMPOSITE_KEY_SEP = new String(new char[]{Character.MIN_VALUE}).getBytes(StandardCharsets.UTF_8);
     private static final byte[] SAVE_POINT_KEY = new String(new char[]{Character.MIN_VALUE}).getBytes(StandardCharsets.UTF_8);
 
@@ -47,10 +50,24 @@ public class VersionedLevelDB implements IVersionedDB {
 
     private IDBProvider db;
     private String dbName;
+    /**
+     * 已提交版本缓存, 为null时不缓存
+     */
+    private CommittedVersionCache versionCache;
 
     public VersionedLevelDB(IDBProvider db, String dbName) {
+        this(db, dbName, 0);
+    }
+
+    /**
+     * @param versionCacheSize 已提交版本缓存的key数量, 0为不缓存
+     */
+    public VersionedLevelDB(IDBProvider db, String dbName, int versionCacheSize) {
         this.db = db;
         this.dbName = dbName;
+        if (versionCacheSize > 0) {
+            this.versionCache = new CommittedVersionCache(versionCacheSize);
+        }
     }
 
     @Override
@@ -73,12 +90,21 @@ public class VersionedLevelDB implements IVersionedDB {
 
     @Override
     public LedgerHeight getHeight(String namespace, String key) throws LedgerException {
-        VersionedValue versionedValue = getState(namespace, key);
-        if (versionedValue == null) {
+        if (versionCache == null) {
+            return readHeight(namespace, key);
+        }
+        return versionCache.getHeight(namespace, key, this::readHeight);
+    }
+
+    /**
+     * 从数据库读取版本, 只解析value的前16字节
+     */
+    private LedgerHeight readHeight(String namespace, String key) throws LedgerException {
+        byte[] dbVal = db.get(constructCompositeKey(namespace, key));
+        if (dbVal == null) {
             return null;
-        } else {
-            return versionedValue.getHeight();
         }
+        return new LedgerHeight(dbVal);
     }
 
     @Override
@@ -94,7 +120,19 @@ public class VersionedLevelDB implements IVersionedDB {
     @Override
     public IResultsIterator getStateRangeScanIterator(String namespace, String startKey, String endKey) throws LedgerException {
         byte[] compositeStartKey = constructCompositeKey(namespace, startKey);
-        Iterator dbItr = db.getIterator(compositeStartKey);
+        IDBIterator dbItr = db.getIterator(compositeStartKey, constructRangeEndKey(namespace, endKey));
+        return new KvScanner(namespace, dbItr, endKey);
+    }
+
+    @Override
+    public IDBSnapshot getSnapshot() throws LedgerException {
+        return db.getSnapshot();
+    }
+
+    @Override
+    public IResultsIterator getStateRangeScanIterator(String namespace, String startKey, String endKey, IDBSnapshot snapshot) throws LedgerException {
+        byte[] compositeStartKey = constructCompositeKey(namespace, startKey);
+        IDBIterator dbItr = snapshot.getIterator(compositeStartKey, constructRangeEndKey(namespace, endKey));
         return new KvScanner(namespace, dbItr, endKey);
     }
 
@@ -126,6 +164,10 @@ public class VersionedLevelDB implements IVersionedDB {
         }
         dbBatch.put(SAVE_POINT_KEY, height.toBytes());
         db.writeBatch(dbBatch, true);
+        if (versionCache != null) {
+            versionCache.update(batch);
+            log.debug("Group [" + dbName + "]: committed version cache " + versionCache);
+        }
     }
 
     @Override
@@ -157,6 +199,10 @@ public class VersionedLevelDB implements IVersionedDB {
         return true;
     }
 
+    public CommittedVersionCache getVersionCache() {
+        return versionCache;
+    }
+
     public static byte[] constructCompositeKey(String ns, String key){
         byte[] result = ArrayUtils.addAll(ns.getBytes(StandardCharsets.UTF_8), COMPOSITE_KEY_SEP);
         if(key == null){
@@ -166,6 +212,26 @@ public class VersionedLevelDB implements IVersionedDB {
         }
     }
 
+    /**
+     * 范围查询的结束位置
+     * endKey中含有U+E000及以上字符时, UTF-8字节序与String比较结果可能不一致, 此时仅限定在namespace内, 由KvScanner按endKey截止
+     */
+    private static byte[] constructRangeEndKey(String ns, String endKey){
+        if(endKey != null && !endKey.isEmpty()){
+            boolean byteOrderSafe = true;
+            for (int i = 0; i < endKey.length(); i++) {
+                if (endKey.charAt(i) >= '\uE000') {
+                    byteOrderSafe = false;
+                    break;
+                }
+            }
+            if(byteOrderSafe){
+                return constructCompositeKey(ns, endKey);
+            }
+        }
+        return LevelKeyCodec.prefixEnd(constructCompositeKey(ns, null));
+    }
+
     public static String splitCompositeKeyToKey(byte[] compositeKey){
        String tmp = new String(compositeKey, StandardCharsets.UTF_8);
        String[] result = tmp.split(new String(COMPOSITE_KEY_SEP, StandardCharsets.UTF_8));
@@ -33,6 +33,7 @@ public interface ITxManager extends IRecoverable {
 
     /**
      * 创建查询器
+     * 有异步提交进行中时, 等待其写入状态数据库后创建
      * @param txid 交易id
      * @return 查询器
      */
@@ -40,11 +41,19 @@ public interface ITxManager extends IRecoverable {
 
     /**
      * 创建交易模拟器
+     * 有异步提交进行中时, 等待其写入状态数据库后创建
      * @param txid 交易id
      * @return 交易模拟器
      */
     ITxSimulator newTxSimulator(String txid) throws LedgerException;
 
+    /**
+     * 获取已注册的交易模拟器
+     * @param txid 交易id
+     * @return 交易模拟器, 不存在时返回null
+     */
+    ITxSimulator getTxSimulator(String txid);
+
     /**
      * 校验数据
      */
@@ -72,6 +81,18 @@ public interface ITxManager extends IRecoverable {
      */
     void commit() throws LedgerException;
 
+    /**
+     * 异步提交区块(流水线提交)
+     * 等待上一区块写入状态数据库后, 在提交线程中写入本区块的更新并立即返回
+     * 写入完成前, 下一区块的验证从本区块的更新中读取已提交版本
+     */
+    void commitAsync() throws LedgerException;
+
+    /**
+     * 等待异步提交完成
+     */
+    void waitForPendingCommit() throws LedgerException;
+
     /**
      * 回滚
      */
@@ -30,14 +30,22 @@ import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.Ver
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.txmgr.ITxManager;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.IValidator;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valimpl.DefaultValidator;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PendingUpdates;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+import org.bcia.julongchain.core.ledger.ledgerconfig.LedgerConfig;
 import org.bcia.julongchain.protos.common.Common;
 import org.bcia.julongchain.protos.ledger.rwset.kvrwset.KvRwset;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * 交易管理者类
@@ -55,7 +63,24 @@ public class LockBasedTxManager implements ITxManager {
     private UpdateBatch batch;
     private Common.Block currentBlock;
     private Map<String, IStateListener> stateListeners;
-    private static Map<String, LockBasedTxSimulator> txSimulatorMap = new HashMap<>();
+    /**
+     * 本账本进行中的交易模拟器, 以交易ID为key
+     */
+    private final Map<String, LockBasedTxSimulator> txSimulators = new ConcurrentHashMap<>();
+    /**
+     * 提交屏障, 交易模拟期间持有读锁, 写入状态数据库时持有写锁
+     * StampedLock不绑定线程, 模拟器可以在创建线程之外的线程中结束
+     */
+    private final StampedLock commitBarrier = new StampedLock();
+    /**
+     * 流水线提交时写入状态数据库的线程, 首次异步提交时创建
+     */
+    private ExecutorService stateCommitter;
+    /**
+     * 进行中的异步提交, 模拟器与查询器创建时无锁读取
+     */
+    private volatile Future<?> pendingCommit;
+    private volatile PendingUpdates pendingUpdates;
 
     public LockBasedTxManager(String ledgerID,
                               IDB db,
@@ -72,7 +97,8 @@ public class LockBasedTxManager implements ITxManager {
 	 * @param txid 交易id
 	 */
     @Override
-    public synchronized IQueryExecutor newQueryExecutor(String txid) throws LedgerException {
+    public IQueryExecutor newQueryExecutor(String txid) throws LedgerException {
+        awaitPendingCommit();
         return new LockBasedQueryExecutor(this, txid);
     }
 
@@ -81,18 +107,110 @@ public class LockBasedTxManager implements ITxManager {
 	 * @param txid 交易id
 	 */
     @Override
-    public synchronized ITxSimulator newTxSimulator(String txid) throws LedgerException {
-	    if (txSimulatorMap.containsKey(txid)) {
+    public ITxSimulator newTxSimulator(String txid) throws LedgerException {
+	    LockBasedTxSimulator simulator = txSimulators.get(txid);
+	    if (simulator != null) {
 		    log.debug("Contains tx simulator with txid: " + txid);
-		    return txSimulatorMap.get(txid);
-	    } else {
-		    log.debug("Constructing new tx simulator");
-		    LockBasedTxSimulator simulator = new LockBasedTxSimulator(this, txid);
-		    txSimulatorMap.put(txid, simulator);
 		    return simulator;
 	    }
+	    log.debug("Constructing new tx simulator");
+	    awaitPendingCommit();
+	    //提交写入状态数据库期间等待
+	    simulator = new LockBasedTxSimulator(this, txid, commitBarrier.readLock());
+	    LockBasedTxSimulator existing = txSimulators.putIfAbsent(txid, simulator);
+	    if (existing != null) {
+		    simulator.done();
+		    return existing;
+	    }
+	    return simulator;
     }
 
+	/**
+	 * 等待已发布高度的区块写入状态数据库, 使新的模拟与查询读到与账本高度一致的状态
+	 * 不持有对象锁等待: 提交线程需要等待进行中的模拟结束, 而模拟中可能再创建查询器
+	 */
+	private void awaitPendingCommit() throws LedgerException {
+		Future<?> commit = pendingCommit;
+		if (commit == null) {
+			return;
+		}
+		try {
+			commit.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LedgerException(e);
+		} catch (ExecutionException e) {
+			throw new LedgerException("State db is behind the block store, commit failed", e.getCause());
+		}
+	}
+
+	/**
+	 * 获取已注册的交易模拟器, 不存在时返回null
+	 * @param txid 交易id
+	 */
+	@Override
+	public ITxSimulator getTxSimulator(String txid) {
+		return txSimulators.get(txid);
+	}
+
+	/**
+	 * 模拟器结束, 释放提交屏障的读锁
+	 */
+	void releaseTxSimulator(String txid, LockBasedTxSimulator simulator, long stamp) {
+		txSimulators.remove(txid, simulator);
+		commitBarrier.unlockRead(stamp);
+	}
+
+	/**
+	 * 等待进行中的交易模拟结束后获取提交屏障的写锁
+	 * 每等待simulationLeakTimeout, 将超时仍未结束的模拟视为泄漏(未调用done()), 使其失效并释放读锁后重试
+	 * 失效的模拟之后的读取与获取模拟结果失败, 不会读到本次提交之后的状态
+	 */
+	private long acquireCommitBarrier() throws LedgerException {
+		long timeout = LedgerConfig.getSimulationLeakTimeout();
+		try {
+			long stamp;
+			while ((stamp = commitBarrier.tryWriteLock(timeout, TimeUnit.MILLISECONDS)) == 0) {
+				releaseLeakedSimulators(timeout);
+			}
+			return stamp;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LedgerException(e);
+		}
+	}
+
+	private void releaseLeakedSimulators(long timeout) {
+		long now = System.currentTimeMillis();
+		for (LockBasedTxSimulator simulator : txSimulators.values()) {
+			long age = now - simulator.getCreateTime();
+			if (age >= timeout) {
+				log.warn(String.format("Group %s: tx simulator [%s] created by thread [%s] is not done after %d ms, invalidating it and releasing it from commit barrier",
+						ledgerID, simulator.getQueryExecutor().getTxID(), simulator.getCreateThread(), age));
+				simulator.forceReleaseBarrier();
+			}
+		}
+	}
+
+	/**
+	 * 持有提交屏障写入状态数据库
+	 */
+	void applyUpdates(UpdateBatch b, LedgerHeight height) throws LedgerException {
+		long stamp = acquireCommitBarrier();
+		try {
+			db.applyPrivacyAwareUpdates(b, height);
+		} finally {
+			commitBarrier.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * 进行中的交易模拟器数量
+	 */
+	public int getOpenTxSimulatorCount() {
+		return txSimulators.size();
+	}
+
 	/**
 	 * 验证交易有效性以及准备更新包
 	 */
@@ -101,7 +219,7 @@ public class LockBasedTxManager implements ITxManager {
         try {
             Common.Block block = blockAndPvtData.getBlock();
 			log.debug("Validating new block with num trans = " + block.getData().getDataList().size());
-            UpdateBatch b = validator.validateAndPrepareBatch(blockAndPvtData, doMVCCValidation);
+            UpdateBatch b = validator.validateAndPrepareBatch(blockAndPvtData, doMVCCValidation, pendingUpdates);
             currentBlock = block;
             batch = b;
             invokeNamespaceListeners(batch);
@@ -145,12 +263,13 @@ public class LockBasedTxManager implements ITxManager {
 
     @Override
     public synchronized void commit() throws LedgerException {
+        waitForPendingCommit();
         try{
             log.debug("Committing updates to state db");
             if(batch == null){
                 throw new LedgerException("validateAndPrepare() method should have been called before calling commit()");
             }
-            db.applyPrivacyAwareUpdates(batch,
+            applyUpdates(batch,
                     new LedgerHeight(currentBlock.getHeader().getNumber(), (long) (currentBlock.getData().getDataList().size() - 1)));
             log.debug("Update committed to state db");
         } finally {
@@ -160,14 +279,72 @@ public class LockBasedTxManager implements ITxManager {
     }
 
     @Override
-    public void rollback() throws LedgerException {
+    public synchronized void commitAsync() throws LedgerException {
+        //couchDB验证前预读已提交版本, 不支持与提交重叠
+        if(db.isBulkOptimizable()){
+            commit();
+            return;
+        }
+        waitForPendingCommit();
+        if(batch == null){
+            throw new LedgerException("validateAndPrepare() method should have been called before calling commitAsync()");
+        }
+        UpdateBatch b = batch;
+        long blockNum = currentBlock.getHeader().getNumber();
+        LedgerHeight height = new LedgerHeight(blockNum, (long) (currentBlock.getData().getDataList().size() - 1));
+        //在提交线程修改更新包之前复制
+        pendingUpdates = new PendingUpdates(blockNum, b);
+        batch = null;
+        if(stateCommitter == null){
+            stateCommitter = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "state-committer-" + ledgerID);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        pendingCommit = stateCommitter.submit(() -> {
+            log.debug("Committing updates of block " + blockNum + " to state db");
+            applyUpdates(b, height);
+            log.debug("Update of block " + blockNum + " committed to state db");
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized void waitForPendingCommit() throws LedgerException {
+        if(pendingCommit == null){
+            return;
+        }
+        try {
+            pendingCommit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LedgerException(e);
+        } catch (ExecutionException e) {
+            throw new LedgerException("Failed to commit block " + pendingUpdates.getBlockNum() + " to state db", e.getCause());
+        } finally {
+            pendingCommit = null;
+            pendingUpdates = null;
+        }
+    }
+
+    @Override
+    public synchronized void rollback() throws LedgerException {
+        waitForPendingCommit();
         batch = null;
         clearCache();
     }
 
     @Override
-    public void shutdown() throws LedgerException {
-        db.close();
+    public synchronized void shutdown() throws LedgerException {
+        try {
+            waitForPendingCommit();
+        } finally {
+            if(stateCommitter != null){
+                stateCommitter.shutdown();
+            }
+            db.close();
+        }
     }
 
     private void clearCache(){
@@ -251,11 +428,7 @@ public class LockBasedTxManager implements ITxManager {
         this.stateListeners = stateListeners;
     }
 
-	public static void setTxSimulatorMap(Map<String, LockBasedTxSimulator> txSimulatorMap) {
-		LockBasedTxManager.txSimulatorMap = txSimulatorMap;
-	}
-
-	public static Map<String, LockBasedTxSimulator> getTxSimulatorMap() {
-		return txSimulatorMap;
+	public Map<String, LockBasedTxSimulator> getTxSimulators() {
+		return txSimulators;
 	}
 }
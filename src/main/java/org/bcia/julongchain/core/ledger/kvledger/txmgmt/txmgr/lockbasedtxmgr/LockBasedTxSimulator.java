@@ -24,6 +24,7 @@ import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.RWSetBuilder;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 交易模拟器
@@ -37,8 +38,14 @@ public class LockBasedTxSimulator implements ITxSimulator {
     private RWSetBuilder rwSetBuilder;
     private boolean writePreformed;
     private boolean pvtdataQueriesPerformed;
-
-    public LockBasedTxSimulator(LockBasedTxManager txMgr, String txID) {
+    /**
+     * 提交屏障读锁, 结束或被视为泄漏时释放并置0
+     */
+    private final AtomicLong barrierStamp;
+    private final long createTime = System.currentTimeMillis();
+    private final String createThread = Thread.currentThread().getName();
+
+    public LockBasedTxSimulator(LockBasedTxManager txMgr, String txID, long barrierStamp) {
         RWSetBuilder rwSetBuilder = new RWSetBuilder();
 
         QueryHelper queryHelper = new QueryHelper(txMgr, rwSetBuilder);
@@ -47,6 +54,7 @@ public class LockBasedTxSimulator implements ITxSimulator {
         this.rwSetBuilder = rwSetBuilder;
         this.writePreformed = false;
         this.pvtdataQueriesPerformed = false;
+        this.barrierStamp = new AtomicLong(barrierStamp);
     }
 
     @Override
@@ -79,6 +87,8 @@ public class LockBasedTxSimulator implements ITxSimulator {
     @Override
     public TxSimulationResults getTxSimulationResults() throws LedgerException {
         done();
+        //被强制释放的模拟读集不可信, 背书失败
+        queryExecutor.getHelper().checkBarrier();
         return rwSetBuilder.getTxSimulationResults();
     }
 
@@ -143,7 +153,30 @@ public class LockBasedTxSimulator implements ITxSimulator {
 
     @Override
     public void done() {
-		queryExecutor.done();
+        try {
+            queryExecutor.done();
+        } finally {
+            releaseBarrier();
+        }
+    }
+
+    /**
+     * 超时仍未结束, 视为泄漏强制释放提交屏障读锁
+     * 先使模拟失效再释放读锁, 之后的读取与获取模拟结果抛出LedgerException
+     */
+    void forceReleaseBarrier() {
+        queryExecutor.getHelper().releaseBarrier();
+        releaseBarrier();
+    }
+
+    /**
+     * 释放提交屏障读锁, 只释放一次
+     */
+    void releaseBarrier() {
+        long stamp = barrierStamp.getAndSet(0);
+        if (stamp != 0) {
+            queryExecutor.getHelper().getTxMgr().releaseTxSimulator(queryExecutor.getTxID(), this, stamp);
+        }
     }
 
     public void checkBeforeWrite() throws LedgerException {
@@ -159,6 +192,14 @@ public class LockBasedTxSimulator implements ITxSimulator {
         }
     }
 
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public String getCreateThread() {
+        return createThread;
+    }
+
     public LockBasedQueryExecutor getQueryExecutor() {
         return queryExecutor;
     }
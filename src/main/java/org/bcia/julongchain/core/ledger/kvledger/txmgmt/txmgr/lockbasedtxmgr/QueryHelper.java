@@ -17,6 +17,7 @@ package org.bcia.julongchain.core.ledger.kvledger.txmgmt.txmgr.lockbasedtxmgr;
 
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.IResultsIterator;
+import org.bcia.julongchain.common.ledger.util.IDBSnapshot;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.RWSetBuilder;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.VersionedValue;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
@@ -40,7 +41,16 @@ public class QueryHelper {
     private LockBasedTxManager txMgr;
     private RWSetBuilder rwSetBuilder;
     private List<ResultsItr> itrs = new ArrayList<>();
+    private List<IResultsIterator> pvtItrs = new ArrayList<>();
+    /**
+     * 本查询器中的范围查询共用的快照, 首次范围查询时创建, done时释放
+     */
+    private IDBSnapshot snapshot;
     private boolean doneInvoked = false;
+    /**
+     * 模拟超时被强制释放提交屏障后置位, 之后的读取可能看到其后提交的状态, 不再允许使用
+     */
+    private volatile boolean barrierReleased = false;
 
     public QueryHelper(LockBasedTxManager txMgr, RWSetBuilder rwSetBuilder) {
         this.txMgr = txMgr;
@@ -75,7 +85,7 @@ public class QueryHelper {
 
     public IResultsIterator getStateRangeScanIterator(String ns, String startKey, String endKey) throws LedgerException{
         checkDone();
-        ResultsItr itr = new ResultsItr(ns, startKey, endKey, txMgr.getDb(), rwSetBuilder, true, LedgerConfig.getMaxDegreeQueryReadsHashing());
+        ResultsItr itr = new ResultsItr(ns, startKey, endKey, txMgr.getDb(), getSnapshot(), rwSetBuilder, true, LedgerConfig.getMaxDegreeQueryReadsHashing());
         itrs.add(itr);
         return itr;
     }
@@ -119,7 +129,8 @@ public class QueryHelper {
 
     public IResultsIterator getPrivateDataRangeScanIterator(String ns, String coll, String startKey, String endKey) throws LedgerException {
         checkDone();
-        IResultsIterator dbitr = txMgr.getDb().getPrivateDataRangeScanIterator(ns, coll, startKey, endKey);
+        IResultsIterator dbitr = txMgr.getDb().getPrivateDataRangeScanIterator(ns, coll, startKey, endKey, getSnapshot());
+        pvtItrs.add(dbitr);
         return new PvtdataIResultsItr(ns, coll, dbitr);
     }
 
@@ -160,7 +171,21 @@ public class QueryHelper {
             for(IResultsIterator itr : itrs){
                 itr.close();
             }
+            for(IResultsIterator itr : pvtItrs){
+                itr.close();
+            }
+            if(snapshot != null){
+                snapshot.close();
+                snapshot = null;
+            }
+        }
+    }
+
+    private IDBSnapshot getSnapshot() throws LedgerException{
+        if(snapshot == null){
+            snapshot = txMgr.getDb().getSnapshot();
         }
+        return snapshot;
     }
 
     private void addToReadSet(String ns, String key, LedgerHeight ver){
@@ -179,6 +204,24 @@ public class QueryHelper {
         if(doneInvoked){
             throw new LedgerException("This instance should not be used after calling Done()");
         }
+        checkBarrier();
+    }
+
+    /**
+     * 检查是否仍受提交屏障保护
+     */
+    public void checkBarrier() throws LedgerException{
+        if(barrierReleased){
+            throw new LedgerException("Tx simulation exceeded simulationLeakTimeout and was released from commit barrier, its reads are no longer isolated from commits");
+        }
+    }
+
+    public void releaseBarrier() {
+        barrierReleased = true;
+    }
+
+    public boolean isBarrierReleased() {
+        return barrierReleased;
     }
 
     public LockBasedTxManager getTxMgr() {
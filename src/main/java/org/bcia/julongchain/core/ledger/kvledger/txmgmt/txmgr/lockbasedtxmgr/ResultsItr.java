@@ -17,9 +17,11 @@ package org.bcia.julongchain.core.ledger.kvledger.txmgmt.txmgr.lockbasedtxmgr;
 
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.common.ledger.IResultsIterator;
+import org.bcia.julongchain.common.ledger.util.IDBSnapshot;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.RWSetBuilder;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.RangeQueryResultsHelper;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.RwSetUtil;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.ISnapshotReadable;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.IVersionedDB;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.VersionedKV;
@@ -50,8 +52,27 @@ public class ResultsItr implements IResultsIterator {
                       RWSetBuilder rwSetBuilder,
                       boolean enableHashing,
                       int maxDegree) throws LedgerException {
+        this(ns, startKey, endKey, db, null, rwSetBuilder, enableHashing, maxDegree);
+    }
+
+    /**
+     * snapshot不为null时, 在快照上查询, 关闭迭代器时不关闭快照
+     */
+    public ResultsItr(String ns,
+                      String startKey,
+                      String endKey,
+                      IVersionedDB db,
+                      IDBSnapshot snapshot,
+                      RWSetBuilder rwSetBuilder,
+                      boolean enableHashing,
+                      int maxDegree) throws LedgerException {
     	endKey = endKey == null ? new String(new char[]{Character.MAX_VALUE}) : endKey;
-        IResultsIterator dbItr = db.getStateRangeScanIterator(ns, startKey, endKey);
+        IResultsIterator dbItr;
+        if (snapshot != null && db instanceof ISnapshotReadable) {
+            dbItr = ((ISnapshotReadable) db).getStateRangeScanIterator(ns, startKey, endKey, snapshot);
+        } else {
+            dbItr = db.getStateRangeScanIterator(ns, startKey, endKey);
+        }
         this.ns = ns;
         this.dbItr = dbItr;
         if(rwSetBuilder != null){
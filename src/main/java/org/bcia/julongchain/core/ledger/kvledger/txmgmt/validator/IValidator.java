@@ -18,6 +18,7 @@ package org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator;
 import org.bcia.julongchain.common.exception.LedgerException;
 import org.bcia.julongchain.core.ledger.BlockAndPvtData;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.UpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PendingUpdates;
 
 /**
  * 验证器接口
@@ -31,4 +32,10 @@ public interface IValidator {
 	 * 执行检验并准备更新包
 	 */
     UpdateBatch validateAndPrepareBatch(BlockAndPvtData blockAndPvtData, boolean doMVCCValidation) throws LedgerException;
+
+	/**
+	 * 执行检验并准备更新包
+	 * @param pendingUpdates 正在写入状态数据库的上一区块的更新, 没有时为null
+	 */
+    UpdateBatch validateAndPrepareBatch(BlockAndPvtData blockAndPvtData, boolean doMVCCValidation, PendingUpdates pendingUpdates) throws LedgerException;
 }
@@ -0,0 +1,292 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+		 http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.statebasedval;
+
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.IDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.PubUpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.CollHashedRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.NsRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.RwSetUtil;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.CompositeKey;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Block;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.InternalValidator;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PendingUpdates;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PubAndHashUpdates;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Transaction;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+import org.bcia.julongchain.protos.ledger.rwset.kvrwset.KvRwset;
+import org.bcia.julongchain.protos.node.TransactionPackage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * 并行statedb验证器
+ * 1. 根据区块内交易的读写集构建依赖图(TxDependencyGraph)
+ * 2. 并行批量读取区块内所有读集合key的已提交版本
+ * 3. 按依赖层次验证交易, 同一层内的交易在ForkJoinPool中并行验证, 仅存在读写冲突的交易链按顺序验证
+ * 4. 按区块内顺序应用有效交易的写集合
+ * 验证结果与顺序验证的Validator一致
+ *
+ * @author sunzongyu
+ * @date 2018/10/13
+ * @company Dingxuan
+ */
+public class ParallelValidator implements InternalValidator {
+    private static JulongChainLog log = JulongChainLogFactory.getLog(ParallelValidator.class);
+
+    private static ForkJoinPool sharedPool;
+
+    private final IDB db;
+    private final ForkJoinPool pool;
+    private final Validator validator;
+
+    public ParallelValidator(IDB db, ForkJoinPool pool) {
+        this.db = db;
+        this.pool = pool;
+        this.validator = new Validator(db);
+    }
+
+    public ParallelValidator(IDB db, int parallelism) {
+        this(db, getSharedPool(parallelism));
+    }
+
+    /**
+     * 所有账本共用的验证线程池, 以首次创建时的并行度为准
+     */
+    public static synchronized ForkJoinPool getSharedPool(int parallelism) {
+        if (sharedPool == null) {
+            sharedPool = new ForkJoinPool(parallelism);
+            log.info("Created MVCC validation pool with parallelism " + parallelism);
+        }
+        return sharedPool;
+    }
+
+    public PubAndHashUpdates validateAndPrepareBatch(Block block, boolean doMVCCValidation) throws LedgerException {
+        return validateAndPrepareBatch(block, doMVCCValidation, null);
+    }
+
+    @Override
+    public PubAndHashUpdates validateAndPrepareBatch(Block block, boolean doMVCCValidation, PendingUpdates pendingUpdates) throws LedgerException {
+        List<Transaction> txs = block.getTxs();
+        if (!doMVCCValidation || txs.size() < 2) {
+            return validator.validateAndPrepareBatch(block, doMVCCValidation, pendingUpdates);
+        }
+        //couchDB继承BulkOptimizable
+        if (db.isBulkOptimizable()) {
+            validator.preLoadCommittedVersionOfRSet(block);
+        }
+        TxDependencyGraph graph = new TxDependencyGraph(txs);
+        Map<CompositeKey, LedgerHeight> pubVersions = loadPubVersions(graph, pendingUpdates);
+        Map<TxDependencyGraph.HashedReadKey, LedgerHeight> hashedVersions = loadHashedVersions(graph, pendingUpdates);
+        log.debug(String.format("Block [%d] validating [%d] transactions in [%d] levels", block.getNum(), txs.size(), graph.getLevels().size()));
+
+        TransactionPackage.TxValidationCode[] codes = new TransactionPackage.TxValidationCode[txs.size()];
+        for (List<Integer> level : graph.getLevels()) {
+            //同一层的交易只依赖之前层的验证结果
+            invoke(() -> level.parallelStream().forEach(i -> {
+                try {
+                    codes[i] = validateTx(block, txs, i, codes, graph, pubVersions, hashedVersions, pendingUpdates);
+                } catch (LedgerException e) {
+                    throw new ValidationException(e);
+                }
+            }));
+        }
+
+        PubAndHashUpdates updates = new PubAndHashUpdates();
+        for (int i = 0; i < txs.size(); i++) {
+            Transaction tx = txs.get(i);
+            tx.setValidationCode(codes[i]);
+            if (TransactionPackage.TxValidationCode.VALID.equals(codes[i])) {
+                log.debug(String.format("Block [%d] Transaction index [%d] txID [%s] marked as valid by state validator", block.getNum(), tx.getIndexInBlock(), tx.getId()));
+                updates.applyWriteSet(tx.getRwSet(), new LedgerHeight(block.getNum(), tx.getIndexInBlock()));
+            } else {
+                log.debug(String.format("Block [%d] Transaction id [%d] TxID [%s] marked as invalid by state validator.", block.getNum(), tx.getIndexInBlock(), tx.getId()));
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * 与Validator.validateTx顺序一致
+     * 之前有效交易的写集合通过依赖图判断, 已提交版本从预读结果中获取
+     */
+    private TransactionPackage.TxValidationCode validateTx(Block block,
+                                                           List<Transaction> txs,
+                                                           int i,
+                                                           TransactionPackage.TxValidationCode[] codes,
+                                                           TxDependencyGraph graph,
+                                                           Map<CompositeKey, LedgerHeight> pubVersions,
+                                                           Map<TxDependencyGraph.HashedReadKey, LedgerHeight> hashedVersions,
+                                                           PendingUpdates pendingUpdates) throws LedgerException {
+        for (NsRwSet nsRwSet : txs.get(i).getRwSet().getNsRwSets()) {
+            String ns = nsRwSet.getNameSpace();
+            for (KvRwset.KVRead kvRead : nsRwSet.getKvRwSet().getReadsList()) {
+                CompositeKey compositeKey = new CompositeKey(ns, kvRead.getKey());
+                if (writtenByValidTx(graph.getPubWriters(compositeKey), i, codes)
+                        || !LedgerHeight.areSame(pubVersions.get(compositeKey), RwSetUtil.newVersion(kvRead.getVersion()))) {
+                    return TransactionPackage.TxValidationCode.MVCC_READ_CONFLICT;
+                }
+            }
+            if (nsRwSet.getKvRwSet().getRangeQueriesInfoCount() > 0) {
+                PubUpdateBatch precedingUpdates = precedingUpdates(block, txs, i, codes, graph, nsRwSet).getPubUpdates();
+                if (pendingUpdates != null) {
+                    PubUpdateBatch merged = new PubUpdateBatch();
+                    merged.setBatch(pendingUpdates.mergePubUpdates(ns, precedingUpdates.getBatch()));
+                    precedingUpdates = merged;
+                }
+                for (KvRwset.RangeQueryInfo rqi : nsRwSet.getKvRwSet().getRangeQueriesInfoList()) {
+                    if (!validator.validateRangeQuery(ns, rqi, precedingUpdates)) {
+                        return TransactionPackage.TxValidationCode.MVCC_READ_CONFLICT;
+                    }
+                }
+            }
+            for (CollHashedRwSet col : nsRwSet.getCollHashedRwSets()) {
+                String coll = col.getCollectionName();
+                for (KvRwset.KVReadHash kvReadHash : col.getHashedRwSet().getHashedReadsList()) {
+                    TxDependencyGraph.HashedReadKey readKey = new TxDependencyGraph.HashedReadKey(ns, coll, kvReadHash.getKeyHash());
+                    if (writtenByValidTx(graph.getHashedWriters(TxDependencyGraph.toHashedCompositeKey(ns, coll, kvReadHash.getKeyHash())), i, codes)
+                            || !LedgerHeight.areSame(hashedVersions.get(readKey), RwSetUtil.newVersion(kvReadHash.getVersion()))) {
+                        return TransactionPackage.TxValidationCode.MVCC_READ_CONFLICT;
+                    }
+                }
+            }
+        }
+        return TransactionPackage.TxValidationCode.VALID;
+    }
+
+    /**
+     * 之前是否有有效交易写入了该key
+     */
+    private static boolean writtenByValidTx(List<Integer> writers, int i, TransactionPackage.TxValidationCode[] codes) {
+        if (writers == null) {
+            return false;
+        }
+        for (int j : writers) {
+            if (j >= i) {
+                break;
+            }
+            if (TransactionPackage.TxValidationCode.VALID.equals(codes[j])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 范围查询所在namespace中, 之前有效交易的写集合(按区块内顺序应用)
+     */
+    private PubAndHashUpdates precedingUpdates(Block block,
+                                               List<Transaction> txs,
+                                               int i,
+                                               TransactionPackage.TxValidationCode[] codes,
+                                               TxDependencyGraph graph,
+                                               NsRwSet nsRwSet) throws LedgerException {
+        PubAndHashUpdates updates = new PubAndHashUpdates();
+        List<Integer> nsWriters = graph.getNsWriters(nsRwSet.getNameSpace());
+        if (nsWriters == null) {
+            return updates;
+        }
+        for (int j : nsWriters) {
+            if (j >= i) {
+                break;
+            }
+            if (TransactionPackage.TxValidationCode.VALID.equals(codes[j])) {
+                Transaction tx = txs.get(j);
+                updates.applyWriteSet(tx.getRwSet(), new LedgerHeight(block.getNum(), tx.getIndexInBlock()));
+            }
+        }
+        return updates;
+    }
+
+    private Map<CompositeKey, LedgerHeight> loadPubVersions(TxDependencyGraph graph, PendingUpdates pendingUpdates) throws LedgerException {
+        List<CompositeKey> keys = new ArrayList<>(graph.getPubReadKeys());
+        LedgerHeight[] versions = new LedgerHeight[keys.size()];
+        invoke(() -> IntStream.range(0, keys.size()).parallel().forEach(k -> {
+            try {
+                CompositeKey key = keys.get(k);
+                versions[k] = pendingUpdates == null ? db.getHeight(key.getNamespace(), key.getKey())
+                        : pendingUpdates.getHeight(db, key.getNamespace(), key.getKey());
+            } catch (LedgerException e) {
+                throw new ValidationException(e);
+            }
+        }));
+        Map<CompositeKey, LedgerHeight> result = new HashMap<>(keys.size() * 2);
+        for (int k = 0; k < keys.size(); k++) {
+            result.put(keys.get(k), versions[k]);
+        }
+        return result;
+    }
+
+    private Map<TxDependencyGraph.HashedReadKey, LedgerHeight> loadHashedVersions(TxDependencyGraph graph, PendingUpdates pendingUpdates) throws LedgerException {
+        List<TxDependencyGraph.HashedReadKey> keys = new ArrayList<>(graph.getHashedReadKeys());
+        LedgerHeight[] versions = new LedgerHeight[keys.size()];
+        invoke(() -> IntStream.range(0, keys.size()).parallel().forEach(k -> {
+            TxDependencyGraph.HashedReadKey key = keys.get(k);
+            try {
+                byte[] keyHash = key.getKeyHash().toByteArray();
+                versions[k] = pendingUpdates == null ? db.getKeyHashVersion(key.getNs(), key.getColl(), keyHash)
+                        : pendingUpdates.getKeyHashVersion(db, key.getNs(), key.getColl(), keyHash);
+            } catch (LedgerException e) {
+                throw new ValidationException(e);
+            }
+        }));
+        Map<TxDependencyGraph.HashedReadKey, LedgerHeight> result = new HashMap<>(keys.size() * 2);
+        for (int k = 0; k < keys.size(); k++) {
+            result.put(keys.get(k), versions[k]);
+        }
+        return result;
+    }
+
+    /**
+     * 在验证线程池中执行并等待完成
+     */
+    private void invoke(Runnable task) throws LedgerException {
+        try {
+            pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LedgerException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ValidationException) {
+                throw (LedgerException) cause.getCause();
+            }
+            throw new LedgerException(cause);
+        }
+    }
+
+    public IDB getDb() {
+        return db;
+    }
+
+    /**
+     * 在并行任务中传递LedgerException
+     */
+    private static class ValidationException extends RuntimeException {
+        private ValidationException(LedgerException cause) {
+            super(cause);
+        }
+    }
+}
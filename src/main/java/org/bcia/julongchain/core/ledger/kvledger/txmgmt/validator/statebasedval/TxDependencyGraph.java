@@ -0,0 +1,196 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+		 http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.statebasedval;
+
+import com.google.protobuf.ByteString;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.HashedCompositeKey;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.CollHashedRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.NsRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.CompositeKey;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Transaction;
+import org.bcia.julongchain.protos.ledger.rwset.kvrwset.KvRwset;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 区块内交易的读写依赖图
+ * 交易i读取(或范围查询)了之前交易j写入的key(或namespace)时, i依赖j
+ * 按依赖深度将交易分层, 同一层内的交易互不依赖, 可并行验证
+ * 下标为交易在区块交易列表中的位置
+ *
+ * @author sunzongyu
+ * @date 2018/10/13
+ * @company Dingxuan
+ */
+class TxDependencyGraph {
+    /**
+     * key -> 写入该key的交易(升序)
+     */
+    private final Map<CompositeKey, List<Integer>> pubWriters = new HashMap<>();
+    private final Map<HashedCompositeKey, List<Integer>> hashedWriters = new HashMap<>();
+    /**
+     * namespace -> 在该namespace中有公有写集的交易(升序), 用于范围查询
+     */
+    private final Map<String, List<Integer>> nsWriters = new HashMap<>();
+    /**
+     * 区块内读取的不重复key, 用于批量读取已提交版本
+     */
+    private final Set<CompositeKey> pubReadKeys = new LinkedHashSet<>();
+    private final Set<HashedReadKey> hashedReadKeys = new LinkedHashSet<>();
+    private final List<List<Integer>> levels = new ArrayList<>();
+
+    TxDependencyGraph(List<Transaction> txs) {
+        Map<CompositeKey, Integer> pubKeyLevel = new HashMap<>();
+        Map<HashedCompositeKey, Integer> hashedKeyLevel = new HashMap<>();
+        Map<String, Integer> nsLevel = new HashMap<>();
+        for (int i = 0; i < txs.size(); i++) {
+            List<NsRwSet> nsRwSets = txs.get(i).getRwSet().getNsRwSets();
+            //依赖的交易所在层的下一层
+            int level = 0;
+            for (NsRwSet nsRwSet : nsRwSets) {
+                String ns = nsRwSet.getNameSpace();
+                for (KvRwset.KVRead kvRead : nsRwSet.getKvRwSet().getReadsList()) {
+                    CompositeKey compositeKey = new CompositeKey(ns, kvRead.getKey());
+                    pubReadKeys.add(compositeKey);
+                    level = nextLevel(level, pubKeyLevel.get(compositeKey));
+                }
+                if (nsRwSet.getKvRwSet().getRangeQueriesInfoCount() > 0) {
+                    level = nextLevel(level, nsLevel.get(ns));
+                }
+                for (CollHashedRwSet col : nsRwSet.getCollHashedRwSets()) {
+                    for (KvRwset.KVReadHash kvReadHash : col.getHashedRwSet().getHashedReadsList()) {
+                        hashedReadKeys.add(new HashedReadKey(ns, col.getCollectionName(), kvReadHash.getKeyHash()));
+                        level = nextLevel(level, hashedKeyLevel.get(toHashedCompositeKey(ns, col.getCollectionName(), kvReadHash.getKeyHash())));
+                    }
+                }
+            }
+            while (levels.size() <= level) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(level).add(i);
+
+            for (NsRwSet nsRwSet : nsRwSets) {
+                String ns = nsRwSet.getNameSpace();
+                for (KvRwset.KVWrite kvWrite : nsRwSet.getKvRwSet().getWritesList()) {
+                    CompositeKey compositeKey = new CompositeKey(ns, kvWrite.getKey());
+                    addWriter(pubWriters, compositeKey, i);
+                    pubKeyLevel.merge(compositeKey, level, Math::max);
+                    addWriter(nsWriters, ns, i);
+                    nsLevel.merge(ns, level, Math::max);
+                }
+                for (CollHashedRwSet col : nsRwSet.getCollHashedRwSets()) {
+                    for (KvRwset.KVWriteHash kvWriteHash : col.getHashedRwSet().getHashedWritesList()) {
+                        HashedCompositeKey hashedKey = toHashedCompositeKey(ns, col.getCollectionName(), kvWriteHash.getKeyHash());
+                        addWriter(hashedWriters, hashedKey, i);
+                        hashedKeyLevel.merge(hashedKey, level, Math::max);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 与HashedUpdateBatch保持一致, keyHash按UTF-8转为字符串后比较
+     */
+    static HashedCompositeKey toHashedCompositeKey(String ns, String coll, ByteString keyHash) {
+        return new HashedCompositeKey(ns, coll, new String(keyHash.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static int nextLevel(int level, Integer dependencyLevel) {
+        return dependencyLevel == null ? level : Math.max(level, dependencyLevel + 1);
+    }
+
+    private static <K> void addWriter(Map<K, List<Integer>> writers, K key, int txIndex) {
+        List<Integer> list = writers.computeIfAbsent(key, k -> new ArrayList<>());
+        if (list.isEmpty() || list.get(list.size() - 1) != txIndex) {
+            list.add(txIndex);
+        }
+    }
+
+    List<Integer> getPubWriters(CompositeKey key) {
+        return pubWriters.get(key);
+    }
+
+    List<Integer> getHashedWriters(HashedCompositeKey key) {
+        return hashedWriters.get(key);
+    }
+
+    List<Integer> getNsWriters(String ns) {
+        return nsWriters.get(ns);
+    }
+
+    Set<CompositeKey> getPubReadKeys() {
+        return pubReadKeys;
+    }
+
+    Set<HashedReadKey> getHashedReadKeys() {
+        return hashedReadKeys;
+    }
+
+    List<List<Integer>> getLevels() {
+        return levels;
+    }
+
+    /**
+     * 私有数据读集合的key, 保留keyHash原始字节用于读取已提交版本
+     */
+    static final class HashedReadKey {
+        private final String ns;
+        private final String coll;
+        private final ByteString keyHash;
+
+        HashedReadKey(String ns, String coll, ByteString keyHash) {
+            this.ns = ns;
+            this.coll = coll;
+            this.keyHash = keyHash;
+        }
+
+        String getNs() {
+            return ns;
+        }
+
+        String getColl() {
+            return coll;
+        }
+
+        ByteString getKeyHash() {
+            return keyHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HashedReadKey)) {
+                return false;
+            }
+            HashedReadKey that = (HashedReadKey) o;
+            return ns.equals(that.ns) && coll.equals(that.coll) && keyHash.equals(that.keyHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return (ns.hashCode() * 31 + coll.hashCode()) * 31 + keyHash.hashCode();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.TxRwSet;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.CompositeKey;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Block;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.InternalValidator;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PendingUpdates;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PubAndHashUpdates;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Transaction;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
@@ -53,6 +54,10 @@ public class Validator implements InternalValidator {
     private static JulongChainLog log = JulongChainLogFactory.getLog(Validator.class);
 
     private IDB db;
+    /**
+     * 正在写入状态数据库的上一区块的更新, 仅在validateAndPrepareBatch期间有效
+     */
+    private PendingUpdates pendingUpdates;
 
     public Validator(IDB db) {
         this.db = db;
@@ -91,8 +96,21 @@ public class Validator implements InternalValidator {
         }
     }
 
-    @Override
     public PubAndHashUpdates validateAndPrepareBatch(Block block, boolean doMVCCValidation) throws LedgerException {
+        return validateAndPrepareBatch(block, doMVCCValidation, null);
+    }
+
+    @Override
+    public PubAndHashUpdates validateAndPrepareBatch(Block block, boolean doMVCCValidation, PendingUpdates pendingUpdates) throws LedgerException {
+        this.pendingUpdates = pendingUpdates;
+        try {
+            return doValidateAndPrepareBatch(block, doMVCCValidation);
+        } finally {
+            this.pendingUpdates = null;
+        }
+    }
+
+    private PubAndHashUpdates doValidateAndPrepareBatch(Block block, boolean doMVCCValidation) throws LedgerException {
     	//couchDB继承BulkOptimizable
         if(db.isBulkOptimizable()){
             preLoadCommittedVersionOfRSet(block);
@@ -154,7 +172,8 @@ public class Validator implements InternalValidator {
         if(updates.getBatch().exists(ns, kvRead.getKey())){
             return false;
         }
-        LedgerHeight committedVersion = db.getHeight(ns, kvRead.getKey());
+        LedgerHeight committedVersion = pendingUpdates == null ? db.getHeight(ns, kvRead.getKey())
+                : pendingUpdates.getHeight(db, ns, kvRead.getKey());
         log.debug("Comparing versions for keys " + kvRead.getKey());
 		if(!LedgerHeight.areSame(committedVersion, RwSetUtil.newVersion(kvRead.getVersion()))){
 			log.info("Version mismatch for key [" + ns + ":" + kvRead.getKey() + "]");
@@ -164,6 +183,11 @@ public class Validator implements InternalValidator {
     }
 
     private boolean validateRangeQueries(String ns, List<KvRwset.RangeQueryInfo> rangeQueryInfo, PubUpdateBatch updates) throws LedgerException {
+        if(pendingUpdates != null && !rangeQueryInfo.isEmpty()){
+            PubUpdateBatch merged = new PubUpdateBatch();
+            merged.setBatch(pendingUpdates.mergePubUpdates(ns, updates.getBatch()));
+            updates = merged;
+        }
         for(KvRwset.RangeQueryInfo rqi : rangeQueryInfo){
             if(!validateRangeQuery(ns, rqi, updates)){
                 return false;
@@ -172,7 +196,7 @@ public class Validator implements InternalValidator {
         return true;
     }
 
-    private boolean validateRangeQuery(String ns, KvRwset.RangeQueryInfo rqi, PubUpdateBatch updates) throws LedgerException {
+    boolean validateRangeQuery(String ns, KvRwset.RangeQueryInfo rqi, PubUpdateBatch updates) throws LedgerException {
         log.debug(String.format("validateRangeQueryL ns = %s, rangQueryInfo = %s", ns, rqi));
         boolean includeEndKey = !rqi.getItrExhausted();
 
@@ -212,10 +236,12 @@ public class Validator implements InternalValidator {
     }
 
     public boolean validateKVReadHash(String ns, String collectionName, KvRwset.KVReadHash kvReadHash, HashedUpdateBatch updates) throws LedgerException{
-        if(updates.contains(ns, collectionName, kvReadHash.toByteArray())){
+        if(updates.contains(ns, collectionName, kvReadHash.getKeyHash().toByteArray())){
             return false;
         }
-        LedgerHeight committedVersion = db.getKeyHashVersion(ns, collectionName, kvReadHash.getKeyHash().toByteArray());
+        byte[] keyHash = kvReadHash.getKeyHash().toByteArray();
+        LedgerHeight committedVersion = pendingUpdates == null ? db.getKeyHashVersion(ns, collectionName, keyHash)
+                : pendingUpdates.getKeyHashVersion(db, ns, collectionName, keyHash);
         if(!LedgerHeight.areSame(committedVersion, RwSetUtil.newVersion(kvReadHash.getVersion()))){
             log.debug(String.format("Version mismatch for key[%s:%s]", ns, collectionName));
             return false;
@@ -24,10 +24,13 @@ import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.PvtU
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.UpdateBatch;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.txmgr.ITxManager;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.IValidator;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.statebasedval.ParallelValidator;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.statebasedval.Validator;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Block;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.InternalValidator;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PendingUpdates;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PubAndHashUpdates;
+import org.bcia.julongchain.core.ledger.ledgerconfig.LedgerConfig;
 import org.bcia.julongchain.protos.common.Common;
 
 /**
@@ -45,17 +48,27 @@ public class DefaultValidator implements IValidator {
 
     public DefaultValidator(ITxManager txMgr, IDB db) {
         this.txMgr = txMgr;
-        this.val = new Validator(db);
+        int parallelism = LedgerConfig.getValidationParallelism();
+        if (parallelism > 1) {
+            this.val = new ParallelValidator(db, parallelism);
+        } else {
+            this.val = new Validator(db);
+        }
     }
 
     @Override
     public UpdateBatch validateAndPrepareBatch(BlockAndPvtData blockAndPvtData, boolean doMVCCValidation) throws LedgerException {
+        return validateAndPrepareBatch(blockAndPvtData, doMVCCValidation, null);
+    }
+
+    @Override
+    public UpdateBatch validateAndPrepareBatch(BlockAndPvtData blockAndPvtData, boolean doMVCCValidation, PendingUpdates pendingUpdates) throws LedgerException {
         Common.Block block = blockAndPvtData.getBlock();
         Common.Block.Builder builder = block.toBuilder();
         log.debug("validateAndPrepareBatch() for block No." + block.getHeader().getNumber());
         log.debug("preprocessing block");
         Block internalBlock = Helper.preprocessProtoBlock(txMgr, builder, doMVCCValidation);
-        PubAndHashUpdates pubAndHashUpdates = val.validateAndPrepareBatch(internalBlock, doMVCCValidation);
+        PubAndHashUpdates pubAndHashUpdates = val.validateAndPrepareBatch(internalBlock, doMVCCValidation, pendingUpdates);
         log.debug("validating rwset...");
         PvtUpdateBatch pvtUpdates = Helper.validateAndPreparePvtBatch(internalBlock, blockAndPvtData.getBlockPvtData());
         log.debug("postprocessing Proto block");
@@ -27,6 +27,7 @@ import org.bcia.julongchain.common.exception.LedgerException;
 public interface InternalValidator {
     /**
      * 执行检验并准备更新包
+     * @param pendingUpdates 正在写入状态数据库的上一区块的更新, 没有时为null
      */
-    PubAndHashUpdates validateAndPrepareBatch(Block block, boolean doMVCCValidation) throws LedgerException;
+    PubAndHashUpdates validateAndPrepareBatch(Block block, boolean doMVCCValidation, PendingUpdates pendingUpdates) throws LedgerException;
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+		 http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal;
+
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.HashedCompositeKey;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.IDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.NsBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.CompositeKey;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.NsUpdates;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.UpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.VersionedValue;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 正在写入状态数据库的上一区块的更新(流水线提交)
+ * 验证下一区块时, 已提交版本先从该更新中查找, 不存在时再读取状态数据库
+ * 创建时复制更新内容, 提交线程修改原更新包不影响验证
+ *
+ * @author sunzongyu
+ * @date 2018/10/15
+ * @company Dingxuan
+ */
+public class PendingUpdates {
+    private final long blockNum;
+    private final UpdateBatch pubUpdates = new UpdateBatch();
+    private final Map<CompositeKey, LedgerHeight> pubVersions = new HashMap<>();
+    private final Map<HashedCompositeKey, LedgerHeight> hashedVersions = new HashMap<>();
+
+    public PendingUpdates(long blockNum, org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.UpdateBatch batch) throws LedgerException {
+        this.blockNum = blockNum;
+        for (Map.Entry<String, NsUpdates> nsEntry : batch.getPubUpdateBatch().getBatch().getUpdates().entrySet()) {
+            String ns = nsEntry.getKey();
+            for (Map.Entry<String, VersionedValue> entry : nsEntry.getValue().getMap().entrySet()) {
+                VersionedValue vv = entry.getValue();
+                if (vv.getValue() == null) {
+                    pubUpdates.delete(ns, entry.getKey(), vv.getHeight());
+                } else {
+                    pubUpdates.put(ns, entry.getKey(), vv.getValue(), vv.getHeight());
+                }
+                pubVersions.put(new CompositeKey(ns, entry.getKey()), vv.getHeight());
+            }
+        }
+        for (Map.Entry<String, NsBatch> nsEntry : batch.getHashUpdates().getMap().getMap().entrySet()) {
+            String ns = nsEntry.getKey();
+            for (Map.Entry<String, NsUpdates> collEntry : nsEntry.getValue().getBatch().getUpdates().entrySet()) {
+                String coll = collEntry.getKey();
+                for (Map.Entry<String, VersionedValue> entry : collEntry.getValue().getMap().entrySet()) {
+                    hashedVersions.put(new HashedCompositeKey(ns, coll, entry.getKey()), entry.getValue().getHeight());
+                }
+            }
+        }
+    }
+
+    /**
+     * key的已提交版本
+     */
+    public LedgerHeight getHeight(IDB db, String ns, String key) throws LedgerException {
+        LedgerHeight height = pubVersions.get(new CompositeKey(ns, key));
+        if (height != null) {
+            return height;
+        }
+        return db.getHeight(ns, key);
+    }
+
+    /**
+     * 私有数据key hash的已提交版本
+     */
+    public LedgerHeight getKeyHashVersion(IDB db, String ns, String coll, byte[] keyHash) throws LedgerException {
+        LedgerHeight height = hashedVersions.get(new HashedCompositeKey(ns, coll, new String(keyHash, StandardCharsets.UTF_8)));
+        if (height != null) {
+            return height;
+        }
+        return db.getKeyHashVersion(ns, coll, keyHash);
+    }
+
+    /**
+     * namespace内上一区块的更新与本区块更新合并, 本区块的更新覆盖上一区块, 用于范围查询验证
+     */
+    public UpdateBatch mergePubUpdates(String ns, UpdateBatch blockUpdates) throws LedgerException {
+        UpdateBatch merged = new UpdateBatch();
+        copy(ns, pubUpdates, merged);
+        copy(ns, blockUpdates, merged);
+        return merged;
+    }
+
+    private static void copy(String ns, UpdateBatch from, UpdateBatch to) throws LedgerException {
+        for (Map.Entry<String, VersionedValue> entry : from.getUpdates(ns).entrySet()) {
+            VersionedValue vv = entry.getValue();
+            if (vv.getValue() == null) {
+                to.delete(ns, entry.getKey(), vv.getHeight());
+            } else {
+                to.put(ns, entry.getKey(), vv.getValue(), vv.getHeight());
+            }
+        }
+    }
+
+    public long getBlockNum() {
+        return blockNum;
+    }
+}
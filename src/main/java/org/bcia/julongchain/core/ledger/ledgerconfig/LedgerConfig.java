@@ -16,9 +16,11 @@ limitations under the License.
 package org.bcia.julongchain.core.ledger.ledgerconfig;
 
 
+import org.bcia.julongchain.common.ledger.blkstorage.fsblkstorage.GroupCommitPolicy;
 import org.bcia.julongchain.core.node.NodeConfigFactory;
 
 import java.io.File;
+import java.util.Map;
 
 /**
  * 账本配置
@@ -44,6 +46,7 @@ public class LedgerConfig {
     private static final String CONF_WARM_INDEXES_AFTER_N_BLOCKS = "ledger.state.couchDBConfig.warmIndexesAfterNBlocks";
     private static final String DEFAULT_ROOT_DIR = NodeConfigFactory.getNodeConfig().getNode().getFileSystemPath();
     private static String ROOT_DIR = DEFAULT_ROOT_DIR;
+    private static final int DEFAULT_STATE_VERSION_CACHE_SIZE = 100000;
     private static final int DEFAULT_MAX_BLOCKFILE_SIZE = 64 * 1024 * 1024;
     private static int MAX_BLOCKFILE_SIZE;
     private static final int MAX_BATCH_SIZE = Integer.valueOf(NodeConfigFactory.getNodeConfig().getLedger().getState().getCouchDBConfig().get("maxBatchUpdateSize"));
@@ -52,10 +55,47 @@ public class LedgerConfig {
 	    return NodeConfigFactory.getNodeConfig().getLedger().getState().getStateDatabase().toLowerCase().contains("couchdb");
     }
 
+    /**
+     * LevelDB状态数据库已提交版本缓存的key数量, 0为不缓存
+     */
+    public static int getStateVersionCacheSize(){
+        Integer size = NodeConfigFactory.getNodeConfig().getLedger().getState().getVersionCacheSize();
+        return size == null ? DEFAULT_STATE_VERSION_CACHE_SIZE : size;
+    }
+
     public static boolean isHistoryDBEnabled(){
 	    return NodeConfigFactory.getNodeConfig().getLedger().getHistory().get("enableHistoryDatabase");
     }
 
+    /**
+     * 是否开启流水线提交
+     */
+    public static boolean isPipelinedCommitEnabled(){
+        Map<String, String> commit = NodeConfigFactory.getNodeConfig().getLedger().getCommit();
+        return commit != null && Boolean.parseBoolean(String.valueOf(commit.get("pipelined")));
+    }
+
+    /**
+     * 提交等待交易模拟结束的最长时间(毫秒), 超时未结束的模拟视为泄漏并失效
+     */
+    public static long getSimulationLeakTimeout(){
+        Map<String, String> commit = NodeConfigFactory.getNodeConfig().getLedger().getCommit();
+        return commit == null ? 30000 : parseInt(commit.get("simulationLeakTimeout"), 30000);
+    }
+
+    /**
+     * 区块文件组提交策略
+     * 未开启persistentChannel时返回null, 区块文件每次写入重新打开
+     */
+    public static GroupCommitPolicy getBlockfileGroupCommitPolicy(){
+        Map<String, String> blockStorage = NodeConfigFactory.getNodeConfig().getLedger().getBlockStorage();
+        if (blockStorage == null || !Boolean.parseBoolean(String.valueOf(blockStorage.get("persistentChannel")))) {
+            return null;
+        }
+        return new GroupCommitPolicy(parseInt(blockStorage.get("syncBlocks"), 1),
+                parseInt(blockStorage.get("syncIntervalMs"), 0));
+    }
+
     public static String getRootPath(){
         return ROOT_DIR;
     }
@@ -116,6 +156,37 @@ public class LedgerConfig {
         }
     }
 
+    /**
+     * 读取已写满区块文件时, 最多保持打开的文件数
+     */
+    public static int getMaxOpenBlockfiles(){
+        Map<String, String> blockStorage = NodeConfigFactory.getNodeConfig().getLedger().getBlockStorage();
+        if (blockStorage == null) {
+            return 0;
+        }
+        return parseInt(blockStorage.get("maxOpenSealedFiles"), 0);
+    }
+
+    /**
+     * 区块MVCC验证并行度, 1为顺序验证
+     * 未配置时顺序验证, 配置为0时使用可用处理器数
+     */
+    public static int getValidationParallelism(){
+        Map<String, String> validation = NodeConfigFactory.getNodeConfig().getLedger().getValidation();
+        if (validation == null) {
+            return 1;
+        }
+        int parallelism = parseInt(validation.get("parallelism"), 1);
+        return parallelism <= 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
+    }
+
+    private static int parseInt(Object value, int defaultValue){
+        if (value == null || "".equals(String.valueOf(value))) {
+            return defaultValue;
+        }
+        return Integer.parseInt(String.valueOf(value));
+    }
+
     private static String join(String... itms){
         StringBuffer buffer = new StringBuffer("");
         for(String itm : itms){
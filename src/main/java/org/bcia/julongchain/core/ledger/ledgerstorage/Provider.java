@@ -48,8 +48,10 @@ public class Provider {
         };
         IndexConfig indexConfig = new IndexConfig(attrsToIndex);
         //文件系统初始化参数
-		this.blkStoreProvider =
-				new FsBlockStoreProvider(new Config(LedgerConfig.getBlockStorePath(), LedgerConfig.getMaxBlockfileSize()), indexConfig);
+		Config blkStoreConfig = new Config(LedgerConfig.getBlockStorePath(), LedgerConfig.getMaxBlockfileSize(),
+				LedgerConfig.getBlockfileGroupCommitPolicy());
+		blkStoreConfig.setMaxOpenBlockFiles(LedgerConfig.getMaxOpenBlockfiles());
+		this.blkStoreProvider = new FsBlockStoreProvider(blkStoreConfig, indexConfig);
         //pvtdata初始化
         this.pvtDataProvider = new PvtDataProvider();
     }
@@ -89,7 +89,7 @@ public class Store implements IBlockStore {
 
     @Override
     public void shutdown() {
-
+        blkStorage.shutdown();
     }
 
     /**
@@ -0,0 +1,94 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.core.ledger.leveldb;
+
+import org.bcia.julongchain.common.ledger.util.IDBIterator;
+import org.iq80.leveldb.DBIterator;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * level db范围迭代器
+ * 遍历[startKey, endKey)范围内的kv, 到达endKey时停止, 不再继续扫描之后的数据
+ * 迭代器持有快照的引用, close时释放
+ *
+ * @author sunzongyu
+ * @date 2018/10/12
+ * @company Dingxuan
+ */
+public class LevelDBIterator implements IDBIterator {
+	private final DBIterator dbItr;
+	private final byte[] endKey;
+	private final LevelDBSnapshot snapshot;
+	private boolean closed = false;
+
+	LevelDBIterator(DBIterator dbItr, byte[] startKey, byte[] endKey, LevelDBSnapshot snapshot) {
+		this.dbItr = dbItr;
+		this.endKey = endKey;
+		this.snapshot = snapshot;
+		if (startKey != null) {
+			dbItr.seek(startKey);
+		} else {
+			dbItr.seekToFirst();
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed || !dbItr.hasNext()) {
+			return false;
+		}
+		return endKey == null || compareKeys(dbItr.peekNext().getKey(), endKey) < 0;
+	}
+
+	@Override
+	public Map.Entry<byte[], byte[]> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return dbItr.next();
+	}
+
+	/**
+	 * 不调用DBIterator.close()
+	 * 使用外部快照创建的iq80迭代器在close时会释放该快照的version, 快照由LevelDBSnapshot统一释放
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		snapshot.release();
+	}
+
+	public byte[] getEndKey() {
+		return endKey;
+	}
+
+	/**
+	 * 按无符号字节序比较key, 与level db默认比较器一致
+	 */
+	public static int compareKeys(byte[] a, byte[] b) {
+		int len = Math.min(a.length, b.length);
+		for (int i = 0; i < len; i++) {
+			int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return a.length - b.length;
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright Dingxuan. All Rights Reserved.
+ *
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.core.ledger.leveldb;
+
+import org.bcia.julongchain.common.exception.LevelDBException;
+import org.bcia.julongchain.common.ledger.util.IDBSnapshot;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.DBException;
+import org.iq80.leveldb.DBIterator;
+import org.iq80.leveldb.ReadOptions;
+import org.iq80.leveldb.Snapshot;
+
+import java.io.IOException;
+
+/**
+ * 持有level db快照的读取器
+ * 快照自身与由其创建的每个迭代器各占一个引用, 全部关闭后释放快照
+ * 同一查询中的多次读取与迭代可共用一个快照
+ *
+ * @author sunzongyu
+ * @date 2018/10/12
+ * @company Dingxuan
+ */
+public class LevelDBSnapshot implements IDBSnapshot {
+	private static JulongChainLog log = JulongChainLogFactory.getLog(LevelDBSnapshot.class);
+
+	private final DB db;
+	private final Snapshot snapshot;
+	private int refCount = 1;
+	private boolean closed = false;
+
+	public LevelDBSnapshot(DB db) throws LevelDBException {
+		this.db = db;
+		try {
+			this.snapshot = db.getSnapshot();
+		} catch (DBException e) {
+			throw new LevelDBException(e);
+		}
+	}
+
+	@Override
+	public byte[] get(byte[] key) throws LevelDBException {
+		checkOpen();
+		try {
+			return db.get(key, newReadOptions());
+		} catch (DBException e) {
+			log.error(e.getMessage(), e);
+			throw new LevelDBException(e);
+		}
+	}
+
+	@Override
+	public LevelDBIterator getIterator(byte[] startKey, byte[] endKey) throws LevelDBException {
+		synchronized (this) {
+			checkOpen();
+			refCount++;
+		}
+		DBIterator dbItr;
+		try {
+			dbItr = db.iterator(newReadOptions());
+		} catch (DBException e) {
+			release();
+			log.error(e.getMessage(), e);
+			throw new LevelDBException(e);
+		}
+		return new LevelDBIterator(dbItr, startKey, endKey, this);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		release();
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * 迭代器关闭时释放其对快照的引用
+	 */
+	synchronized void release() {
+		refCount--;
+		if (refCount == 0) {
+			try {
+				snapshot.close();
+			} catch (IOException e) {
+				log.error("Got error when close snapshot", e);
+			}
+		}
+	}
+
+	private synchronized void checkOpen() throws LevelDBException {
+		if (closed) {
+			throw new LevelDBException("Snapshot is closed");
+		}
+	}
+
+	private ReadOptions newReadOptions() {
+		return new ReadOptions().fillCache(false).snapshot(snapshot);
+	}
+}
@@ -115,23 +115,75 @@ public class LevelDBUtil {
 
 	/**
 	 * 向level db批量写入数据
+	 * 所有数据通过一个WriteBatch一次写入, value为null时删除key
 	 *
 	 * @param db - 要写入的level db数据库
 	 * @param map - 要批量写入的数据
 	 */
 	public static void add(DB db, Map<byte[], byte[]> map, boolean sync) throws LevelDBException {
+		write(db, map, new WriteOptions().sync(sync), 0);
+	}
+
+	/**
+	 * 使用指定的写入选项, 向level db原子地批量写入数据
+	 *
+	 * @param db - 要写入的level db数据库
+	 * @param map - 要批量写入的数据, value为null时删除key
+	 * @param writeOptions - 写入选项
+	 */
+	public static void write(DB db, Map<byte[], byte[]> map, WriteOptions writeOptions) throws LevelDBException {
+		write(db, map, writeOptions, 0);
+	}
+
+	/**
+	 * 使用指定的写入选项, 向level db批量写入数据
+	 * maxBatchBytes > 0时, 数据按key与value的累计字节数拆分为多个WriteBatch写入,
+	 * 每个WriteBatch各自原子写入, 整体不再保证原子性;
+	 * 需要同步写时仅最后一个WriteBatch同步写入(leveldb日志顺序写入, 同步最后一次写入即同步之前的写入)
+	 *
+	 * @param db - 要写入的level db数据库
+	 * @param map - 要批量写入的数据, value为null时删除key
+	 * @param writeOptions - 写入选项
+	 * @param maxBatchBytes - 单个WriteBatch的最大字节数, <=0时不拆分
+	 */
+	public static void write(DB db, Map<byte[], byte[]> map, WriteOptions writeOptions, long maxBatchBytes) throws LevelDBException {
+		if (map.isEmpty()) {
+			return;
+		}
+		WriteOptions intermediateOptions = new WriteOptions().sync(false).snapshot(writeOptions.snapshot());
 		WriteBatch writeBatch = db.createWriteBatch();
-		WriteOptions writeOptions = new WriteOptions().sync(sync);
-		map.forEach(
-				(k, v) -> {
-					if (v != null) {
-						writeBatch.put(k, v);
-					} else {
-						writeBatch.delete(k);
-					}
-					db.write(writeBatch, writeOptions);
-				});
-		closeWriteBatch(writeBatch);
+		long batchBytes = 0;
+		int batchCount = 0;
+		try {
+			for (Map.Entry<byte[], byte[]> entry : map.entrySet()) {
+				//当前WriteBatch已满, 写入并开始新的WriteBatch
+				if (maxBatchBytes > 0 && batchBytes >= maxBatchBytes) {
+					db.write(writeBatch, intermediateOptions);
+					WriteBatch fullBatch = writeBatch;
+					writeBatch = db.createWriteBatch();
+					closeWriteBatch(fullBatch);
+					batchBytes = 0;
+					batchCount++;
+				}
+				byte[] k = entry.getKey();
+				byte[] v = entry.getValue();
+				if (v != null) {
+					writeBatch.put(k, v);
+					batchBytes += k.length + v.length;
+				} else {
+					writeBatch.delete(k);
+					batchBytes += k.length;
+				}
+			}
+			db.write(writeBatch, writeOptions);
+			batchCount++;
+		} catch (DBException e) {
+			log.error(e.getMessage(), e);
+			throw new LevelDBException(e);
+		} finally {
+			closeWriteBatch(writeBatch);
+		}
+		log.debug("Wrote [{}] kvs to level db in [{}] write batches", map.size(), batchCount);
 	}
 
 	/**
@@ -162,27 +214,48 @@ public class LevelDBUtil {
 
 	/**
 	 * 查询level db数据库的key
+	 * 单次读取本身即读取同一时刻的数据, 不再为每次读取创建快照
 	 *
 	 * @param db - 要查询的level db
 	 * @param key - 要查询的key
 	 */
 	public static byte[] get(DB db, byte[] key, boolean fileCache) throws LevelDBException {
-		Snapshot snapshot = db.getSnapshot();
-		ReadOptions readOptions = new ReadOptions();
-		readOptions.fillCache(fileCache);
-		readOptions.snapshot(snapshot);
-		byte[] value = db.get(key, readOptions);
-		closeSnapshot(snapshot);
-		return value;
+		ReadOptions readOptions = new ReadOptions().fillCache(fileCache);
+		try {
+			return db.get(key, readOptions);
+		} catch (DBException e) {
+			log.error(e.getMessage(), e);
+			throw new LevelDBException(e);
+		}
+	}
+
+	/**
+	 * 创建指定level db的快照, 使用结束后需要close
+	 */
+	public static LevelDBSnapshot getSnapshot(DB db) throws LevelDBException {
+		return new LevelDBSnapshot(db);
 	}
 
-	/** 获取指定level db的迭代器 */
-	public static DBIterator getIterator(DB db) throws LevelDBException {
-		Snapshot snapshot = db.getSnapshot();
-		ReadOptions readOptions = new ReadOptions().fillCache(false).snapshot(snapshot);
-		DBIterator iterator = db.iterator(readOptions);
-		closeSnapshot(snapshot);
-		return iterator;
+	/** 获取指定level db的迭代器, 迭代器持有自己的快照, 使用结束后需要close */
+	public static LevelDBIterator getIterator(DB db) throws LevelDBException {
+		return getIterator(db, null, null);
+	}
+
+	/**
+	 * 获取遍历[startKey, endKey)的迭代器, 迭代器持有自己的快照, 使用结束后需要close
+	 *
+	 * @param db - 要遍历的level db
+	 * @param startKey - 开始key(包含), 为null时从头遍历
+	 * @param endKey - 结束key(不包含), 为null时遍历至末尾
+	 */
+	public static LevelDBIterator getIterator(DB db, byte[] startKey, byte[] endKey) throws LevelDBException {
+		LevelDBSnapshot snapshot = new LevelDBSnapshot(db);
+		try {
+			return snapshot.getIterator(startKey, endKey);
+		} finally {
+			//迭代器持有快照引用, 关闭迭代器时释放快照
+			snapshot.close();
+		}
 	}
 
 	/**
@@ -194,20 +267,20 @@ public class LevelDBUtil {
 	 * @throws LevelDBException
 	 */
 	public static byte[] getLastKey(DB db, byte[] startKey) throws LevelDBException {
-		Snapshot snapshot = db.getSnapshot();
-		ReadOptions readOptions = new ReadOptions().fillCache(false).snapshot(snapshot);
-		DBIterator iterator = db.iterator(readOptions);
-		iterator.seek(startKey);
 		byte[] lastKey = new byte[] {};
-		while (iterator.hasNext()) {
-			Map.Entry<byte[], byte[]> next = iterator.next();
-			if (HistoryDBHelper.checkStart(next.getKey(), startKey)) {
-				lastKey = next.getKey();
-			} else {
-				break;
+		LevelDBIterator iterator = getIterator(db, startKey, null);
+		try {
+			while (iterator.hasNext()) {
+				Map.Entry<byte[], byte[]> next = iterator.next();
+				if (HistoryDBHelper.checkStart(next.getKey(), startKey)) {
+					lastKey = next.getKey();
+				} else {
+					break;
+				}
 			}
+		} finally {
+			iterator.close();
 		}
-		closeSnapshot(snapshot);
 		return lastKey;
 	}
 
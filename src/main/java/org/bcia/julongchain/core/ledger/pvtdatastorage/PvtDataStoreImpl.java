@@ -17,6 +17,7 @@ package org.bcia.julongchain.core.ledger.pvtdatastorage;
 
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.ledger.util.IDBIterator;
 import org.bcia.julongchain.common.ledger.util.IDBProvider;
 import org.bcia.julongchain.common.ledger.util.leveldbhelper.UpdateBatch;
 import org.bcia.julongchain.common.log.JulongChainLog;
@@ -89,25 +90,30 @@ public class PvtDataStoreImpl implements IPvtDataStore {
         }
         byte[] startKey = KvEncoding.getStartKeyForRangeScanByBlockNum(blockNum);
         log.debug(String.format("Querying private data for write sets using startKey %s", Hex.toHexString(startKey)));
-        Iterator<Map.Entry<byte[], byte[]>> itr = db.getIterator(startKey);
+        byte[] endKey = KvEncoding.getEndKeyForRangeScanByBlockNum(blockNum);
+        IDBIterator itr = db.getIterator(startKey, endKey);
         List<TxPvtData> pvtData = new ArrayList<>();
-        while(itr.hasNext()){
-            Map.Entry<byte[], byte[]> entry = itr.next();
-            byte[] key = entry.getKey();
-            byte[] value = entry.getValue();
-            long bNum = KvEncoding.decodePKToBlockNum(key);
-            long tNum = KvEncoding.decodePKToTranNum(key);
-            Rwset.TxPvtReadWriteSet pvtRWSet = null;
-            try {
-                pvtRWSet = Rwset.TxPvtReadWriteSet.parseFrom(value);
-            } catch (InvalidProtocolBufferException e) {
-                throw new LedgerException(e);
+        try {
+            while(itr.hasNext()){
+                Map.Entry<byte[], byte[]> entry = itr.next();
+                byte[] key = entry.getKey();
+                byte[] value = entry.getValue();
+                long bNum = KvEncoding.decodePKToBlockNum(key);
+                long tNum = KvEncoding.decodePKToTranNum(key);
+                Rwset.TxPvtReadWriteSet pvtRWSet = null;
+                try {
+                    pvtRWSet = Rwset.TxPvtReadWriteSet.parseFrom(value);
+                } catch (InvalidProtocolBufferException e) {
+                    throw new LedgerException(e);
+                }
+                log.debug(String.format("Retrieved private data write set for block %d, tran %d", bNum, tNum));
+                //过滤无效的rwset
+                Rwset.TxPvtReadWriteSet fileteredWSet = trimPvtWSet(pvtRWSet, filter);
+                TxPvtData data = new TxPvtData(tNum, fileteredWSet);
+                pvtData.add(data);
             }
-            log.debug(String.format("Retrieved private data write set for block %d, tran %d", bNum, tNum));
-            //过滤无效的rwset
-            Rwset.TxPvtReadWriteSet fileteredWSet = trimPvtWSet(pvtRWSet, filter);
-            TxPvtData data = new TxPvtData(tNum, fileteredWSet);
-            pvtData.add(data);
+        } finally {
+            itr.close();
         }
         return pvtData;
     }
@@ -289,9 +295,13 @@ public class PvtDataStoreImpl implements IPvtDataStore {
 	 */
 	private List<byte[]> retrievePendingBatchKeys() throws LedgerException{
         List<byte[]> pendingBatchKeys = new ArrayList<>();
-        Iterator<Map.Entry<byte[], byte[]>> itr = db.getIterator(KvEncoding.encodePK(nextBlockNum(), 0));
-        while(itr.hasNext()){
-            pendingBatchKeys.add(itr.next().getKey());
+        IDBIterator itr = db.getIterator(KvEncoding.encodePK(nextBlockNum(), 0));
+        try {
+            while(itr.hasNext()){
+                pendingBatchKeys.add(itr.next().getKey());
+            }
+        } finally {
+            itr.close();
         }
         return pendingBatchKeys;
     }
@@ -340,6 +340,8 @@ public class Util {
 			log.error("Got error, total block number is " + totalBlockNum);
 			log.error(e.getMessage());
 			throw new LedgerException(e);
+		} finally {
+			stream.close();
 		}
 	}
 
@@ -356,8 +358,8 @@ public class Util {
 	}
 
 	public static void retrievalBlockFiles(String chainsDir) throws LedgerException{
+		BlockFileStream stream = new BlockFileStream(chainsDir, 0, 0);
 		try {
-			BlockFileStream stream = new BlockFileStream(chainsDir, 0, 0);
 			byte[] blockBytes = stream.nextBlockBytes();
 			Common.Block preBlock = null;
 			Common.Block currentBlock = blockBytes == null ?
@@ -409,6 +411,8 @@ public class Util {
 			log.error("Check block chain files failed");
 			// TODO: 9/5/18 exit code undefine
 			System.exit(3);
+		} finally {
+			stream.close();
 		}
 	}
 }
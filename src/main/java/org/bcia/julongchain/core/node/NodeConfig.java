@@ -47,6 +47,7 @@ public class NodeConfig {
         private Events events;
         private Tls tls;
         private String fileSystemPath;
+        private int validatorPoolSize;
 
         public String getId() {
             return id;
@@ -127,6 +128,14 @@ public class NodeConfig {
         public void setFileSystemPath(String fileSystemPath) {
             this.fileSystemPath = fileSystemPath;
         }
+
+        public int getValidatorPoolSize() {
+            return validatorPoolSize;
+        }
+
+        public void setValidatorPoolSize(int validatorPoolSize) {
+            this.validatorPoolSize = validatorPoolSize;
+        }
     }
 
     public static class VM {
@@ -151,6 +160,9 @@ public class NodeConfig {
         private String coreNodeAddress;
         private String coreNodeAddressPort;
         private String executetimeout;
+        private int maxInFlight;
+        private int queryPageSize;
+        private String queryCursorIdleTimeout;
         private String keepalive;
         private Map<String, String> system;
         private Map<String, String> systemPlugins;
@@ -172,6 +184,30 @@ public class NodeConfig {
             this.executetimeout = executetimeout;
         }
 
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        public int getQueryPageSize() {
+            return queryPageSize;
+        }
+
+        public void setQueryPageSize(int queryPageSize) {
+            this.queryPageSize = queryPageSize;
+        }
+
+        public String getQueryCursorIdleTimeout() {
+            return queryCursorIdleTimeout;
+        }
+
+        public void setQueryCursorIdleTimeout(String queryCursorIdleTimeout) {
+            this.queryCursorIdleTimeout = queryCursorIdleTimeout;
+        }
+
         public String getKeepalive() {
             return keepalive;
         }
@@ -240,6 +276,9 @@ public class NodeConfig {
     public static class Ledger {
         private State state;
         private Map<String, Boolean> history;
+        private Map<String, String> blockStorage;
+        private Map<String, String> validation;
+        private Map<String, String> commit;
 
         public State getState() {
             return state;
@@ -256,6 +295,30 @@ public class NodeConfig {
         public void setHistory(Map<String, Boolean> history) {
             this.history = history;
         }
+
+        public Map<String, String> getBlockStorage() {
+            return blockStorage;
+        }
+
+        public void setBlockStorage(Map<String, String> blockStorage) {
+            this.blockStorage = blockStorage;
+        }
+
+        public Map<String, String> getValidation() {
+            return validation;
+        }
+
+        public void setValidation(Map<String, String> validation) {
+            this.validation = validation;
+        }
+
+        public Map<String, String> getCommit() {
+            return commit;
+        }
+
+        public void setCommit(Map<String, String> commit) {
+            this.commit = commit;
+        }
     }
 
     public static class KeepAlive {
@@ -332,6 +395,8 @@ public class NodeConfig {
         private int buffersize;
         private int timeout;
         private int timewindow;
+        private int subscriberBuffersize;
+        private String overflowPolicy;
 
         public String getAddress() {
             return address;
@@ -364,6 +429,22 @@ public class NodeConfig {
         public void setTimewindow(int timewindow) {
             this.timewindow = timewindow;
         }
+
+        public int getSubscriberBuffersize() {
+            return subscriberBuffersize;
+        }
+
+        public void setSubscriberBuffersize(int subscriberBuffersize) {
+            this.subscriberBuffersize = subscriberBuffersize;
+        }
+
+        public String getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(String overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
     }
 
     public static class Tls {
@@ -476,6 +557,7 @@ public class NodeConfig {
     public static class State {
         private String stateDatabase;
         private Map<String, String> couchDBConfig;
+        private Integer versionCacheSize;
 
         public String getStateDatabase() {
             return stateDatabase;
@@ -492,5 +574,13 @@ public class NodeConfig {
         public void setCouchDBConfig(Map<String, String> couchDBConfig) {
             this.couchDBConfig = couchDBConfig;
         }
+
+        public Integer getVersionCacheSize() {
+            return versionCacheSize;
+        }
+
+        public void setVersionCacheSize(Integer versionCacheSize) {
+            this.versionCacheSize = versionCacheSize;
+        }
     }
 }
@@ -0,0 +1,266 @@
+/**
+ * Copyright Dingxuan. All Rights Reserved.
+ * <p>
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.core.smartcontract.node;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.ledger.IResultsIterator;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
+import org.bcia.julongchain.protos.node.SmartContractShim;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 智能合约范围查询、历史查询的服务端游标
+ * 查询结果按固定页大小返回(QueryResponse.has_more/id), 智能合约通过QUERY_STATE_NEXT获取下一页,
+ * QUERY_STATE_CLOSE关闭游标; 交易结束时关闭该交易的全部游标
+ * 超过空闲时间未访问的游标由后台线程关闭
+ *
+ * @author wanliangbing
+ * @date 2018/10/17
+ * @company Dingxuan
+ */
+public class QueryCursorRegistry {
+
+    private static Log logger = LogFactory.getLog(QueryCursorRegistry.class);
+
+    private final int pageSize;
+    private final long idleTimeout;
+
+    /**
+     * 以groupId-txId为key, 保存该交易打开的游标
+     */
+    private final Map<String, Map<String, Cursor>> txCursorMap = new ConcurrentHashMap<>();
+
+    private final AtomicLong cursorSeq = new AtomicLong();
+
+    private final ScheduledExecutorService reaper;
+
+    /**
+     * @param pageSize    每页返回的结果数
+     * @param idleTimeout 游标空闲超时时间(毫秒)
+     */
+    public QueryCursorRegistry(int pageSize, long idleTimeout) {
+        this.pageSize = pageSize;
+        this.idleTimeout = idleTimeout;
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "query-cursor-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleTimeout / 2);
+        reaper.scheduleWithFixedDelay(this::closeIdleCursors, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 打开游标并返回第一页
+     *
+     * @param groupId  群组编号
+     * @param txId     交易编号
+     * @param iterator 查询结果迭代器, 由游标负责关闭
+     * @param mapper   查询结果转换, 返回null表示结果结束
+     */
+    public SmartContractShim.QueryResponse open(String groupId, String txId, IResultsIterator iterator, IResultMapper mapper)
+            throws LedgerException {
+        String cursorId = String.valueOf(cursorSeq.incrementAndGet());
+        Cursor cursor = new Cursor(cursorId, iterator, mapper);
+        Map<String, Cursor> cursors = txCursorMap.computeIfAbsent(txKey(groupId, txId), k -> new ConcurrentHashMap<>());
+        cursors.put(cursorId, cursor);
+        SmartContractShim.QueryResponse response = cursor.nextPage();
+        if (!response.getHasMore()) {
+            remove(groupId, txId, cursorId);
+        }
+        return response;
+    }
+
+    /**
+     * 返回游标的下一页(QUERY_STATE_NEXT)
+     */
+    public SmartContractShim.QueryResponse next(String groupId, String txId, String cursorId) throws LedgerException {
+        Map<String, Cursor> cursors = txCursorMap.get(txKey(groupId, txId));
+        Cursor cursor = cursors == null ? null : cursors.get(cursorId);
+        if (cursor == null) {
+            throw new LedgerException("Query cursor " + cursorId + " of transaction " + txId + " does not exist or was closed");
+        }
+        SmartContractShim.QueryResponse response = cursor.nextPage();
+        if (!response.getHasMore()) {
+            remove(groupId, txId, cursorId);
+        }
+        return response;
+    }
+
+    /**
+     * 关闭游标(QUERY_STATE_CLOSE), 游标不存在时忽略
+     */
+    public void close(String groupId, String txId, String cursorId) {
+        remove(groupId, txId, cursorId);
+    }
+
+    /**
+     * 关闭交易打开的全部游标
+     */
+    public void closeAll(String groupId, String txId) {
+        Map<String, Cursor> cursors = txCursorMap.remove(txKey(groupId, txId));
+        if (cursors == null) {
+            return;
+        }
+        for (Cursor cursor : cursors.values()) {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 打开的游标数
+     */
+    public int size() {
+        int size = 0;
+        for (Map<String, Cursor> cursors : txCursorMap.values()) {
+            size += cursors.size();
+        }
+        return size;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void shutdown() {
+        reaper.shutdownNow();
+        for (String txKey : txCursorMap.keySet()) {
+            Map<String, Cursor> cursors = txCursorMap.remove(txKey);
+            if (cursors != null) {
+                cursors.values().forEach(Cursor::close);
+            }
+        }
+    }
+
+    void closeIdleCursors() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Map<String, Cursor>> txEntry : txCursorMap.entrySet()) {
+            Map<String, Cursor> cursors = txEntry.getValue();
+            for (Cursor cursor : cursors.values()) {
+                if (now - cursor.lastAccess > idleTimeout && cursors.remove(cursor.id, cursor)) {
+                    logger.warn("Close idle query cursor " + cursor.id + " of " + txEntry.getKey());
+                    cursor.close();
+                }
+            }
+            if (cursors.isEmpty()) {
+                txCursorMap.remove(txEntry.getKey(), cursors);
+            }
+        }
+    }
+
+    private void remove(String groupId, String txId, String cursorId) {
+        String txKey = txKey(groupId, txId);
+        Map<String, Cursor> cursors = txCursorMap.get(txKey);
+        if (cursors == null) {
+            return;
+        }
+        Cursor cursor = cursors.remove(cursorId);
+        if (cursor != null) {
+            cursor.close();
+        }
+        if (cursors.isEmpty()) {
+            txCursorMap.remove(txKey, cursors);
+        }
+    }
+
+    private static String txKey(String groupId, String txId) {
+        return groupId + "-" + txId;
+    }
+
+    /**
+     * 查询结果转换为返回给智能合约的字节
+     */
+    public interface IResultMapper {
+        /**
+         * @return 转换结果, 返回null表示结果结束
+         */
+        SmartContractShim.QueryResultBytes map(QueryResult queryResult) throws LedgerException;
+    }
+
+    /**
+     * 游标, 预读一条结果以判断是否还有下一页
+     */
+    private class Cursor {
+        private final String id;
+        private final IResultsIterator iterator;
+        private final IResultMapper mapper;
+        private SmartContractShim.QueryResultBytes lookahead;
+        private boolean exhausted;
+        private boolean closed;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Cursor(String id, IResultsIterator iterator, IResultMapper mapper) {
+            this.id = id;
+            this.iterator = iterator;
+            this.mapper = mapper;
+        }
+
+        synchronized SmartContractShim.QueryResponse nextPage() throws LedgerException {
+            if (closed) {
+                throw new LedgerException("Query cursor " + id + " was closed");
+            }
+            lastAccess = System.currentTimeMillis();
+            SmartContractShim.QueryResponse.Builder builder = SmartContractShim.QueryResponse.newBuilder().setId(id);
+            while (builder.getResultsCount() < pageSize) {
+                SmartContractShim.QueryResultBytes result = fetch();
+                if (result == null) {
+                    break;
+                }
+                builder.addResults(result);
+            }
+            if (lookahead == null) {
+                lookahead = fetch();
+            }
+            return builder.setHasMore(lookahead != null).build();
+        }
+
+        private SmartContractShim.QueryResultBytes fetch() throws LedgerException {
+            if (lookahead != null) {
+                SmartContractShim.QueryResultBytes result = lookahead;
+                lookahead = null;
+                return result;
+            }
+            if (exhausted) {
+                return null;
+            }
+            QueryResult queryResult = iterator.next();
+            SmartContractShim.QueryResultBytes result = queryResult == null ? null : mapper.map(queryResult);
+            if (result == null) {
+                exhausted = true;
+            }
+            return result;
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lookahead = null;
+            try {
+                iterator.close();
+            } catch (LedgerException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -33,9 +33,10 @@ import org.bcia.julongchain.core.ledger.ITxSimulator;
 import org.bcia.julongchain.core.ledger.kvledger.history.IHistoryQueryExecutor;
 import org.bcia.julongchain.core.ledger.kvledger.history.historydb.HistoryLevelDBProvider;
 import org.bcia.julongchain.core.ledger.kvledger.history.historydb.IHistoryDB;
-import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
 import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.VersionedKV;
 import org.bcia.julongchain.core.ledger.ledgerconfig.LedgerConfig;
+import org.bcia.julongchain.core.node.NodeConfig;
+import org.bcia.julongchain.core.node.NodeConfigFactory;
 import org.bcia.julongchain.core.node.util.NodeUtils;
 import org.bcia.julongchain.core.smartcontract.client.SmartContractSupportClient;
 import org.bcia.julongchain.protos.common.Common;
@@ -45,8 +46,15 @@ import org.bcia.julongchain.protos.node.*;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.bcia.julongchain.core.smartcontract.node.SmartContractRunningUtil.*;
 import static org.bcia.julongchain.core.smartcontract.node.TransactionRunningUtil.*;
@@ -71,7 +79,42 @@ public class SmartContractSupportService
             smartContractIdAndStreamObserverMap =
             Collections.synchronizedMap(new HashMap<String, StreamObserver<SmartContractMessage>>());
 
-    private static Map<String, LinkedBlockingQueue> txIdAndQueueMap = new HashMap<String, LinkedBlockingQueue>();
+    /**
+     * 默认执行超时时间(毫秒)
+     */
+    private static final long DEFAULT_EXECUTE_TIMEOUT = 30000L;
+
+    /**
+     * 默认每个智能合约同时执行的交易数
+     */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 128;
+
+    /**
+     * 以txId-smartContractId为key,保存等待智能合约返回COMPLETED/ERROR消息的future
+     */
+    private static Map<String, CompletableFuture<SmartContractMessage>> pendingResponseMap =
+            new ConcurrentHashMap<String, CompletableFuture<SmartContractMessage>>();
+
+    /**
+     * 以smartContractId为key,限制每个智能合约同时执行的交易数
+     */
+    private static Map<String, Semaphore> inFlightLimitMap = new ConcurrentHashMap<String, Semaphore>();
+
+    /**
+     * 默认范围查询、历史查询每页返回的结果数
+     */
+    private static final int DEFAULT_QUERY_PAGE_SIZE = 100;
+
+    /**
+     * 默认查询游标空闲超时时间(毫秒)
+     */
+    private static final long DEFAULT_QUERY_CURSOR_IDLE_TIMEOUT = 60000L;
+
+    private static volatile QueryCursorRegistry queryCursorRegistry;
+
+    private static volatile long executeTimeout = -1;
+
+    private static volatile int maxInFlight = -1;
 
     /**
      * 处理智能合约register信息（命令）
@@ -139,7 +182,10 @@ public class SmartContractSupportService
 
     @Override
     public StreamObserver<SmartContractMessage> register(
-            StreamObserver<SmartContractMessage> responseObserver) {
+            StreamObserver<SmartContractMessage> streamObserver) {
+
+        // invoke线程与gRPC接收线程会同时发送消息, StreamObserver本身不是线程安全的
+        StreamObserver<SmartContractMessage> responseObserver = new SerializedStreamObserver(streamObserver);
 
         return new StreamObserver<SmartContractMessage>() {
 
@@ -158,6 +204,7 @@ public class SmartContractSupportService
                     addTxMessage(smartContractId, txId, message);
                     updateSmartContractStatus(smartContractId, SMART_CONTRACT_STATUS_ERROR);
                     updateTxStatus(smartContractId, txId, TX_STATUS_ERROR);
+                    getQueryCursorRegistry().closeAll(groupId, txId);
                     handleReceiveCompleteOrErrorMessage(message, txId + "-" + smartContractId);
                     return;
                 }
@@ -173,6 +220,7 @@ public class SmartContractSupportService
                     addTxMessage(smartContractId, txId, message);
                     updateSmartContractStatus(smartContractId, SMART_CONTRACT_STATUS_READY);
                     updateTxStatus(smartContractId, txId, TX_STATUS_COMPLETE);
+                    getQueryCursorRegistry().closeAll(groupId, txId);
                     handleReceiveCompleteOrErrorMessage(message, txId + "-" + smartContractId);
                     return;
                 }
@@ -189,18 +237,40 @@ public class SmartContractSupportService
                     return;
                 }
 
+                // 收到getStateMultiple信息
+                if (message.getType().equals(SmartContractMessage.Type.GET_STATE_MULTIPLE)) {
+                    handleGetStateMultiple(message, txId, groupId, smartContractId, responseObserver);
+                    return;
+                }
+
                 if (message.getType().equals(SmartContractMessage.Type.GET_STATE_BY_RANGE)) {
                     handleGetStateByRange(message, txId, groupId, smartContractId, responseObserver);
                     return;
                 }
 
 
+                if (message.getType().equals(SmartContractMessage.Type.QUERY_STATE_NEXT)) {
+                    handleQueryStateNext(message, txId, groupId, responseObserver);
+                    return;
+                }
+
+                if (message.getType().equals(SmartContractMessage.Type.QUERY_STATE_CLOSE)) {
+                    handleQueryStateClose(message, txId, groupId, responseObserver);
+                    return;
+                }
+
                 // 收到putState信息
                 if (message.getType().equals(SmartContractMessage.Type.PUT_STATE)) {
                     handlePutState(message, txId, groupId, smartContractId, responseObserver);
                     return;
                 }
 
+                // 收到putStateBatch信息
+                if (message.getType().equals(SmartContractMessage.Type.PUT_STATE_BATCH)) {
+                    handlePutStateBatch(message, txId, groupId, smartContractId, responseObserver);
+                    return;
+                }
+
                 // 收到delState信息
                 if (message.getType().equals(SmartContractMessage.Type.DEL_STATE)) {
                     handleDelState(message, txId, groupId, smartContractId, responseObserver);
@@ -228,19 +298,29 @@ public class SmartContractSupportService
         };
     }
 
+    /**
+     * 获取背书节点为该交易注册的模拟器, 不另行创建
+     * 交易已结束(如执行超时)后迟到的消息找不到模拟器, 回复ERROR
+     */
+    private static ITxSimulator getTxSimulator(String groupId, String txId) throws LedgerException {
+        INodeLedger nodeLedger = NodeUtils.getLedger(groupId);
+        ITxSimulator txSimulator = nodeLedger.getTxSimulator(txId);
+        if (txSimulator == null) {
+            throw new LedgerException("no tx simulator for " + txId + ", maybe finished or timeout");
+        }
+        return txSimulator;
+    }
+
     private void handleReceiveCompleteOrErrorMessage(SmartContractMessage message, String txId) {
         if (StringUtils.isEmpty(txId)) {
             return;
         }
-        try {
-            LinkedBlockingQueue queue = txIdAndQueueMap.get(txId);
-            if (queue == null) {
-                return;
-            }
-            queue.put(message);
-        } catch (InterruptedException e) {
-            logger.error(e.getMessage(), e);
+        CompletableFuture<SmartContractMessage> future = pendingResponseMap.get(txId);
+        if (future == null) {
+            logger.warn("no pending invocation for " + txId + ", maybe timeout");
+            return;
         }
+        future.complete(message);
     }
 
     private void handlePutState(SmartContractMessage message, String txId, String groupId, String smartContractId, StreamObserver<SmartContractMessage> responseObserver) {
@@ -252,8 +332,7 @@ public class SmartContractSupportService
         SmartContractMessage.Type type = null;
         try {
             SmartContractShim.PutState putState = SmartContractShim.PutState.parseFrom(message.getPayload());
-            INodeLedger nodeLedger = NodeUtils.getLedger(groupId);
-            ITxSimulator txSimulator = nodeLedger.newTxSimulator(txId);
+            ITxSimulator txSimulator = getTxSimulator(groupId, txId);
             txSimulator.setState(smartContractId, putState.getKey(), putState.getValue().toByteArray());
             type = SmartContractMessage.Type.RESPONSE;
         } catch (Exception e) {
@@ -263,13 +342,46 @@ public class SmartContractSupportService
         SmartContractMessage smartContractMessage =
                 SmartContractMessage.newBuilder()
                         .mergeFrom(message)
-                        .setType(SmartContractMessage.Type.RESPONSE)
+                        .setType(type)
                         .setTxid(txId)
                         .setGroupId(groupId)
                         .build();
         return smartContractMessage;
     }
 
+    private void handlePutStateBatch(SmartContractMessage message, String txId, String groupId, String smartContractId, StreamObserver<SmartContractMessage> responseObserver) {
+        SmartContractMessage smartContractMessage = handlePutStateBatch(message, txId, groupId, smartContractId);
+        responseObserver.onNext(smartContractMessage);
+    }
+
+    /**
+     * 处理智能合约在交易结束时批量发送的写集(PUT_STATE_BATCH)
+     */
+    public SmartContractMessage handlePutStateBatch(SmartContractMessage message, String txId, String groupId, String smartContractId) {
+        SmartContractMessage.Type type = null;
+        try {
+            SmartContractShim.PutStateBatch putStateBatch = SmartContractShim.PutStateBatch.parseFrom(message.getPayload());
+            ITxSimulator txSimulator = getTxSimulator(groupId, txId);
+            Map<String, byte[]> kvs = new LinkedHashMap<String, byte[]>();
+            for (SmartContractShim.PutState putState : putStateBatch.getPutsList()) {
+                kvs.put(putState.getKey(), putState.getValue().toByteArray());
+            }
+            txSimulator.setStateMultipleKeys(smartContractId, kvs);
+            for (SmartContractShim.DelState delState : putStateBatch.getDelsList()) {
+                txSimulator.deleteState(smartContractId, delState.getKey());
+            }
+            type = SmartContractMessage.Type.RESPONSE;
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            type = SmartContractMessage.Type.ERROR;
+        }
+        return SmartContractMessage.newBuilder()
+                .setType(type)
+                .setTxid(txId)
+                .setGroupId(groupId)
+                .build();
+    }
+
     private void handleDelState(SmartContractMessage message, String txId, String groupId, String smartContractId, StreamObserver<SmartContractMessage> responseObserver) {
         SmartContractMessage responseMessage = handleDelState(message, txId, groupId, smartContractId);
         responseObserver.onNext(responseMessage);
@@ -279,8 +391,7 @@ public class SmartContractSupportService
         SmartContractMessage.Type type = null;
         try {
             SmartContractShim.DelState delState = SmartContractShim.DelState.parseFrom(message.getPayload());
-            INodeLedger nodeLedger = NodeUtils.getLedger(groupId);
-            ITxSimulator txSimulator = nodeLedger.newTxSimulator(txId);
+            ITxSimulator txSimulator = getTxSimulator(groupId, txId);
             txSimulator.deleteState(groupId, delState.getKey());
             type = SmartContractMessage.Type.RESPONSE;
         } catch (Exception e) {
@@ -322,16 +433,11 @@ public class SmartContractSupportService
             IBlockStore blockStore = fsBlockStoreProvider.openBlockStore(groupId);
             IHistoryQueryExecutor hqe = db.newHistoryQueryExecutor(blockStore);
             IResultsIterator iterator = hqe.getHistoryForKey(smartContractId, getHistoryForKey.getKey());
-            SmartContractShim.QueryResponse.Builder queryResponseBuilder = SmartContractShim.QueryResponse.newBuilder();
-            while (true) {
-                QueryResult queryResult = iterator.next();
-                if (queryResult == null) {
-                    break;
-                }
+            // 按页返回, 其余结果通过QUERY_STATE_NEXT获取
+            queryResponse = getQueryCursorRegistry().open(groupId, txId, iterator, queryResult -> {
                 KvRwset.Version version = (KvRwset.Version) queryResult.getObj();
-                queryResponseBuilder.addResults(SmartContractShim.QueryResultBytes.newBuilder().setResultBytes(version.toByteString()).build());
-            }
-            queryResponse = queryResponseBuilder.build();
+                return SmartContractShim.QueryResultBytes.newBuilder().setResultBytes(version.toByteString()).build();
+            });
             type = SmartContractMessage.Type.RESPONSE;
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
@@ -360,33 +466,23 @@ public class SmartContractSupportService
             String startKey = getStateByRange.getStartKey();
             String endKey = getStateByRange.getEndKey();
 
-            INodeLedger nodeLedger = NodeUtils.getLedger(groupId);
-            ITxSimulator txSimulator = nodeLedger.newTxSimulator(txId);
+            ITxSimulator txSimulator = getTxSimulator(groupId, txId);
             IResultsIterator iterator = txSimulator.getStateRangeScanIterator(smartContractId, startKey, endKey);
 
-            SmartContractShim.QueryResponse.Builder queryResponseBuilder = SmartContractShim.QueryResponse.newBuilder();
-
-            while (true) {
-                QueryResult queryResult = iterator.next();
-                if (queryResult == null) {
-                    break;
-                }
+            // 按页返回, 其余结果通过QUERY_STATE_NEXT获取
+            SmartContractShim.QueryResponse queryResponse = getQueryCursorRegistry().open(groupId, txId, iterator, queryResult -> {
                 VersionedKV kv = (VersionedKV) queryResult.getObj();
                 String key = kv.getCompositeKey().getKey();
-                if(key.compareTo(endKey) >= 0){
-                    break;
+                if (key.compareTo(endKey) >= 0) {
+                    return null;
                 }
 
                 String namespace = kv.getCompositeKey().getNamespace();
                 byte[] value = kv.getVersionedValue().getValue();
 
                 KvQueryResult.KV kvProto = KvQueryResult.KV.newBuilder().setKey(key).setNamespace(namespace).setValue(ByteString.copyFrom(value)).build();
-
-                queryResponseBuilder.addResults(SmartContractShim.QueryResultBytes.newBuilder().setResultBytes(kvProto.toByteString()).build());
-            }
-
-
-            SmartContractShim.QueryResponse queryResponse = queryResponseBuilder.build();
+                return SmartContractShim.QueryResultBytes.newBuilder().setResultBytes(kvProto.toByteString()).build();
+            });
 
             SmartContractMessage responseMessage =
                     SmartContractMessage.newBuilder()
@@ -413,6 +509,97 @@ public class SmartContractSupportService
         }
     }
 
+    private void handleQueryStateNext(SmartContractMessage message, String txId, String groupId, StreamObserver<SmartContractMessage> responseObserver) {
+        SmartContractMessage smartContractMessage = handleQueryStateNext(message, txId, groupId);
+        responseObserver.onNext(smartContractMessage);
+    }
+
+    /**
+     * 返回范围查询、历史查询的下一页(QUERY_STATE_NEXT)
+     */
+    public SmartContractMessage handleQueryStateNext(SmartContractMessage message, String txId, String groupId) {
+        try {
+            SmartContractShim.QueryStateNext queryStateNext = SmartContractShim.QueryStateNext.parseFrom(message.getPayload());
+            SmartContractShim.QueryResponse queryResponse = getQueryCursorRegistry().next(groupId, txId, queryStateNext.getId());
+            return SmartContractMessage.newBuilder()
+                    .setType(SmartContractMessage.Type.RESPONSE)
+                    .setPayload(queryResponse.toByteString())
+                    .setTxid(txId)
+                    .setGroupId(groupId)
+                    .build();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return SmartContractMessage.newBuilder()
+                    .setType(SmartContractMessage.Type.ERROR)
+                    .setPayload(ByteString.copyFromUtf8(String.valueOf(e.getMessage())))
+                    .setTxid(txId)
+                    .setGroupId(groupId)
+                    .build();
+        }
+    }
+
+    private void handleQueryStateClose(SmartContractMessage message, String txId, String groupId, StreamObserver<SmartContractMessage> responseObserver) {
+        SmartContractMessage smartContractMessage = handleQueryStateClose(message, txId, groupId);
+        responseObserver.onNext(smartContractMessage);
+    }
+
+    /**
+     * 关闭范围查询、历史查询的游标(QUERY_STATE_CLOSE)
+     */
+    public SmartContractMessage handleQueryStateClose(SmartContractMessage message, String txId, String groupId) {
+        try {
+            SmartContractShim.QueryStateClose queryStateClose = SmartContractShim.QueryStateClose.parseFrom(message.getPayload());
+            getQueryCursorRegistry().close(groupId, txId, queryStateClose.getId());
+            return SmartContractMessage.newBuilder()
+                    .setType(SmartContractMessage.Type.RESPONSE)
+                    .setPayload(SmartContractShim.QueryResponse.newBuilder().setId(queryStateClose.getId()).build().toByteString())
+                    .setTxid(txId)
+                    .setGroupId(groupId)
+                    .build();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return SmartContractMessage.newBuilder()
+                    .setType(SmartContractMessage.Type.ERROR)
+                    .setTxid(txId)
+                    .setGroupId(groupId)
+                    .build();
+        }
+    }
+
+    private void handleGetStateMultiple(SmartContractMessage message, String txId, String groupId, String smartContractId, StreamObserver<SmartContractMessage> responseObserver) {
+        SmartContractMessage smartContractMessage = handleGetStateMultiple(message, txId, groupId, smartContractId);
+        responseObserver.onNext(smartContractMessage);
+    }
+
+    /**
+     * 一次读取多个key(GET_STATE_MULTIPLE), 不存在的key返回空值
+     */
+    public SmartContractMessage handleGetStateMultiple(SmartContractMessage message, String txId, String groupId, String smartContractId) {
+        try {
+            SmartContractShim.GetStateMultiple getStateMultiple = SmartContractShim.GetStateMultiple.parseFrom(message.getPayload());
+            ITxSimulator txSimulator = getTxSimulator(groupId, txId);
+            List<byte[]> values = txSimulator.getStateMultipleKeys(smartContractId, getStateMultiple.getKeysList());
+
+            SmartContractShim.StateValues.Builder stateValuesBuilder = SmartContractShim.StateValues.newBuilder();
+            for (byte[] value : values) {
+                stateValuesBuilder.addValues(value == null ? ByteString.EMPTY : ByteString.copyFrom(value));
+            }
+            return SmartContractMessage.newBuilder()
+                    .setType(SmartContractMessage.Type.RESPONSE)
+                    .setPayload(stateValuesBuilder.build().toByteString())
+                    .setTxid(txId)
+                    .setGroupId(groupId)
+                    .build();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return SmartContractMessage.newBuilder()
+                    .setType(SmartContractMessage.Type.ERROR)
+                    .setTxid(txId)
+                    .setGroupId(groupId)
+                    .build();
+        }
+    }
+
     private void handleGetState(SmartContractMessage message, String txId, String groupId, String smartContractId, StreamObserver<SmartContractMessage> responseObserver) {
         SmartContractMessage smartContractMessage = handleGetState(message, txId, groupId, smartContractId);
         responseObserver.onNext(smartContractMessage);
@@ -422,8 +609,7 @@ public class SmartContractSupportService
         String key = message.getPayload().toStringUtf8();
         SmartContractMessage smartContractMessage = null;
         try {
-            INodeLedger nodeLedger = NodeUtils.getLedger(groupId);
-            ITxSimulator txSimulator = nodeLedger.newTxSimulator(txId);
+            ITxSimulator txSimulator = getTxSimulator(groupId, txId);
             byte[] worldStateBytes = txSimulator.getState(smartContractId, key);
 
             if (worldStateBytes == null) {
@@ -504,7 +690,9 @@ public class SmartContractSupportService
             logger.info(String.format("no stream observer for %s", smartContractId));
             return;
         }
-        streamObserver.onNext(message);
+        synchronized (streamObserver) {
+            streamObserver.onNext(message);
+        }
     }
 
     /**
@@ -524,14 +712,27 @@ public class SmartContractSupportService
         send(smartContractId, message);
     }
 
+    /**
+     * invoke智能合约, 使用配置的执行超时时间
+     *
+     * @param smartContractId      智能合约编号
+     * @param smartContractMessage 消息
+     */
+    public static SmartContractMessage invoke(
+            String smartContractId, SmartContractMessage smartContractMessage) throws SmartContractException {
+        return invoke(smartContractId, smartContractMessage, getExecuteTimeout());
+    }
+
     /**
      * invoke智能合约
+     * 不同交易可并发执行, 按txId-smartContractId关联智能合约返回的COMPLETED/ERROR消息
      *
      * @param smartContractId      智能合约编号
      * @param smartContractMessage 消息
+     * @param timeout              超时时间(毫秒)
      */
-    public synchronized static SmartContractMessage invoke(
-            String smartContractId, SmartContractMessage smartContractMessage) throws SmartContractException{
+    public static SmartContractMessage invoke(
+            String smartContractId, SmartContractMessage smartContractMessage, long timeout) throws SmartContractException {
         logger.info("invoke " + smartContractId);
 
         // 修改消息的type为TRANSACTION
@@ -541,25 +742,176 @@ public class SmartContractSupportService
                         // .setType(SmartContractMessage.Type.TRANSACTION)
                         .build();
 
-        updateSmartContractStatus(smartContractId, SMART_CONTRACT_STATUS_BUSY);
         String txId = smartContractMessage.getTxid();
-        addTxId(txId, smartContractId);
-        updateTxStatus(smartContractId, txId, TX_STATUS_START);
-
-        // 保存
-        LinkedBlockingQueue<SmartContractMessage> queue = new LinkedBlockingQueue<SmartContractMessage>();
-        txIdAndQueueMap.put(txId + "-" + smartContractId, queue);
-        send(smartContractId, message);
+        String key = txId + "-" + smartContractId;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
 
-        SmartContractMessage receiveMessage = null;
+        Semaphore semaphore = inFlightLimitMap.computeIfAbsent(smartContractId, k -> new Semaphore(getMaxInFlight()));
         try {
-            receiveMessage = queue.take();
+            if (!semaphore.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new SmartContractException("Too many executing transactions for " + smartContractId
+                        + ", timeout " + timeout + "ms");
+            }
         } catch (InterruptedException e) {
-            logger.error(e.getMessage(), e);
+            Thread.currentThread().interrupt();
             throw new SmartContractException(e.getMessage());
         }
 
-        return receiveMessage;
+        try {
+            CompletableFuture<SmartContractMessage> future = new CompletableFuture<SmartContractMessage>();
+            if (pendingResponseMap.putIfAbsent(key, future) != null) {
+                throw new SmartContractException("Duplicate transaction " + txId + " for " + smartContractId);
+            }
+            try {
+                updateSmartContractStatus(smartContractId, SMART_CONTRACT_STATUS_BUSY);
+                addTxId(txId, smartContractId);
+                updateTxStatus(smartContractId, txId, TX_STATUS_START);
+
+                send(smartContractId, message);
+
+                return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                updateTxStatus(smartContractId, txId, TX_STATUS_ERROR);
+                throw new SmartContractException("Timeout expired while executing transaction " + txId
+                        + " for " + smartContractId + ", timeout " + timeout + "ms");
+            } catch (InterruptedException e) {
+                logger.error(e.getMessage(), e);
+                Thread.currentThread().interrupt();
+                throw new SmartContractException(e.getMessage());
+            } catch (ExecutionException e) {
+                logger.error(e.getMessage(), e);
+                throw new SmartContractException(e.getMessage());
+            } finally {
+                pendingResponseMap.remove(key, future);
+            }
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * 等待智能合约返回的交易数
+     */
+    public static int getPendingCount() {
+        return pendingResponseMap.size();
+    }
+
+    /**
+     * 执行超时时间(毫秒), 对应node.yaml中smartContract.executetimeout
+     */
+    private static long getExecuteTimeout() {
+        if (executeTimeout < 0) {
+            long timeout = DEFAULT_EXECUTE_TIMEOUT;
+            try {
+                timeout = parseMillis(NodeConfigFactory.getNodeConfig().getSmartContract().getExecutetimeout(), DEFAULT_EXECUTE_TIMEOUT);
+            } catch (Exception e) {
+                logger.error("Invalid execute timeout, defaulting to " + DEFAULT_EXECUTE_TIMEOUT + "ms", e);
+            }
+            executeTimeout = timeout;
+        }
+        return executeTimeout;
+    }
+
+    /**
+     * 范围查询、历史查询的游标, 对应node.yaml中smartContract.queryPageSize、queryCursorIdleTimeout
+     */
+    static QueryCursorRegistry getQueryCursorRegistry() {
+        if (queryCursorRegistry == null) {
+            synchronized (SmartContractSupportService.class) {
+                if (queryCursorRegistry == null) {
+                    int pageSize = DEFAULT_QUERY_PAGE_SIZE;
+                    long idleTimeout = DEFAULT_QUERY_CURSOR_IDLE_TIMEOUT;
+                    try {
+                        NodeConfig.SmartContract smartContract = NodeConfigFactory.getNodeConfig().getSmartContract();
+                        if (smartContract.getQueryPageSize() > 0) {
+                            pageSize = smartContract.getQueryPageSize();
+                        }
+                        idleTimeout = parseMillis(smartContract.getQueryCursorIdleTimeout(), DEFAULT_QUERY_CURSOR_IDLE_TIMEOUT);
+                    } catch (Exception e) {
+                        logger.error("Invalid query cursor config, defaulting to page size " + DEFAULT_QUERY_PAGE_SIZE
+                                + ", idle timeout " + DEFAULT_QUERY_CURSOR_IDLE_TIMEOUT + "ms", e);
+                    }
+                    queryCursorRegistry = new QueryCursorRegistry(pageSize, idleTimeout);
+                }
+            }
+        }
+        return queryCursorRegistry;
+    }
+
+    /**
+     * 解析时间配置, 支持30s、500ms, 无单位时为秒
+     */
+    private static long parseMillis(String value, long defaultValue) {
+        if (StringUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        value = value.trim();
+        long millis;
+        if (value.endsWith("ms")) {
+            millis = Long.parseLong(value.substring(0, value.length() - 2));
+        } else if (value.endsWith("s")) {
+            millis = Long.parseLong(value.substring(0, value.length() - 1)) * 1000;
+        } else {
+            millis = Long.parseLong(value) * 1000;
+        }
+        return millis > 0 ? millis : defaultValue;
+    }
+
+    /**
+     * 每个智能合约同时执行的交易数, 对应node.yaml中smartContract.maxInFlight
+     */
+    private static int getMaxInFlight() {
+        if (maxInFlight < 0) {
+            int max = DEFAULT_MAX_IN_FLIGHT;
+            try {
+                NodeConfig.SmartContract smartContract = NodeConfigFactory.getNodeConfig().getSmartContract();
+                if (smartContract.getMaxInFlight() > 0) {
+                    max = smartContract.getMaxInFlight();
+                }
+            } catch (Exception e) {
+                logger.error("Invalid maxInFlight, defaulting to " + DEFAULT_MAX_IN_FLIGHT, e);
+            }
+            maxInFlight = max;
+        }
+        return maxInFlight;
+    }
+
+    /**
+     * 串行化发送消息的StreamObserver
+     * 注册时保存的即为该对象, 与send()使用同一把锁
+     */
+    private static class SerializedStreamObserver implements StreamObserver<SmartContractMessage> {
+        private final StreamObserver<SmartContractMessage> delegate;
+
+        SerializedStreamObserver(StreamObserver<SmartContractMessage> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onNext(SmartContractMessage message) {
+            synchronized (this) {
+                delegate.onNext(message);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (this) {
+                delegate.onError(throwable);
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            synchronized (this) {
+                delegate.onCompleted();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
     }
 
     /**
@@ -102,6 +102,17 @@ public interface ISmartContractStub {
 	 */
 	byte[] getState(String key);
 
+	/**
+	 * Returns the values of the specified keys from the ledger with a single
+	 * round trip to the node.
+	 *
+	 * @param keys
+	 *            names of the values
+	 * @return values in the same order as <code>keys</code>, an empty array
+	 *         for a key that does not exist
+	 */
+	List<byte[]> getStateMultiple(List<String> keys);
+
 	/**
 	 * Writes the specified value and key into the ledger
 	 *
@@ -120,6 +131,17 @@ public interface ISmartContractStub {
 	 */
 	void delState(String key);
 
+	/**
+	 * Enables or disables buffered writes. When enabled, {@link #putState} and
+	 * {@link #delState} are kept by the stub and sent to the node in one
+	 * batch when the transaction completes. Reads never see the transaction's
+	 * own writes, whether buffered or not.
+	 *
+	 * @param writeBuffered
+	 *            true to buffer writes until the transaction completes
+	 */
+	void setWriteBuffered(boolean writeBuffered);
+
 	/**
 	 * Returns all existing keys, and their values, that are lexicographically
 	 * between <code>startkey</code> (inclusive) and the <code>endKey</code>
@@ -192,12 +192,17 @@ public class Handler {
 
 				// Create the SmartcontractStub which the smartcontract can use to
 				// callback
-				final ISmartContractStub stub = new SmartContractStub(message.getGroupId(), message.getTxid(),
+				final SmartContractStub stub = new SmartContractStub(message.getGroupId(), message.getTxid(),
 						this, input.getArgsList(), message.getProposal());
 
 				// Call smartcontract's init
 				final ISmartContract.SmartContractResponse result = smartcontract.init(stub);
 
+				// Send buffered writes before COMPLETED
+				if (result.getStatus().getCode() < ISmartContract.SmartContractResponse.Status.INTERNAL_SERVER_ERROR.getCode()) {
+					stub.flushWrites();
+				}
+
 				if (result.getStatus().getCode() >= ISmartContract.SmartContractResponse.Status.INTERNAL_SERVER_ERROR.getCode()) {
 					// Send ERROR with entire result.Message as payload
 					logger.error(String.format("[%-8s]Init failed. Sending %s", message.getTxid(), ERROR));
@@ -243,12 +248,17 @@ public class Handler {
 
 				// Create the SmartcontractStub which the smartcontract can use to
 				// callback
-				final ISmartContractStub stub = new SmartContractStub(message.getGroupId(), message.getTxid(),
+				final SmartContractStub stub = new SmartContractStub(message.getGroupId(), message.getTxid(),
 						this, input.getArgsList(), message.getProposal());
 
 				// Call smartcontract's invoke
 				final ISmartContract.SmartContractResponse result = smartcontract.invoke(stub);
 
+				// Send buffered writes before COMPLETED
+				if (result.getStatus().getCode() < ISmartContract.SmartContractResponse.Status.INTERNAL_SERVER_ERROR.getCode()) {
+					stub.flushWrites();
+				}
+
 				if (result.getStatus().getCode() >= ISmartContract.SmartContractResponse.Status.INTERNAL_SERVER_ERROR.getCode()) {
 					// Send ERROR with entire result.Message as payload
 					logger.error(String.format("[%-8s]Invoke failed. Sending %s", message.getTxid(), ERROR));
@@ -334,21 +344,60 @@ public class Handler {
 		return isTransaction.containsKey(key) && isTransaction.get(key);
 	}
 
-	void putState(String channelId, String txId, String key, ByteString value) {
-		logger.info(format("[%-8s]Inside putstate (\"%s\":\"%s\"), isTransaction = %s", txId, key, value, isTransaction(channelId, txId)));
+	// getStateMultiple fetches the values of several keys with a single GET_STATE_MULTIPLE message.
+	List<ByteString> getStateMultiple(String channelId, String txId, List<String> keys) {
+		try {
+			final ByteString payload = invokeSmartContractSupport(newEventMessage(GET_STATE_MULTIPLE, channelId, txId,
+					GetStateMultiple.newBuilder().addAllKeys(keys).build().toByteString()));
+			final List<ByteString> values = StateValues.parseFrom(payload).getValuesList();
+			if (values.size() != keys.size()) {
+				throw new RuntimeException(format("[%-8s]Expected %d values, received %d.", txId, keys.size(), values.size()));
+			}
+			return values;
+		} catch (InvalidProtocolBufferException e) {
+			logger.error(String.format("[%-8s]unmarshall error", txId));
+			throw new RuntimeException("Error unmarshalling StateValues.", e);
+		}
+	}
+
+	void checkPutState(String channelId, String txId) {
 		if (!isTransaction(channelId, txId)) {
 			throw new IllegalStateException("Cannot put state in query context");
 		}
-		invokeSmartContractSupport(newPutStateEventMessage(channelId, txId, key, value));
 	}
 
-	void deleteState(String channelId, String txId, String key) {
+	void checkDeleteState(String channelId, String txId) {
 		if (!isTransaction(channelId, txId)) {
 			throw new RuntimeException("Cannot del state in query context");
 		}
+	}
+
+	void putState(String channelId, String txId, String key, ByteString value) {
+		logger.info(format("[%-8s]Inside putstate (\"%s\":\"%s\"), isTransaction = %s", txId, key, value, isTransaction(channelId, txId)));
+		checkPutState(channelId, txId);
+		invokeSmartContractSupport(newPutStateEventMessage(channelId, txId, key, value));
+	}
+
+	void deleteState(String channelId, String txId, String key) {
+		checkDeleteState(channelId, txId);
 		invokeSmartContractSupport(newDeleteStateEventMessage(channelId, txId, key));
 	}
 
+	// putStateBatch sends buffered writes (null value for a deletion) with a single PUT_STATE_BATCH message.
+	void putStateBatch(String channelId, String txId, Map<String, ByteString> writes) {
+		logger.info(format("[%-8s]Inside putStateBatch (%d writes), isTransaction = %s", txId, writes.size(), isTransaction(channelId, txId)));
+		checkPutState(channelId, txId);
+		final PutStateBatch.Builder batch = PutStateBatch.newBuilder();
+		for (Map.Entry<String, ByteString> entry : writes.entrySet()) {
+			if (entry.getValue() == null) {
+				batch.addDels(DelState.newBuilder().setKey(entry.getKey()));
+			} else {
+				batch.addPuts(PutState.newBuilder().setKey(entry.getKey()).setValue(entry.getValue()));
+			}
+		}
+		invokeSmartContractSupport(newEventMessage(PUT_STATE_BATCH, channelId, txId, batch.build().toByteString()));
+	}
+
 	QueryResponse getStateByRange(String channelId, String txId, String startKey, String endKey) {
 		return invokeQueryResponseMessage(channelId, txId, GET_STATE_BY_RANGE, GetStateByRange.newBuilder()
 				.setStartKey(startKey)
@@ -115,7 +115,11 @@ public class MockStub implements ISmartContractStub {
             INodeLedger l = LedgerManager.openLedger("myGroup");
 
             ITxSimulator simulator = l.newTxSimulator("txID");
-            state = simulator.getState("lssc", "mycc");
+            try {
+                state = simulator.getState("lssc", "mycc");
+            } finally {
+                simulator.done();
+            }
 
         }
         catch (Exception e)
@@ -127,6 +131,23 @@ public class MockStub implements ISmartContractStub {
 	    return state;
     }
 
+    @Override
+    public List<byte[]> getStateMultiple(List<String> keys) {
+        List<byte[]> values = new ArrayList<byte[]>(keys.size());
+        for (String key : keys) {
+            byte[] value = state.get(key);
+            values.add(value == null ? new byte[0] : value);
+        }
+        return values;
+    }
+
+    /**
+     * MockStub直接写入内存状态, 不需要缓冲
+     */
+    @Override
+    public void setWriteBuffered(boolean writeBuffered) {
+    }
+
     @Override
     public void putState(String key, byte[] value) {
         if(this.txID.equals("")){
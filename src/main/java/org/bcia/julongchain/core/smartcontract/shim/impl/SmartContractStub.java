@@ -35,6 +35,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -55,6 +56,9 @@ class SmartContractStub implements ISmartContractStub {
 	private final Map<String, ByteString> transientMap;
 	private final byte[] binding;
 	private SmartContractEventPackage.SmartContractEvent event;
+	private boolean writeBuffered;
+	// buffered writes by key, null value for a deletion
+	private final Map<String, ByteString> writeBuffer = new LinkedHashMap<>();
 
 	SmartContractStub(String channelId, String txId, Handler handler, List<ByteString> args, SignedProposal signedProposal) {
 		this.channelId = channelId;
@@ -166,6 +170,16 @@ class SmartContractStub implements ISmartContractStub {
 		return handler.getState(channelId, txId, key).toByteArray();
 	}
 
+	@Override
+	public List<byte[]> getStateMultiple(List<String> keys) {
+		if (keys.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return handler.getStateMultiple(channelId, txId, keys).stream()
+				.map(ByteString::toByteArray)
+				.collect(toList());
+	}
+
 	@Override
 	public void putState(String key, byte[] value) {
 		if(key == null) {
@@ -174,14 +188,44 @@ class SmartContractStub implements ISmartContractStub {
 		if(key.length() == 0) {
 			throw new IllegalArgumentException("key cannot not be an empty string");
 		}
+		if (writeBuffered) {
+			handler.checkPutState(channelId, txId);
+			writeBuffer.put(key, ByteString.copyFrom(value));
+			return;
+		}
 		handler.putState(channelId, txId, key, ByteString.copyFrom(value));
 	}
 
 	@Override
 	public void delState(String key) {
+		if (writeBuffered) {
+			handler.checkDeleteState(channelId, txId);
+			writeBuffer.put(key, null);
+			return;
+		}
 		handler.deleteState(channelId, txId, key);
 	}
 
+	@Override
+	public void setWriteBuffered(boolean writeBuffered) {
+		if (!writeBuffered) {
+			flushWrites();
+		}
+		this.writeBuffered = writeBuffered;
+	}
+
+	/**
+	 * Sends the buffered writes to the node in one PUT_STATE_BATCH message.
+	 */
+	void flushWrites() {
+		if (writeBuffer.isEmpty()) {
+			return;
+		}
+		final Map<String, ByteString> writes = new LinkedHashMap<>(writeBuffer);
+		writeBuffer.clear();
+		handler.putStateBatch(channelId, txId, writes);
+	}
+
 	@Override
 	public IQueryResultsIterator<IKeyValue> getStateByRange(String startKey, String endKey) {
 		if (startKey == null || startKey.isEmpty()) {
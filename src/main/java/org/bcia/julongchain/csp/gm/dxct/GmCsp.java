@@ -181,6 +181,30 @@ public class GmCsp implements ICsp {
         return verify;
     }
 
+    @Override
+    public boolean[] batchVerify(IKey[] keys, byte[][] signatures, byte[][] plaintexts, ISignerOpts opts) throws CspException {
+        if (keys == null || signatures == null || plaintexts == null) {
+            log.error("Invalid keys, signatures or plaintexts. It must not be nil.");
+            throw new CspException("Invalid keys, signatures or plaintexts. It must not be nil.");
+        }
+        if (keys.length != signatures.length || keys.length != plaintexts.length) {
+            log.error("Invalid keys, signatures or plaintexts. They must have the same length.");
+            throw new CspException("Invalid keys, signatures or plaintexts. They must have the same length.");
+        }
+        if (!(opts instanceof SM2SignerOpts)) {
+            return new boolean[keys.length];
+        }
+        byte[][] publicKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) {
+                log.error("Invalid Key. It must not be nil.");
+                throw new CspException("Invalid Key. It must not be nil.");
+            }
+            publicKeys[i] = keys[i].getPublicKey().toBytes();
+        }
+        return sm2.batchVerify(publicKeys, signatures, plaintexts);
+    }
+
     @Override
     public byte[] encrypt(IKey key, byte[] plaintext, IEncrypterOpts opts) throws CspException {
         if (key == null) {
@@ -34,7 +34,11 @@ import org.bouncycastle.math.ec.ECCurve;
 import org.bouncycastle.math.ec.ECPoint;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  * 国密SM2实现
@@ -60,6 +64,21 @@ public class SM2 {
     private static ECDomainParameters ecc_bc_spec;
     private static ECCurve.Fp curve;
 
+    /**
+     * 已解析公钥缓存的最大数量
+     */
+    private static final int PUBLIC_KEY_CACHE_SIZE = 1024;
+    /**
+     * 已预计算的验签公钥, 按最近使用顺序淘汰
+     */
+    private static final Map<ByteBuffer, SM2VerifyKey> verifyKeyCache =
+            new LinkedHashMap<ByteBuffer, SM2VerifyKey>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteBuffer, SM2VerifyKey> eldest) {
+                    return size() > PUBLIC_KEY_CACHE_SIZE;
+                }
+            };
+
     public SM2() {
         curve = new ECCurve.Fp(SM2_ECC_P, SM2_ECC_A, SM2_ECC_B);
         ECPoint ecc_point_g = curve.createPoint(SM2_ECC_GX, SM2_ECC_GY);
@@ -163,11 +182,68 @@ public class SM2 {
         if (msg.length == 0) {
             throw new CspException("plainText's length is 0");
         }
-        SM2Signer signer = new SM2Signer();
-        ECPublicKeyParameters ecPub = new ECPublicKeyParameters(byte2ECpoint(publicKey), ecc_bc_spec);
-        signer.init(false, ecPub);
-        signer.update(msg, 0, msg.length);
-        return signer.verifySignature(signValue);
+        return getVerifyKey(publicKey).verify(signValue, msg);
+    }
+
+    /**
+     * 批量验证签名值, 第i个结果为publicKeys[i]对signValues[i]与msgs[i]的验证结果
+     * 相同公钥只解析并预计算一次, 各签名在多个CPU核上并行验证
+     *
+     * @param publicKeys
+     * @param signValues
+     * @param msgs
+     * @return
+     * @throws CspException
+     */
+    public boolean[] batchVerify(byte[][] publicKeys, byte[][] signValues, byte[][] msgs) throws CspException {
+        if (null == publicKeys || null == signValues || null == msgs) {
+            throw new CspException("publicKeys, signValues or plainTexts is null");
+        }
+        if (publicKeys.length != signValues.length || publicKeys.length != msgs.length) {
+            throw new CspException("publicKeys, signValues and plainTexts must have the same length");
+        }
+        SM2VerifyKey[] verifyKeys = new SM2VerifyKey[publicKeys.length];
+        for (int i = 0; i < publicKeys.length; i++) {
+            if (null == publicKeys[i] || publicKeys[i].length == 0) {
+                throw new CspException("publicKey[" + i + "] is null or empty");
+            }
+            if (null == signValues[i] || signValues[i].length == 0) {
+                throw new CspException("signValue[" + i + "] is null or empty");
+            }
+            if (null == msgs[i] || msgs[i].length == 0) {
+                throw new CspException("plainText[" + i + "] is null or empty");
+            }
+            try {
+                verifyKeys[i] = getVerifyKey(publicKeys[i]);
+            } catch (IllegalArgumentException e) {
+                throw new CspException("publicKey[" + i + "] is invalid: " + e.getMessage());
+            }
+        }
+        boolean[] results = new boolean[publicKeys.length];
+        IntStream.range(0, publicKeys.length).parallel()
+                .forEach(i -> results[i] = verifyKeys[i].verify(signValues[i], msgs[i]));
+        return results;
+    }
+
+    /**
+     * 获取已预计算的验签公钥, 未缓存时解析公钥点并放入缓存
+     *
+     * @param publicKey
+     * @return
+     */
+    private static SM2VerifyKey getVerifyKey(byte[] publicKey) {
+        ByteBuffer cacheKey = ByteBuffer.wrap(publicKey);
+        synchronized (verifyKeyCache) {
+            SM2VerifyKey verifyKey = verifyKeyCache.get(cacheKey);
+            if (verifyKey != null) {
+                return verifyKey;
+            }
+        }
+        SM2VerifyKey verifyKey = new SM2VerifyKey(publicKey);
+        synchronized (verifyKeyCache) {
+            verifyKeyCache.put(ByteBuffer.wrap(publicKey.clone()), verifyKey);
+        }
+        return verifyKey;
     }
 
     /**
@@ -257,16 +333,8 @@ public class SM2 {
      * @return
      */
     public static ECPoint byte2ECpoint(byte[] publicKey) {
-        byte[] formatedPubKey;
-        if (publicKey.length == 64) {
-            //添加一字节标识，用于ECPoint解析
-            formatedPubKey = new byte[65];
-            formatedPubKey[0] = 0x04;
-            System.arraycopy(publicKey, 0, formatedPubKey, 1, publicKey.length);
-        } else {
-            formatedPubKey = publicKey;
-        }
-        ECPoint userKey = curve.decodePoint(formatedPubKey);
+        //64字节公钥添加一字节标识，用于ECPoint解析
+        ECPoint userKey = curve.decodePoint(SM2VerifyKey.formatPublicKey(publicKey));
         return userKey;
     }
 }
@@ -0,0 +1,170 @@
+/**
+ * Copyright DingXuan. All Rights Reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.csp.gm.dxct.sm2;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.gm.GMNamedCurves;
+import org.bouncycastle.crypto.digests.SM3Digest;
+import org.bouncycastle.math.ec.ECConstants;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECFieldElement;
+import org.bouncycastle.math.ec.ECMultiplier;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointUtil;
+import org.bouncycastle.math.ec.custom.gm.SM2P256V1Curve;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+/**
+ * 已预计算的SM2验签公钥
+ * 公钥点在sm2p256v1专用曲线上解析, 创建时计算公钥点的固定点梳状预计算表与用户标识杂凑值Z,
+ * 同一公钥多次验签时只需计算e = SM3(Z || M)与两次固定点乘法
+ * 验签结果与SM2Signer(默认用户标识)一致
+ *
+ * @author zhangmingyang
+ * @date 2018/10/16
+ * @company Dingxuan
+ */
+class SM2VerifyKey {
+    /**
+     * sm2p256v1专用曲线, 域运算使用定长整数实现, 比通用素数域曲线快一个数量级
+     */
+    private static final ECCurve CURVE = new SM2P256V1Curve();
+    private static final ECPoint G = CURVE.importPoint(GMNamedCurves.getByName("sm2p256v1").getG());
+    private static final BigInteger N = CURVE.getOrder();
+    /**
+     * SM2Signer的默认用户标识
+     */
+    private static final byte[] DEFAULT_USER_ID = Hex.decode("31323334353637383132333435363738");
+    private static final ECMultiplier MULTIPLIER = new FixedPointCombMultiplier();
+
+    static {
+        FixedPointUtil.precompute(G);
+    }
+
+    private final ECPoint q;
+    private final byte[] z;
+
+    SM2VerifyKey(byte[] publicKey) {
+        this.q = CURVE.decodePoint(formatPublicKey(publicKey));
+        FixedPointUtil.precompute(q);
+        this.z = getZ(q);
+    }
+
+    /**
+     * 验证签名值, 签名值非DER编码的(r, s)时返回false
+     *
+     * @param signValue
+     * @param msg
+     * @return
+     */
+    boolean verify(byte[] signValue, byte[] msg) {
+        BigInteger[] rs = derDecode(signValue);
+        if (rs == null) {
+            return false;
+        }
+        BigInteger r = rs[0];
+        BigInteger s = rs[1];
+        if (r.compareTo(ECConstants.ONE) < 0 || r.compareTo(N) >= 0) {
+            return false;
+        }
+        if (s.compareTo(ECConstants.ONE) < 0 || s.compareTo(N) >= 0) {
+            return false;
+        }
+        BigInteger t = r.add(s).mod(N);
+        if (t.signum() == 0) {
+            return false;
+        }
+
+        SM3Digest digest = new SM3Digest();
+        digest.update(z, 0, z.length);
+        digest.update(msg, 0, msg.length);
+        byte[] eHash = new byte[digest.getDigestSize()];
+        digest.doFinal(eHash, 0);
+        BigInteger e = new BigInteger(1, eHash);
+
+        ECPoint x1y1 = MULTIPLIER.multiply(G, s).add(MULTIPLIER.multiply(q, t)).normalize();
+        if (x1y1.isInfinity()) {
+            return false;
+        }
+        return r.equals(e.add(x1y1.getAffineXCoord().toBigInteger()).mod(N));
+    }
+
+    /**
+     * 64字节的公钥添加未压缩点标识
+     */
+    static byte[] formatPublicKey(byte[] publicKey) {
+        if (publicKey.length == 64) {
+            byte[] formatedPubKey = new byte[65];
+            formatedPubKey[0] = 0x04;
+            System.arraycopy(publicKey, 0, formatedPubKey, 1, publicKey.length);
+            return formatedPubKey;
+        }
+        return publicKey;
+    }
+
+    private static byte[] getZ(ECPoint q) {
+        SM3Digest digest = new SM3Digest();
+        int len = DEFAULT_USER_ID.length * 8;
+        digest.update((byte) (len >> 8 & 0xFF));
+        digest.update((byte) (len & 0xFF));
+        digest.update(DEFAULT_USER_ID, 0, DEFAULT_USER_ID.length);
+        addFieldElement(digest, CURVE.getA());
+        addFieldElement(digest, CURVE.getB());
+        addFieldElement(digest, G.getAffineXCoord());
+        addFieldElement(digest, G.getAffineYCoord());
+        addFieldElement(digest, q.getAffineXCoord());
+        addFieldElement(digest, q.getAffineYCoord());
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return result;
+    }
+
+    private static void addFieldElement(SM3Digest digest, ECFieldElement v) {
+        byte[] p = v.getEncoded();
+        digest.update(p, 0, p.length);
+    }
+
+    /**
+     * 与SM2Signer相同, 只接受标准DER编码的签名值
+     */
+    private static BigInteger[] derDecode(byte[] encoding) {
+        try {
+            ASN1Sequence seq = ASN1Sequence.getInstance(ASN1Primitive.fromByteArray(encoding));
+            if (seq.size() != 2) {
+                return null;
+            }
+            BigInteger r = ASN1Integer.getInstance(seq.getObjectAt(0)).getValue();
+            BigInteger s = ASN1Integer.getInstance(seq.getObjectAt(1)).getValue();
+            byte[] expectedEncoding = new DERSequence(new ASN1Integer[]{new ASN1Integer(r), new ASN1Integer(s)})
+                    .getEncoded(ASN1Encoding.DER);
+            if (!Arrays.constantTimeAreEqual(expectedEncoding, encoding)) {
+                return null;
+            }
+            return new BigInteger[]{r, s};
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -110,6 +110,30 @@ public interface ICsp {
      */
     boolean verify(IKey k, byte[] signature, byte[] digest, ISignerOpts opts) throws CspException;
 
+    /**
+     * 根据ISignerOpts,批量验证签名值,
+     * 第i个结果为使用keys[i]对signatures[i]与digests[i]的验证结果
+     *
+     * @param keys
+     * @param signatures
+     * @param digests
+     * @param opts
+     * @return
+     * @throws CspException
+     */
+    default boolean[] batchVerify(IKey[] keys, byte[][] signatures, byte[][] digests, ISignerOpts opts) throws CspException {
+        if (null == keys || null == signatures || null == digests
+                || keys.length != signatures.length || keys.length != digests.length) {
+            throw new CspException("Invalid keys, signatures or digests.");
+        }
+        //默认逐个验证,硬件设备会话不保证线程安全
+        boolean[] results = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            results[i] = verify(keys[i], signatures[i], digests[i], opts);
+        }
+        return results;
+    }
+
     /**
      * 根据IEncrypterOpts,使用密钥k从将明文计算出密文,
      * 选项应包括对称加密算法和适当的分组密码模式
@@ -190,4 +190,11 @@ public class EventHandler implements IEventHandler {
             callback.sendMessage(event);
         }
     }
+
+    @Override
+    public void disconnect() {
+        if (callback != null) {
+            callback.disconnect();
+        }
+    }
 }
\ No newline at end of file
@@ -16,6 +16,7 @@
 package org.bcia.julongchain.events.producer;
 
 import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import org.bcia.julongchain.common.exception.MspException;
 import org.bcia.julongchain.common.exception.ValidateException;
@@ -37,6 +38,8 @@ public class EventHubServer implements IEventHubServer {
 
     public interface Callback {
         void sendMessage(EventsPackage.Event event);
+
+        void disconnect();
     }
 
     public EventHubServer(EventsServerConfig config) {
@@ -54,6 +57,15 @@ public class EventHubServer implements IEventHubServer {
                     responseObserver.onNext(event);
                 }
             }
+
+            @Override
+            public void disconnect() {
+                //客户端接收过慢, 结束事件流
+                if (responseObserver != null) {
+                    responseObserver.onError(Status.RESOURCE_EXHAUSTED
+                            .withDescription("Event consumer is too slow").asRuntimeException());
+                }
+            }
         });
 
         try {
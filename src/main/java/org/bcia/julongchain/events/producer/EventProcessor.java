@@ -26,11 +26,17 @@ import org.bcia.julongchain.protos.node.EventsPackage;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 事件处理器
+ * 事件先放入有界队列, 由消费线程分发到各订阅者的EventSubscriberQueue, 再由共享线程池并行发送,
+ * 一个订阅者处理过慢不会阻塞其他订阅者
  *
  * @author zhouhui
  * @date 2018/05/17
@@ -39,6 +45,8 @@ import java.util.concurrent.LinkedBlockingQueue;
 public class EventProcessor implements IEventProcessor {
     private static JulongChainLog log = JulongChainLogFactory.getLog(EventProcessor.class);
 
+    private static final int DEFAULT_BUFFER_SIZE = 100;
+
     private Map<Integer, IHandlerList> eventConsumers;
     private EventsServerConfig eventsServerConfig;
 
@@ -46,13 +54,18 @@ public class EventProcessor implements IEventProcessor {
     private Producer<EventsPackage.Event> producer;
     private Consumer<EventsPackage.Event> consumer;
 
+    private Map<IEventHandler, EventSubscriberQueue> subscriberQueues = new ConcurrentHashMap<>();
+    private ExecutorService fanOutExecutor;
+
     private static EventProcessor instance;
 
     public static EventProcessor getInstance(EventsServerConfig eventsServerConfig) {
         if (instance == null) {
             synchronized (EventProcessor.class) {
                 if (instance == null) {
-                    instance = new EventProcessor(eventsServerConfig);
+                    EventProcessor eventProcessor = new EventProcessor(eventsServerConfig);
+                    eventProcessor.start();
+                    instance = eventProcessor;
                 }
             }
         }
@@ -60,9 +73,7 @@ public class EventProcessor implements IEventProcessor {
         return instance;
     }
 
-    private EventProcessor(EventsServerConfig eventsServerConfig) {
-        instance = this;
-
+    EventProcessor(EventsServerConfig eventsServerConfig) {
         this.eventsServerConfig = eventsServerConfig;
 
         this.eventConsumers = new HashMap<>();
@@ -73,7 +84,9 @@ public class EventProcessor implements IEventProcessor {
         eventConsumers.put(EventsPackage.EventType.REJECTION_VALUE, new GenericHandlerList());
         eventConsumers.put(EventsPackage.EventType.FILTEREDBLOCK_VALUE, new GenericHandlerList());
 
-        blockingQueue = new LinkedBlockingQueue<>();
+        int bufferSize = eventsServerConfig != null && eventsServerConfig.getBufferSize() > 0 ?
+                (int) eventsServerConfig.getBufferSize() : DEFAULT_BUFFER_SIZE;
+        blockingQueue = new ArrayBlockingQueue<>(bufferSize);
         producer = new Producer<>(blockingQueue);
         consumer = new Consumer<EventsPackage.Event>(blockingQueue) {
             @Override
@@ -87,6 +100,13 @@ public class EventProcessor implements IEventProcessor {
                 }
             }
         };
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        fanOutExecutor = Executors.newFixedThreadPool(Math.max(8, Runtime.getRuntime().availableProcessors() * 2), r -> {
+            Thread thread = new Thread(r, "eventsFanOut-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
@@ -102,17 +122,52 @@ public class EventProcessor implements IEventProcessor {
         }
 
         IHandlerList handlerList = eventConsumers.get(eventType);
+        //计算一次序列化大小, 各订阅者共享同一个不可变的事件对象, gRPC发送时不再重复计算
+        event.getSerializedSize();
         handlerList.foreach(event, new IHandlerList.IHandlerAction() {
             @Override
             public void doAction(IEventHandler handler) {
                 if (!EventsUtils.hasSessionExpired(handler.getSessionEndDate())) {
-                    handler.sendMessage(event);
+                    getSubscriberQueue(handler).offer(event);
                 }
             }
         });
 
     }
 
+    /**
+     * 订阅者的发送队列, 不存在时创建
+     *
+     * @param handler
+     * @return
+     */
+    EventSubscriberQueue getSubscriberQueue(IEventHandler handler) {
+        EventSubscriberQueue subscriberQueue = subscriberQueues.get(handler);
+        if (subscriberQueue != null) {
+            return subscriberQueue;
+        }
+        int capacity = eventsServerConfig != null ? eventsServerConfig.getSubscriberBufferSize() : DEFAULT_BUFFER_SIZE;
+        EventsServerConfig.OverflowPolicy overflowPolicy = eventsServerConfig != null ?
+                eventsServerConfig.getOverflowPolicy() : EventsServerConfig.OverflowPolicy.DROP;
+        return subscriberQueues.computeIfAbsent(handler, h -> new EventSubscriberQueue(h, capacity, overflowPolicy,
+                fanOutExecutor, this::removeSubscriber));
+    }
+
+    /**
+     * 订阅者断开后删除其全部订阅
+     *
+     * @param subscriberQueue
+     */
+    private void removeSubscriber(EventSubscriberQueue subscriberQueue) {
+        IEventHandler handler = subscriberQueue.getHandler();
+        subscriberQueues.remove(handler, subscriberQueue);
+        synchronized (this) {
+            for (IHandlerList handlerList : eventConsumers.values()) {
+                handlerList.deleteAll(handler);
+            }
+        }
+    }
+
     /**
      * 判断事件类型
      *
@@ -142,9 +197,18 @@ public class EventProcessor implements IEventProcessor {
     }
 
     public void start() {
-        //
         consumer.start();
+    }
 
+    /**
+     * 停止分发, 用于测试
+     */
+    void shutdown() {
+        consumer.interrupt();
+        fanOutExecutor.shutdownNow();
+        for (EventSubscriberQueue subscriberQueue : subscriberQueues.values()) {
+            subscriberQueue.close(false);
+        }
     }
 
     @Override
@@ -0,0 +1,173 @@
+/**
+ * Copyright Dingxuan. All Rights Reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.events.producer;
+
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.protos.node.EventsPackage;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订阅者的有界发送队列
+ * 事件分发线程只负责入队, 由共享线程池逐个订阅者按顺序发送, 同一订阅者同时只有一个线程发送;
+ * 队列已满时按OverflowPolicy丢弃事件或断开订阅者
+ *
+ * @author zhouhui
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class EventSubscriberQueue implements Runnable {
+    private static JulongChainLog log = JulongChainLogFactory.getLog(EventSubscriberQueue.class);
+
+    /**
+     * 每次调度最多发送的事件数和时间, 之后让出线程给其他订阅者
+     */
+    private static final int MAX_DRAIN = 64;
+    private static final long MAX_DRAIN_NANOS = 10000000L;
+
+    public interface IDisconnectListener {
+        void onDisconnect(EventSubscriberQueue subscriberQueue);
+    }
+
+    private final IEventHandler handler;
+    private final int capacity;
+    private final EventsServerConfig.OverflowPolicy overflowPolicy;
+    private final Executor executor;
+    private final IDisconnectListener disconnectListener;
+
+    private final Queue<EventsPackage.Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public EventSubscriberQueue(IEventHandler handler, int capacity, EventsServerConfig.OverflowPolicy overflowPolicy,
+                                Executor executor, IDisconnectListener disconnectListener) {
+        this.handler = handler;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.executor = executor;
+        this.disconnectListener = disconnectListener;
+    }
+
+    /**
+     * 事件入队, 不阻塞
+     *
+     * @param event
+     * @return 是否入队
+     */
+    public boolean offer(EventsPackage.Event event) {
+        if (closed.get()) {
+            return false;
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            if (EventsServerConfig.OverflowPolicy.DISCONNECT.equals(overflowPolicy)) {
+                log.warn("Event subscriber is too slow, disconnect it");
+                close(true);
+            } else {
+                dropped.incrementAndGet();
+            }
+            return false;
+        }
+        queue.offer(event);
+        schedule();
+        return true;
+    }
+
+    @Override
+    public void run() {
+        long deadline = System.nanoTime() + MAX_DRAIN_NANOS;
+        try {
+            for (int i = 0; i < MAX_DRAIN && !closed.get() && System.nanoTime() - deadline < 0; i++) {
+                EventsPackage.Event event = queue.poll();
+                if (event == null) {
+                    break;
+                }
+                size.decrementAndGet();
+                try {
+                    handler.sendMessage(event);
+                    delivered.incrementAndGet();
+                } catch (RuntimeException e) {
+                    log.error("Send event failed, disconnect subscriber: " + e.getMessage(), e);
+                    close(true);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            if (!queue.isEmpty() && !closed.get()) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * 关闭队列, 丢弃未发送的事件
+     *
+     * @param disconnect 是否断开订阅者
+     */
+    public void close(boolean disconnect) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        queue.clear();
+        size.set(0);
+        if (disconnect) {
+            try {
+                handler.disconnect();
+            } catch (RuntimeException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        if (disconnectListener != null) {
+            disconnectListener.onDisconnect(this);
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this);
+        }
+    }
+
+    public IEventHandler getHandler() {
+        return handler;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
@@ -27,17 +27,43 @@ import com.google.protobuf.Message;
  */
 public class EventsServerConfig {
     private static final long DEFAULT_TIME_WINDOW = 900000;//900秒，15分钟
+    private static final int DEFAULT_SUBSCRIBER_BUFFER_SIZE = 1000;
 
     public interface IBindingInspector {
         void bind(Message protoMessage);
     }
 
+    /**
+     * 订阅者发送队列已满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 丢弃新事件
+         */
+        DROP,
+        /**
+         * 断开订阅者
+         */
+        DISCONNECT
+    }
+
     private long bufferSize;
     private long timeout;
     private long timeWindow;
     private IBindingInspector bindingInspector;
+    private int subscriberBufferSize;
+    private OverflowPolicy overflowPolicy;
 
     public EventsServerConfig(long bufferSize, long timeout, long timeWindow, IBindingInspector bindingInspector) {
+        this(bufferSize, timeout, timeWindow, bindingInspector, DEFAULT_SUBSCRIBER_BUFFER_SIZE, OverflowPolicy.DROP);
+    }
+
+    /**
+     * @param subscriberBufferSize 每个订阅者待发送的最大事件数
+     * @param overflowPolicy       订阅者待发送事件超过subscriberBufferSize时的处理策略
+     */
+    public EventsServerConfig(long bufferSize, long timeout, long timeWindow, IBindingInspector bindingInspector,
+                              int subscriberBufferSize, OverflowPolicy overflowPolicy) {
         this.bufferSize = bufferSize;
         this.timeout = timeout;
 
@@ -47,6 +73,12 @@ public class EventsServerConfig {
         this.timeWindow = timeWindow;
 
         this.bindingInspector = bindingInspector;
+
+        if (subscriberBufferSize <= 0) {
+            subscriberBufferSize = DEFAULT_SUBSCRIBER_BUFFER_SIZE;
+        }
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.DROP : overflowPolicy;
     }
 
     public long getBufferSize() {
@@ -64,4 +96,12 @@ public class EventsServerConfig {
     public IBindingInspector getBindingInspector() {
         return bindingInspector;
     }
+
+    public int getSubscriberBufferSize() {
+        return subscriberBufferSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
 }
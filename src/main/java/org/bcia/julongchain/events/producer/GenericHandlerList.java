@@ -19,8 +19,8 @@ import org.bcia.julongchain.common.exception.ValidateException;
 import org.bcia.julongchain.common.util.ValidateUtils;
 import org.bcia.julongchain.protos.node.EventsPackage;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 通用处理器列表
@@ -30,7 +30,7 @@ import java.util.Map;
  * @company Dingxuan
  */
 public class GenericHandlerList implements IHandlerList {
-    private Map<IEventHandler, Boolean> handlers = new HashMap<>();
+    private Map<IEventHandler, Boolean> handlers = new ConcurrentHashMap<>();
 
     @Override
     public boolean add(EventsPackage.Interest interest, EventHandler eventHandler) throws ValidateException {
@@ -62,13 +62,17 @@ public class GenericHandlerList implements IHandlerList {
         }
     }
 
+    @Override
+    public boolean deleteAll(IEventHandler eventHandler) {
+        return eventHandler != null && handlers.remove(eventHandler) != null;
+    }
+
     @Override
     public void foreach(EventsPackage.Event event, IHandlerAction action) {
+        //遍历时不加锁, 注册和注销不会等待事件分发
         if (event != null && action != null) {
-            synchronized (this) {
-                for (IEventHandler eventHandler : handlers.keySet()) {
-                    action.doAction(eventHandler);
-                }
+            for (IEventHandler eventHandler : handlers.keySet()) {
+                action.doAction(eventHandler);
             }
         }
     }
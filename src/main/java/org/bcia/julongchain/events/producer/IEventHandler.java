@@ -37,4 +37,9 @@ public interface IEventHandler {
     Date getSessionEndDate();
 
     void sendMessage(EventsPackage.Event event);
+
+    /**
+     * 断开订阅者, 订阅者处理过慢时调用
+     */
+    void disconnect();
 }
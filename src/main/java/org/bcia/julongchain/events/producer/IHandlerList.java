@@ -34,5 +34,13 @@ public interface IHandlerList {
 
     boolean delete(EventsPackage.Interest interest, EventHandler eventHandler) throws ValidateException;
 
+    /**
+     * 删除处理器的全部订阅
+     *
+     * @param eventHandler
+     * @return 是否删除了订阅
+     */
+    boolean deleteAll(IEventHandler eventHandler);
+
     void foreach(EventsPackage.Event event, IHandlerAction action);
 }
@@ -22,6 +22,7 @@ import org.bcia.julongchain.protos.node.EventsPackage;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -118,23 +119,53 @@ public class SmartContractHandlerList implements IHandlerList {
         }
     }
 
+    @Override
+    public boolean deleteAll(IEventHandler eventHandler) {
+        if (eventHandler == null) {
+            return false;
+        }
+        boolean deleted = false;
+        synchronized (this) {
+            Iterator<Map<String, List<IEventHandler>>> scIterator = handlers.values().iterator();
+            while (scIterator.hasNext()) {
+                Map<String, List<IEventHandler>> eventHandlerMap = scIterator.next();
+                Iterator<List<IEventHandler>> listIterator = eventHandlerMap.values().iterator();
+                while (listIterator.hasNext()) {
+                    List<IEventHandler> eventHandlerList = listIterator.next();
+                    deleted |= eventHandlerList.remove(eventHandler);
+                    if (eventHandlerList.isEmpty()) {
+                        listIterator.remove();
+                    }
+                }
+                if (eventHandlerMap.isEmpty()) {
+                    scIterator.remove();
+                }
+            }
+        }
+        return deleted;
+    }
+
     @Override
     public void foreach(EventsPackage.Event event, IHandlerAction action) {
         if (event.getSmartContractEvent() != null && action != null) {
             String scId = event.getSmartContractEvent().getSmartContractId();
             String eventName = event.getSmartContractEvent().getEventName();
+            List<IEventHandler> eventHandlerList = null;
             synchronized (this) {
                 if (StringUtils.isNotBlank(scId) && StringUtils.isNotBlank(eventName) && handlers.containsKey(scId)) {
                     Map<String, List<IEventHandler>> eventHandlerMap = handlers.get(scId);
 
                     if (eventHandlerMap.containsKey(eventName)) {
-                        List<IEventHandler> eventHandlerList = eventHandlerMap.get(eventName);
-                        for (IEventHandler eventHandler : eventHandlerList) {
-                            action.doAction(eventHandler);
-                        }
+                        //复制后在锁外分发
+                        eventHandlerList = new ArrayList<>(eventHandlerMap.get(eventName));
                     }
                 }
             }
+            if (eventHandlerList != null) {
+                for (IEventHandler eventHandler : eventHandlerList) {
+                    action.doAction(eventHandler);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,256 @@
+/**
+ * Copyright Dingxuan. All Rights Reserved.
+ * <p>
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.gossip;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.gossip.manager.GossipManager;
+import org.apache.gossip.model.SharedDataMessage;
+import org.bcia.julongchain.common.exception.GossipException;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.protos.common.Common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 通过gossip网络广播区块
+ * 区块序列化后压缩, 按chunkSize切分为byte[]分片, 以group-seqNum为key的头部记录分片数和压缩后长度
+ * 每个群组只保留最近retainBlocks个区块, 更早的区块以空数据覆盖并立即过期, 由gossip的DataReaper回收;
+ * 所有数据另设ttl过期时间, 覆盖消息丢失时也不会永久保留
+ *
+ * @author wanliangbing
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class GossipBlockDisseminator {
+
+    private static JulongChainLog log = JulongChainLogFactory.getLog(GossipBlockDisseminator.class);
+
+    /**
+     * 分片大小, gossip基于UDP, 分片经base64编码后需小于一个数据报
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
+    public static final int DEFAULT_RETAIN_BLOCKS = 100;
+
+    public static final long DEFAULT_TTL = 10 * 60 * 1000L;
+
+    private static final String KEY_PREFIX = "block-";
+
+    private static final int HEADER_LENGTH = 8;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final GossipManager gossipManager;
+    private final int retainBlocks;
+    private final long ttl;
+    private final int chunkSize;
+
+    /**
+     * 本节点广播且尚未淘汰的区块, 按群组、区块号排序
+     */
+    private final Map<String, ConcurrentSkipListMap<Long, Published>> publishedMap = new ConcurrentHashMap<>();
+
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    public GossipBlockDisseminator(GossipManager gossipManager) {
+        this(gossipManager, DEFAULT_RETAIN_BLOCKS, DEFAULT_TTL, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param gossipManager gossip服务
+     * @param retainBlocks  每个群组保留的区块数
+     * @param ttl           数据过期时间(毫秒)
+     * @param chunkSize     分片大小(字节)
+     */
+    public GossipBlockDisseminator(GossipManager gossipManager, int retainBlocks, long ttl, int chunkSize) {
+        this.gossipManager = gossipManager;
+        this.retainBlocks = retainBlocks;
+        this.ttl = ttl;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * 广播区块, 并淘汰超出保留高度的区块
+     */
+    public void addBlock(String group, long seqNum, Common.Block block) throws GossipException {
+        if (StringUtils.isEmpty(group) || block == null) {
+            throw new GossipException("group,blockData is null。");
+        }
+        byte[] compressed = compress(block);
+        int chunks = Math.max(1, (compressed.length + chunkSize - 1) / chunkSize);
+        long timestamp = System.currentTimeMillis();
+        long expireAt = timestamp + ttl;
+
+        //先发送分片, 头部可见时分片已存在
+        for (int i = 0; i < chunks; i++) {
+            int from = i * chunkSize;
+            int to = Math.min(compressed.length, from + chunkSize);
+            share(chunkKey(group, seqNum, i), Arrays.copyOfRange(compressed, from, to), timestamp, expireAt);
+        }
+        byte[] header = ByteBuffer.allocate(HEADER_LENGTH).putInt(chunks).putInt(compressed.length).array();
+        share(headerKey(group, seqNum), header, timestamp, expireAt);
+
+        ConcurrentSkipListMap<Long, Published> published = publishedMap.computeIfAbsent(group, k -> new ConcurrentSkipListMap<>());
+        Published previous = published.put(seqNum, new Published(chunks, compressed.length, timestamp));
+        if (previous != null) {
+            retainedBytes.addAndGet(-previous.bytes);
+        }
+        retainedBytes.addAndGet(compressed.length);
+        log.debug("Disseminate block " + group + "-" + seqNum + ", " + compressed.length + " bytes in " + chunks + " chunks");
+
+        evict(group, published, seqNum - retainBlocks);
+    }
+
+    /**
+     * 读取区块, 头部或任一分片不存在时返回null
+     */
+    public Common.Block getBlock(String group, long seqNum) throws GossipException {
+        if (StringUtils.isEmpty(group)) {
+            throw new GossipException("group is null");
+        }
+        byte[] header = findPayload(headerKey(group, seqNum));
+        if (header == null || header.length < HEADER_LENGTH) {
+            return null;
+        }
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        int chunks = headerBuffer.getInt();
+        int length = headerBuffer.getInt();
+
+        List<InputStream> chunkStreams = new ArrayList<>(chunks);
+        int received = 0;
+        for (int i = 0; i < chunks; i++) {
+            byte[] chunk = findPayload(chunkKey(group, seqNum, i));
+            if (chunk == null) {
+                return null;
+            }
+            received += chunk.length;
+            chunkStreams.add(new ByteArrayInputStream(chunk));
+        }
+        if (received != length) {
+            log.warn("Incomplete block " + group + "-" + seqNum + ", expect " + length + " bytes, got " + received);
+            return null;
+        }
+        //按顺序读取各分片解压, 不拼接分片
+        try (InputStream in = new InflaterInputStream(new SequenceInputStream(Collections.enumeration(chunkStreams)))) {
+            return Common.Block.parseFrom(in);
+        } catch (IOException e) {
+            throw new GossipException(e);
+        }
+    }
+
+    /**
+     * 本节点保留的区块压缩后总字节数
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * 本节点保留的区块数
+     */
+    public int getRetainedBlocks() {
+        int size = 0;
+        for (ConcurrentSkipListMap<Long, Published> published : publishedMap.values()) {
+            size += published.size();
+        }
+        return size;
+    }
+
+    private void evict(String group, ConcurrentSkipListMap<Long, Published> published, long belowSeqNum) {
+        Map.Entry<Long, Published> entry;
+        while ((entry = published.firstEntry()) != null && entry.getKey() <= belowSeqNum) {
+            if (!published.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            Published removed = entry.getValue();
+            retainedBytes.addAndGet(-removed.bytes);
+            //覆盖消息的时间戳必须大于原消息, 才能替换各节点上的数据
+            long timestamp = Math.max(System.currentTimeMillis(), removed.timestamp + 1);
+            share(headerKey(group, entry.getKey()), EMPTY, timestamp, timestamp);
+            for (int i = 0; i < removed.chunks; i++) {
+                share(chunkKey(group, entry.getKey(), i), EMPTY, timestamp, timestamp);
+            }
+        }
+    }
+
+    private void share(String key, byte[] payload, long timestamp, long expireAt) {
+        SharedDataMessage message = new SharedDataMessage();
+        message.setKey(key);
+        message.setPayload(payload);
+        message.setTimestamp(timestamp);
+        message.setExpireAt(expireAt);
+        gossipManager.gossipSharedData(message);
+    }
+
+    private byte[] findPayload(String key) {
+        SharedDataMessage message = gossipManager.findSharedGossipData(key);
+        if (message == null || !(message.getPayload() instanceof byte[])) {
+            return null;
+        }
+        return (byte[]) message.getPayload();
+    }
+
+    static byte[] compress(Common.Block block) throws GossipException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(block.getSerializedSize() / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+            block.writeTo(out);
+        } catch (IOException e) {
+            throw new GossipException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String headerKey(String group, long seqNum) {
+        return KEY_PREFIX + group + "-" + seqNum;
+    }
+
+    private static String chunkKey(String group, long seqNum, int index) {
+        return KEY_PREFIX + group + "-" + seqNum + "-" + index;
+    }
+
+    /**
+     * 已广播区块的分片数、压缩后字节数和时间戳
+     */
+    private static class Published {
+        private final int chunks;
+        private final int bytes;
+        private final long timestamp;
+
+        Published(int chunks, int bytes, long timestamp) {
+            this.chunks = chunks;
+            this.bytes = bytes;
+            this.timestamp = timestamp;
+        }
+    }
+}
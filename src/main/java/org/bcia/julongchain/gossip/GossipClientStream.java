@@ -22,8 +22,8 @@ import org.bcia.julongchain.common.log.JulongChainLogFactory;
 import org.bcia.julongchain.protos.gossip.GossipGrpc;
 import org.bcia.julongchain.protos.gossip.Message;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 
 /**
@@ -41,7 +41,7 @@ public class GossipClientStream implements StreamObserver<Message.Envelope> {
 
     private StreamObserver<Message.Envelope> streamObserver;
 
-    private Map<String, LinkedBlockingQueue<Message.Envelope>> queueMap = new HashMap<String, LinkedBlockingQueue<Message.Envelope>>();
+    private Map<String, LinkedBlockingQueue<Message.Envelope>> queueMap = new ConcurrentHashMap<String, LinkedBlockingQueue<Message.Envelope>>();
 
     private static GossipClientStream gossipClientStream;
 
@@ -70,7 +70,7 @@ public class GossipClientStream implements StreamObserver<Message.Envelope> {
         try {
             Message.GossipMessage gossipMessage = Message.GossipMessage.parseFrom(envelope.getPayload());
             String group = gossipMessage.getGroup().toStringUtf8();
-            queueMap.get(group).put(envelope);
+            getQueue(group).put(envelope);
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         }
@@ -86,6 +86,13 @@ public class GossipClientStream implements StreamObserver<Message.Envelope> {
         log.info("completed");
     }
 
+    /**
+     * 群组的接收队列, 不存在时创建
+     */
+    public LinkedBlockingQueue<Message.Envelope> getQueue(String group) {
+        return queueMap.computeIfAbsent(group, k -> new LinkedBlockingQueue<Message.Envelope>());
+    }
+
     public Map<String, LinkedBlockingQueue<Message.Envelope>> getQueueMap() {
         return queueMap;
     }
@@ -18,20 +18,31 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import io.grpc.stub.StreamObserver;
 import org.apache.commons.lang3.StringUtils;
 import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.ledger.blockledger.IFactory;
+import org.bcia.julongchain.common.ledger.blockledger.IIterator;
 import org.bcia.julongchain.common.ledger.blockledger.ReadWriteBase;
 import org.bcia.julongchain.common.ledger.blockledger.Util;
+import org.bcia.julongchain.common.ledger.blockledger.file.FileLedger;
 import org.bcia.julongchain.common.ledger.blockledger.file.FileLedgerFactory;
 import org.bcia.julongchain.common.log.JulongChainLog;
 import org.bcia.julongchain.common.log.JulongChainLogFactory;
 import org.bcia.julongchain.consenter.common.localconfig.ConsenterConfigFactory;
 import org.bcia.julongchain.core.ledger.BlockAndPvtData;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
 import org.bcia.julongchain.core.ledger.ledgermgmt.LedgerManager;
 import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.consenter.Ab;
 import org.bcia.julongchain.protos.gossip.GossipGrpc;
 import org.bcia.julongchain.protos.gossip.Message;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 类描述
@@ -44,24 +55,57 @@ public class GossipService extends GossipGrpc.GossipImplBase {
 
     private static JulongChainLog log = JulongChainLogFactory.getLog(GossipService.class);
 
-    private static Set<StreamObserver<Message.Envelope>> responseObservers = new HashSet<StreamObserver<Message.Envelope>>();
+    /**
+     * 一次RemoteStateResponse中区块的最大总字节数, 第一个区块总是返回
+     */
+    public static final int MAX_STATE_RESPONSE_BYTES = 4 * 1024 * 1024;
+
+    private static Set<StreamObserver<Message.Envelope>> responseObservers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 处理拉取请求的共享线程池, 请求只读取已存在的区块, 不阻塞等待新区块
+     */
+    private static final ExecutorService STATE_TRANSFER_EXECUTOR = newStateTransferExecutor();
+
+    private volatile IFactory ledgerFactory;
+
+    public GossipService() {
+    }
+
+    /**
+     * @param ledgerFactory 区块账本, 为空时使用共识节点配置的文件账本
+     */
+    public GossipService(IFactory ledgerFactory) {
+        this.ledgerFactory = ledgerFactory;
+    }
+
+    private static ExecutorService newStateTransferExecutor() {
+        AtomicInteger index = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread thread = new Thread(r, "gossip-state-transfer-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
     @Override
     public StreamObserver<Message.Envelope> gossipStream(StreamObserver<Message.Envelope> responseObserver) {
+        responseObservers.add(responseObserver);
         return new StreamObserver<Message.Envelope>() {
             @Override
             public void onNext(Message.Envelope envelope) {
-                responseObservers.add(responseObserver);
                 handPullRequest(envelope, responseObserver);
             }
 
             @Override
             public void onError(Throwable throwable) {
+                responseObservers.remove(responseObserver);
                 log.error(throwable.getMessage(), throwable);
             }
 
             @Override
             public void onCompleted() {
+                responseObservers.remove(responseObserver);
                 log.info("gossip complete");
             }
         };
@@ -74,38 +118,129 @@ public class GossipService extends GossipGrpc.GossipImplBase {
                 return;
             }
             Message.GossipMessage gossipMessage = Message.GossipMessage.parseFrom(payload);
-            if (gossipMessage == null) {
+            if (gossipMessage == null || !gossipMessage.hasStateRequest()) {
                 return;
             }
             Message.RemoteStateRequest stateRequest = gossipMessage.getStateRequest();
-            if (stateRequest == null) {
-                return;
-            }
             String group = gossipMessage.getGroup().toStringUtf8();
             long startSeqNum = stateRequest.getStartSeqNum();
-            new Thread() {
-                @Override
-                public void run() {
-                    String location = ConsenterConfigFactory.loadConsenterConfig().getFileLedger().getLocation();
-                    FileLedgerFactory fileLedgerFactory = null;
-                    try {
-                        fileLedgerFactory = new FileLedgerFactory(location);
-                        ReadWriteBase readWriteBase = fileLedgerFactory.getOrCreate(group);
-                        log.info("receive pull request:"+ group + " " +startSeqNum);
-                        Common.Block block = Util.getBlock(readWriteBase, startSeqNum);
-                        log.info("get block:" + block.getHeader().getNumber());
-                        Message.Envelope responseEnvelope = newGossipEnvelope(group, block.getHeader().getNumber(), block);
-                        responseObserver.onNext(responseEnvelope);
-                    } catch (LedgerException e) {
-                        log.error(e.getMessage(), e);
+            long endSeqNum = stateRequest.getEndSeqNum();
+            STATE_TRANSFER_EXECUTOR.execute(() -> {
+                try {
+                    ReadWriteBase readWriteBase = getLedgerFactory().getOrCreate(group);
+                    log.info("receive pull request:" + group + " " + startSeqNum + "-" + endSeqNum);
+                    if (endSeqNum > startSeqNum) {
+                        send(responseObserver, newStateResponseEnvelope(group, getBlocks(readWriteBase, startSeqNum, endSeqNum)));
+                        return;
+                    }
+                    //兼容只请求一个区块的节点, 其一直等待响应, 区块写入后再回复; 文件账本等待期间不占用线程
+                    if (readWriteBase instanceof FileLedger && startSeqNum >= readWriteBase.height()) {
+                        ((FileLedger) readWriteBase).awaitHeight(startSeqNum + 1).thenRunAsync(
+                                () -> sendBlock(responseObserver, group, readWriteBase, startSeqNum), STATE_TRANSFER_EXECUTOR);
+                        return;
                     }
+                    sendBlock(responseObserver, group, readWriteBase, startSeqNum);
+                } catch (Exception e) {
+                    log.error(e.getMessage(), e);
                 }
-            }.start();
+            });
         } catch (InvalidProtocolBufferException e) {
             log.error(e.getMessage(), e);
         }
     }
 
+    private static void sendBlock(StreamObserver<Message.Envelope> responseObserver, String group,
+                                  ReadWriteBase readWriteBase, long seqNum) {
+        try {
+            Common.Block block = Util.getBlock(readWriteBase, seqNum);
+            log.info("get block:" + block.getHeader().getNumber());
+            send(responseObserver, newGossipEnvelope(group, block.getHeader().getNumber(), block));
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private static void send(StreamObserver<Message.Envelope> responseObserver, Message.Envelope envelope) {
+        synchronized (responseObserver) {
+            responseObserver.onNext(envelope);
+        }
+    }
+
+    /**
+     * 读取[startSeqNum, endSeqNum]范围内已存在的区块, 总字节数不超过MAX_STATE_RESPONSE_BYTES
+     * 不等待未写入的区块, startSeqNum区块不存在时返回空列表
+     */
+    static List<Common.Block> getBlocks(ReadWriteBase readWriteBase, long startSeqNum, long endSeqNum) throws LedgerException {
+        List<Common.Block> blocks = new ArrayList<>();
+        long last = Math.min(endSeqNum, readWriteBase.height() - 1);
+        if (startSeqNum > last) {
+            return blocks;
+        }
+        IIterator iterator = readWriteBase.iterator(Ab.SeekPosition.newBuilder()
+                .setSpecified(Ab.SeekSpecified.newBuilder().setNumber(startSeqNum).build())
+                .build());
+        try {
+            long size = 0;
+            for (long seqNum = startSeqNum; seqNum <= last; seqNum++) {
+                Map.Entry<QueryResult, Common.Status> entry = (Map.Entry<QueryResult, Common.Status>) iterator.next().getObj();
+                if (!Common.Status.SUCCESS.equals(entry.getValue())) {
+                    break;
+                }
+                Common.Block block = (Common.Block) entry.getKey().getObj();
+                size += block.getSerializedSize();
+                if (!blocks.isEmpty() && size > MAX_STATE_RESPONSE_BYTES) {
+                    break;
+                }
+                blocks.add(block);
+            }
+        } finally {
+            iterator.close();
+        }
+        return blocks;
+    }
+
+    private IFactory getLedgerFactory() throws LedgerException {
+        if (ledgerFactory == null) {
+            synchronized (this) {
+                if (ledgerFactory == null) {
+                    String location = ConsenterConfigFactory.loadConsenterConfig().getFileLedger().getLocation();
+                    ledgerFactory = new FileLedgerFactory(location);
+                }
+            }
+        }
+        return ledgerFactory;
+    }
+
+    public static Message.Envelope newStateResponseEnvelope(String group, List<Common.Block> blocks) {
+        Message.RemoteStateResponse.Builder stateResponse = Message.RemoteStateResponse.newBuilder();
+        for (Common.Block block : blocks) {
+            stateResponse.addPayloads(Message.Payload.newBuilder()
+                    .setSeqNum(block.getHeader().getNumber())
+                    .setData(block.toByteString()));
+        }
+        Message.GossipMessage gossipMessage = Message.GossipMessage.newBuilder()
+                .setGroup(ByteString.copyFromUtf8(group))
+                .setStateResponse(stateResponse)
+                .build();
+        return Message.Envelope.newBuilder().setPayload(gossipMessage.toByteString()).build();
+    }
+
+    /**
+     * 解析拉取请求返回的区块, 支持RemoteStateResponse和只包含一个区块的DataMessage
+     */
+    public static List<Common.Block> parseBlocks(Message.Envelope envelope) throws InvalidProtocolBufferException {
+        Message.GossipMessage gossipMessage = Message.GossipMessage.parseFrom(envelope.getPayload());
+        List<Common.Block> blocks = new ArrayList<>();
+        if (gossipMessage.hasStateResponse()) {
+            for (Message.Payload payload : gossipMessage.getStateResponse().getPayloadsList()) {
+                blocks.add(Common.Block.parseFrom(payload.getData()));
+            }
+        } else if (gossipMessage.hasDataMsg()) {
+            blocks.add(Common.Block.parseFrom(gossipMessage.getDataMsg().getPayload().getData()));
+        }
+        return blocks;
+    }
+
     public static Message.Envelope newGossipEnvelope(String group, Long seqNum, Common.Block block) {
         Message.Payload payload = Message.Payload.newBuilder().setSeqNum(seqNum).setData(block.toByteString()).build();
         Message.DataMessage dataMessage = Message.DataMessage.newBuilder().setPayload(payload).build();
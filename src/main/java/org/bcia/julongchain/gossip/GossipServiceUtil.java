@@ -131,6 +131,12 @@ public class GossipServiceUtil {
     return (String) sharedGossipData.getPayload();
   }
 
+  /**
+   * 区块转为ISO8859-1字符串分片广播, 数据永不过期
+   *
+   * @deprecated 使用{@link GossipBlockDisseminator#addBlock}, 二进制压缩分片并按区块高度淘汰
+   */
+  @Deprecated
   public static void addData(
       GossipManager gossipService, String group, Long seqNum, Common.Block data)
       throws GossipException {
@@ -200,6 +206,10 @@ public class GossipServiceUtil {
     }
   }
 
+  /**
+   * @deprecated 使用{@link GossipBlockDisseminator#getBlock}
+   */
+  @Deprecated
   public static Common.Block getData(GossipManager gossipService, String group, Long seqNum)
       throws GossipException {
 
@@ -0,0 +1,209 @@
+/**
+ * Copyright Dingxuan. All Rights Reserved.
+ * <p>
+ * <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ * <p>
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.gossip;
+
+import com.google.protobuf.ByteString;
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.core.ledger.BlockAndPvtData;
+import org.bcia.julongchain.core.ledger.ledgermgmt.LedgerManager;
+import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.gossip.Message;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 节点从共识节点拉取区块
+ * 每次请求[height, height + batchBlocks - 1]范围内的区块, 共识节点按字节数分批返回已存在的区块,
+ * 本地账本已是最新时共识节点返回空响应, 间隔IDLE_PULL_INTERVAL后再次请求; 同一时刻只有一个请求等待响应
+ *
+ * @author wanliangbing
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class GossipStatePuller {
+
+    private static JulongChainLog log = JulongChainLogFactory.getLog(GossipStatePuller.class);
+
+    /**
+     * 一次请求的区块数
+     */
+    public static final int DEFAULT_BATCH_BLOCKS = 1000;
+
+    /**
+     * 等待响应的超时时间(毫秒), 超时后重新发送请求
+     */
+    private static final long RESPONSE_TIMEOUT = 60000L;
+
+    /**
+     * 等待中的请求超过该时间(毫秒)仍无响应时视为丢失, 重新发送
+     */
+    private static final long REQUEST_EXPIRY = 5 * RESPONSE_TIMEOUT;
+
+    /**
+     * 本地账本已是最新时两次请求的间隔(毫秒)
+     */
+    private static final long IDLE_PULL_INTERVAL = 1000L;
+
+    /**
+     * 拉取失败后重试的间隔(毫秒)
+     */
+    private static final long RETRY_INTERVAL = 5000L;
+
+    private final GossipClientStream gossipClientStream;
+    private final String group;
+    private final IBlockCommitter committer;
+    private final int batchBlocks;
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile boolean stopped;
+
+    /**
+     * 等待响应的请求的发送时间, 没有时为0
+     */
+    private long requestSentAt;
+
+    public GossipStatePuller(GossipClientStream gossipClientStream, String group, IBlockCommitter committer, int batchBlocks) {
+        this.gossipClientStream = gossipClientStream;
+        this.group = group;
+        this.committer = committer;
+        this.batchBlocks = batchBlocks;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "gossip-pull-" + group);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交到节点账本
+     */
+    public static IBlockCommitter newLedgerCommitter(String group) {
+        return new IBlockCommitter() {
+            @Override
+            public long getHeight() throws LedgerException {
+                return LedgerManager.openLedger(group).getBlockchainInfo().getHeight();
+            }
+
+            @Override
+            public void commit(Common.Block block) throws LedgerException {
+                LedgerManager.openLedger(group).commitWithPvtData(new BlockAndPvtData(block, null, null));
+            }
+        };
+    }
+
+    /**
+     * 启动拉取
+     */
+    public void start() {
+        scheduler.execute(this::pull);
+    }
+
+    public void stop() {
+        stopped = true;
+        scheduler.shutdownNow();
+    }
+
+    private void pull() {
+        if (stopped) {
+            return;
+        }
+        long delay;
+        try {
+            //有新区块时立即继续拉取
+            delay = pullOnce(RESPONSE_TIMEOUT) > 0 ? 0 : IDLE_PULL_INTERVAL;
+        } catch (InterruptedException e) {
+            log.info("Stop pulling blocks of " + group);
+            return;
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            delay = RETRY_INTERVAL;
+        }
+        if (!stopped) {
+            scheduler.schedule(this::pull, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 发送一次拉取请求并提交返回的区块
+     *
+     * @param timeout 等待响应的超时时间(毫秒)
+     * @return 提交的区块数, 已是最新或超时返回0
+     */
+    public int pullOnce(long timeout) throws Exception {
+        long height = committer.getHeight();
+        //先创建接收队列, 避免响应先于队列到达
+        LinkedBlockingQueue<Message.Envelope> queue = gossipClientStream.getQueue(group);
+        long now = System.currentTimeMillis();
+        if (requestSentAt == 0 || now - requestSentAt >= REQUEST_EXPIRY) {
+            long endSeqNum = height + Math.max(1, batchBlocks) - 1;
+            Message.RemoteStateRequest remoteStateRequest = Message.RemoteStateRequest.newBuilder()
+                    .setStartSeqNum(height)
+                    .setEndSeqNum(endSeqNum)
+                    .build();
+            Message.GossipMessage gossipMessage = Message.GossipMessage.newBuilder()
+                    .setGroup(ByteString.copyFromUtf8(group))
+                    .setStateRequest(remoteStateRequest)
+                    .build();
+            log.debug("Send pull request:" + group + " " + height + "-" + endSeqNum);
+            gossipClientStream.serialSend(Message.Envelope.newBuilder().setPayload(gossipMessage.toByteString()).build());
+            requestSentAt = now;
+        } else {
+            //上一个请求仍未响应, 继续等待而不重复发送
+            log.debug("Pull request of " + group + " still outstanding, waiting for response");
+        }
+
+        Message.Envelope envelope = queue.poll(timeout, TimeUnit.MILLISECONDS);
+        if (envelope == null) {
+            log.warn("Pull request timeout:" + group + " " + height);
+            return 0;
+        }
+        requestSentAt = 0;
+        List<Common.Block> blocks = GossipService.parseBlocks(envelope);
+        int committed = 0;
+        for (Common.Block block : blocks) {
+            long number = block.getHeader().getNumber();
+            //超时请求的响应可能晚到, 忽略已提交的区块
+            if (number < height) {
+                continue;
+            }
+            if (number > height) {
+                throw new LedgerException("Expect block " + height + " of group " + group + ", but got " + number);
+            }
+            committer.commit(block);
+            height++;
+            committed++;
+        }
+        log.debug("Saved " + committed + " blocks of " + group + ", height " + height);
+        return committed;
+    }
+
+    /**
+     * 拉取的区块的提交
+     */
+    public interface IBlockCommitter {
+        /**
+         * 本地账本高度, 即下一个需要拉取的区块号
+         */
+        long getHeight() throws LedgerException;
+
+        void commit(Common.Block block) throws LedgerException;
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright DingXuan. All Rights Reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.msp.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程安全的分段LRU缓存
+ * 按key的hash分为多段, 每段为一个LRUCache, 只锁定key所在的段, 段之间互不阻塞
+ * 每段最多缓存cacheSize / 段数个元素, 超出时淘汰该段中最久未使用的元素
+ *
+ * @author zhangmingyang
+ * @date 2018/10/17
+ * @company Dingxuan
+ */
+public class StripedLRUCache<K, V> {
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private final int cacheSize;
+    private final LRUCache<K, V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public StripedLRUCache(int cacheSize) {
+        this(cacheSize, DEFAULT_SEGMENTS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public StripedLRUCache(int cacheSize, int segmentCount) {
+        this.cacheSize = cacheSize;
+        this.segments = new LRUCache[segmentCount];
+        int segmentSize = Math.max((cacheSize + segmentCount - 1) / segmentCount, 1);
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new LRUCache<>(segmentSize);
+        }
+    }
+
+    /**
+     * 获取缓存的元素, 不存在时返回null
+     */
+    public V get(K key) {
+        LRUCache<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        LRUCache<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    public void remove(K key) {
+        LRUCache<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (LRUCache<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (LRUCache<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return String.format("size [%d/%d], hits [%d], misses [%d], hit ratio [%.2f%%]",
+                size(), cacheSize, hits, total - hits, total == 0 ? 0.0 : hits * 100.0 / total);
+    }
+
+    private LRUCache<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+}
@@ -114,6 +114,12 @@ public class Identity implements IIdentity {
 
     @Override
     public void verify(byte[] msg, byte[] sig) throws VerifyException {
+        //同一签名已验证通过时不再验证
+        VerifiedSignatureCache signatureCache = VerifiedSignatureCache.getInstance();
+        VerifiedSignatureCache.Key cacheKey = signatureCache.newKey(identityIdentifier, msg, sig);
+        if (signatureCache.contains(cacheKey)) {
+            return;
+        }
         boolean verify = false;
         try {
             verify = msp.getCsp().verify(pk, sig, msg, new SM2SignerOpts());
@@ -123,6 +129,7 @@ public class Identity implements IIdentity {
         } catch (JulongChainException e) {
             throw new VerifyException(e.getMessage());
         }
+        signatureCache.put(cacheKey);
     }
 
     @Override
@@ -18,6 +18,7 @@ package org.bcia.julongchain.msp.mgmt;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.bcia.julongchain.common.exception.CspException;
 import org.bcia.julongchain.common.exception.JulongChainException;
 import org.bcia.julongchain.common.exception.MspException;
@@ -34,6 +35,7 @@ import org.bcia.julongchain.csp.intfs.ICsp;
 import org.bcia.julongchain.msp.IIdentity;
 import org.bcia.julongchain.msp.IMsp;
 import org.bcia.julongchain.msp.ISigningIdentity;
+import org.bcia.julongchain.msp.cache.StripedLRUCache;
 import org.bcia.julongchain.msp.entity.IdentityIdentifier;
 import org.bcia.julongchain.msp.entity.OUIdentifier;
 import org.bcia.julongchain.msp.entity.VerifyOptions;
@@ -53,6 +55,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -69,6 +72,8 @@ import static org.bcia.julongchain.msp.mgmt.MspValidate.validateIdentityOus;
 public class Msp implements IMsp {
     private static JulongChainLog log = JulongChainLogFactory.getLog(Msp.class);
     private final static int JULONG_MSP = 0;
+    private final static int IDENTITY_CACHE_SIZE = 1000;
+    private final static int VALIDATION_CACHE_SIZE = 1000;
     private int mspVersion;
     private IIdentity[] rootCerts;
     private IIdentity[] intermediateCerts;
@@ -88,6 +93,19 @@ public class Msp implements IMsp {
     private OUIdentifier nodeOU;
     private OUIdentifier orderOU;
     private MspConfigPackage.MSPConfig mspConfig;
+    /**
+     * 反序列化的身份, key为序列化的身份, 避免每笔交易重复解析证书
+     */
+    private final StripedLRUCache<ByteString, IIdentity> identityCache = new StripedLRUCache<>(IDENTITY_CACHE_SIZE);
+    /**
+     * 身份的证书链与证书链标识, key为身份标识(证书摘要)
+     */
+    private final StripedLRUCache<String, X509Certificate[]> certChainCache = new StripedLRUCache<>(VALIDATION_CACHE_SIZE);
+    private final StripedLRUCache<String, byte[]> certChainIdentifierCache = new StripedLRUCache<>(VALIDATION_CACHE_SIZE);
+    /**
+     * 验证通过的身份, key为身份标识, value为证书的失效时间
+     */
+    private final StripedLRUCache<String, Date> validatedIdentityCache = new StripedLRUCache<>(VALIDATION_CACHE_SIZE);
 
     public Msp() {
     }
@@ -99,6 +117,8 @@ public class Msp implements IMsp {
     @Override
     public IMsp setup(MspConfigPackage.MSPConfig config) {
         Msp msp = null;
+        //重新配置后根证书、组织单元可能变化, 清除缓存
+        clearCaches();
         try {
             MspConfigPackage.JuLongMSPConfig fabricMSPConfig = MspConfigPackage.JuLongMSPConfig.parseFrom(config.getConfig());
             this.name = fabricMSPConfig.getName();
@@ -157,11 +177,42 @@ public class Msp implements IMsp {
     public void validate(IIdentity id) throws MspException {
         if (id instanceof Identity) {
             Identity identity = (Identity) id;
+            String cacheKey = getCacheKey(identity);
+            if (cacheKey != null) {
+                //证书有效期内已验证通过的身份不再验证证书链
+                Date notAfter = validatedIdentityCache.get(cacheKey);
+                if (notAfter != null && new Date().before(notAfter)) {
+                    return;
+                }
+            }
             MspValidate.validateIdentity(this, identity);
+            if (cacheKey != null) {
+                validatedIdentityCache.put(cacheKey, identity.expireAt());
+            }
         }
 
     }
 
+    /**
+     * 清除身份与验证结果缓存
+     */
+    public void clearCaches() {
+        identityCache.clear();
+        certChainCache.clear();
+        certChainIdentifierCache.clear();
+        validatedIdentityCache.clear();
+    }
+
+    /**
+     * 身份在缓存中的key, 身份标识为证书摘要
+     */
+    private static String getCacheKey(Identity identity) {
+        if (identity.getIdentifier() == null || StringUtils.isEmpty(identity.getIdentifier().getId())) {
+            return null;
+        }
+        return identity.getIdentifier().getId();
+    }
+
     @Override
     public void satisfiesPrincipal(IIdentity id, MspPrincipal.MSPPrincipal principal) throws MspException {
         switch (principal.getPrincipalClassification()) {
@@ -279,6 +330,11 @@ public class Msp implements IMsp {
 
     @Override
     public IIdentity deserializeIdentity(byte[] serializedIdentity) throws MspException {
+        ByteString cacheKey = ByteString.copyFrom(serializedIdentity);
+        IIdentity identity = identityCache.get(cacheKey);
+        if (identity != null) {
+            return identity;
+        }
 
         Identities.SerializedIdentity sId = null;
         try {
@@ -289,7 +345,9 @@ public class Msp implements IMsp {
         if (!sId.getMspid().equals(name)) {
             throw new MspException(String.format("expected MSP ID %s, received %s", name, sId.getMspid()));
         }
-        return deserializeIdentityInternal(sId.getIdBytes().toByteArray());
+        identity = deserializeIdentityInternal(sId.getIdBytes().toByteArray());
+        identityCache.put(cacheKey, identity);
+        return identity;
     }
 
     public IIdentity deserializeIdentityInternal(byte[] serializedIdentity) throws MspException {
@@ -441,11 +499,22 @@ public class Msp implements IMsp {
      * @throws MspException
      */
     public byte[] getCertChainIdentifier(IIdentity identity) throws MspException {
+        String cacheKey = identity instanceof Identity ? getCacheKey((Identity) identity) : null;
+        if (cacheKey != null) {
+            byte[] identifier = certChainIdentifierCache.get(cacheKey);
+            if (identifier != null) {
+                return identifier;
+            }
+        }
         X509Certificate[] chain = getCertChain(identity);
         if (chain == null) {
             throw new MspException(String.format("Failed getting certification chain for %s", identity.getMSPIdentifier()));
         }
-        return getCertChainIdentifierFromChain(chain);
+        byte[] identifier = getCertChainIdentifierFromChain(chain);
+        if (cacheKey != null) {
+            certChainIdentifierCache.put(cacheKey, identifier);
+        }
+        return identifier;
     }
 
     /**
@@ -509,7 +578,18 @@ public class Msp implements IMsp {
             throw new MspException("An X509 certificate with Basic Constraint: " +
                     "Certificate Authority equals true cannot be used as an identity");
         }
-        return getValidationChain(identity.getCertificate(), false);
+        String cacheKey = getCacheKey(identity);
+        if (cacheKey != null) {
+            X509Certificate[] chain = certChainCache.get(cacheKey);
+            if (chain != null) {
+                return chain;
+            }
+        }
+        X509Certificate[] chain = getValidationChain(identity.getCertificate(), false);
+        if (cacheKey != null) {
+            certChainCache.put(cacheKey, chain);
+        }
+        return chain;
     }
 
     /**
@@ -0,0 +1,303 @@
+/**
+ * Copyright DingXuan. All Rights Reserved.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bcia.julongchain.msp.mgmt;
+
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.msp.entity.IdentityIdentifier;
+import org.bcia.julongchain.msp.mspconfig.MspConfig;
+import org.bcia.julongchain.msp.mspconfig.MspConfigFactory;
+import org.bouncycastle.crypto.digests.SM3Digest;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已验证签名缓存
+ * 以(身份摘要, 消息摘要, 签名摘要)为key记录验证通过的签名, 同一签名在背书、提交验证与VSSC中只验证一次
+ * 只缓存验证通过的结果, 超过ttl的记录失效; 按key的hash分段, 每段按最近使用顺序淘汰, 段之间互不阻塞
+ * 写入时每隔ttl清理一次已失效的记录, 并在debug日志中输出命中率等统计
+ * 身份本身的有效性(证书链、吊销)不在缓存范围内, 仍由Identity.validate检查
+ *
+ * @author zhangmingyang
+ * @date 2018/10/17
+ * @company Dingxuan
+ */
+public class VerifiedSignatureCache {
+    private static JulongChainLog log = JulongChainLogFactory.getLog(VerifiedSignatureCache.class);
+
+    public static final int DEFAULT_SIZE = 10000;
+    public static final long DEFAULT_TTL = 10 * 60 * 1000L;
+    private static final int SEGMENTS = 16;
+
+    private static volatile VerifiedSignatureCache instance;
+
+    private final int maxSize;
+    private final long ttl;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    /**
+     * 下一次清理失效记录的时间
+     */
+    private final AtomicLong nextPurgeAt;
+
+    /**
+     * @param maxSize 最多缓存的签名数量, 不大于0时不缓存
+     * @param ttl     记录的有效时间(毫秒)
+     */
+    public VerifiedSignatureCache(int maxSize, long ttl) {
+        this.maxSize = Math.max(maxSize, 0);
+        this.ttl = ttl;
+        this.segments = new Segment[SEGMENTS];
+        int segmentSize = (this.maxSize + SEGMENTS - 1) / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+        this.nextPurgeAt = new AtomicLong(System.currentTimeMillis() + ttl);
+    }
+
+    /**
+     * 节点内共享的缓存, 大小与有效时间读取gmcsp.yaml的node.signatureCache
+     */
+    public static VerifiedSignatureCache getInstance() {
+        if (instance == null) {
+            synchronized (VerifiedSignatureCache.class) {
+                if (instance == null) {
+                    int size = DEFAULT_SIZE;
+                    long ttl = DEFAULT_TTL;
+                    MspConfig mspConfig = MspConfigFactory.getMspConfig();
+                    if (mspConfig != null && mspConfig.getNode() != null && mspConfig.getNode().getSignatureCache() != null) {
+                        size = mspConfig.getNode().getSignatureCache().getSize();
+                        ttl = mspConfig.getNode().getSignatureCache().getTtl();
+                    }
+                    log.info("Verified signature cache size [" + size + "], ttl [" + ttl + "ms]");
+                    instance = new VerifiedSignatureCache(size, ttl);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 生成缓存key, 参数不完整时返回null(不使用缓存)
+     */
+    public Key newKey(IdentityIdentifier identifier, byte[] msg, byte[] sig) {
+        if (maxSize == 0 || identifier == null || msg == null || sig == null) {
+            return null;
+        }
+        return new Key(identifier.getMspId() + "/" + identifier.getId(), sm3(msg), sm3(sig));
+    }
+
+    /**
+     * 签名是否已验证通过且未失效
+     */
+    public boolean contains(Key key) {
+        if (key == null) {
+            return false;
+        }
+        Segment segment = segmentFor(key);
+        long now = System.currentTimeMillis();
+        synchronized (segment) {
+            Long expireAt = segment.get(key);
+            if (expireAt != null) {
+                if (expireAt > now) {
+                    hits.increment();
+                    return true;
+                }
+                segment.remove(key);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * 记录验证通过的签名
+     */
+    public void put(Key key) {
+        if (key == null) {
+            return;
+        }
+        Segment segment = segmentFor(key);
+        long now = System.currentTimeMillis();
+        synchronized (segment) {
+            segment.put(key, now + ttl);
+        }
+        purgeIfDue(now);
+    }
+
+    /**
+     * 距上次清理超过ttl时清理失效记录, 同一时刻只有一个写入线程执行清理
+     */
+    private void purgeIfDue(long now) {
+        long purgeAt = nextPurgeAt.get();
+        if (now < purgeAt || !nextPurgeAt.compareAndSet(purgeAt, now + ttl)) {
+            return;
+        }
+        purgeExpired();
+        if (log.isDebugEnabled()) {
+            log.debug("Verified signature cache " + this);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * 删除已失效的记录
+     */
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Iterator<Long> iterator = segment.values().iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next() <= now) {
+                        iterator.remove();
+                        expirations.increment();
+                    }
+                }
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size [%d/%d], hits [%d], misses [%d], hit ratio [%.2f%%], evictions [%d], expirations [%d]",
+                size(), maxSize, getHits(), getMisses(), getHitRatio() * 100, getEvictions(), getExpirations());
+    }
+
+    private Segment segmentFor(Key key) {
+        return segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+    }
+
+    private static byte[] sm3(byte[] data) {
+        SM3Digest digest = new SM3Digest();
+        digest.update(data, 0, data.length);
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return result;
+    }
+
+    /**
+     * 缓存分段, value为记录的失效时间
+     */
+    private class Segment extends LinkedHashMap<Key, Long> {
+        private final int segmentSize;
+
+        Segment(int segmentSize) {
+            super(16, 0.75f, true);
+            this.segmentSize = segmentSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Long> eldest) {
+            if (size() > segmentSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 缓存key: 身份摘要(mspId与证书摘要), 消息摘要, 签名摘要
+     */
+    public static class Key {
+        private final String identity;
+        private final byte[] msgDigest;
+        private final byte[] sigDigest;
+        private final int hash;
+
+        Key(String identity, byte[] msgDigest, byte[] sigDigest) {
+            this.identity = identity;
+            this.msgDigest = msgDigest;
+            this.sigDigest = sigDigest;
+            this.hash = 31 * (31 * identity.hashCode() + Arrays.hashCode(msgDigest)) + Arrays.hashCode(sigDigest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && identity.equals(key.identity)
+                    && Arrays.equals(msgDigest, key.msgDigest) && Arrays.equals(sigDigest, key.sigDigest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -42,6 +42,7 @@ public class MspConfig {
         private String mspConfigPath;
         private String localMspId;
         private String localMspType;
+        private SignatureCache signatureCache;
 
         public Csp getCsp() {
             return csp;
@@ -74,6 +75,35 @@ public class MspConfig {
         public void setLocalMspType(String localMspType) {
             this.localMspType = localMspType;
         }
+
+        public SignatureCache getSignatureCache() {
+            return signatureCache;
+        }
+
+        public void setSignatureCache(SignatureCache signatureCache) {
+            this.signatureCache = signatureCache;
+        }
+    }
+
+    public static class SignatureCache {
+        private int size;
+        private long ttl;
+
+        public int getSize() {
+            return size;
+        }
+
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public long getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(long ttl) {
+            this.ttl = ttl;
+        }
     }
 
     public static class Csp {
@@ -15,7 +15,6 @@
  */
 package org.bcia.julongchain.node.entity;
 
-import com.google.protobuf.ByteString;
 import io.grpc.ManagedChannel;
 import io.grpc.netty.NettyChannelBuilder;
 import org.apache.commons.lang3.StringUtils;
@@ -38,18 +37,16 @@ import org.bcia.julongchain.core.ssc.SystemSmartContractManager;
 import org.bcia.julongchain.events.producer.EventHubServer;
 import org.bcia.julongchain.events.producer.EventsServerConfig;
 import org.bcia.julongchain.gossip.GossipClientStream;
-import org.bcia.julongchain.gossip.GossipService;
+import org.bcia.julongchain.gossip.GossipStatePuller;
 import org.bcia.julongchain.node.Node;
 import org.bcia.julongchain.node.common.client.AdminClient;
 import org.bcia.julongchain.node.common.client.IAdminClient;
 import org.bcia.julongchain.node.common.util.NodeConstant;
-import org.bcia.julongchain.protos.gossip.Message;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * 节点服务
@@ -163,36 +160,9 @@ public class NodeServer {
     }
 
     public static void startPullFromConsenter(GossipClientStream gossipClientStream, String ledgerID) {
-        new Thread() {
-            @Override
-            public void run() {
-                while (true) {
-                    try {
-                        log.info("Start a pull request.");
-                        long height = LedgerManager.openLedger(ledgerID).getBlockchainInfo().getHeight();
-                        Message.RemoteStateRequest remoteStateRequest = Message.RemoteStateRequest.newBuilder().setStartSeqNum(height).setEndSeqNum(height).build();
-                        Message.GossipMessage gossipMessage = Message.GossipMessage.newBuilder().setGroup(ByteString.copyFromUtf8(ledgerID)).setStateRequest(remoteStateRequest).build();
-                        Message.Envelope envelope = Message.Envelope.newBuilder().setPayload(gossipMessage.toByteString()).build();
-                        log.info("Send pull request:" + ledgerID + " " + height);
-                        gossipClientStream.serialSend(envelope);
-                        if (gossipClientStream.getQueueMap().get(ledgerID) == null) {
-                            gossipClientStream.getQueueMap().put(ledgerID, new LinkedBlockingQueue<Message.Envelope>());
-                        }
-                        log.info("Receive block");
-                        Message.Envelope receiveEnvelope = gossipClientStream.getQueueMap().get(ledgerID).take();
-                        GossipService.saveBlock(receiveEnvelope);
-                        log.info("Saved block");
-                    } catch (Exception e) {
-                        log.error(e.getMessage(), e);
-                        try {
-                            Thread.sleep(5000);
-                        } catch (InterruptedException e1) {
-                            log.error(e1.getMessage(), e1);
-                        }
-                    }
-                }
-            }
-        }.start();
+        log.info("Start pulling blocks of " + ledgerID);
+        new GossipStatePuller(gossipClientStream, ledgerID, GossipStatePuller.newLedgerCommitter(ledgerID),
+                GossipStatePuller.DEFAULT_BATCH_BLOCKS).start();
     }
 
     private void initSysSmartContracts() {
@@ -292,8 +262,12 @@ public class NodeServer {
 
         EventGrpcServer eventGrpcServer = new EventGrpcServer(address.getPort());
 
+        EventsServerConfig.OverflowPolicy overflowPolicy = "disconnect".equalsIgnoreCase(eventsConfig
+                .getOverflowPolicy()) ? EventsServerConfig.OverflowPolicy.DISCONNECT : EventsServerConfig
+                .OverflowPolicy.DROP;
         EventsServerConfig serverConfig = new EventsServerConfig(eventsConfig.getBuffersize(), eventsConfig
-                .getTimeout(), eventsConfig.getTimewindow(), null);
+                .getTimeout(), eventsConfig.getTimewindow(), null, eventsConfig.getSubscriberBuffersize(),
+                overflowPolicy);
         //绑定事件服务
         eventGrpcServer.bindEventHubServer(new EventHubServer(serverConfig));
 
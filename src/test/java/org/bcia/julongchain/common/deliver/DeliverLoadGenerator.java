@@ -0,0 +1,449 @@
+package org.bcia.julongchain.common.deliver;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.common.ledger.blockledger.file.FileLedger;
+import org.bcia.julongchain.common.ledger.blockledger.file.FileLedgerFactory;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.consenter.common.multigroup.ChainSupport;
+import org.bcia.julongchain.consenter.util.ConsenterConstants;
+import org.bcia.julongchain.core.ledger.ledgerconfig.LedgerConfig;
+import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.consenter.Ab;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * deliver追赶测试
+ * 在文件账本中写入区块后从最早区块流式读取到最新区块, 统计每秒发送的区块数和MB数;
+ * 对比每个请求只读取一个区块(原实现)的方式
+ * <p>
+ * 运行main方法输出完整结果, 参数依次为区块数(默认100000)、每个区块的交易数(默认1)、交易字节数(默认1024)
+ *
+ * @author zhangmingyang
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class DeliverLoadGenerator {
+    private static JulongChainLog log = JulongChainLogFactory.getLog(DeliverLoadGenerator.class);
+
+    private String rootPath;
+    private int maxBlockfileSize;
+    private File dir;
+    private FileLedgerFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        rootPath = LedgerConfig.getRootPath();
+        maxBlockfileSize = LedgerConfig.getMaxBlockfileSize();
+        dir = Files.createTempDirectory("deliver").toFile();
+        factory = new FileLedgerFactory(dir.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        LedgerConfig.setRootPath(rootPath);
+        LedgerConfig.setMaxBlockfileSize(maxBlockfileSize);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int txPerBlock = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int txBytes = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+        DeliverLoadGenerator generator = new DeliverLoadGenerator();
+        generator.setUp();
+        try {
+            long start = System.currentTimeMillis();
+            FileLedger ledger = generator.newLedger("catchUp", blocks, txPerBlock, txBytes);
+            log.info("Built ledger with " + blocks + " blocks in " + (System.currentTimeMillis() - start) + "ms");
+            catchUp(ledger, blocks);
+            perBlockRequests(ledger, Math.min(blocks, 10000));
+        } finally {
+            generator.tearDown();
+        }
+    }
+
+    @Test
+    public void catchUpStream() throws Exception {
+        int blocks = 2000;
+        FileLedger ledger = newLedger("catchUp", blocks, 1, 1024);
+        RecordingObserver observer = catchUp(ledger, blocks);
+        for (int i = 0; i < blocks; i++) {
+            Assert.assertEquals(i, observer.blocks.get(i).getHeader().getNumber());
+        }
+    }
+
+    @Test
+    public void stopPositions() throws Exception {
+        FileLedger ledger = newLedger("stop", 20, 1, 16);
+        DeliverHandler handler = newHandler(ledger);
+
+        RecordingObserver specified = deliver(handler, ledger, specified(5), specified(9),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY);
+        Assert.assertEquals(Common.Status.SUCCESS, specified.awaitStatus());
+        Assert.assertEquals(5, specified.blocks.size());
+        Assert.assertEquals(9, specified.blocks.get(4).getHeader().getNumber());
+
+        RecordingObserver oldest = deliver(handler, ledger, specified(3), oldest(),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY);
+        Assert.assertEquals(Common.Status.SUCCESS, oldest.awaitStatus());
+        Assert.assertEquals(1, oldest.blocks.size());
+        Assert.assertEquals(3, oldest.blocks.get(0).getHeader().getNumber());
+
+        RecordingObserver newest = deliver(handler, ledger, newest(), newest(),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY);
+        Assert.assertEquals(Common.Status.SUCCESS, newest.awaitStatus());
+        Assert.assertEquals(1, newest.blocks.size());
+        Assert.assertEquals(19, newest.blocks.get(0).getHeader().getNumber());
+
+        RecordingObserver invalid = deliver(handler, ledger, specified(9), specified(5),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY);
+        Assert.assertEquals(Common.Status.BAD_REQUEST, invalid.awaitStatus());
+        Assert.assertTrue(invalid.blocks.isEmpty());
+
+        RecordingObserver notReady = deliver(handler, ledger, specified(25), specified(30),
+                Ab.SeekInfo.SeekBehavior.FAIL_IF_NOT_READY);
+        Assert.assertEquals(Common.Status.NOT_FOUND, notReady.awaitStatus());
+    }
+
+    @Test
+    public void blockUntilReady() throws Exception {
+        FileLedger ledger = newLedger("waiting", 1, 1, 16);
+        DeliverHandler handler = newHandler(ledger);
+        RecordingObserver observer = deliver(handler, ledger, specified(1), specified(3),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY);
+        //等待期间只登记高度通知
+        awaitWaiters(ledger, 1);
+        for (int i = 1; i <= 3; i++) {
+            ledger.append(newBlock(i, 1, 16));
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(Common.Status.SUCCESS, observer.awaitStatus());
+        Assert.assertEquals(3, observer.blocks.size());
+        Assert.assertEquals(3, observer.blocks.get(2).getHeader().getNumber());
+        Assert.assertEquals(0, ledger.getHeightNotifier().getWaiterCount());
+    }
+
+    @Test
+    public void backpressure() throws Exception {
+        int blocks = 200;
+        int window = 4;
+        FileLedger ledger = newLedger("slow", blocks, 1, 1024);
+        DeliverHandler handler = newHandler(ledger);
+        RecordingObserver observer = new RecordingObserver(window);
+        DeliverServer server = new DeliverServer(new DeliverStream(observer), seekEnvelope(ledger, oldest(), newest(),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY));
+        handler.handle(server);
+
+        //客户端不接收时最多发送window个区块
+        Thread.sleep(200);
+        Assert.assertEquals(window, observer.blocks.size());
+        for (int i = 0; observer.status == null; i++) {
+            Assert.assertTrue("deliver stalled", i < 10000);
+            observer.consume();
+            Thread.sleep(1);
+            Assert.assertTrue(observer.maxOutstanding <= window);
+        }
+        Assert.assertEquals(Common.Status.SUCCESS, observer.status);
+        Assert.assertEquals(blocks, observer.blocks.size());
+    }
+
+    @Test
+    public void pipelinedRequests() throws Exception {
+        int window = 4;
+        FileLedger ledger = newLedger("pipelined", 40, 1, 16);
+        DeliverHandler handler = newHandler(ledger);
+        RecordingObserver observer = new RecordingObserver(window);
+        DeliverStream stream = new DeliverStream(observer);
+        //同一个流中连续两个请求, 第二个请求同样依赖onReady继续发送
+        handler.handle(new DeliverServer(stream, seekEnvelope(ledger, oldest(), specified(19),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY)));
+        handler.handle(new DeliverServer(stream, seekEnvelope(ledger, specified(20), specified(39),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY)));
+        for (int i = 0; observer.statuses.size() < 2; i++) {
+            Assert.assertTrue("deliver stalled", i < 10000);
+            observer.consume();
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(Common.Status.SUCCESS, observer.statuses.get(0));
+        Assert.assertEquals(Common.Status.SUCCESS, observer.statuses.get(1));
+        Assert.assertEquals(40, observer.blocks.size());
+        for (int i = 0; i < 40; i++) {
+            Assert.assertEquals(i, observer.blocks.get(i).getHeader().getNumber());
+        }
+    }
+
+    @Test
+    public void newestOnEmptyLedger() throws Exception {
+        FileLedger ledger = newLedger("empty", 0, 1, 16);
+        DeliverHandler handler = newHandler(ledger);
+        RecordingObserver newest = deliver(handler, ledger, newest(), newest(),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY);
+        Assert.assertEquals(Common.Status.NOT_FOUND, newest.awaitStatus());
+        RecordingObserver toNewest = deliver(handler, ledger, oldest(), newest(),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY);
+        Assert.assertEquals(Common.Status.NOT_FOUND, toNewest.awaitStatus());
+        Assert.assertTrue(toNewest.blocks.isEmpty());
+    }
+
+    @Test
+    public void cancelWhileWaiting() throws Exception {
+        FileLedger ledger = newLedger("cancel", 1, 1, 16);
+        DeliverHandler handler = newHandler(ledger);
+        RecordingObserver observer = new RecordingObserver(Integer.MAX_VALUE);
+        DeliverServer server = new DeliverServer(new DeliverStream(observer), seekEnvelope(ledger, specified(1),
+                specified(Long.MAX_VALUE), Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY));
+        CompletableFuture<Void> done = handler.deliverBlocks(server, server.getEnvelope());
+        awaitWaiters(ledger, 1);
+
+        observer.cancel();
+        done.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(0, ledger.getHeightNotifier().getWaiterCount());
+        Assert.assertNull(observer.status);
+    }
+
+    /**
+     * 从最早区块流式读取到最新区块
+     */
+    private static RecordingObserver catchUp(FileLedger ledger, int blocks) throws Exception {
+        DeliverHandler handler = newHandler(ledger);
+        long start = System.nanoTime();
+        RecordingObserver observer = deliver(handler, ledger, oldest(), newest(),
+                Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY);
+        Assert.assertEquals(Common.Status.SUCCESS, observer.awaitStatus());
+        long elapsed = System.nanoTime() - start;
+        Assert.assertEquals(blocks, observer.count);
+        log.info(String.format("Streaming catch-up of %d blocks: %dms, %.0f blocks/s, %.1f MB/s", blocks,
+                elapsed / 1000000, blocks * 1e9 / elapsed, observer.bytes * 1e9 / elapsed / 1024 / 1024));
+        return observer;
+    }
+
+    /**
+     * 每个请求只读取一个区块, 每次重新打开迭代器
+     */
+    private static void perBlockRequests(FileLedger ledger, int blocks) throws Exception {
+        DeliverHandler handler = newHandler(ledger);
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < blocks; i++) {
+            RecordingObserver observer = deliver(handler, ledger, specified(i), specified(i),
+                    Ab.SeekInfo.SeekBehavior.BLOCK_UNTIL_READY);
+            Assert.assertEquals(Common.Status.SUCCESS, observer.awaitStatus());
+            bytes += observer.bytes;
+        }
+        long elapsed = System.nanoTime() - start;
+        log.info(String.format("One request per block, %d blocks: %dms, %.0f blocks/s, %.1f MB/s", blocks,
+                elapsed / 1000000, blocks * 1e9 / elapsed, bytes * 1e9 / elapsed / 1024 / 1024));
+    }
+
+    private FileLedger newLedger(String name, int blocks, int txPerBlock, int txBytes) throws Exception {
+        FileLedger ledger = (FileLedger) factory.getOrCreate(name + "-" + System.nanoTime());
+        for (int i = 0; i < blocks; i++) {
+            ledger.append(newBlock(i, txPerBlock, txBytes));
+        }
+        return ledger;
+    }
+
+    private static Common.Block newBlock(long number, int txPerBlock, int txBytes) {
+        Common.BlockData.Builder data = Common.BlockData.newBuilder();
+        for (int i = 0; i < txPerBlock; i++) {
+            Common.Payload payload = Common.Payload.newBuilder()
+                    .setHeader(Common.Header.newBuilder().setGroupHeader(Common.GroupHeader.newBuilder()
+                            .setTxId("tx" + number + "-" + i)
+                            .build()
+                            .toByteString()))
+                    .setData(ByteString.copyFrom(new byte[txBytes]))
+                    .build();
+            data.addData(Common.Envelope.newBuilder().setPayload(payload.toByteString()).build().toByteString());
+        }
+        Common.Block.Builder builder = Common.Block.newBuilder()
+                .setHeader(Common.BlockHeader.newBuilder()
+                        .setNumber(number)
+                        .setDataHash(ByteString.copyFromUtf8("block" + number)))
+                .setData(data);
+        for (int i = 0; i < ConsenterConstants.METADATA_SIZE; i++) {
+            builder.getMetadataBuilder().addMetadata(ByteString.EMPTY);
+        }
+        return builder.build();
+    }
+
+    private static DeliverHandler newHandler(FileLedger ledger) {
+        ChainSupport chainSupport = Mockito.mock(ChainSupport.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(chainSupport.getLedgerResources().getReadWriteBase()).thenReturn(ledger);
+        return new DeliverHandler(groupId -> chainSupport, 60000);
+    }
+
+    private static RecordingObserver deliver(DeliverHandler handler, FileLedger ledger, Ab.SeekPosition start,
+                                             Ab.SeekPosition stop, Ab.SeekInfo.SeekBehavior behavior) throws Exception {
+        RecordingObserver observer = new RecordingObserver(Integer.MAX_VALUE);
+        handler.handle(new DeliverServer(new DeliverStream(observer), seekEnvelope(ledger, start, stop, behavior)));
+        return observer;
+    }
+
+    private static Common.Envelope seekEnvelope(FileLedger ledger, Ab.SeekPosition start, Ab.SeekPosition stop,
+                                                Ab.SeekInfo.SeekBehavior behavior) {
+        long now = System.currentTimeMillis();
+        Common.GroupHeader groupHeader = Common.GroupHeader.newBuilder()
+                .setGroupId("deliverGroup")
+                .setTimestamp(Timestamp.newBuilder().setSeconds(now / 1000).setNanos((int) (now % 1000) * 1000000))
+                .build();
+        Ab.SeekInfo seekInfo = Ab.SeekInfo.newBuilder()
+                .setStart(start)
+                .setStop(stop)
+                .setBehavior(behavior)
+                .build();
+        Common.Payload payload = Common.Payload.newBuilder()
+                .setHeader(Common.Header.newBuilder().setGroupHeader(groupHeader.toByteString()))
+                .setData(seekInfo.toByteString())
+                .build();
+        return Common.Envelope.newBuilder().setPayload(payload.toByteString()).build();
+    }
+
+    private static Ab.SeekPosition oldest() {
+        return Ab.SeekPosition.newBuilder().setOldest(Ab.SeekOldest.getDefaultInstance()).build();
+    }
+
+    private static Ab.SeekPosition newest() {
+        return Ab.SeekPosition.newBuilder().setNewest(Ab.SeekNewest.getDefaultInstance()).build();
+    }
+
+    private static Ab.SeekPosition specified(long number) {
+        return Ab.SeekPosition.newBuilder().setSpecified(Ab.SeekSpecified.newBuilder().setNumber(number)).build();
+    }
+
+    private static void awaitWaiters(FileLedger ledger, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ledger.getHeightNotifier().getWaiterCount() < expected) {
+            Assert.assertTrue("deliver is not waiting", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * 模拟gRPC服务端流, 客户端未接收的消息超过window时isReady为false
+     */
+    private static class RecordingObserver extends ServerCallStreamObserver<Ab.DeliverResponse> {
+        private final int window;
+        private final List<Common.Block> blocks = new ArrayList<>();
+        private final List<Common.Status> statuses = new CopyOnWriteArrayList<>();
+        private final CountDownLatch statusLatch = new CountDownLatch(1);
+        private volatile Common.Status status;
+        private volatile boolean cancelled;
+        private int outstanding;
+        private int maxOutstanding;
+        private long count;
+        private long bytes;
+        private Runnable onReadyHandler;
+        private Runnable onCancelHandler;
+
+        RecordingObserver(int window) {
+            this.window = window;
+        }
+
+        @Override
+        public synchronized void onNext(Ab.DeliverResponse response) {
+            if (response.hasBlock()) {
+                //大量区块时只统计
+                if (window != Integer.MAX_VALUE || count < 10000) {
+                    blocks.add(response.getBlock());
+                }
+                count++;
+                bytes += response.getBlock().getSerializedSize();
+                outstanding++;
+                maxOutstanding = Math.max(maxOutstanding, outstanding);
+            } else {
+                status = response.getStatus();
+                statuses.add(status);
+                statusLatch.countDown();
+            }
+        }
+
+        /**
+         * 客户端接收一个区块
+         */
+        void consume() {
+            Runnable handler = null;
+            synchronized (this) {
+                if (outstanding > 0) {
+                    outstanding--;
+                    if (outstanding == window - 1) {
+                        handler = onReadyHandler;
+                    }
+                }
+            }
+            if (handler != null) {
+                handler.run();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            onCancelHandler.run();
+        }
+
+        Common.Status awaitStatus() throws InterruptedException {
+            Assert.assertTrue("no status received", statusLatch.await(60, TimeUnit.SECONDS));
+            return status;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+
+        @Override
+        public synchronized boolean isReady() {
+            return outstanding < window;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler) {
+            this.onCancelHandler = onCancelHandler;
+        }
+
+        @Override
+        public void setCompression(String compression) {
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(int count) {
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+    }
+}
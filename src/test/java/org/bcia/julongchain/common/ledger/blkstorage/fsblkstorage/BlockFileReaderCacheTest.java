@@ -0,0 +1,75 @@
+package org.bcia.julongchain.common.ledger.blkstorage.fsblkstorage;
+
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.core.ledger.util.Util;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * BlockFileReaderCache测试类
+ *
+ * @author sunzongyu
+ * @date 2018/10/10
+ * @company Dingxuan
+ */
+public class BlockFileReaderCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private String rootDir;
+
+	@Before
+	public void setUp() throws Exception {
+		rootDir = folder.getRoot().getAbsolutePath();
+		for (int fileNum = 0; fileNum < 4; fileNum++) {
+			BlockFileWriter writer = new BlockFileWriter(BlockFileManager.deriveBlockfilePath(rootDir, fileNum),
+					GroupCommitPolicy.everyBlock());
+			for (int i = 0; i < 3; i++) {
+				byte[] blockBytes = ("file" + fileNum + "block" + i).getBytes(StandardCharsets.UTF_8);
+				writer.appendBlock(Util.longToBytes(blockBytes.length, BlockFileManager.PEEK_BYTES_LEN), blockBytes);
+			}
+			writer.close();
+		}
+	}
+
+	@Test
+	public void readBlockBytes() throws Exception {
+		BlockFileReaderCache cache = new BlockFileReaderCache(rootDir, 2);
+		long offset = 0;
+		for (int i = 0; i < 3; i++) {
+			byte[] blockBytes = cache.readBlockBytes(3, offset);
+			assertEquals("file3block" + i, new String(blockBytes, StandardCharsets.UTF_8));
+			offset += BlockFileManager.PEEK_BYTES_LEN + blockBytes.length;
+		}
+		assertArrayEquals("file1block0".getBytes(StandardCharsets.UTF_8),
+				cache.read(1, BlockFileManager.PEEK_BYTES_LEN, "file1block0".length()));
+		cache.close();
+	}
+
+	@Test
+	public void evictLeastRecentlyUsed() throws Exception {
+		BlockFileReaderCache cache = new BlockFileReaderCache(rootDir, 2);
+		for (int fileNum = 0; fileNum < 4; fileNum++) {
+			assertEquals("file" + fileNum + "block0", new String(cache.readBlockBytes(fileNum, 0), StandardCharsets.UTF_8));
+			assertTrue(cache.size() <= 2);
+		}
+		//被淘汰的文件重新打开
+		assertEquals("file0block0", new String(cache.readBlockBytes(0, 0), StandardCharsets.UTF_8));
+		assertEquals(2, cache.size());
+		cache.close();
+		assertEquals(0, cache.size());
+
+		thrown.expect(LedgerException.class);
+		cache.readBlockBytes(0, 0);
+	}
+}
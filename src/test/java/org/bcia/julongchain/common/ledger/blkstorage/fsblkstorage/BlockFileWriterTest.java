@@ -0,0 +1,136 @@
+package org.bcia.julongchain.common.ledger.blkstorage.fsblkstorage;
+
+import com.google.protobuf.ByteString;
+import org.bcia.julongchain.core.ledger.util.Util;
+import org.bcia.julongchain.protos.common.Common;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * BlockFileWriter测试类
+ *
+ * @author sunzongyu
+ * @date 2018/10/08
+ * @company Dingxuan
+ */
+public class BlockFileWriterTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String rootDir;
+	private String filePath;
+
+	@Before
+	public void setUp() throws Exception {
+		rootDir = folder.getRoot().getAbsolutePath();
+		filePath = BlockFileManager.deriveBlockfilePath(rootDir, 0);
+	}
+
+	@Test
+	public void appendBlockWithPersistentChannel() throws Exception {
+		BlockFileWriter writer = new BlockFileWriter(filePath, GroupCommitPolicy.everyNBlocks(3));
+		long expectedSize = 0;
+		for (int i = 0; i < 5; i++) {
+			expectedSize += appendBlock(writer, i);
+		}
+		writer.close();
+		assertEquals(expectedSize, new File(filePath).length());
+
+		List<Object> info = BlockFileManager.scanForLastCompleteBlock(rootDir, 0, 0);
+		assertEquals(5, info.get(BlockFileManager.NUM_BLOCKS));
+		assertEquals(expectedSize, info.get(BlockFileManager.CURRENT_OFFSET));
+		Common.Block lastBlock = BlockSerialization.deserializeBlock((byte[]) info.get(BlockFileManager.LAST_BLOCK_BYTES));
+		assertEquals(4, lastBlock.getHeader().getNumber());
+	}
+
+	@Test
+	public void recoverFromIncompleteBlock() throws Exception {
+		BlockFileWriter writer = new BlockFileWriter(filePath, GroupCommitPolicy.everyNBlocks(3));
+		long completeSize = 0;
+		for (int i = 0; i < 5; i++) {
+			completeSize += appendBlock(writer, i);
+		}
+		writer.close();
+		//模拟写入区块时崩溃, 文件尾部只有部分区块
+		byte[] blockBytes = constructBlock(5).toByteArray();
+		FileOutputStream fos = new FileOutputStream(filePath, true);
+		fos.write(Util.longToBytes(blockBytes.length, BlockFileManager.PEEK_BYTES_LEN));
+		fos.write(blockBytes, 0, blockBytes.length / 2);
+		fos.close();
+		assertTrue(new File(filePath).length() > completeSize);
+
+		CheckpointInfo cpInfo = BlockFileHelper.constructCheckpointInfoFromBlockFiles(rootDir);
+		assertEquals(completeSize, cpInfo.getLatestFileChunksize());
+		assertEquals(4, cpInfo.getLastBlockNumber());
+		assertFalse(cpInfo.getChainEmpty());
+
+		//重新打开时截断未写完的区块, 并继续写入
+		writer = new BlockFileWriter(filePath, GroupCommitPolicy.everyBlock());
+		writer.truncateFile(cpInfo.getLatestFileChunksize());
+		assertEquals(completeSize, new File(filePath).length());
+		completeSize += appendBlock(writer, 5);
+		writer.close();
+
+		List<Object> info = BlockFileManager.scanForLastCompleteBlock(rootDir, 0, 0);
+		assertEquals(6, info.get(BlockFileManager.NUM_BLOCKS));
+		assertEquals(completeSize, info.get(BlockFileManager.CURRENT_OFFSET));
+	}
+
+	@Test
+	public void recoverFromIncompleteLengthPrefix() throws Exception {
+		BlockFileWriter writer = new BlockFileWriter(filePath, GroupCommitPolicy.everyMillis(1000));
+		long completeSize = appendBlock(writer, 0);
+		writer.close();
+		FileOutputStream fos = new FileOutputStream(filePath, true);
+		fos.write(new byte[BlockFileManager.PEEK_BYTES_LEN / 2]);
+		fos.close();
+
+		List<Object> info = BlockFileManager.scanForLastCompleteBlock(rootDir, 0, 0);
+		assertEquals(1, info.get(BlockFileManager.NUM_BLOCKS));
+		assertEquals(completeSize, info.get(BlockFileManager.CURRENT_OFFSET));
+	}
+
+	@Test
+	public void groupCommitPolicy() throws Exception {
+		GroupCommitPolicy policy = GroupCommitPolicy.everyNBlocks(3);
+		assertFalse(policy.shouldSync(0, 0, 0));
+		assertFalse(policy.shouldSync(2, 0, Long.MAX_VALUE));
+		assertTrue(policy.shouldSync(3, 0, 0));
+
+		policy = GroupCommitPolicy.everyMillis(100);
+		assertFalse(policy.shouldSync(10, 1000, 1099));
+		assertTrue(policy.shouldSync(1, 1000, 1100));
+
+		policy = new GroupCommitPolicy(0, 0);
+		assertTrue(policy.shouldSync(1, 0, 0));
+	}
+
+	private long appendBlock(BlockFileWriter writer, long blockNum) throws Exception {
+		byte[] blockBytes = constructBlock(blockNum).toByteArray();
+		byte[] blockBytesLenEncoded = Util.longToBytes(blockBytes.length, BlockFileManager.PEEK_BYTES_LEN);
+		writer.appendBlock(blockBytesLenEncoded, blockBytes);
+		return blockBytesLenEncoded.length + blockBytes.length;
+	}
+
+	private Common.Block constructBlock(long blockNum) {
+		Common.BlockData.Builder data = Common.BlockData.newBuilder();
+		for (int i = 0; i < 10; i++) {
+			data.addData(ByteString.copyFromUtf8("block" + blockNum + "tx" + i));
+		}
+		return Common.Block.newBuilder()
+				.setHeader(Common.BlockHeader.newBuilder()
+						.setNumber(blockNum)
+						.setPreviousHash(ByteString.copyFromUtf8("previousHash"))
+						.setDataHash(ByteString.copyFromUtf8("dataHash")))
+				.setData(data)
+				.build();
+	}
+}
@@ -0,0 +1,144 @@
+package org.bcia.julongchain.common.ledger.blkstorage.fsblkstorage;
+
+import com.google.protobuf.ByteString;
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.core.ledger.util.Util;
+import org.bcia.julongchain.protos.common.Common;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 区块读取性能测试
+ * legacy   每次读取打开FileInputStream并skip(改造前的读取方式)
+ * pooled   缓存已写满区块文件的FileChannel, 定位读取
+ * 运行: 执行main方法
+ *
+ * @author sunzongyu
+ * @date 2018/10/10
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockRetrievalBenchmark {
+	private static final int FILE_SIZE = 4 * 1024 * 1024;
+
+	@Param({"10000"})
+	public int numBlocks;
+
+	@Param({"2048"})
+	public int blockSize;
+
+	private File rootDir;
+	private List<FileLocPointer> locs;
+	private BlockFileReaderCache cache;
+	private Random random;
+	private int sequence;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		rootDir = Files.createTempDirectory("blockRetrievalBenchmark").toFile();
+		locs = new ArrayList<>();
+		int fileNum = 0;
+		int offset = 0;
+		BlockFileWriter writer = new BlockFileWriter(BlockFileManager.deriveBlockfilePath(rootDir.getAbsolutePath(), fileNum),
+				GroupCommitPolicy.everyMillis(1000));
+		byte[] payload = new byte[blockSize];
+		new Random(0).nextBytes(payload);
+		for (long i = 0; i < numBlocks; i++) {
+			byte[] blockBytes = Common.Block.newBuilder()
+					.setHeader(Common.BlockHeader.newBuilder().setNumber(i))
+					.setData(Common.BlockData.newBuilder().addData(ByteString.copyFrom(payload)))
+					.build()
+					.toByteArray();
+			byte[] lenBytes = Util.longToBytes(blockBytes.length, BlockFileManager.PEEK_BYTES_LEN);
+			if (offset + lenBytes.length + blockBytes.length > FILE_SIZE) {
+				writer.close();
+				fileNum++;
+				offset = 0;
+				writer = new BlockFileWriter(BlockFileManager.deriveBlockfilePath(rootDir.getAbsolutePath(), fileNum),
+						GroupCommitPolicy.everyMillis(1000));
+			}
+			writer.appendBlock(lenBytes, blockBytes);
+			locs.add(new FileLocPointer(fileNum, offset, 0));
+			offset += lenBytes.length + blockBytes.length;
+		}
+		writer.close();
+		cache = new BlockFileReaderCache(rootDir.getAbsolutePath(), Config.DEFAULT_MAX_OPEN_BLOCKFILES);
+		random = new Random(1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		cache.close();
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	@Benchmark
+	public byte[] legacyRandom() throws Exception {
+		return legacyRead(locs.get(random.nextInt(locs.size())));
+	}
+
+	@Benchmark
+	public byte[] legacySequential() throws Exception {
+		return legacyRead(nextSequential());
+	}
+
+	@Benchmark
+	public byte[] pooledRandom() throws Exception {
+		FileLocPointer loc = locs.get(random.nextInt(locs.size()));
+		return cache.readBlockBytes(loc.getFileSuffixNum(), loc.getLocPointer().getOffset());
+	}
+
+	@Benchmark
+	public byte[] pooledSequential() throws Exception {
+		FileLocPointer loc = nextSequential();
+		return cache.readBlockBytes(loc.getFileSuffixNum(), loc.getLocPointer().getOffset());
+	}
+
+	private FileLocPointer nextSequential() {
+		FileLocPointer loc = locs.get(sequence);
+		sequence = (sequence + 1) % locs.size();
+		return loc;
+	}
+
+	/**
+	 * 改造前的读取方式, 长度与区块各打开一次文件
+	 */
+	private byte[] legacyRead(FileLocPointer loc) throws Exception {
+		File file = new File(BlockFileManager.deriveBlockfilePath(rootDir.getAbsolutePath(), loc.getFileSuffixNum()));
+		long offset = loc.getLocPointer().getOffset();
+		byte[] lenBytes = legacyRead(file, offset, BlockFileManager.PEEK_BYTES_LEN);
+		long length = Util.bytesToLong(lenBytes, 0, BlockFileManager.PEEK_BYTES_LEN);
+		return legacyRead(file, offset + BlockFileManager.PEEK_BYTES_LEN, (int) length);
+	}
+
+	private byte[] legacyRead(File file, long offset, int length) throws Exception {
+		byte[] result = new byte[length];
+		FileInputStream fis = new FileInputStream(file);
+		fis.skip(offset);
+		fis.read(result);
+		fis.close();
+		return result;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(BlockRetrievalBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,196 @@
+package org.bcia.julongchain.common.ledger.blockledger.file;
+
+import com.google.protobuf.ByteString;
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.common.ledger.blockledger.IIterator;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.consenter.util.ConsenterConstants;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
+import org.bcia.julongchain.core.ledger.ledgerconfig.LedgerConfig;
+import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.consenter.Ab;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多个群组中大量空闲deliver流等待新区块的测试
+ * 每个群组若干迭代器阻塞在下一个区块, 写入一个群组的区块只唤醒该群组的迭代器, 统计写入到全部唤醒的时间
+ *
+ * @author sunzongyu
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class FileLedgerIdleIteratorTest {
+    private static JulongChainLog log = JulongChainLogFactory.getLog(FileLedgerIdleIteratorTest.class);
+
+    private static final int GROUPS = 50;
+    private static final int ITERATORS_PER_GROUP = 10;
+
+    private String rootPath;
+    private int maxBlockfileSize;
+    private File dir;
+    private FileLedgerFactory factory;
+    private final List<Reader> readers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        rootPath = LedgerConfig.getRootPath();
+        maxBlockfileSize = LedgerConfig.getMaxBlockfileSize();
+        dir = Files.createTempDirectory("idleIterator").toFile();
+        factory = new FileLedgerFactory(dir.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (Reader reader : readers) {
+            reader.iterator.close();
+            reader.join(5000);
+        }
+        LedgerConfig.setRootPath(rootPath);
+        LedgerConfig.setMaxBlockfileSize(maxBlockfileSize);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void appendWakesOnlyOwnGroup() throws Exception {
+        List<FileLedger> ledgers = new ArrayList<>();
+        List<AtomicInteger> woken = new ArrayList<>();
+        for (int g = 0; g < GROUPS; g++) {
+            FileLedger ledger = (FileLedger) factory.getOrCreate("idleGroup" + g + "-" + System.nanoTime());
+            ledger.append(newBlock(0));
+            ledgers.add(ledger);
+            AtomicInteger counter = new AtomicInteger();
+            woken.add(counter);
+            for (int i = 0; i < ITERATORS_PER_GROUP; i++) {
+                Reader reader = new Reader(ledger, 1, counter);
+                readers.add(reader);
+                reader.start();
+            }
+        }
+        for (FileLedger ledger : ledgers) {
+            awaitWaiters(ledger, ITERATORS_PER_GROUP);
+        }
+
+        //依次写入每个群组, 只有该群组的迭代器被唤醒
+        long totalNanos = 0;
+        long maxNanos = 0;
+        for (int g = 0; g < GROUPS; g++) {
+            long start = System.nanoTime();
+            ledgers.get(g).append(newBlock(1));
+            awaitCount(woken.get(g), ITERATORS_PER_GROUP);
+            long elapsed = System.nanoTime() - start;
+            totalNanos += elapsed;
+            maxNanos = Math.max(maxNanos, elapsed);
+            for (int other = g + 1; other < GROUPS; other++) {
+                Assert.assertEquals(0, woken.get(other).get());
+                Assert.assertEquals(ITERATORS_PER_GROUP, ledgers.get(other).getHeightNotifier().getWaiterCount());
+            }
+        }
+        log.info(String.format("%d groups, %d idle iterators per group: append to wake-up avg %.3fms, max %.3fms",
+                GROUPS, ITERATORS_PER_GROUP, totalNanos / 1e6 / GROUPS, maxNanos / 1e6));
+
+        for (Reader reader : readers) {
+            reader.join(5000);
+            Assert.assertNotNull(reader.block);
+            Assert.assertEquals(1, reader.block.getHeader().getNumber());
+        }
+    }
+
+    @Test
+    public void closeWakesWaitingIterator() throws Exception {
+        FileLedger ledger = (FileLedger) factory.getOrCreate("idleClose-" + System.nanoTime());
+        ledger.append(newBlock(0));
+        AtomicInteger counter = new AtomicInteger();
+        Reader closed = new Reader(ledger, 1, counter);
+        Reader open = new Reader(ledger, 1, counter);
+        readers.add(closed);
+        readers.add(open);
+        closed.start();
+        open.start();
+        awaitWaiters(ledger, 2);
+
+        //关闭的迭代器撤销登记并返回, 其他迭代器继续等待
+        closed.iterator.close();
+        closed.join(5000);
+        Assert.assertFalse(closed.isAlive());
+        Assert.assertNull(closed.block);
+        Assert.assertEquals(1, ledger.getHeightNotifier().getWaiterCount());
+        Assert.assertTrue(open.isAlive());
+
+        ledger.append(newBlock(1));
+        open.join(5000);
+        Assert.assertEquals(1, open.block.getHeader().getNumber());
+        Assert.assertEquals(0, ledger.getHeightNotifier().getWaiterCount());
+    }
+
+    private static void awaitWaiters(FileLedger ledger, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (ledger.getHeightNotifier().getWaiterCount() < expected) {
+            Assert.assertTrue("waiters not registered", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitCount(AtomicInteger counter, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (counter.get() < expected) {
+            Assert.assertTrue("iterators not woken", System.nanoTime() < deadline);
+            Thread.yield();
+        }
+    }
+
+    private static Common.Block newBlock(long number) {
+        Common.Block.Builder builder = Common.Block.newBuilder()
+                .setHeader(Common.BlockHeader.newBuilder()
+                        .setNumber(number)
+                        .setDataHash(ByteString.copyFromUtf8("block" + number)));
+        for (int i = 0; i < ConsenterConstants.METADATA_SIZE; i++) {
+            builder.getMetadataBuilder().addMetadata(ByteString.EMPTY);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 模拟deliver流, 等待并读取一个区块
+     */
+    private static class Reader extends Thread {
+        private final IIterator iterator;
+        private final AtomicInteger woken;
+        private volatile Common.Block block;
+
+        Reader(FileLedger ledger, long blockNum, AtomicInteger woken) throws Exception {
+            this.iterator = ledger.iterator(Ab.SeekPosition.newBuilder()
+                    .setSpecified(Ab.SeekSpecified.newBuilder().setNumber(blockNum))
+                    .build());
+            this.woken = woken;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                iterator.readyChain();
+                QueryResult result = iterator.next();
+                @SuppressWarnings("unchecked")
+                Map.Entry<QueryResult, Common.Status> entry = (Map.Entry<QueryResult, Common.Status>) result.getObj();
+                if (entry.getKey() != null) {
+                    block = (Common.Block) entry.getKey().getObj();
+                    woken.incrementAndGet();
+                }
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.bcia.julongchain.common.ledger.util.leveldbhelper;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 账本key编解码性能测试
+ * legacyEncode     每次编码ledgerID并两次拷贝拼接(改造前的constructLevelKey)
+ * legacyDecode     解码为String后逐字符查找分隔符(改造前的retrieveAppKey)
+ * codecEncode      预编码前缀, 一次拷贝
+ * codecDecode      校验前缀后一次拷贝
+ * codecDecodeView  校验前缀后返回视图, 不拷贝
+ * 运行: 执行main方法
+ *
+ * @author sunzongyu
+ * @date 2018/10/13
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelKeyCodecBenchmark {
+	private static final byte[] SEP = new String(new char[]{Character.MIN_VALUE}).getBytes(StandardCharsets.UTF_8);
+
+	@Param({"32", "128"})
+	public int keySize;
+
+	private String ledgerID = "myGroupWithALongerName";
+	private LevelKeyCodec codec;
+	private byte[] appKey;
+	private byte[] levelKey;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		codec = new LevelKeyCodec(ledgerID);
+		appKey = new byte[keySize];
+		for (int i = 0; i < keySize; i++) {
+			appKey[i] = (byte) ('a' + i % 26);
+		}
+		levelKey = codec.encode(appKey);
+	}
+
+	@Benchmark
+	public byte[] legacyEncode() {
+		byte[] arr = ArrayUtils.addAll(ledgerID.getBytes(StandardCharsets.UTF_8), SEP);
+		return ArrayUtils.addAll(arr, appKey);
+	}
+
+	@Benchmark
+	public byte[] codecEncode() {
+		return codec.encode(appKey);
+	}
+
+	@Benchmark
+	public byte[] legacyDecode() {
+		String str = new String(levelKey, StandardCharsets.UTF_8);
+		int start = 0;
+		while (str.indexOf(new String(SEP, StandardCharsets.UTF_8), start) != -1) {
+			start++;
+		}
+		return str.substring(start).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public byte[] codecDecode() {
+		return codec.decode(levelKey);
+	}
+
+	@Benchmark
+	public ByteBuffer codecDecodeView() {
+		return codec.decodeView(levelKey);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(LevelKeyCodecBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,95 @@
+package org.bcia.julongchain.common.ledger.util.leveldbhelper;
+
+import org.bcia.julongchain.common.ledger.util.IDBIterator;
+import org.bcia.julongchain.core.ledger.leveldb.LevelDBUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * LevelKeyCodec测试类
+ *
+ * @author sunzongyu
+ * @date 2018/10/13
+ * @company Dingxuan
+ */
+public class LevelKeyCodecTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void encodeAndDecode() {
+		LevelKeyCodec codec = new LevelKeyCodec("myGroup");
+		byte[] levelKey = codec.encode(bytes("key"));
+		assertArrayEquals(LevelDBProvider.constructLevelKey("myGroup", bytes("key")), levelKey);
+		assertArrayEquals(bytes("myGroup\u0000key"), levelKey);
+		assertTrue(codec.hasPrefix(levelKey));
+		assertArrayEquals(bytes("key"), codec.decode(levelKey));
+		ByteBuffer view = codec.decodeView(levelKey);
+		assertEquals(3, view.remaining());
+		assertEquals('k', view.get(0));
+
+		//key为null时返回前缀
+		assertArrayEquals(bytes("myGroup\u0000"), codec.encode(null));
+		//其他账本的key
+		assertFalse(codec.hasPrefix(bytes("myGroup2\u0000key")));
+		assertNull(codec.decode(bytes("myGroup2\u0000key")));
+		assertNull(codec.decodeView(bytes("my")));
+	}
+
+	@Test
+	public void prefixEnd() {
+		assertArrayEquals(bytes("myGroup\u0001"), new LevelKeyCodec("myGroup").getPrefixEnd());
+		assertArrayEquals(new byte[]{0x01, 0x03}, LevelKeyCodec.prefixEnd(new byte[]{0x01, 0x02, (byte) 0xff}));
+		assertNull(LevelKeyCodec.prefixEnd(new byte[]{(byte) 0xff, (byte) 0xff}));
+	}
+
+	@Test
+	public void ledgerBoundedIterator() throws Exception {
+		LevelDBProvider provider = new LevelDBProvider(folder.getRoot().getAbsolutePath());
+		provider.put(bytes("a"), bytes("a"), false);
+		for (String ledgerID : new String[]{"group1", "group2", "group10"}) {
+			provider.setLedgerID(ledgerID);
+			provider.put(bytes("key1"), bytes(ledgerID), false);
+			provider.put(bytes("key2"), bytes(ledgerID), false);
+			provider.put(bytes("other"), bytes(ledgerID), false);
+		}
+
+		provider.setLedgerID("group1");
+		List<String> values = collectValues(provider.getIterator(null));
+		assertEquals(3, values.size());
+		for (String value : values) {
+			assertEquals("group1", value);
+		}
+		assertEquals(2, collectValues(provider.getPrefixIterator(bytes("key"))).size());
+		assertEquals(1, collectValues(provider.getIterator(bytes("key2"), bytes("other"))).size());
+		assertArrayEquals(bytes("key1"), provider.retrieveAppKey(provider.getKeyCodec().encode(bytes("key1"))));
+
+		provider.setLedgerID(null);
+		assertEquals(10, collectValues(provider.getIterator(null)).size());
+		LevelDBUtil.getDB(folder.getRoot().getAbsolutePath()).close();
+	}
+
+	private List<String> collectValues(IDBIterator itr) {
+		List<String> values = new ArrayList<>();
+		try {
+			while (itr.hasNext()) {
+				values.add(new String(itr.next().getValue(), StandardCharsets.UTF_8));
+			}
+		} finally {
+			itr.close();
+		}
+		return values;
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
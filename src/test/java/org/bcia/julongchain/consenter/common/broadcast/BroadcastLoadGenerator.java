@@ -0,0 +1,289 @@
+package org.bcia.julongchain.consenter.common.broadcast;
+
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import org.bcia.julongchain.common.exception.ConsenterException;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.consenter.common.msgprocessor.IRule;
+import org.bcia.julongchain.consenter.common.msgprocessor.IStandardGroupSupport;
+import org.bcia.julongchain.consenter.common.msgprocessor.RuleSet;
+import org.bcia.julongchain.consenter.common.msgprocessor.StandardGroup;
+import org.bcia.julongchain.consenter.common.multigroup.ChainSupport;
+import org.bcia.julongchain.consenter.consensus.IProcessor;
+import org.bcia.julongchain.consenter.consensus.singleton.Singleton;
+import org.bcia.julongchain.consenter.entity.ConfigMsg;
+import org.bcia.julongchain.consenter.entity.Message;
+import org.bcia.julongchain.consenter.util.ConsenterConstants;
+import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.consenter.Ab;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * broadcast压力测试
+ * 1~64个客户端各自循环发送普通消息, 每个消息经过模拟签名校验开销的过滤规则, 统计每秒接收的消息数;
+ * 分别使用单个过滤线程(相当于原全局锁的串行校验)和默认过滤线程池
+ * <p>
+ * 运行main方法输出完整结果, 参数为每轮持续的秒数
+ *
+ * @author zhangmingyang
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class BroadcastLoadGenerator {
+    private static JulongChainLog log = JulongChainLogFactory.getLog(BroadcastLoadGenerator.class);
+
+    private static final int[] CLIENTS = {1, 2, 4, 8, 16, 32, 64};
+
+    private static final String GROUP = "myGroup";
+
+    public static void main(String[] args) throws Exception {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 5;
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        for (int clients : CLIENTS) {
+            double serial = run(1, clients, seconds * 1000);
+            double parallel = run(threads, clients, seconds * 1000);
+            log.info(String.format("clients %2d: 1 filter thread %8.0f envelopes/s, %d filter threads %8.0f envelopes/s",
+                    clients, serial, threads, parallel));
+        }
+    }
+
+    @Test
+    public void concurrentClients() throws Exception {
+        for (int clients : CLIENTS) {
+            double rate = run(Math.max(2, Runtime.getRuntime().availableProcessors()), clients, 300);
+            log.info(String.format("clients %2d: %.0f envelopes/s", clients, rate));
+            Assert.assertTrue(rate > 0);
+        }
+    }
+
+    @Test
+    public void responsesInStreamOrder() throws Exception {
+        //配置消息响应后流不结束, 同一个流依次发送多个消息, 各消息校验时间随机
+        IProcessor processor = Mockito.mock(IProcessor.class);
+        Mockito.when(processor.processConfigUpdateMsg(Mockito.any())).thenAnswer(invocation -> {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+            return new ConfigMsg(invocation.getArgument(0), 0);
+        });
+        ChainSupport chainSupport = new ChainSupport();
+        chainSupport.setProcessor(processor);
+        CountingChain chain = new CountingChain(chainSupport);
+        chainSupport.setChain(chain);
+
+        ExecutorService executor = BroadcastHandler.newFilterExecutor(8);
+        try {
+            BroadcastHandler handler = new BroadcastHandler(registrar(chainSupport, true), executor, 16);
+            int numStreams = 4;
+            int numEnvelopes = 200;
+            List<RecordingObserver> observers = new ArrayList<>();
+            for (int i = 0; i < numStreams; i++) {
+                observers.add(new RecordingObserver());
+            }
+            for (int seq = 0; seq < numEnvelopes; seq++) {
+                for (int client = 0; client < numStreams; client++) {
+                    handler.handle(newEnvelope(client, seq), observers.get(client));
+                }
+            }
+            for (RecordingObserver observer : observers) {
+                handler.complete(observer);
+            }
+            for (RecordingObserver observer : observers) {
+                Assert.assertTrue(observer.completed.await(10, TimeUnit.SECONDS));
+                Assert.assertEquals(numEnvelopes, observer.responses.size());
+                for (Ab.BroadcastResponse response : observer.responses) {
+                    Assert.assertEquals(Common.Status.SUCCESS, response.getStatus());
+                }
+            }
+            Assert.assertEquals(numStreams * numEnvelopes, chain.accepted.get());
+            Assert.assertFalse(chain.outOfOrder.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void filterRejection() throws Exception {
+        IStandardGroupSupport support = Mockito.mock(IStandardGroupSupport.class);
+        IRule rejectAll = message -> {
+            throw new ConsenterException("rejected by filter");
+        };
+        ChainSupport chainSupport = new ChainSupport();
+        chainSupport.setProcessor(new StandardGroup(support, new RuleSet(new IRule[]{rejectAll})));
+        CountingChain chain = new CountingChain(chainSupport);
+        chainSupport.setChain(chain);
+
+        BroadcastHandler handler = new BroadcastHandler(registrar(chainSupport, false));
+        RecordingObserver observer = new RecordingObserver();
+        handler.handle(newEnvelope(0, 0), observer);
+        Assert.assertTrue(observer.completed.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, observer.responses.size());
+        Assert.assertEquals(Common.Status.BAD_REQUEST, observer.responses.get(0).getStatus());
+        Assert.assertTrue(observer.responses.get(0).getInfo().endsWith("rejected by filter"));
+        Assert.assertEquals(0, chain.accepted.get());
+    }
+
+    /**
+     * 运行一轮压力测试
+     *
+     * @param filterThreads 过滤线程数
+     * @param clients       客户端数
+     * @param millis        持续时间
+     * @return 每秒接收的消息数
+     */
+    private static double run(int filterThreads, int clients, long millis) throws Exception {
+        IStandardGroupSupport support = Mockito.mock(IStandardGroupSupport.class);
+        ChainSupport chainSupport = new ChainSupport();
+        chainSupport.setProcessor(new StandardGroup(support, new RuleSet(new IRule[]{new DigestRule()})));
+        CountingChain chain = new CountingChain(chainSupport);
+        chainSupport.setChain(chain);
+
+        ExecutorService executor = BroadcastHandler.newFilterExecutor(filterThreads);
+        BroadcastHandler handler = new BroadcastHandler(registrar(chainSupport, false), executor,
+                BroadcastHandler.DEFAULT_MAX_PENDING);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong failed = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            int client = i;
+            Thread thread = new Thread(() -> {
+                //与节点的BroadcastClient相同, 每个流发送一个消息, 收到响应后发送下一个
+                for (long seq = 0; running.get(); seq++) {
+                    RecordingObserver observer = new RecordingObserver();
+                    try {
+                        handler.handle(newEnvelope(client, seq), observer);
+                        if (!observer.completed.await(10, TimeUnit.SECONDS)
+                                || observer.responses.get(0).getStatus() != Common.Status.SUCCESS) {
+                            failed.incrementAndGet();
+                        }
+                    } catch (ConsenterException e) {
+                        failed.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "broadcast-client-" + i);
+            threads.add(thread);
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(millis);
+        long accepted = chain.accepted.get();
+        long elapsed = System.nanoTime() - start;
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        executor.shutdownNow();
+
+        Assert.assertEquals(0, failed.get());
+        Assert.assertFalse(chain.outOfOrder.get());
+        return accepted * 1e9 / elapsed;
+    }
+
+    private static IGroupSupportRegistrar registrar(ChainSupport chainSupport, boolean isConfig) {
+        return msg -> {
+            Map<String, Object> map = new HashMap<>();
+            map.put(ConsenterConstants.GROUPHEADER, Common.GroupHeader.newBuilder().setGroupId(GROUP).build());
+            map.put(ConsenterConstants.ISCONFIG, isConfig);
+            map.put(ConsenterConstants.CHAINSUPPORT, chainSupport);
+            return map;
+        };
+    }
+
+    /**
+     * payload前16字节为客户端编号和序号, 之后为1KB填充
+     */
+    private static Common.Envelope newEnvelope(long client, long seq) {
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 1024);
+        buffer.putLong(client).putLong(seq);
+        return Common.Envelope.newBuilder()
+                .setPayload(ByteString.copyFrom(buffer.array()))
+                .setSignature(ByteString.copyFrom(new byte[64]))
+                .build();
+    }
+
+    /**
+     * 模拟签名校验开销的过滤规则
+     */
+    private static class DigestRule implements IRule {
+        @Override
+        public void apply(Common.Envelope message) throws ConsenterException {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                byte[] bytes = message.getPayload().toByteArray();
+                for (int i = 0; i < 20; i++) {
+                    bytes = digest.digest(bytes);
+                }
+            } catch (Exception e) {
+                throw new ConsenterException(e);
+            }
+        }
+    }
+
+    /**
+     * 统计放入队列的消息数, 并检查同一客户端的消息按发送顺序入队
+     */
+    private static class CountingChain extends Singleton {
+        private final AtomicLong accepted = new AtomicLong();
+        private final AtomicBoolean outOfOrder = new AtomicBoolean();
+        private final Map<Long, Long> lastSeqs = new ConcurrentHashMap<>();
+
+        CountingChain(ChainSupport chainSupport) {
+            super(chainSupport);
+        }
+
+        @Override
+        public boolean pushToQueue(Message message) {
+            ByteBuffer payload = message.getMessage().getPayload().asReadOnlyByteBuffer();
+            long client = payload.getLong();
+            long seq = payload.getLong();
+            Long last = lastSeqs.put(client, seq);
+            if (last != null && last >= seq) {
+                outOfOrder.set(true);
+            }
+            accepted.incrementAndGet();
+            return true;
+        }
+    }
+
+    private static class RecordingObserver implements StreamObserver<Ab.BroadcastResponse> {
+        private final List<Ab.BroadcastResponse> responses = new ArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void onNext(Ab.BroadcastResponse response) {
+            synchronized (responses) {
+                responses.add(response);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onCompleted() {
+            completed.countDown();
+        }
+    }
+}
@@ -37,9 +37,13 @@ public class ConsenterLedgerTest {
        // BlockFileStream stream=new BlockFileStream("/opt/testData/julongchain/production/node/chains/chains/myGroup",0,0);
         BlockFileStream stream=new BlockFileStream("/var/julongchain/production/node/chains/chains/myGroup",0,0);
        // BlockFileStream stream=new BlockFileStream("/var/julongchain/production/consenter/chains/myGroup",0,0);
-        Common.Block block=Common.Block.parseFrom(stream.nextBlockBytes());
-        Common.Block block11=Common.Block.parseFrom(stream.nextBlockBytes());
-        System.out.println(Hex.toHexString(Util.getHashBytes(block.getHeader().toByteArray())));
-        System.out.println(Hex.toHexString(block11.getHeader().getPreviousHash().toByteArray()));
+        try {
+            Common.Block block=Common.Block.parseFrom(stream.nextBlockBytes());
+            Common.Block block11=Common.Block.parseFrom(stream.nextBlockBytes());
+            System.out.println(Hex.toHexString(Util.getHashBytes(block.getHeader().toByteArray())));
+            System.out.println(Hex.toHexString(block11.getHeader().getPreviousHash().toByteArray()));
+        } finally {
+            stream.close();
+        }
     }
 }
@@ -0,0 +1,194 @@
+package org.bcia.julongchain.consenter.common.multigroup;
+
+import com.google.protobuf.ByteString;
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.common.exception.ConsenterException;
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.ledger.blockledger.ReadWriteBase;
+import org.bcia.julongchain.common.ledger.blockledger.file.FileLedgerFactory;
+import org.bcia.julongchain.common.localmsp.ILocalSigner;
+import org.bcia.julongchain.consenter.util.ConsenterConstants;
+import org.bcia.julongchain.csp.gm.dxct.sm2.SM2;
+import org.bcia.julongchain.csp.gm.dxct.sm2.SM2KeyPair;
+import org.bcia.julongchain.protos.common.Common;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 共识节点区块写入性能测试, 辅助计数blocks为区块/秒
+ * 每个群组一个线程循环组装、SM2签名并写入文件账本, 每个区块100个1KB的交易
+ * globalLock   同步写入, 所有群组共用BlockWriter.class锁(原实现)
+ * perGroup     同步写入, 每个群组独立
+ * pipelined    区块N在后台签名写入时组装区块N+1, 按区块号顺序写入
+ * 运行: 执行main方法
+ *
+ * @author zhangmingyang
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BlockWriterBenchmark {
+    private static final int TXS_PER_BLOCK = 100;
+
+    @Param({"1", "8", "64"})
+    public int groups;
+
+    @Param({"globalLock", "perGroup", "pipelined"})
+    public String mode;
+
+    private File dir;
+    private List<Group> groupList;
+    private ExecutorService chainThreads;
+    private Common.Envelope[] messages;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long blocks;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("blockWriterBenchmark").toFile();
+        FileLedgerFactory factory = new FileLedgerFactory(dir.getAbsolutePath());
+        groupList = new ArrayList<>();
+        for (int i = 0; i < groups; i++) {
+            groupList.add(new Group(factory, "benchmarkGroup" + i + "-" + System.nanoTime(), "pipelined".equals(mode)));
+        }
+        chainThreads = Executors.newFixedThreadPool(groups);
+        messages = newMessages(TXS_PER_BLOCK);
+    }
+
+    @TearDown(Level.Iteration)
+    public void flush() throws Exception {
+        for (Group group : groupList) {
+            group.writer.flush();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        chainThreads.shutdownNow();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * 每个群组的链线程各写入一个区块
+     */
+    @Benchmark
+    public void writeBlocks(Counters counters) throws Exception {
+        boolean globalLock = "globalLock".equals(mode);
+        List<Future<?>> futures = new ArrayList<>(groups);
+        for (Group group : groupList) {
+            futures.add(chainThreads.submit(() -> {
+                if (globalLock) {
+                    synchronized (BlockWriter.class) {
+                        group.writeNextBlock(messages);
+                    }
+                } else {
+                    group.writeNextBlock(messages);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        counters.blocks += groups;
+    }
+
+    static Common.Envelope[] newMessages(int count) {
+        Common.Envelope[] messages = new Common.Envelope[count];
+        for (int i = 0; i < count; i++) {
+            messages[i] = Common.Envelope.newBuilder()
+                    .setPayload(ByteString.copyFrom(new byte[1024]))
+                    .setSignature(ByteString.copyFromUtf8("signature" + i))
+                    .build();
+        }
+        return messages;
+    }
+
+    /**
+     * 一个群组的账本和BlockWriter, 使用SM2签名
+     */
+    static class Group {
+        final ReadWriteBase ledger;
+        final ChainSupport support;
+        final BlockWriter writer;
+
+        Group(FileLedgerFactory factory, String groupId, boolean pipelined) throws Exception {
+            ledger = factory.getOrCreate(groupId);
+            Common.Block.Builder genesisBuilder = Common.Block.newBuilder()
+                    .setHeader(Common.BlockHeader.newBuilder()
+                            .setNumber(0)
+                            .setDataHash(ByteString.copyFromUtf8("genesis")));
+            for (int i = 0; i < ConsenterConstants.METADATA_SIZE; i++) {
+                genesisBuilder.getMetadataBuilder().addMetadata(ByteString.EMPTY);
+            }
+            Common.Block genesis = genesisBuilder.build();
+            ledger.append(genesis);
+
+            support = Mockito.mock(ChainSupport.class, Mockito.RETURNS_DEEP_STUBS);
+            Mockito.when(support.getSequence()).thenReturn(0L);
+            Mockito.when(support.getGroupId()).thenReturn(groupId);
+            Mockito.when(support.getLedgerResources().getReadWriteBase()).thenReturn(ledger);
+            Mockito.when(support.getLocalSigner()).thenReturn(new SM2Signer());
+            writer = pipelined ? new BlockWriter(support, null, genesis)
+                    : new BlockWriter(support, null, genesis, null, 0);
+        }
+
+        void writeNextBlock(Common.Envelope[] messages) throws ConsenterException {
+            writer.writeBlock(writer.createNextBlock(messages), null);
+        }
+
+        long height() throws LedgerException {
+            return ledger.height();
+        }
+    }
+
+    private static class SM2Signer implements ILocalSigner {
+        private final SM2 sm2 = new SM2();
+        private final SM2KeyPair keyPair = sm2.generateKeyPair();
+
+        @Override
+        public Common.SignatureHeader newSignatureHeader() {
+            return Common.SignatureHeader.newBuilder()
+                    .setCreator(ByteString.copyFrom(keyPair.getPublickey()))
+                    .setNonce(ByteString.copyFromUtf8("nonce"))
+                    .build();
+        }
+
+        @Override
+        public byte[] sign(byte[] message) {
+            try {
+                return sm2.sign(keyPair.getPrivatekey(), message);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(BlockWriterBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,194 @@
+package org.bcia.julongchain.consenter.common.multigroup;
+
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.common.exception.ConsenterException;
+import org.bcia.julongchain.common.ledger.blockledger.Util;
+import org.bcia.julongchain.common.ledger.blockledger.file.FileLedgerFactory;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.consenter.consensus.IChain;
+import org.bcia.julongchain.consenter.util.BlockHelper;
+import org.bcia.julongchain.core.ledger.ledgerconfig.LedgerConfig;
+import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.common.Configtx;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BlockWriter测试类, 多个群组并发写入, 每个群组按区块号顺序写入账本
+ *
+ * @author zhangmingyang
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class BlockWriterTest {
+    private static JulongChainLog log = JulongChainLogFactory.getLog(BlockWriterTest.class);
+
+    private String rootPath;
+    private int maxBlockfileSize;
+    private File dir;
+    private FileLedgerFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        rootPath = LedgerConfig.getRootPath();
+        maxBlockfileSize = LedgerConfig.getMaxBlockfileSize();
+        dir = Files.createTempDirectory("blockWriter").toFile();
+        factory = new FileLedgerFactory(dir.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        LedgerConfig.setRootPath(rootPath);
+        LedgerConfig.setMaxBlockfileSize(maxBlockfileSize);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void pipelinedWriteInOrder() throws Exception {
+        int numGroups = 8;
+        int numBlocks = 50;
+        Common.Envelope[] messages = BlockWriterBenchmark.newMessages(10);
+        List<BlockWriterBenchmark.Group> groups = new ArrayList<>();
+        for (int i = 0; i < numGroups; i++) {
+            groups.add(new BlockWriterBenchmark.Group(factory, "blockWriterGroup" + i + "-" + System.nanoTime(), true));
+        }
+
+        long start = System.currentTimeMillis();
+        List<Thread> chains = new ArrayList<>();
+        for (BlockWriterBenchmark.Group group : groups) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < numBlocks; i++) {
+                        group.writeNextBlock(messages);
+                    }
+                } catch (ConsenterException e) {
+                    log.error(e.getMessage(), e);
+                }
+            });
+            chains.add(thread);
+            thread.start();
+        }
+        for (Thread thread : chains) {
+            thread.join();
+        }
+        for (BlockWriterBenchmark.Group group : groups) {
+            group.writer.flush();
+        }
+        log.info("Write " + numGroups * numBlocks + " blocks in " + numGroups + " groups: "
+                + (System.currentTimeMillis() - start) + "ms");
+
+        for (BlockWriterBenchmark.Group group : groups) {
+            Assert.assertEquals(numBlocks + 1, group.height());
+            Common.Block previous = Util.getBlock(group.ledger, 0);
+            for (int i = 1; i <= numBlocks; i++) {
+                Common.Block block = Util.getBlock(group.ledger, i);
+                Assert.assertEquals(i, block.getHeader().getNumber());
+                Assert.assertArrayEquals(BlockHelper.hash(previous.getHeader().toByteArray()),
+                        block.getHeader().getPreviousHash().toByteArray());
+                Assert.assertFalse(block.getMetadata().getMetadata(Common.BlockMetadataIndex.SIGNATURES_VALUE).isEmpty());
+                Assert.assertFalse(block.getMetadata().getMetadata(Common.BlockMetadataIndex.LAST_CONFIG_VALUE).isEmpty());
+                previous = block;
+            }
+            Assert.assertEquals(group.writer.getLastBlock().getHeader(), previous.getHeader());
+        }
+    }
+
+    @Test
+    public void synchronousWrite() throws Exception {
+        BlockWriterBenchmark.Group group = new BlockWriterBenchmark.Group(factory,
+                "blockWriterSync-" + System.nanoTime(), false);
+        group.writeNextBlock(BlockWriterBenchmark.newMessages(10));
+        //不经过后台线程, 返回时已写入账本
+        Assert.assertEquals(2, group.height());
+    }
+
+    @Test
+    public void appendFailureHaltsChain() throws Exception {
+        BlockWriterBenchmark.Group group = new BlockWriterBenchmark.Group(factory,
+                "blockWriterFail-" + System.nanoTime(), true);
+        IChain chain = Mockito.mock(IChain.class);
+        Mockito.when(group.support.getChain()).thenReturn(chain);
+        Common.Envelope[] messages = BlockWriterBenchmark.newMessages(1);
+        group.writeNextBlock(messages);
+        group.writer.flush();
+
+        //区块号不连续, 账本拒绝写入
+        Common.Block next = group.writer.createNextBlock(messages);
+        group.writer.writeBlock(next.toBuilder().setHeader(next.getHeader().toBuilder().setNumber(5)).build(), null);
+        try {
+            group.writer.flush();
+            Assert.fail("flush should fail after append failure");
+        } catch (ConsenterException e) {
+            log.info(e.getMessage());
+        }
+        Mockito.verify(chain).halt();
+        try {
+            group.writeNextBlock(messages);
+            Assert.fail("write should fail after append failure");
+        } catch (ConsenterException e) {
+            log.info(e.getMessage());
+        }
+        Assert.assertEquals(2, group.height());
+    }
+
+    @Test
+    public void interruptedWriteKeepsLastBlock() throws Exception {
+        BlockWriterBenchmark.Group group = new BlockWriterBenchmark.Group(factory,
+                "blockWriterInterrupt-" + System.nanoTime(), false);
+        //写入任务不执行, 第二个区块等待许可
+        BlockWriter writer = new BlockWriter(group.support, null, group.writer.getLastBlock(), r -> {
+        }, 1);
+        Common.Envelope[] messages = BlockWriterBenchmark.newMessages(1);
+        Common.Block first = writer.createNextBlock(messages);
+        writer.writeBlock(first, null);
+
+        Thread.currentThread().interrupt();
+        try {
+            writer.writeBlock(writer.createNextBlock(messages), null);
+            Assert.fail("write should fail when interrupted");
+        } catch (ConsenterException e) {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        //下一个区块仍接在第一个区块之后
+        Assert.assertEquals(first.getHeader(), writer.getLastBlock().getHeader());
+        Assert.assertEquals(2, writer.createNextBlock(messages).getHeader().getNumber());
+    }
+
+    @Test
+    public void configBlockAppendedBeforeUpdate() throws Exception {
+        String groupId = "blockWriterConfig-" + System.nanoTime();
+        BlockWriterBenchmark.Group group = new BlockWriterBenchmark.Group(factory, groupId, true);
+        AtomicLong heightAtUpdate = new AtomicLong(-1);
+        Mockito.doAnswer(invocation -> {
+            heightAtUpdate.set(group.height());
+            return null;
+        }).when(group.support).update(Mockito.any());
+        Common.Envelope[] messages = BlockWriterBenchmark.newMessages(1);
+        for (int i = 0; i < 3; i++) {
+            group.writeNextBlock(messages);
+        }
+
+        Common.Payload payload = Common.Payload.newBuilder()
+                .setHeader(Common.Header.newBuilder().setGroupHeader(Common.GroupHeader.newBuilder()
+                        .setType(Common.HeaderType.CONFIG_VALUE)
+                        .setGroupId(groupId)
+                        .build()
+                        .toByteString()))
+                .setData(Configtx.ConfigEnvelope.getDefaultInstance().toByteString())
+                .build();
+        Common.Envelope configTx = Common.Envelope.newBuilder().setPayload(payload.toByteString()).build();
+        group.writer.writeConfigBlock(group.writer.createNextBlock(new Common.Envelope[]{configTx}), null);
+        //应用新配置时之前的区块和配置区块都已写入账本
+        Assert.assertEquals(5, heightAtUpdate.get());
+    }
+}
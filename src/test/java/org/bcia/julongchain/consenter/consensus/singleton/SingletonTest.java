@@ -1,6 +1,24 @@
 package org.bcia.julongchain.consenter.consensus.singleton;
 
+import com.google.protobuf.ByteString;
+import org.bcia.julongchain.common.exception.ConsenterException;
+import org.bcia.julongchain.common.groupconfig.config.IConsenterConfig;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.consenter.common.blockcutter.BlockCutter;
+import org.bcia.julongchain.consenter.common.multigroup.ChainSupport;
+import org.bcia.julongchain.consenter.consensus.IChain;
+import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.consenter.Configuration;
+import org.junit.After;
+import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 简单排序测试
@@ -9,24 +27,245 @@ import org.junit.Test;
  * @company Dingxuan
  */
 public class SingletonTest {
+    private static JulongChainLog log = JulongChainLogFactory.getLog(SingletonTest.class);
+
+    private final List<Singleton> chains = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (Singleton chain : chains) {
+            chain.halt();
+        }
+    }
+
+    @Test
+    public void order() throws Exception {
+        //按消息数切块, 未满的批次等待超时
+        Group group = newGroup(10, 60000);
+        for (int i = 0; i < 25; i++) {
+            group.chain.order(newEnvelope(0, i), 0);
+        }
+        group.awaitEnvelopes(20, 5000);
+        Assert.assertEquals(2, group.blocks.size());
+        Assert.assertEquals(10, group.blocks.get(0).getData().getDataCount());
+        group.assertInOrder();
+    }
 
     @Test
-    public void order() {
+    public void batchTimeout() throws Exception {
+        Group group = newGroup(10, 100);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            group.chain.order(newEnvelope(0, i), 0);
+        }
+        group.awaitEnvelopes(3, 5000);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+        Assert.assertEquals(1, group.blocks.size());
+
+        //按消息数切块后取消超时任务, 不再产生空批次
+        for (int i = 3; i < 13; i++) {
+            group.chain.order(newEnvelope(0, i), 0);
+        }
+        group.awaitEnvelopes(13, 5000);
+        Thread.sleep(300);
+        Assert.assertEquals(2, group.blocks.size());
+        Assert.assertEquals(0, group.cutter.getPendingBatchSizeBytes());
+        group.assertInOrder();
     }
 
     @Test
-    public void configure() {
+    public void configure() throws Exception {
+        //配置消息前等待中的普通消息先写入
+        Group group = newGroup(10, 60000);
+        for (int i = 0; i < 3; i++) {
+            group.chain.order(newEnvelope(0, i), 0);
+        }
+        group.chain.configure(newEnvelope(1, 0), 0);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (group.configBlocks.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, group.configBlocks.size());
+        Assert.assertEquals(1, group.blocks.size());
+        Assert.assertEquals(3, group.blocks.get(0).getData().getDataCount());
     }
 
     @Test
-    public void start() {
+    public void start() throws Exception {
+        Group group = newGroup(1, 60000);
+        group.chain.order(newEnvelope(0, 0), 0);
+        group.awaitEnvelopes(1, 5000);
     }
 
     @Test
-    public void halt() {
+    public void halt() throws Exception {
+        Group group = newGroup(10, 60000);
+        group.chain.halt();
+        Thread.sleep(100);
+        group.chain.order(newEnvelope(0, 0), 0);
+        Thread.sleep(100);
+        Assert.assertEquals(0, group.envelopes());
     }
 
     @Test
-    public void handleChain() {
+    public void handleChain() throws Exception {
+        //每个群组一个链
+        Group group1 = newGroup(1, 60000);
+        Group group2 = newGroup(1, 60000);
+        Assert.assertNotSame(group1.chain, group2.chain);
+        Assert.assertSame(group1.chain, Singleton.getInstance(group1.support));
+        Assert.assertSame(group2.chain, Singleton.getInstance(group2.support));
+
+        group1.chain.order(newEnvelope(0, 0), 0);
+        group1.awaitEnvelopes(1, 5000);
+        Thread.sleep(100);
+        Assert.assertEquals(0, group2.envelopes());
+    }
+
+    /**
+     * 200个群组并发排序, 统计全部写入区块的时间
+     */
+    @Test
+    public void multiGroupThroughput() throws Exception {
+        int numGroups = 200;
+        int numEnvelopes = 500;
+        int numProducers = 8;
+        List<Group> groups = new ArrayList<>();
+        for (int i = 0; i < numGroups; i++) {
+            groups.add(newGroup(100, 20));
+        }
+        long start = System.currentTimeMillis();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < numProducers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int seq = 0; seq < numEnvelopes; seq++) {
+                    for (int g = producer; g < numGroups; g += numProducers) {
+                        groups.get(g).chain.order(newEnvelope(g, seq), 0);
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        for (Group group : groups) {
+            group.awaitEnvelopes(numEnvelopes, 30000);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        log.info(String.format("Ordered %d envelopes in %d groups: %dms, %.0f envelopes/s", numGroups * numEnvelopes,
+                numGroups, elapsed, numGroups * numEnvelopes * 1000.0 / elapsed));
+
+        for (Group group : groups) {
+            group.assertInOrder();
+        }
+        //各群组的超时共用一个定时线程
+        Assert.assertEquals(1, countThreads("singleton-batch-timer"));
+        Assert.assertEquals(0, countThreads("Timer-"));
+    }
+
+    private Group newGroup(int maxMessageCount, long batchTimeout) throws ConsenterException {
+        IConsenterConfig consenterConfig = Mockito.mock(IConsenterConfig.class);
+        Mockito.when(consenterConfig.getBatchSize()).thenReturn(Configuration.BatchSize.newBuilder()
+                .setMaxMessageCount(maxMessageCount)
+                .setAbsoluteMaxBytes(10 * 1024 * 1024)
+                .setPreferredMaxBytes(1024 * 1024)
+                .build());
+        Mockito.when(consenterConfig.getBatchTimeout()).thenReturn(batchTimeout);
+
+        Group group = new Group();
+        group.cutter = new BlockCutter(consenterConfig);
+        group.support = Mockito.mock(ChainSupport.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(group.support.getCutter()).thenReturn(group.cutter);
+        Mockito.when(group.support.getSequence()).thenReturn(0L);
+        Mockito.when(group.support.getLedgerResources().getMutableResources().getGroupConfig().getConsenterConfig())
+                .thenReturn(consenterConfig);
+        Mockito.when(group.support.createNextBlock(Mockito.any())).thenAnswer(invocation -> {
+            Common.BlockData.Builder data = Common.BlockData.newBuilder();
+            for (Common.Envelope envelope : (Common.Envelope[]) invocation.getArgument(0)) {
+                data.addData(envelope.toByteString());
+            }
+            return Common.Block.newBuilder().setData(data).build();
+        });
+        Mockito.doAnswer(invocation -> {
+            group.add(group.blocks, invocation.getArgument(0));
+            return null;
+        }).when(group.support).writeBlock(Mockito.any(), Mockito.any());
+        Mockito.doAnswer(invocation -> {
+            group.add(group.configBlocks, invocation.getArgument(0));
+            return null;
+        }).when(group.support).writeConfigBlock(Mockito.any(), Mockito.any());
+
+        IChain chain = new Singleton().handleChain(group.support, null);
+        Mockito.when(group.support.getChain()).thenReturn(chain);
+        group.chain = (Singleton) chain;
+        group.chain.start();
+        chains.add(group.chain);
+        return group;
+    }
+
+    /**
+     * payload前8字节为群组编号, 后8字节为序号
+     */
+    private static Common.Envelope newEnvelope(long group, long seq) {
+        return Common.Envelope.newBuilder()
+                .setPayload(ByteString.copyFrom(ByteBuffer.allocate(16).putLong(group).putLong(seq).array()))
+                .build();
+    }
+
+    private static int countThreads(String prefix) {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 模拟的群组, 记录写入的区块
+     */
+    private static class Group {
+        private ChainSupport support;
+        private BlockCutter cutter;
+        private Singleton chain;
+        private final List<Common.Block> blocks = new ArrayList<>();
+        private final List<Common.Block> configBlocks = new ArrayList<>();
+
+        synchronized void add(List<Common.Block> list, Common.Block block) {
+            list.add(block);
+            notifyAll();
+        }
+
+        synchronized int envelopes() {
+            int count = 0;
+            for (Common.Block block : blocks) {
+                count += block.getData().getDataCount();
+            }
+            return count;
+        }
+
+        synchronized void awaitEnvelopes(int expected, long timeout) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (envelopes() < expected) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                Assert.assertTrue("expect " + expected + " envelopes, got " + envelopes(), remaining > 0);
+                wait(remaining);
+            }
+        }
+
+        synchronized void assertInOrder() throws Exception {
+            long expected = 0;
+            for (Common.Block block : blocks) {
+                for (ByteString data : block.getData().getDataList()) {
+                    ByteBuffer payload = Common.Envelope.parseFrom(data).getPayload().asReadOnlyByteBuffer();
+                    payload.getLong();
+                    Assert.assertEquals(expected++, payload.getLong());
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+package org.bcia.julongchain.core.commiter;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.bcia.julongchain.common.groupconfig.capability.IApplicationCapabilities;
+import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.node.TransactionPackage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 区块交易验证性能测试, 单位为区块/秒
+ * 单笔交易的验证解析Envelope与交易头, 验签、背书策略与VSSC的开销以txTokens模拟
+ * sequential   在当前线程逐笔验证(node.validatorPoolSize为1)
+ * parallel     交易验证分发到线程池, 按交易顺序合并结果
+ * 运行: 执行main方法
+ *
+ * @author sunzongyu
+ * @date 2018/10/16
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommitterValidatorBenchmark {
+	private static final String GROUP_ID = "myGroup";
+
+	@Param({"100", "1000", "5000"})
+	public int txsPerBlock;
+
+	@Param({"20000"})
+	public long txTokens;
+
+	private Common.Block block;
+	private ExecutorService pool;
+	private CommitterValidator sequential;
+	private CommitterValidator parallel;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		Common.BlockData.Builder data = Common.BlockData.newBuilder();
+		for (int i = 0; i < txsPerBlock; i++) {
+			Common.GroupHeader groupHeader = Common.GroupHeader.newBuilder()
+					.setType(Common.HeaderType.ENDORSER_TRANSACTION_VALUE)
+					.setGroupId(GROUP_ID)
+					.setTxId("tx" + i)
+					.build();
+			Common.Payload payload = Common.Payload.newBuilder()
+					.setHeader(Common.Header.newBuilder().setGroupHeader(groupHeader.toByteString()))
+					.setData(ByteString.copyFrom(new byte[512]))
+					.build();
+			data.addData(Common.Envelope.newBuilder().setPayload(payload.toByteString()).build().toByteString());
+		}
+		block = Common.Block.newBuilder()
+				.setHeader(Common.BlockHeader.newBuilder().setNumber(1))
+				.setData(data)
+				.build();
+
+		ICommitterSupport support = stub(ICommitterSupport.class, stub(IApplicationCapabilities.class, null));
+		pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		sequential = new SimulatedCostValidator(support, null);
+		parallel = new SimulatedCostValidator(support, pool);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public Common.Block sequential() throws Exception {
+		return sequential.validate(block);
+	}
+
+	@Benchmark
+	public Common.Block parallel() throws Exception {
+		return parallel.validate(block);
+	}
+
+	/**
+	 * 返回值为boolean的方法返回true, 其余返回result
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T stub(Class<T> clazz, Object result) {
+		return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class[]{clazz},
+				(proxy, method, args) -> method.getReturnType() == boolean.class ? Boolean.TRUE : result);
+	}
+
+	private class SimulatedCostValidator extends CommitterValidator {
+		SimulatedCostValidator(ICommitterSupport committerSupport, ExecutorService validatorPool) {
+			super(committerSupport, validatorPool);
+		}
+
+		@Override
+		protected BlockValidationResult validateTx(BlockValidationRequest request) {
+			BlockValidationResult result = new BlockValidationResult();
+			result.setTxIndex(request.getTxIndex());
+			try {
+				Common.Envelope envelope = Common.Envelope.parseFrom(request.getData());
+				Common.Payload payload = Common.Payload.parseFrom(envelope.getPayload());
+				Common.GroupHeader groupHeader = Common.GroupHeader.parseFrom(payload.getHeader().getGroupHeader());
+				Blackhole.consumeCPU(txTokens);
+				result.setTxId(groupHeader.getTxId());
+				result.setTxValidationCode(TransactionPackage.TxValidationCode.VALID);
+			} catch (InvalidProtocolBufferException e) {
+				result.setTxValidationCode(TransactionPackage.TxValidationCode.BAD_PAYLOAD);
+			}
+			return result;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(CommitterValidatorBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
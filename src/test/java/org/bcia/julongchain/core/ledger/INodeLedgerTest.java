@@ -128,6 +128,9 @@ public class INodeLedgerTest {
 		ITxSimulator simulator2 = l.newTxSimulator("not same");
 		assertEquals(simulator, simulator1);
 		assertNotEquals(simulator, simulator2);
+		//未结束的模拟器会阻塞区块提交
+		simulator.done();
+		simulator2.done();
 	}
 
 	@Test
@@ -0,0 +1,145 @@
+package org.bcia.julongchain.core.ledger.kvledger;
+
+import com.google.protobuf.ByteString;
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.common.ledger.blkstorage.BlockStorage;
+import org.bcia.julongchain.common.ledger.blkstorage.IBlockStore;
+import org.bcia.julongchain.common.ledger.blkstorage.IndexConfig;
+import org.bcia.julongchain.common.ledger.blkstorage.fsblkstorage.Config;
+import org.bcia.julongchain.common.ledger.blkstorage.fsblkstorage.FsBlockStoreProvider;
+import org.bcia.julongchain.protos.common.Common;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 持续提交区块时的区块查询性能测试
+ * 1个线程持续提交区块(包括模拟的验证与状态写入), 3个线程按区块号随机查询
+ * legacy     查询与提交使用同一把账本锁(改造前KvLedger的synchronized查询方法)
+ * lockFree   查询不加锁, 读取提交后发布的区块链信息与只读索引
+ * 运行: 执行main方法, 比较各组中query的吞吐量
+ *
+ * @author sunzongyu
+ * @date 2018/10/16
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LedgerReadUnderCommitBenchmark {
+	private static final String GROUP_ID = "myGroup";
+	private static final int TXS_PER_BLOCK = 10;
+
+	/**
+	 * 每个区块提交时, 区块写入之外的验证与状态写入开销
+	 */
+	@Param({"100000"})
+	public long commitTokens;
+
+	private File rootDir;
+	private FsBlockStoreProvider provider;
+	private IBlockStore store;
+	private final Object ledgerLock = new Object();
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		rootDir = Files.createTempDirectory("ledgerReadUnderCommitBenchmark").toFile();
+		String[] attrsToIndex = {
+				BlockStorage.INDEXABLE_ATTR_BLOCK_HASH,
+				BlockStorage.INDEXABLE_ATTR_BLOCK_NUM,
+				BlockStorage.INDEXABLE_ATTR_TX_ID,
+				BlockStorage.INDEXABLE_ATTR_TX_VALIDATION_CODE
+		};
+		provider = new FsBlockStoreProvider(new Config(rootDir.getAbsolutePath(), 0), new IndexConfig(attrsToIndex));
+		store = provider.createBlockStore(GROUP_ID);
+		for (int i = 0; i < 1000; i++) {
+			commitBlock();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		store.shutdown();
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	@Benchmark
+	@Group("legacy")
+	@GroupThreads(1)
+	public void legacyCommit() throws Exception {
+		synchronized (ledgerLock) {
+			Blackhole.consumeCPU(commitTokens);
+			commitBlock();
+		}
+	}
+
+	@Benchmark
+	@Group("legacy")
+	@GroupThreads(3)
+	public Common.Block legacyQuery() throws Exception {
+		synchronized (ledgerLock) {
+			long height = store.getBlockchainInfo().getHeight();
+			return store.retrieveBlockByNumber(ThreadLocalRandom.current().nextLong(height));
+		}
+	}
+
+	@Benchmark
+	@Group("lockFree")
+	@GroupThreads(1)
+	public void lockFreeCommit() throws Exception {
+		synchronized (ledgerLock) {
+			Blackhole.consumeCPU(commitTokens);
+			commitBlock();
+		}
+	}
+
+	@Benchmark
+	@Group("lockFree")
+	@GroupThreads(3)
+	public Common.Block lockFreeQuery() throws Exception {
+		long height = store.getBlockchainInfo().getHeight();
+		return store.retrieveBlockByNumber(ThreadLocalRandom.current().nextLong(height));
+	}
+
+	private void commitBlock() throws Exception {
+		long num = store.getBlockchainInfo().getHeight();
+		Common.BlockData.Builder data = Common.BlockData.newBuilder();
+		for (int i = 0; i < TXS_PER_BLOCK; i++) {
+			Common.GroupHeader groupHeader = Common.GroupHeader.newBuilder()
+					.setGroupId(GROUP_ID)
+					.setTxId("tx-" + num + "-" + i)
+					.build();
+			Common.Payload payload = Common.Payload.newBuilder()
+					.setHeader(Common.Header.newBuilder().setGroupHeader(groupHeader.toByteString()))
+					.setData(ByteString.copyFrom(new byte[256]))
+					.build();
+			data.addData(Common.Envelope.newBuilder().setPayload(payload.toByteString()).build().toByteString());
+		}
+		Common.BlockMetadata.Builder metadata = Common.BlockMetadata.newBuilder();
+		for (int i = 0; i < Common.BlockMetadataIndex.values().length; i++) {
+			metadata.addMetadata(ByteString.copyFrom(new byte[TXS_PER_BLOCK]));
+		}
+		store.addBlock(Common.Block.newBuilder()
+				.setHeader(Common.BlockHeader.newBuilder().setNumber(num).setDataHash(ByteString.copyFromUtf8("data" + num)))
+				.setData(data)
+				.setMetadata(metadata)
+				.build());
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(LedgerReadUnderCommitBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,90 @@
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb;
+
+import org.bcia.julongchain.common.ledger.util.leveldbhelper.LevelDBProvider;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * CommittedVersionCache测试类
+ *
+ * @author sunzongyu
+ * @date 2018/10/14
+ * @company Dingxuan
+ */
+public class CommittedVersionCacheTest {
+	private static final String NS = "mycc";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private VersionedLevelDB vdb;
+	private CommittedVersionCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		vdb = new VersionedLevelDB(new LevelDBProvider(folder.getRoot().getAbsolutePath()).getDBHandle("myGroup"), "myGroup", 5);
+		cache = vdb.getVersionCache();
+		UpdateBatch batch = new UpdateBatch();
+		for (int i = 0; i < 5; i++) {
+			batch.put(NS, "key" + i, bytes("value" + i), new LedgerHeight(1, i));
+		}
+		vdb.applyUpdates(batch, new LedgerHeight(1, 4));
+	}
+
+	@Test
+	public void writeThrough() throws Exception {
+		//提交时写入的key直接命中
+		assertEquals(5, cache.size());
+		for (int i = 0; i < 5; i++) {
+			assertTrue(LedgerHeight.areSame(new LedgerHeight(1, i), vdb.getHeight(NS, "key" + i)));
+		}
+		assertEquals(5, cache.getHits());
+		assertEquals(0, cache.getMisses());
+
+		//不存在的key从数据库读取后同样缓存, 淘汰最久未使用的key0
+		assertNull(vdb.getHeight(NS, "key9"));
+		assertNull(vdb.getHeight(NS, "key9"));
+		assertEquals(6, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getEvictions());
+		assertTrue(LedgerHeight.areSame(new LedgerHeight(1, 0), vdb.getHeight(NS, "key0")));
+		assertEquals(2, cache.getMisses());
+
+		UpdateBatch batch = new UpdateBatch();
+		batch.put(NS, "key9", bytes("value9"), new LedgerHeight(2, 0));
+		vdb.applyUpdates(batch, new LedgerHeight(2, 0));
+		assertTrue(LedgerHeight.areSame(new LedgerHeight(2, 0), vdb.getHeight(NS, "key9")));
+		assertEquals(2, cache.getMisses());
+		assertEquals(5, cache.size());
+	}
+
+	@Test
+	public void skipStaleLoad() throws Exception {
+		cache.clear();
+		UpdateBatch batch = new UpdateBatch();
+		batch.put(NS, "key0", bytes("changed"), new LedgerHeight(2, 0));
+		//读取数据库期间发生提交, 读取的旧版本不放入缓存
+		LedgerHeight height = cache.getHeight(NS, "key0", (ns, key) -> {
+			LedgerHeight old = new LedgerHeight(1, 0);
+			vdb.applyUpdates(batch, new LedgerHeight(2, 0));
+			return old;
+		});
+		assertTrue(LedgerHeight.areSame(new LedgerHeight(1, 0), height));
+		assertTrue(LedgerHeight.areSame(new LedgerHeight(2, 0), vdb.getHeight(NS, "key0")));
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertTrue(LedgerHeight.areSame(new LedgerHeight(2, 0), vdb.getHeight(NS, "key0")));
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,201 @@
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.txmgr.lockbasedtxmgr;
+
+import com.google.protobuf.ByteString;
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.ledger.util.leveldbhelper.LevelDBProvider;
+import org.bcia.julongchain.core.ledger.ITxSimulator;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.CommonStorageDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.UpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.VersionedLevelDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+import org.bcia.julongchain.core.node.NodeConfig;
+import org.bcia.julongchain.core.node.NodeConfigFactory;
+import org.bcia.julongchain.protos.common.Common;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * LockBasedTxManager交易模拟器注册与提交屏障测试
+ *
+ * @author sunzongyu
+ * @date 2018/10/16
+ * @company Dingxuan
+ */
+public class LockBasedTxManagerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private LockBasedTxManager txMgr;
+	private Map<String, String> commitConfig;
+	private final AtomicReference<Exception> commitFailure = new AtomicReference<>();
+
+	@Before
+	public void setUp() throws Exception {
+		VersionedLevelDB vdb = new VersionedLevelDB(new LevelDBProvider(folder.getRoot().getAbsolutePath()).getDBHandle("myGroup"), "myGroup");
+		txMgr = new LockBasedTxManager("myGroup", new CommonStorageDB(vdb), new HashMap<>());
+		NodeConfig.Ledger ledger = NodeConfigFactory.getNodeConfig().getLedger();
+		commitConfig = ledger.getCommit();
+		Map<String, String> config = new HashMap<>();
+		config.put("simulationLeakTimeout", "500");
+		ledger.setCommit(config);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		NodeConfigFactory.getNodeConfig().getLedger().setCommit(commitConfig);
+		assertNull(commitFailure.get());
+	}
+
+	@Test
+	public void registry() throws Exception {
+		ITxSimulator simulator = txMgr.newTxSimulator("tx1");
+		assertSame(simulator, txMgr.newTxSimulator("tx1"));
+		assertNotSame(simulator, txMgr.newTxSimulator("tx2"));
+		assertEquals(2, txMgr.getOpenTxSimulatorCount());
+		simulator.done();
+		simulator.done();
+		assertEquals(1, txMgr.getOpenTxSimulatorCount());
+		//结束后同一交易ID重新创建
+		assertNotSame(simulator, txMgr.newTxSimulator("tx1"));
+	}
+
+	@Test
+	public void lookupDoesNotCreate() throws Exception {
+		assertNull(txMgr.getTxSimulator("tx1"));
+		assertEquals(0, txMgr.getOpenTxSimulatorCount());
+		ITxSimulator simulator = txMgr.newTxSimulator("tx1");
+		assertSame(simulator, txMgr.getTxSimulator("tx1"));
+		simulator.done();
+		//交易结束后迟到的查找不再得到模拟器
+		assertNull(txMgr.getTxSimulator("tx1"));
+	}
+
+	@Test
+	public void commitWaitsForSimulation() throws Exception {
+		ITxSimulator simulator = txMgr.newTxSimulator("tx1");
+		AtomicLong committedAt = new AtomicLong();
+		Thread committer = commitInBackground(committedAt);
+		committer.join(200);
+		assertEquals(0, committedAt.get());
+		//模拟在其他线程结束
+		long doneAt = System.nanoTime();
+		Thread done = new Thread(simulator::done);
+		done.start();
+		committer.join(TimeUnit.SECONDS.toMillis(5));
+		assertTrue(committedAt.get() >= doneAt);
+		assertEquals(0, txMgr.getOpenTxSimulatorCount());
+	}
+
+	@Test
+	public void leakedSimulatorReleased() throws Exception {
+		txMgr.newTxSimulator("leaked");
+		AtomicLong committedAt = new AtomicLong();
+		long start = System.nanoTime();
+		Thread committer = commitInBackground(committedAt);
+		committer.join(TimeUnit.SECONDS.toMillis(5));
+		assertTrue(committedAt.get() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+		//泄漏的模拟器不再阻塞之后的提交
+		committedAt.set(0);
+		committer = commitInBackground(committedAt);
+		committer.join(TimeUnit.SECONDS.toMillis(5));
+		assertTrue(committedAt.get() > 0);
+	}
+
+	@Test
+	public void leakedSimulatorInvalidated() throws Exception {
+		ITxSimulator simulator = txMgr.newTxSimulator("slow");
+		assertNull(simulator.getState("mycc", "key"));
+		UpdateBatch batch = new UpdateBatch();
+		batch.getPubUpdateBatch().getBatch().put("mycc", "key", "value".getBytes(StandardCharsets.UTF_8), new LedgerHeight(1, 0));
+		AtomicLong committedAt = new AtomicLong();
+		Thread committer = commitInBackground(batch, committedAt);
+		committer.join(TimeUnit.SECONDS.toMillis(5));
+		assertTrue(committedAt.get() > 0);
+		assertEquals(0, txMgr.getOpenTxSimulatorCount());
+		//超时后提交已写入, 模拟不能再读到提交之后的状态
+		try {
+			simulator.getState("mycc", "key");
+			fail();
+		} catch (LedgerException e) {
+			assertTrue(e.getMessage().contains("simulationLeakTimeout"));
+		}
+		try {
+			simulator.getStateRangeScanIterator("mycc", "", "");
+			fail();
+		} catch (LedgerException e) {
+			assertTrue(e.getMessage().contains("simulationLeakTimeout"));
+		}
+		//背书失败
+		try {
+			simulator.getTxSimulationResults();
+			fail();
+		} catch (LedgerException e) {
+			assertTrue(e.getMessage().contains("simulationLeakTimeout"));
+		}
+		simulator.done();
+	}
+
+	@Test
+	public void simulatorWaitsForPendingCommit() throws Exception {
+		ITxSimulator open = txMgr.newTxSimulator("tx1");
+		UpdateBatch batch = new UpdateBatch();
+		batch.getPubUpdateBatch().getBatch().put("mycc", "key", "value".getBytes(StandardCharsets.UTF_8), new LedgerHeight(1, 0));
+		txMgr.setBatch(batch);
+		txMgr.setCurrentBlock(Common.Block.newBuilder()
+				.setHeader(Common.BlockHeader.newBuilder().setNumber(1))
+				.setData(Common.BlockData.newBuilder().addData(ByteString.EMPTY))
+				.build());
+		//tx1未结束, 区块1写入状态数据库阻塞在提交屏障
+		txMgr.commitAsync();
+		AtomicReference<byte[]> value = new AtomicReference<>();
+		Thread reader = new Thread(() -> {
+			try {
+				ITxSimulator simulator = txMgr.newTxSimulator("tx2");
+				try {
+					value.set(simulator.getState("mycc", "key"));
+				} finally {
+					simulator.done();
+				}
+			} catch (Exception e) {
+				commitFailure.set(e);
+			}
+		});
+		reader.start();
+		reader.join(200);
+		assertTrue(reader.isAlive());
+		open.done();
+		reader.join(TimeUnit.SECONDS.toMillis(5));
+		//新模拟器读到异步提交的区块1的状态
+		assertArrayEquals("value".getBytes(StandardCharsets.UTF_8), value.get());
+		txMgr.waitForPendingCommit();
+	}
+
+	private Thread commitInBackground(AtomicLong committedAt) {
+		return commitInBackground(new UpdateBatch(), committedAt);
+	}
+
+	private Thread commitInBackground(UpdateBatch batch, AtomicLong committedAt) {
+		Thread committer = new Thread(() -> {
+			try {
+				txMgr.applyUpdates(batch, new LedgerHeight(1, 0));
+				committedAt.set(System.nanoTime());
+			} catch (Exception e) {
+				commitFailure.set(e);
+			}
+		});
+		committer.start();
+		return committer;
+	}
+}
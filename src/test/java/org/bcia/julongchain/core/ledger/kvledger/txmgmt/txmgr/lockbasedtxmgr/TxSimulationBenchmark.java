@@ -0,0 +1,99 @@
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.txmgr.lockbasedtxmgr;
+
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.common.ledger.util.leveldbhelper.LevelDBProvider;
+import org.bcia.julongchain.core.ledger.ITxSimulator;
+import org.bcia.julongchain.core.ledger.TxSimulationResults;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.CommonStorageDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.UpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.VersionedLevelDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 并发背书模拟性能测试, 单位为模拟/秒
+ * 每次模拟读取2个key, 写入1个key后获取模拟结果
+ * legacy       创建模拟器时持有管理器锁(改造前synchronized的newTxSimulator与静态HashMap)
+ * concurrent   并发注册表, 模拟只持有提交屏障的读锁
+ * 运行: 执行main方法
+ *
+ * @author sunzongyu
+ * @date 2018/10/16
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TxSimulationBenchmark {
+	private static final String NS = "mycc";
+	private static final int NUM_KEYS = 10000;
+
+	private File rootDir;
+	private LockBasedTxManager txMgr;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		rootDir = Files.createTempDirectory("txSimulationBenchmark").toFile();
+		VersionedLevelDB vdb = new VersionedLevelDB(new LevelDBProvider(rootDir.getAbsolutePath()).getDBHandle("myGroup"), "myGroup");
+		UpdateBatch batch = new UpdateBatch();
+		for (int i = 0; i < NUM_KEYS; i++) {
+			batch.put(NS, key(i), ("value" + i).getBytes(StandardCharsets.UTF_8), new LedgerHeight(1, i));
+		}
+		vdb.applyUpdates(batch, new LedgerHeight(1, NUM_KEYS - 1));
+		txMgr = new LockBasedTxManager("myGroup", new CommonStorageDB(vdb), new HashMap<>());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		txMgr.shutdown();
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	@Benchmark
+	public TxSimulationResults legacy() throws Exception {
+		ITxSimulator simulator;
+		synchronized (txMgr) {
+			simulator = txMgr.newTxSimulator(UUID.randomUUID().toString());
+		}
+		return simulate(simulator);
+	}
+
+	@Benchmark
+	public TxSimulationResults concurrent() throws Exception {
+		return simulate(txMgr.newTxSimulator(UUID.randomUUID().toString()));
+	}
+
+	private TxSimulationResults simulate(ITxSimulator simulator) throws Exception {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		simulator.getState(NS, key(random.nextInt(NUM_KEYS)));
+		simulator.getState(NS, key(random.nextInt(NUM_KEYS)));
+		simulator.setState(NS, key(random.nextInt(NUM_KEYS)), "new".getBytes(StandardCharsets.UTF_8));
+		return simulator.getTxSimulationResults();
+	}
+
+	private static String key(int i) {
+		return String.format("key%08d", i);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(TxSimulationBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
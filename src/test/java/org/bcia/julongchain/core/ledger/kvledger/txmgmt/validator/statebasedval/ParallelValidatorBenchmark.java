@@ -0,0 +1,125 @@
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.statebasedval;
+
+import com.google.protobuf.ByteString;
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.common.ledger.util.IDBProvider;
+import org.bcia.julongchain.common.ledger.util.leveldbhelper.LevelDBProvider;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.CommonStorageDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.IDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.NsRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.RwSetUtil;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.TxRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.UpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.VersionedLevelDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Block;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PubAndHashUpdates;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Transaction;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+import org.bcia.julongchain.protos.ledger.rwset.kvrwset.KvRwset;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 区块MVCC验证性能测试
+ * 每笔交易读取并写入已提交的key, 按conflictRate的比例读取区块内之前交易写入的热点key
+ * sequential   顺序验证(Validator)
+ * parallel     依赖图并行验证(ParallelValidator)
+ * 运行: 执行main方法
+ *
+ * @author sunzongyu
+ * @date 2018/10/13
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelValidatorBenchmark {
+	private static final String NS = "mycc";
+	private static final int HOT_KEYS = 16;
+
+	@Param({"500", "5000"})
+	public int numTxs;
+
+	@Param({"0", "0.1", "0.5"})
+	public double conflictRate;
+
+	private File rootDir;
+	private IDB db;
+	private Block block;
+	private Validator sequential;
+	private ParallelValidator parallel;
+	private ForkJoinPool pool;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		rootDir = Files.createTempDirectory("parallelValidatorBenchmark").toFile();
+		IDBProvider provider = new LevelDBProvider(rootDir.getAbsolutePath()).getDBHandle("myGroup");
+		VersionedLevelDB vdb = new VersionedLevelDB(provider, "myGroup");
+		int numKeys = numTxs * 2 + HOT_KEYS;
+		UpdateBatch batch = new UpdateBatch();
+		for (int i = 0; i < numKeys; i++) {
+			batch.put(NS, key(i), ("value" + i).getBytes(StandardCharsets.UTF_8), new LedgerHeight(1, i));
+		}
+		vdb.applyUpdates(batch, new LedgerHeight(1, numKeys - 1));
+		db = new CommonStorageDB(vdb);
+
+		Random random = new Random(0);
+		block = new Block(2);
+		for (int i = 0; i < numTxs; i++) {
+			KvRwset.KVRWSet.Builder kvRwSet = KvRwset.KVRWSet.newBuilder();
+			int read = HOT_KEYS + 2 * i;
+			if (random.nextDouble() < conflictRate) {
+				read = random.nextInt(HOT_KEYS);
+			}
+			kvRwSet.addReads(RwSetUtil.newKVRead(key(read), new LedgerHeight(1, read)));
+			kvRwSet.addReads(RwSetUtil.newKVRead(key(HOT_KEYS + 2 * i + 1), new LedgerHeight(1, HOT_KEYS + 2 * i + 1)));
+			kvRwSet.addWrites(KvRwset.KVWrite.newBuilder().setKey(key(HOT_KEYS + 2 * i + 1)).setValue(ByteString.copyFromUtf8("new")));
+			kvRwSet.addWrites(KvRwset.KVWrite.newBuilder().setKey(key(random.nextInt(HOT_KEYS))).setValue(ByteString.copyFromUtf8("new")));
+			TxRwSet txRwSet = new TxRwSet();
+			txRwSet.getNsRwSets().add(new NsRwSet(NS, kvRwSet.build()));
+			block.getTxs().add(new Transaction(i, "tx" + i, txRwSet, null));
+		}
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		sequential = new Validator(db);
+		parallel = new ParallelValidator(db, pool);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		pool.shutdown();
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	@Benchmark
+	public PubAndHashUpdates sequential() throws Exception {
+		return sequential.validateAndPrepareBatch(block, true);
+	}
+
+	@Benchmark
+	public PubAndHashUpdates parallel() throws Exception {
+		return parallel.validateAndPrepareBatch(block, true);
+	}
+
+	private static String key(int i) {
+		return String.format("key%08d", i);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(ParallelValidatorBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,215 @@
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.statebasedval;
+
+import com.google.protobuf.ByteString;
+import org.bcia.julongchain.common.ledger.util.IDBProvider;
+import org.bcia.julongchain.common.ledger.util.leveldbhelper.LevelDBProvider;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.CommonStorageDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.IDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.NsBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.PvtUpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.CollHashedRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.NsRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.RwSetUtil;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.TxRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.NsUpdates;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.UpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.VersionedLevelDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Block;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PendingUpdates;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PubAndHashUpdates;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Transaction;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+import org.bcia.julongchain.protos.ledger.rwset.kvrwset.KvRwset;
+import org.bcia.julongchain.protos.node.TransactionPackage;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * ParallelValidator测试类
+ * 随机生成区块, 比较并行验证与顺序验证的结果
+ *
+ * @author sunzongyu
+ * @date 2018/10/13
+ * @company Dingxuan
+ */
+public class ParallelValidatorTest {
+	private static final String NS = "mycc";
+	private static final String COLL = "coll";
+	private static final int COMMITTED_KEYS = 100;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private IDB db;
+
+	@Before
+	public void setUp() throws Exception {
+		IDBProvider provider = new LevelDBProvider(folder.getRoot().getAbsolutePath()).getDBHandle("myGroup");
+		VersionedLevelDB vdb = new VersionedLevelDB(provider, "myGroup");
+		UpdateBatch batch = new UpdateBatch();
+		for (int i = 0; i < COMMITTED_KEYS; i++) {
+			batch.put(NS, key(i), ("value" + i).getBytes(StandardCharsets.UTF_8), new LedgerHeight(1, i));
+		}
+		vdb.applyUpdates(batch, new LedgerHeight(1, COMMITTED_KEYS - 1));
+		db = new CommonStorageDB(vdb);
+	}
+
+	@Test
+	public void sameResultAsSequential() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		//key空间越小冲突越多
+		for (int keySpace : new int[]{20, 100, 1000}) {
+			List<TxRwSet> rwSets = randomRwSets(new Random(keySpace), 300, keySpace);
+			Block sequentialBlock = toBlock(rwSets);
+			Block parallelBlock = toBlock(rwSets);
+			PubAndHashUpdates expected = new Validator(db).validateAndPrepareBatch(sequentialBlock, true);
+			PubAndHashUpdates actual = new ParallelValidator(db, pool).validateAndPrepareBatch(parallelBlock, true);
+
+			int valid = 0;
+			for (int i = 0; i < rwSets.size(); i++) {
+				TransactionPackage.TxValidationCode code = sequentialBlock.getTxs().get(i).getValidationCode();
+				assertEquals("tx " + i, code, parallelBlock.getTxs().get(i).getValidationCode());
+				if (TransactionPackage.TxValidationCode.VALID.equals(code)) {
+					valid++;
+				}
+			}
+			assertTrue(valid > 0 && valid < rwSets.size());
+			assertEquals(toMap(expected.getPubUpdates().getBatch()), toMap(actual.getPubUpdates().getBatch()));
+			Map<String, NsBatch> expectedHashed = expected.getHashedUpdates().getMap().getMap();
+			Map<String, NsBatch> actualHashed = actual.getHashedUpdates().getMap().getMap();
+			assertEquals(expectedHashed.keySet(), actualHashed.keySet());
+			for (String ns : expectedHashed.keySet()) {
+				assertEquals(toMap(expectedHashed.get(ns).getBatch()), toMap(actualHashed.get(ns).getBatch()));
+			}
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void dependencyLevels() throws Exception {
+		List<TxRwSet> rwSets = new ArrayList<>();
+		//tx0写key1, tx1读key1, tx2读写key2与之前交易无关, tx3范围查询依赖tx0与tx1
+		rwSets.add(rwSet(new String[0], new String[]{key(1)}, false));
+		rwSets.add(rwSet(new String[]{key(1)}, new String[]{key(3)}, false));
+		rwSets.add(rwSet(new String[]{key(2)}, new String[]{key(2)}, false));
+		rwSets.add(rwSet(new String[0], new String[0], true));
+		TxDependencyGraph graph = new TxDependencyGraph(toBlock(rwSets).getTxs());
+		assertEquals(3, graph.getLevels().size());
+		assertEquals(2, graph.getLevels().get(0).size());
+		assertTrue(graph.getLevels().get(0).contains(2));
+		assertTrue(graph.getLevels().get(1).contains(1));
+		assertTrue(graph.getLevels().get(2).contains(3));
+
+		Block block = toBlock(rwSets);
+		new ParallelValidator(db, ForkJoinPool.commonPool()).validateAndPrepareBatch(block, true);
+		assertEquals(TransactionPackage.TxValidationCode.VALID, block.getTxs().get(0).getValidationCode());
+		assertEquals(TransactionPackage.TxValidationCode.MVCC_READ_CONFLICT, block.getTxs().get(1).getValidationCode());
+		assertEquals(TransactionPackage.TxValidationCode.VALID, block.getTxs().get(2).getValidationCode());
+	}
+
+	@Test
+	public void pendingUpdatesOverlay() throws Exception {
+		//区块2尚未写入状态数据库时验证区块3, 结果应与区块2写入后验证相同
+		PubAndHashUpdates updates = new Validator(db).validateAndPrepareBatch(toBlock(randomRwSets(new Random(1), 100, 50)), true);
+		org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.UpdateBatch blockUpdates =
+				new org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.UpdateBatch(updates.getPubUpdates(), updates.getHashedUpdates(), new PvtUpdateBatch());
+		PendingUpdates pending = new PendingUpdates(2, blockUpdates);
+		List<TxRwSet> rwSets = randomRwSets(new Random(2), 100, 50);
+		Block sequentialBlock = toBlock(rwSets);
+		Block parallelBlock = toBlock(rwSets);
+		PubAndHashUpdates sequential = new Validator(db).validateAndPrepareBatch(sequentialBlock, true, pending);
+		PubAndHashUpdates parallel = new ParallelValidator(db, ForkJoinPool.commonPool()).validateAndPrepareBatch(parallelBlock, true, pending);
+
+		db.applyPrivacyAwareUpdates(blockUpdates, new LedgerHeight(2, 99));
+		Block committedBlock = toBlock(rwSets);
+		PubAndHashUpdates expected = new Validator(db).validateAndPrepareBatch(committedBlock, true);
+		int valid = 0;
+		for (int i = 0; i < rwSets.size(); i++) {
+			TransactionPackage.TxValidationCode code = committedBlock.getTxs().get(i).getValidationCode();
+			assertEquals("tx " + i, code, sequentialBlock.getTxs().get(i).getValidationCode());
+			assertEquals("tx " + i, code, parallelBlock.getTxs().get(i).getValidationCode());
+			if (TransactionPackage.TxValidationCode.VALID.equals(code)) {
+				valid++;
+			}
+		}
+		assertTrue(valid > 0 && valid < rwSets.size());
+		assertEquals(toMap(expected.getPubUpdates().getBatch()), toMap(sequential.getPubUpdates().getBatch()));
+		assertEquals(toMap(expected.getPubUpdates().getBatch()), toMap(parallel.getPubUpdates().getBatch()));
+	}
+
+	private List<TxRwSet> randomRwSets(Random random, int numTxs, int keySpace) {
+		List<TxRwSet> rwSets = new ArrayList<>();
+		for (int i = 0; i < numTxs; i++) {
+			String[] reads = new String[]{key(random.nextInt(keySpace)), key(random.nextInt(keySpace))};
+			String[] writes = new String[]{key(random.nextInt(keySpace)), key(random.nextInt(keySpace))};
+			TxRwSet rwSet = rwSet(reads, writes, random.nextInt(10) == 0);
+			NsRwSet nsRwSet = rwSet.getNsRwSets().get(0);
+			//私有数据读写集合
+			ByteString keyHash = ByteString.copyFromUtf8("hash" + random.nextInt(keySpace));
+			KvRwset.HashedRWSet hashedRwSet = KvRwset.HashedRWSet.newBuilder()
+					.addHashedReads(KvRwset.KVReadHash.newBuilder().setKeyHash(keyHash))
+					.addHashedWrites(KvRwset.KVWriteHash.newBuilder()
+							.setKeyHash(ByteString.copyFromUtf8("hash" + random.nextInt(keySpace)))
+							.setValueHash(keyHash))
+					.build();
+			nsRwSet.getCollHashedRwSets().add(new CollHashedRwSet(COLL, ByteString.EMPTY, hashedRwSet));
+			rwSets.add(rwSet);
+		}
+		return rwSets;
+	}
+
+	/**
+	 * 读取已提交的key, 写入新值
+	 */
+	private TxRwSet rwSet(String[] reads, String[] writes, boolean rangeQuery) {
+		KvRwset.KVRWSet.Builder kvRwSet = KvRwset.KVRWSet.newBuilder();
+		for (String read : reads) {
+			int i = Integer.parseInt(read.substring(3));
+			kvRwSet.addReads(RwSetUtil.newKVRead(read, i < COMMITTED_KEYS ? new LedgerHeight(1, i) : null));
+		}
+		for (String write : writes) {
+			kvRwSet.addWrites(KvRwset.KVWrite.newBuilder().setKey(write).setValue(ByteString.copyFromUtf8(write)));
+		}
+		if (rangeQuery) {
+			kvRwSet.addRangeQueriesInfo(KvRwset.RangeQueryInfo.newBuilder()
+					.setStartKey(key(0))
+					.setEndKey(key(5))
+					.setItrExhausted(true));
+		}
+		TxRwSet txRwSet = new TxRwSet();
+		txRwSet.getNsRwSets().add(new NsRwSet(NS, kvRwSet.build()));
+		return txRwSet;
+	}
+
+	private Block toBlock(List<TxRwSet> rwSets) {
+		Block block = new Block(2);
+		for (int i = 0; i < rwSets.size(); i++) {
+			block.getTxs().add(new Transaction(i, "tx" + i, rwSets.get(i), null));
+		}
+		return block;
+	}
+
+	private Map<String, Map<?, ?>> toMap(UpdateBatch batch) {
+		Map<String, Map<?, ?>> result = new HashMap<>();
+		for (Map.Entry<String, NsUpdates> entry : batch.getUpdates().entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getMap());
+		}
+		return result;
+	}
+
+	private static String key(int i) {
+		return String.format("key%04d", i);
+	}
+}
@@ -0,0 +1,161 @@
+package org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.statebasedval;
+
+import com.google.protobuf.ByteString;
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.common.ledger.util.IDBProvider;
+import org.bcia.julongchain.common.ledger.util.leveldbhelper.LevelDBProvider;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.CommonStorageDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.IDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.PvtUpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.NsRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.RwSetUtil;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.rwsetutil.TxRwSet;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.UpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.VersionedLevelDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Block;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PendingUpdates;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.PubAndHashUpdates;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.validator.valinternal.Transaction;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+import org.bcia.julongchain.protos.ledger.rwset.kvrwset.KvRwset;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 区块验证与状态提交性能测试, 单位为区块/秒
+ * 每笔交易读取只读key, 写入随机key
+ * sequential   验证后同步写入状态数据库(原KvLedger.commitWithPvtData)
+ * pipelined    验证区块N+1时区块N在后台写入, 已提交版本从PendingUpdates读取(ledger.commit.pipelined)
+ * 运行: 执行main方法
+ *
+ * @author sunzongyu
+ * @date 2018/10/15
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelinedCommitBenchmark {
+	private static final String NS = "mycc";
+	private static final int READ_KEYS = 10000;
+	private static final int WRITE_KEYS = 100000;
+
+	@Param({"100", "1000"})
+	public int txsPerBlock;
+
+	private File rootDir;
+	private IDB db;
+	private Validator validator;
+	private ExecutorService committer;
+	private Future<?> pendingCommit;
+	private PendingUpdates pendingUpdates;
+	private Random random;
+	private long blockNum;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		rootDir = Files.createTempDirectory("pipelinedCommitBenchmark").toFile();
+		IDBProvider provider = new LevelDBProvider(rootDir.getAbsolutePath()).getDBHandle("myGroup");
+		VersionedLevelDB vdb = new VersionedLevelDB(provider, "myGroup");
+		UpdateBatch batch = new UpdateBatch();
+		for (int i = 0; i < READ_KEYS; i++) {
+			batch.put(NS, readKey(i), ("value" + i).getBytes(StandardCharsets.UTF_8), new LedgerHeight(1, i));
+		}
+		vdb.applyUpdates(batch, new LedgerHeight(1, READ_KEYS - 1));
+		db = new CommonStorageDB(vdb);
+		validator = new Validator(db);
+		committer = Executors.newSingleThreadExecutor();
+		random = new Random(0);
+		blockNum = 1;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		waitForPendingCommit();
+		committer.shutdown();
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	@Benchmark
+	public void sequential() throws Exception {
+		Block block = nextBlock();
+		PubAndHashUpdates updates = validator.validateAndPrepareBatch(block, true);
+		db.applyPrivacyAwareUpdates(toBatch(updates), height(block));
+	}
+
+	@Benchmark
+	public void pipelined() throws Exception {
+		Block block = nextBlock();
+		PubAndHashUpdates updates = validator.validateAndPrepareBatch(block, true, pendingUpdates);
+		waitForPendingCommit();
+		org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.UpdateBatch batch = toBatch(updates);
+		LedgerHeight height = height(block);
+		pendingUpdates = new PendingUpdates(block.getNum(), batch);
+		pendingCommit = committer.submit(() -> {
+			db.applyPrivacyAwareUpdates(batch, height);
+			return null;
+		});
+	}
+
+	private void waitForPendingCommit() throws Exception {
+		if (pendingCommit != null) {
+			pendingCommit.get();
+			pendingCommit = null;
+			pendingUpdates = null;
+		}
+	}
+
+	private Block nextBlock() {
+		Block block = new Block(++blockNum);
+		for (int i = 0; i < txsPerBlock; i++) {
+			KvRwset.KVRWSet.Builder kvRwSet = KvRwset.KVRWSet.newBuilder();
+			for (int j = 0; j < 2; j++) {
+				int read = random.nextInt(READ_KEYS);
+				kvRwSet.addReads(RwSetUtil.newKVRead(readKey(read), new LedgerHeight(1, read)));
+			}
+			for (int j = 0; j < 2; j++) {
+				kvRwSet.addWrites(KvRwset.KVWrite.newBuilder()
+						.setKey(String.format("write%08d", random.nextInt(WRITE_KEYS)))
+						.setValue(ByteString.copyFromUtf8("value" + blockNum)));
+			}
+			TxRwSet txRwSet = new TxRwSet();
+			txRwSet.getNsRwSets().add(new NsRwSet(NS, kvRwSet.build()));
+			block.getTxs().add(new Transaction(i, "tx" + i, txRwSet, null));
+		}
+		return block;
+	}
+
+	private LedgerHeight height(Block block) {
+		return new LedgerHeight(block.getNum(), txsPerBlock - 1);
+	}
+
+	private static org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.UpdateBatch toBatch(PubAndHashUpdates updates) {
+		return new org.bcia.julongchain.core.ledger.kvledger.txmgmt.privacyenabledstate.UpdateBatch(
+				updates.getPubUpdates(), updates.getHashedUpdates(), new PvtUpdateBatch());
+	}
+
+	private static String readKey(int i) {
+		return String.format("read%08d", i);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(PipelinedCommitBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
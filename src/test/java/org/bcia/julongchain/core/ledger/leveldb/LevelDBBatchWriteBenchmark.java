@@ -0,0 +1,120 @@
+package org.bcia.julongchain.core.ledger.leveldb;
+
+import org.apache.commons.io.FileUtils;
+import org.iq80.leveldb.DB;
+import org.iq80.leveldb.WriteBatch;
+import org.iq80.leveldb.WriteOptions;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 区块提交时批量写入leveldb的耗时测试
+ * batchWrite   一个WriteBatch一次写入
+ * legacyWrite  改造前的写入方式, 每添加一个kv写入一次累计的WriteBatch
+ * 运行: 执行main方法
+ *
+ * @author sunzongyu
+ * @date 2018/10/12
+ * @company Dingxuan
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LevelDBBatchWriteBenchmark {
+
+	@State(Scope.Thread)
+	public static class BatchState {
+		@Param({"1000", "10000", "100000"})
+		public int numKeys;
+
+		File dir;
+		LevelDB db;
+		Map<byte[], byte[]> kvs;
+
+		@Setup(Level.Iteration)
+		public void setUp() throws Exception {
+			dir = Files.createTempDirectory("levelDBBatchWriteBenchmark").toFile();
+			db = LevelDBUtil.getDB(dir.getAbsolutePath());
+			kvs = constructKvs(numKeys);
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() throws Exception {
+			db.close();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * 改造前的写入方式为O(N^2), 只测试较小的区块
+	 */
+	@State(Scope.Thread)
+	public static class LegacyState {
+		@Param({"1000", "3000"})
+		public int legacyNumKeys;
+
+		File dir;
+		LevelDB db;
+		Map<byte[], byte[]> kvs;
+
+		@Setup(Level.Iteration)
+		public void setUp() throws Exception {
+			dir = Files.createTempDirectory("levelDBBatchWriteBenchmark").toFile();
+			db = LevelDBUtil.getDB(dir.getAbsolutePath());
+			kvs = constructKvs(legacyNumKeys);
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() throws Exception {
+			db.close();
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	@Benchmark
+	public void batchWrite(BatchState state) throws Exception {
+		LevelDBUtil.write(state.db, state.kvs, new WriteOptions().sync(true));
+	}
+
+	@Benchmark
+	public void legacyWrite(LegacyState state) throws Exception {
+		DB db = state.db;
+		WriteBatch writeBatch = db.createWriteBatch();
+		WriteOptions writeOptions = new WriteOptions().sync(true);
+		state.kvs.forEach((k, v) -> {
+			writeBatch.put(k, v);
+			db.write(writeBatch, writeOptions);
+		});
+		writeBatch.close();
+	}
+
+	private static Map<byte[], byte[]> constructKvs(int numKeys) {
+		Random random = new Random(0);
+		Map<byte[], byte[]> kvs = new HashMap<>();
+		for (int i = 0; i < numKeys; i++) {
+			byte[] value = new byte[64];
+			random.nextBytes(value);
+			kvs.put(("ns\u0000key" + i).getBytes(StandardCharsets.UTF_8), value);
+		}
+		return kvs;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(LevelDBBatchWriteBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,72 @@
+package org.bcia.julongchain.core.ledger.leveldb;
+
+import org.iq80.leveldb.WriteOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * LevelDBUtil批量写入测试类
+ *
+ * @author sunzongyu
+ * @date 2018/10/12
+ * @company Dingxuan
+ */
+public class LevelDBBatchWriteTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private LevelDB db;
+
+	@Before
+	public void setUp() throws Exception {
+		db = LevelDBUtil.getDB(folder.getRoot().getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.close();
+	}
+
+	@Test
+	public void writeBatch() throws Exception {
+		LevelDBUtil.add(db, bytes("deleted"), bytes("value"), false);
+		Map<byte[], byte[]> kvs = new LinkedHashMap<>();
+		for (int i = 0; i < 100; i++) {
+			kvs.put(bytes("key" + i), bytes("value" + i));
+		}
+		kvs.put(bytes("deleted"), null);
+		LevelDBUtil.add(db, kvs, true);
+		for (int i = 0; i < 100; i++) {
+			assertArrayEquals(bytes("value" + i), LevelDBUtil.get(db, bytes("key" + i), false));
+		}
+		assertNull(LevelDBUtil.get(db, bytes("deleted"), false));
+	}
+
+	@Test
+	public void writeSplitBatch() throws Exception {
+		Map<byte[], byte[]> kvs = new LinkedHashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			kvs.put(bytes(String.format("key%04d", i)), new byte[100]);
+		}
+		//每个WriteBatch约10个kv
+		LevelDBUtil.write(db, kvs, new WriteOptions().sync(true), 1000);
+		for (int i = 0; i < 1000; i++) {
+			assertArrayEquals(new byte[100], LevelDBUtil.get(db, bytes(String.format("key%04d", i)), false));
+		}
+		//空数据不写入
+		LevelDBUtil.write(db, new LinkedHashMap<>(), new WriteOptions());
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
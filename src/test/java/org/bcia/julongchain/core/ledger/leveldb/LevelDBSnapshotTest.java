@@ -0,0 +1,116 @@
+package org.bcia.julongchain.core.ledger.leveldb;
+
+import org.bcia.julongchain.common.exception.LevelDBException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * LevelDBSnapshot与LevelDBIterator测试类
+ *
+ * @author sunzongyu
+ * @date 2018/10/12
+ * @company Dingxuan
+ */
+public class LevelDBSnapshotTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Rule
+	public ExpectedException thrown = ExpectedException.none();
+
+	private LevelDB db;
+
+	@Before
+	public void setUp() throws Exception {
+		db = LevelDBUtil.getDB(folder.getRoot().getAbsolutePath());
+		for (int i = 0; i < 10; i++) {
+			LevelDBUtil.add(db, bytes("key" + i), bytes("value" + i), false);
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.close();
+	}
+
+	@Test
+	public void boundedRange() throws Exception {
+		LevelDBIterator itr = LevelDBUtil.getIterator(db, bytes("key3"), bytes("key6"));
+		assertEquals(3, collectKeys(itr).size());
+		assertFalse(itr.hasNext());
+		itr.close();
+
+		//未设置结束key时遍历至末尾
+		itr = LevelDBUtil.getIterator(db, bytes("key8"), null);
+		List<String> keys = collectKeys(itr);
+		itr.close();
+		assertEquals(2, keys.size());
+		assertEquals("key8", keys.get(0));
+		assertEquals("key9", keys.get(1));
+	}
+
+	@Test
+	public void snapshotIsolation() throws Exception {
+		LevelDBSnapshot snapshot = LevelDBUtil.getSnapshot(db);
+		LevelDBIterator itr = snapshot.getIterator(null, null);
+		LevelDBUtil.add(db, bytes("key0"), bytes("changed"), false);
+		LevelDBUtil.add(db, bytes("key10"), bytes("value10"), false);
+
+		//快照关闭后已创建的迭代器仍可使用
+		snapshot.close();
+		assertEquals(10, collectKeys(itr).size());
+		itr.close();
+		assertArrayEquals(bytes("changed"), LevelDBUtil.get(db, bytes("key0"), false));
+
+		thrown.expect(LevelDBException.class);
+		snapshot.get(bytes("key0"));
+	}
+
+	@Test
+	public void sharedSnapshot() throws Exception {
+		LevelDBSnapshot snapshot = LevelDBUtil.getSnapshot(db);
+		LevelDBUtil.add(db, bytes("key5"), bytes("changed"), false);
+		assertArrayEquals(bytes("value5"), snapshot.get(bytes("key5")));
+		LevelDBIterator itr1 = snapshot.getIterator(bytes("key0"), bytes("key5"));
+		LevelDBIterator itr2 = snapshot.getIterator(bytes("key5"), null);
+		assertEquals(5, collectKeys(itr1).size());
+		assertArrayEquals(bytes("value5"), itr2.next().getValue());
+		itr1.close();
+		itr2.close();
+		//重复关闭不影响快照引用计数
+		itr2.close();
+		assertFalse(snapshot.isClosed());
+		assertArrayEquals(bytes("value5"), snapshot.get(bytes("key5")));
+		snapshot.close();
+		assertTrue(snapshot.isClosed());
+	}
+
+	@Test
+	public void compareKeys() {
+		assertTrue(LevelDBIterator.compareKeys(new byte[]{0x01}, new byte[]{(byte) 0xff}) < 0);
+		assertTrue(LevelDBIterator.compareKeys(bytes("key"), bytes("key0")) < 0);
+		assertEquals(0, LevelDBIterator.compareKeys(bytes("key"), bytes("key")));
+	}
+
+	private List<String> collectKeys(LevelDBIterator itr) {
+		List<String> keys = new ArrayList<>();
+		while (itr.hasNext()) {
+			keys.add(new String(itr.next().getKey(), StandardCharsets.UTF_8));
+		}
+		return keys;
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
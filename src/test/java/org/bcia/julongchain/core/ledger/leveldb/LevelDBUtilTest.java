@@ -7,7 +7,6 @@ import org.bcia.julongchain.common.ledger.blockledger.file.FileLedgerFactory;
 import org.bcia.julongchain.core.ledger.INodeLedger;
 import org.bcia.julongchain.core.ledger.ledgermgmt.LedgerManager;
 import org.bcia.julongchain.protos.ledger.rwset.kvrwset.KvRwset;
-import org.iq80.leveldb.DBIterator;
 import org.junit.Test;
 
 import java.util.Map;
@@ -86,11 +85,12 @@ public class LevelDBUtilTest {
 			// byte[] bytes = LevelDBUtil.get(db, "aaa".getBytes(), false);
 			// System.out.println(new String(bytes));
 
-			DBIterator iterator = LevelDBUtil.getIterator(db);
+			LevelDBIterator iterator = LevelDBUtil.getIterator(db);
 			while(iterator.hasNext()){
 				Map.Entry<byte[], byte[]> next = iterator.next();
 				System.out.println("key:[" + new String(next.getKey()) + "] value:[" + new String(next.getValue()) + "]");
 			}
+			iterator.close();
 
 		} catch (LevelDBException e) {
 			e.printStackTrace();
@@ -0,0 +1,133 @@
+package org.bcia.julongchain.core.smartcontract.node;
+
+import com.google.protobuf.ByteString;
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.common.ledger.IResultsIterator;
+import org.bcia.julongchain.common.ledger.util.leveldbhelper.LevelDBProvider;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.VersionedKV;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.UpdateBatch;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.stateleveldb.VersionedLevelDB;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.version.LedgerHeight;
+import org.bcia.julongchain.protos.ledger.queryresult.KvQueryResult;
+import org.bcia.julongchain.protos.node.SmartContractShim;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 智能合约范围查询性能测试, 扫描状态数据库中numKeys个key
+ * materialized  全部结果放入一个QueryResponse(分页之前的实现), 返回消息字节数
+ * paged         通过QueryCursorRegistry逐页读取, 返回最大一页的字节数
+ * firstPage     打开游标并返回第一页的延迟
+ * 运行: 执行main方法, 加-prof gc可查看每次扫描的内存分配
+ *
+ * @author wanliangbing
+ * @date 2018/10/17
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class QueryCursorBenchmark {
+	private static final String NS = "mycc";
+
+	@Param({"1000000"})
+	public int numKeys;
+
+	@Param({"100"})
+	public int pageSize;
+
+	private File rootDir;
+	private VersionedLevelDB vdb;
+	private QueryCursorRegistry registry;
+	private long txSeq;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		rootDir = Files.createTempDirectory("queryCursorBenchmark").toFile();
+		vdb = new VersionedLevelDB(new LevelDBProvider(rootDir.getAbsolutePath()).getDBHandle("myGroup"), "myGroup");
+		int batchSize = 10000;
+		for (int start = 0; start < numKeys; start += batchSize) {
+			UpdateBatch batch = new UpdateBatch();
+			for (int i = start; i < Math.min(numKeys, start + batchSize); i++) {
+				batch.put(NS, key(i), ("value" + i).getBytes(StandardCharsets.UTF_8), new LedgerHeight(1, i));
+			}
+			vdb.applyUpdates(batch, new LedgerHeight(1, Math.min(numKeys, start + batchSize) - 1));
+		}
+		registry = new QueryCursorRegistry(pageSize, 60000);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		registry.shutdown();
+		FileUtils.deleteDirectory(rootDir);
+	}
+
+	@Benchmark
+	public int materialized() throws Exception {
+		IResultsIterator iterator = vdb.getStateRangeScanIterator(NS, key(0), key(numKeys));
+		SmartContractShim.QueryResponse.Builder builder = SmartContractShim.QueryResponse.newBuilder();
+		try {
+			QueryResult queryResult;
+			while ((queryResult = iterator.next()) != null) {
+				builder.addResults(map(queryResult));
+			}
+		} finally {
+			iterator.close();
+		}
+		return builder.build().toByteString().size();
+	}
+
+	@Benchmark
+	public int paged() throws Exception {
+		String txId = "tx" + (++txSeq);
+		IResultsIterator iterator = vdb.getStateRangeScanIterator(NS, key(0), key(numKeys));
+		SmartContractShim.QueryResponse page = registry.open("myGroup", txId, iterator, QueryCursorBenchmark::map);
+		int maxPageBytes = page.toByteString().size();
+		while (page.getHasMore()) {
+			page = registry.next("myGroup", txId, page.getId());
+			maxPageBytes = Math.max(maxPageBytes, page.toByteString().size());
+		}
+		return maxPageBytes;
+	}
+
+	@Benchmark
+	public int firstPage() throws Exception {
+		String txId = "tx" + (++txSeq);
+		IResultsIterator iterator = vdb.getStateRangeScanIterator(NS, key(0), key(numKeys));
+		SmartContractShim.QueryResponse page = registry.open("myGroup", txId, iterator, QueryCursorBenchmark::map);
+		registry.closeAll("myGroup", txId);
+		return page.toByteString().size();
+	}
+
+	private static SmartContractShim.QueryResultBytes map(QueryResult queryResult) {
+		VersionedKV kv = (VersionedKV) queryResult.getObj();
+		KvQueryResult.KV kvProto = KvQueryResult.KV.newBuilder()
+				.setKey(kv.getCompositeKey().getKey())
+				.setNamespace(kv.getCompositeKey().getNamespace())
+				.setValue(ByteString.copyFrom(kv.getVersionedValue().getValue()))
+				.build();
+		return SmartContractShim.QueryResultBytes.newBuilder().setResultBytes(kvProto.toByteString()).build();
+	}
+
+	private static String key(int i) {
+		return String.format("key%08d", i);
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(QueryCursorBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
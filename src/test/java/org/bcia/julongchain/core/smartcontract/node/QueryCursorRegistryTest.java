@@ -0,0 +1,159 @@
+package org.bcia.julongchain.core.smartcontract.node;
+
+import com.google.protobuf.ByteString;
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.ledger.IResultsIterator;
+import org.bcia.julongchain.core.ledger.kvledger.txmgmt.statedb.QueryResult;
+import org.bcia.julongchain.protos.node.SmartContractShim;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * QueryCursorRegistry测试类
+ *
+ * @author wanliangbing
+ * @date 2018/10/17
+ * @company Dingxuan
+ */
+public class QueryCursorRegistryTest {
+
+    private QueryCursorRegistry registry;
+
+    @After
+    public void tearDown() {
+        if (registry != null) {
+            registry.shutdown();
+        }
+    }
+
+    @Test
+    public void paging() throws Exception {
+        registry = new QueryCursorRegistry(10, 60000);
+        CountingIterator iterator = new CountingIterator(25);
+
+        SmartContractShim.QueryResponse page = registry.open("myGroup", "tx1", iterator, CountingIterator::map);
+        Assert.assertEquals(10, page.getResultsCount());
+        Assert.assertTrue(page.getHasMore());
+        Assert.assertEquals("0", page.getResults(0).getResultBytes().toStringUtf8());
+        Assert.assertEquals(1, registry.size());
+
+        page = registry.next("myGroup", "tx1", page.getId());
+        Assert.assertEquals(10, page.getResultsCount());
+        Assert.assertEquals("10", page.getResults(0).getResultBytes().toStringUtf8());
+        Assert.assertTrue(page.getHasMore());
+
+        page = registry.next("myGroup", "tx1", page.getId());
+        Assert.assertEquals(5, page.getResultsCount());
+        Assert.assertFalse(page.getHasMore());
+
+        //最后一页返回后游标关闭
+        Assert.assertEquals(0, registry.size());
+        Assert.assertTrue(iterator.closed);
+        try {
+            registry.next("myGroup", "tx1", page.getId());
+            Assert.fail("Cursor should be closed");
+        } catch (LedgerException e) {
+            Assert.assertTrue(e.getMessage().contains("does not exist"));
+        }
+    }
+
+    @Test
+    public void exactPage() throws Exception {
+        registry = new QueryCursorRegistry(10, 60000);
+        CountingIterator iterator = new CountingIterator(10);
+        SmartContractShim.QueryResponse page = registry.open("myGroup", "tx1", iterator, CountingIterator::map);
+        Assert.assertEquals(10, page.getResultsCount());
+        Assert.assertFalse(page.getHasMore());
+        Assert.assertTrue(iterator.closed);
+    }
+
+    @Test
+    public void mapperEndsResults() throws Exception {
+        registry = new QueryCursorRegistry(10, 60000);
+        CountingIterator iterator = new CountingIterator(100);
+        //范围查询的endKey之后的结果不返回
+        SmartContractShim.QueryResponse page = registry.open("myGroup", "tx1", iterator, queryResult -> {
+            int i = (Integer) queryResult.getObj();
+            return i >= 3 ? null : CountingIterator.map(queryResult);
+        });
+        Assert.assertEquals(3, page.getResultsCount());
+        Assert.assertFalse(page.getHasMore());
+        Assert.assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void closeAndCloseAll() throws Exception {
+        registry = new QueryCursorRegistry(10, 60000);
+        CountingIterator it1 = new CountingIterator(100);
+        CountingIterator it2 = new CountingIterator(100);
+        CountingIterator it3 = new CountingIterator(100);
+        SmartContractShim.QueryResponse page1 = registry.open("myGroup", "tx1", it1, CountingIterator::map);
+        registry.open("myGroup", "tx1", it2, CountingIterator::map);
+        registry.open("myGroup", "tx2", it3, CountingIterator::map);
+        Assert.assertEquals(3, registry.size());
+
+        registry.close("myGroup", "tx1", page1.getId());
+        Assert.assertTrue(it1.closed);
+        Assert.assertEquals(2, registry.size());
+
+        registry.closeAll("myGroup", "tx1");
+        Assert.assertTrue(it2.closed);
+        Assert.assertFalse(it3.closed);
+        Assert.assertEquals(1, registry.size());
+
+        //其他交易不能访问游标
+        try {
+            registry.next("myGroup", "tx1", page1.getId());
+            Assert.fail("Cursor should be closed");
+        } catch (LedgerException e) {
+        }
+    }
+
+    @Test
+    public void closeIdleCursors() throws Exception {
+        registry = new QueryCursorRegistry(10, 100);
+        CountingIterator iterator = new CountingIterator(100);
+        registry.open("myGroup", "tx1", iterator, CountingIterator::map);
+        Assert.assertEquals(1, registry.size());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (registry.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(0, registry.size());
+        Assert.assertTrue(iterator.closed);
+    }
+
+    /**
+     * 依次返回0到size-1
+     */
+    private static class CountingIterator implements IResultsIterator {
+        private final int size;
+        private int next;
+        private volatile boolean closed;
+
+        CountingIterator(int size) {
+            this.size = size;
+        }
+
+        static SmartContractShim.QueryResultBytes map(QueryResult queryResult) {
+            return SmartContractShim.QueryResultBytes.newBuilder()
+                    .setResultBytes(ByteString.copyFromUtf8(String.valueOf(queryResult.getObj())))
+                    .build();
+        }
+
+        @Override
+        public QueryResult next() throws LedgerException {
+            if (closed) {
+                throw new LedgerException("closed");
+            }
+            return next < size ? new QueryResult(next++) : null;
+        }
+
+        @Override
+        public void close() throws LedgerException {
+            closed = true;
+        }
+    }
+}
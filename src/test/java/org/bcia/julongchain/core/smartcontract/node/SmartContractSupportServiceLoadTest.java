@@ -0,0 +1,143 @@
+package org.bcia.julongchain.core.smartcontract.node;
+
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import org.bcia.julongchain.common.exception.SmartContractException;
+import org.bcia.julongchain.protos.node.SmartContractPackage;
+import org.bcia.julongchain.protos.node.SmartContractShim.SmartContractMessage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SmartContractSupportService并发invoke测试
+ * 进程内智能合约通过register()注册, 每笔交易延迟EXECUTE_MILLIS后异步返回COMPLETED
+ *
+ * @author wanliangbing
+ * @date 2018/10/16
+ * @company Dingxuan
+ */
+public class SmartContractSupportServiceLoadTest {
+
+    private static final int EXECUTE_MILLIS = 50;
+
+    private SmartContractSupportService service = new SmartContractSupportService();
+    private ScheduledExecutorService contractExecutor = Executors.newScheduledThreadPool(4);
+    private ExecutorService clientExecutor = Executors.newFixedThreadPool(64);
+
+    @After
+    public void tearDown() {
+        contractExecutor.shutdownNow();
+        clientExecutor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentInvoke() throws Exception {
+        int n = 64;
+        InprocContract contract = register("loadcc", true);
+
+        long start = System.currentTimeMillis();
+        List<Future<SmartContractMessage>> futures = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String txId = "tx" + i;
+            futures.add(clientExecutor.submit(() -> SmartContractSupportService.invoke("loadcc", newMessage(txId), 10000)));
+        }
+        for (int i = 0; i < n; i++) {
+            SmartContractMessage response = futures.get(i).get();
+            Assert.assertEquals(SmartContractMessage.Type.COMPLETED, response.getType());
+            Assert.assertEquals("tx" + i, response.getTxid());
+            Assert.assertEquals("result-tx" + i, response.getPayload().toStringUtf8());
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        //串行执行至少需要n * EXECUTE_MILLIS
+        Assert.assertTrue("elapsed " + elapsed + "ms", elapsed < n * EXECUTE_MILLIS / 2);
+        Assert.assertTrue(contract.maxConcurrent.get() > 1);
+        Assert.assertEquals(n, contract.received.get());
+        Assert.assertEquals(0, SmartContractSupportService.getPendingCount());
+    }
+
+    @Test
+    public void invokeTimeout() throws Exception {
+        register("silentcc", false);
+
+        long start = System.currentTimeMillis();
+        try {
+            SmartContractSupportService.invoke("silentcc", newMessage("txTimeout"), 200);
+            Assert.fail("Should timeout");
+        } catch (SmartContractException e) {
+            Assert.assertTrue(e.getMessage().contains("Timeout"));
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+        Assert.assertEquals(0, SmartContractSupportService.getPendingCount());
+    }
+
+    private InprocContract register(String name, boolean reply) {
+        InprocContract contract = new InprocContract(reply);
+        contract.nodeObserver = service.register(contract);
+        SmartContractMessage registerMessage = SmartContractMessage.newBuilder()
+                .setType(SmartContractMessage.Type.REGISTER)
+                .setPayload(SmartContractPackage.SmartContractID.newBuilder().setName(name).build().toByteString())
+                .build();
+        contract.nodeObserver.onNext(registerMessage);
+        return contract;
+    }
+
+    private static SmartContractMessage newMessage(String txId) {
+        return SmartContractMessage.newBuilder()
+                .setType(SmartContractMessage.Type.TRANSACTION)
+                .setTxid(txId)
+                .setGroupId("myGroup")
+                .build();
+    }
+
+    /**
+     * 进程内智能合约, 接收节点发送的消息
+     */
+    private class InprocContract implements StreamObserver<SmartContractMessage> {
+        private final boolean reply;
+        private final AtomicInteger executing = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+        private final AtomicInteger received = new AtomicInteger();
+        private volatile StreamObserver<SmartContractMessage> nodeObserver;
+
+        InprocContract(boolean reply) {
+            this.reply = reply;
+        }
+
+        @Override
+        public void onNext(SmartContractMessage message) {
+            if (message.getType() != SmartContractMessage.Type.TRANSACTION) {
+                return;
+            }
+            received.incrementAndGet();
+            if (!reply) {
+                return;
+            }
+            int current = executing.incrementAndGet();
+            maxConcurrent.accumulateAndGet(current, Math::max);
+            contractExecutor.schedule(() -> {
+                executing.decrementAndGet();
+                nodeObserver.onNext(SmartContractMessage.newBuilder()
+                        .setType(SmartContractMessage.Type.COMPLETED)
+                        .setTxid(message.getTxid())
+                        .setGroupId(message.getGroupId())
+                        .setPayload(ByteString.copyFromUtf8("result-" + message.getTxid()))
+                        .build());
+            }, EXECUTE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.bcia.julongchain.core.smartcontract.shim.impl;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.bcia.julongchain.core.smartcontract.shim.ISmartContractStub;
+import org.bcia.julongchain.core.smartcontract.shim.SmartContractBase;
+import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.node.ProposalPackage;
+import org.bcia.julongchain.protos.node.SmartContractPackage;
+import org.bcia.julongchain.protos.node.SmartContractShim;
+import org.bcia.julongchain.protos.node.SmartContractShim.SmartContractMessage;
+import org.bcia.julongchain.protos.node.SmartContractSupportGrpc;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 智能合约读写状态的单笔提案延迟测试
+ * 智能合约读取并写入numKeys个key, 节点端为进程内gRPC服务, 状态保存在内存中
+ * single    逐个GET_STATE/PUT_STATE, 每个key两次往返
+ * batched   一次GET_STATE_MULTIPLE, 写入缓冲到交易结束时一次PUT_STATE_BATCH
+ * 进程内gRPC没有网络延迟, 实际部署时每次往返的开销更大
+ * 运行: 执行main方法
+ *
+ * @author wanliangbing
+ * @date 2018/10/16
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShimStateAccessBenchmark {
+	private static final String GROUP_ID = "myGroup";
+
+	@Param({"1", "10", "200"})
+	public int numKeys;
+
+	private Server server;
+	private ManagedChannel channel;
+	private Thread receiver;
+	private FakeNode node;
+	private final AtomicLong txSeq = new AtomicLong();
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		String name = "shimStateAccessBenchmark-" + System.nanoTime();
+		node = new FakeNode();
+		server = InProcessServerBuilder.forName(name).addService(node).build().start();
+		channel = InProcessChannelBuilder.forName(name).build();
+
+		ChatStream chatStream = new ChatStream(channel, new StateAccessSmartContract());
+		receiver = new Thread(() -> {
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					chatStream.receive();
+				}
+			} catch (Exception e) {
+				//关闭
+			}
+		});
+		receiver.setDaemon(true);
+		receiver.start();
+
+		chatStream.serialSend(SmartContractMessage.newBuilder()
+				.setType(SmartContractMessage.Type.REGISTER)
+				.setPayload(SmartContractPackage.SmartContractID.newBuilder().setName("statecc").build().toByteString())
+				.build());
+		node.ready.get(10, TimeUnit.SECONDS);
+		for (int i = 0; i < numKeys; i++) {
+			node.state.put(key(i), ByteString.copyFromUtf8("value" + i));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		//先结束流, 否则ChatStream.onError会退出进程
+		node.toSmartContract.onCompleted();
+		receiver.interrupt();
+		channel.awaitTermination(10, TimeUnit.SECONDS);
+		server.shutdown();
+	}
+
+	@Benchmark
+	public SmartContractMessage single() throws Exception {
+		return node.execute("single", numKeys, "tx" + txSeq.incrementAndGet());
+	}
+
+	@Benchmark
+	public SmartContractMessage batched() throws Exception {
+		return node.execute("batched", numKeys, "tx" + txSeq.incrementAndGet());
+	}
+
+	private static String key(int i) {
+		return "key" + i;
+	}
+
+	/**
+	 * 读取并写入参数指定个数的key
+	 */
+	private static class StateAccessSmartContract extends SmartContractBase {
+		@Override
+		public SmartContractResponse init(ISmartContractStub stub) {
+			return newSuccessResponse();
+		}
+
+		@Override
+		public SmartContractResponse invoke(ISmartContractStub stub) {
+			List<String> params = stub.getParameters();
+			int n = Integer.parseInt(params.get(1));
+			List<String> keys = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				keys.add(key(i));
+			}
+			List<byte[]> values;
+			if ("batched".equals(params.get(0))) {
+				stub.setWriteBuffered(true);
+				values = stub.getStateMultiple(keys);
+			} else {
+				values = new ArrayList<>(n);
+				for (String key : keys) {
+					values.add(stub.getState(key));
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				stub.putState(keys.get(i), values.get(i));
+			}
+			return newSuccessResponse();
+		}
+
+		@Override
+		public String getSmartContractStrDescription() {
+			return "state access benchmark";
+		}
+	}
+
+	/**
+	 * 节点端, 处理智能合约的状态读写请求
+	 */
+	private static class FakeNode extends SmartContractSupportGrpc.SmartContractSupportImplBase {
+		private final Map<String, ByteString> state = new ConcurrentHashMap<>();
+		private final Map<String, CompletableFuture<SmartContractMessage>> pending = new ConcurrentHashMap<>();
+		private final CompletableFuture<Void> ready = new CompletableFuture<>();
+		private final ProposalPackage.SignedProposal signedProposal = newSignedProposal();
+		private volatile StreamObserver<SmartContractMessage> toSmartContract;
+
+		SmartContractMessage execute(String mode, int numKeys, String txId) throws Exception {
+			CompletableFuture<SmartContractMessage> future = new CompletableFuture<>();
+			pending.put(txId, future);
+			SmartContractPackage.SmartContractInput input = SmartContractPackage.SmartContractInput.newBuilder()
+					.addArgs(ByteString.copyFromUtf8("invoke"))
+					.addArgs(ByteString.copyFromUtf8(mode))
+					.addArgs(ByteString.copyFromUtf8(String.valueOf(numKeys)))
+					.build();
+			send(SmartContractMessage.newBuilder()
+					.setType(SmartContractMessage.Type.TRANSACTION)
+					.setTxid(txId)
+					.setGroupId(GROUP_ID)
+					.setPayload(input.toByteString())
+					.setProposal(signedProposal)
+					.build());
+			SmartContractMessage response = future.get(30, TimeUnit.SECONDS);
+			if (response.getType() != SmartContractMessage.Type.COMPLETED) {
+				throw new IllegalStateException(response.getPayload().toStringUtf8());
+			}
+			return response;
+		}
+
+		private synchronized void send(SmartContractMessage message) {
+			toSmartContract.onNext(message);
+		}
+
+		@Override
+		public StreamObserver<SmartContractMessage> register(StreamObserver<SmartContractMessage> responseObserver) {
+			toSmartContract = responseObserver;
+			return new StreamObserver<SmartContractMessage>() {
+				@Override
+				public void onNext(SmartContractMessage message) {
+					try {
+						handle(message);
+					} catch (InvalidProtocolBufferException e) {
+						send(reply(message, SmartContractMessage.Type.ERROR, ByteString.EMPTY));
+					}
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+				}
+
+				@Override
+				public void onCompleted() {
+				}
+			};
+		}
+
+		private void handle(SmartContractMessage message) throws InvalidProtocolBufferException {
+			switch (message.getType()) {
+				case REGISTER:
+					send(SmartContractMessage.newBuilder().setType(SmartContractMessage.Type.REGISTERED).build());
+					send(SmartContractMessage.newBuilder().setType(SmartContractMessage.Type.READY).build());
+					ready.complete(null);
+					break;
+				case GET_STATE:
+					ByteString value = state.getOrDefault(message.getPayload().toStringUtf8(), ByteString.EMPTY);
+					send(reply(message, SmartContractMessage.Type.RESPONSE, value));
+					break;
+				case GET_STATE_MULTIPLE:
+					SmartContractShim.StateValues.Builder values = SmartContractShim.StateValues.newBuilder();
+					for (String key : SmartContractShim.GetStateMultiple.parseFrom(message.getPayload()).getKeysList()) {
+						values.addValues(state.getOrDefault(key, ByteString.EMPTY));
+					}
+					send(reply(message, SmartContractMessage.Type.RESPONSE, values.build().toByteString()));
+					break;
+				case PUT_STATE:
+					SmartContractShim.PutState putState = SmartContractShim.PutState.parseFrom(message.getPayload());
+					state.put(putState.getKey(), putState.getValue());
+					send(reply(message, SmartContractMessage.Type.RESPONSE, ByteString.EMPTY));
+					break;
+				case PUT_STATE_BATCH:
+					SmartContractShim.PutStateBatch batch = SmartContractShim.PutStateBatch.parseFrom(message.getPayload());
+					for (SmartContractShim.PutState put : batch.getPutsList()) {
+						state.put(put.getKey(), put.getValue());
+					}
+					for (SmartContractShim.DelState del : batch.getDelsList()) {
+						state.remove(del.getKey());
+					}
+					send(reply(message, SmartContractMessage.Type.RESPONSE, ByteString.EMPTY));
+					break;
+				case COMPLETED:
+				case ERROR:
+					CompletableFuture<SmartContractMessage> future = pending.remove(message.getTxid());
+					if (future != null) {
+						future.complete(message);
+					}
+					break;
+				default:
+					break;
+			}
+		}
+
+		private static ProposalPackage.SignedProposal newSignedProposal() {
+			Common.GroupHeader groupHeader = Common.GroupHeader.newBuilder()
+					.setType(Common.HeaderType.ENDORSER_TRANSACTION_VALUE)
+					.setGroupId(GROUP_ID)
+					.build();
+			Common.SignatureHeader signatureHeader = Common.SignatureHeader.newBuilder()
+					.setCreator(ByteString.copyFromUtf8("creator"))
+					.setNonce(ByteString.copyFromUtf8("nonce"))
+					.build();
+			Common.Header header = Common.Header.newBuilder()
+					.setGroupHeader(groupHeader.toByteString())
+					.setSignatureHeader(signatureHeader.toByteString())
+					.build();
+			ProposalPackage.Proposal proposal = ProposalPackage.Proposal.newBuilder()
+					.setHeader(header.toByteString())
+					.build();
+			return ProposalPackage.SignedProposal.newBuilder().setProposalBytes(proposal.toByteString()).build();
+		}
+
+		private static SmartContractMessage reply(SmartContractMessage request, SmartContractMessage.Type type, ByteString payload) {
+			return SmartContractMessage.newBuilder()
+					.setType(type)
+					.setTxid(request.getTxid())
+					.setGroupId(request.getGroupId())
+					.setPayload(payload)
+					.build();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options opt = new OptionsBuilder()
+				.include(ShimStateAccessBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opt).run();
+	}
+}
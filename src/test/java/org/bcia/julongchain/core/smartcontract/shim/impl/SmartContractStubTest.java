@@ -30,7 +30,9 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.bcia.julongchain.protos.common.Common.HeaderType.ENDORSER_TRANSACTION_VALUE;
@@ -39,6 +41,8 @@ import static org.hamcrest.Matchers.*;
 import static org.hamcrest.Matchers.contains;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 /**
@@ -166,6 +170,40 @@ public class SmartContractStubTest {
         verify(handler).deleteState("myc", "txId", "key");
     }
 
+    @Test
+    public void getStateMultiple() {
+        final SmartContractStub stub = new SmartContractStub("myc", "txId", handler, Collections.emptyList(), null);
+        final byte[] value = new byte[]{0x10, 0x20, 0x30};
+        when(handler.getStateMultiple("myc", "txId", Arrays.asList("a", "b")))
+                .thenReturn(Arrays.asList(ByteString.copyFrom(value), ByteString.EMPTY));
+        final List<byte[]> values = stub.getStateMultiple(Arrays.asList("a", "b"));
+        assertThat(values, hasSize(2));
+        assertThat(values.get(0), is(value));
+        assertThat(values.get(1), is(new byte[0]));
+    }
+
+    @Test
+    public void bufferedWrites() {
+        final SmartContractStub stub = new SmartContractStub("myc", "txId", handler, Collections.emptyList(), null);
+        stub.setWriteBuffered(true);
+        stub.putState("a", new byte[]{0x01});
+        stub.putState("b", new byte[]{0x02});
+        stub.delState("b");
+        stub.putState("a", new byte[]{0x03});
+        verify(handler, never()).putState(anyString(), anyString(), anyString(), any());
+        verify(handler, never()).deleteState(anyString(), anyString(), anyString());
+
+        stub.flushWrites();
+        final Map<String, ByteString> writes = new LinkedHashMap<>();
+        writes.put("a", ByteString.copyFrom(new byte[]{0x03}));
+        writes.put("b", null);
+        verify(handler).putStateBatch("myc", "txId", writes);
+
+        //已发送的写入不再重复发送
+        stub.flushWrites();
+        verify(handler, times(1)).putStateBatch(anyString(), anyString(), anyMap());
+    }
+
     @Test
     public void getStateByRange() {
         final SmartContractStub stub = new SmartContractStub("myc", "txId", handler, Collections.emptyList(), null);
@@ -2,7 +2,11 @@ package org.bcia.julongchain.csp.gm.dxct.sm2;
 
 import org.bcia.julongchain.common.exception.CspException;
 import org.bcia.julongchain.csp.gm.dxct.util.CryptoUtil;
+import org.bouncycastle.asn1.gm.GMNamedCurves;
 import org.bouncycastle.crypto.CryptoException;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.SM2Signer;
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.After;
 import org.junit.Assert;
@@ -10,8 +14,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.FileNotFoundException;
+import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * sm2 测试类
@@ -134,4 +140,47 @@ public class SM2Test {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void batchVerify() throws CspException {
+        SM2KeyPair otherKeyPair = sm2.generateKeyPair();
+        byte[][] publicKeys = new byte[6][];
+        byte[][] signatures = new byte[6][];
+        byte[][] contents = new byte[6][];
+        for (int i = 0; i < 6; i++) {
+            SM2KeyPair keyPair = i % 2 == 0 ? sm2KeyPair : otherKeyPair;
+            contents[i] = CryptoUtil.genByteArray(32);
+            publicKeys[i] = keyPair.getPublickey();
+            signatures[i] = sm2.sign(keyPair.getPrivatekey(), contents[i]);
+        }
+        //签名与公钥不匹配
+        publicKeys[3] = sm2KeyPair.getPublickey();
+        //消息被篡改
+        contents[4] = CryptoUtil.genByteArray(32);
+
+        //非DER编码的签名值
+        signatures[5] = Arrays.copyOf(signatures[5], signatures[5].length + 1);
+
+        boolean[] results = sm2.batchVerify(publicKeys, signatures, contents);
+        boolean[] expected = {true, true, true, false, false, false};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], results[i]);
+            assertEquals(expected[i], sm2.verify(publicKeys[i], signatures[i], contents[i]));
+            //与SM2Signer的验签结果一致
+            SM2Signer signer = new SM2Signer();
+            signer.init(false, new ECPublicKeyParameters(SM2.byte2ECpoint(publicKeys[i]), new ECDomainParameters(
+                    GMNamedCurves.getByName("sm2p256v1").getCurve(), GMNamedCurves.getByName("sm2p256v1").getG(),
+                    GMNamedCurves.getByName("sm2p256v1").getN())));
+            signer.update(contents[i], 0, contents[i].length);
+            assertEquals(expected[i], signer.verifySignature(signatures[i]));
+        }
+        //不带未压缩点标识的64字节公钥
+        assertTrue(sm2.verify(Arrays.copyOfRange(publicKeys[0], 1, 65), signatures[0], contents[0]));
+
+        try {
+            sm2.batchVerify(publicKeys, signatures, new byte[5][]);
+            Assert.fail();
+        } catch (CspException e) {
+            assertEquals("publicKeys, signValues and plainTexts must have the same length", e.getMessage());
+        }
+    }
+}
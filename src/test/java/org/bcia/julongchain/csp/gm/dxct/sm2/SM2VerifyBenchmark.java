@@ -0,0 +1,109 @@
+package org.bcia.julongchain.csp.gm.dxct.sm2;
+
+import org.bcia.julongchain.csp.gm.dxct.util.CryptoUtil;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.SM2Signer;
+import org.bouncycastle.math.ec.ECCurve;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SM2验签性能测试, 单位为批次/秒
+ * 每批次batchSize个签名, 由identities个身份签发, 模拟一个区块中交易的创建者与背书签名
+ * legacy   逐个验签, 每次重新解析公钥(缓存公钥前的实现)
+ * single   逐个调用SM2.verify
+ * batch    调用SM2.batchVerify
+ * 运行: 执行main方法
+ *
+ * @author zhangmingyang
+ * @date 2018/10/16
+ * @company Dingxuan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SM2VerifyBenchmark {
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    @Param({"32"})
+    public int identities;
+
+    private SM2 sm2;
+    private ECDomainParameters domain;
+    private byte[][] publicKeys;
+    private byte[][] signatures;
+    private byte[][] msgs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        sm2 = new SM2();
+        SM2KeyPair[] keyPairs = new SM2KeyPair[identities];
+        for (int i = 0; i < identities; i++) {
+            keyPairs[i] = sm2.generateKeyPair();
+        }
+        publicKeys = new byte[batchSize][];
+        signatures = new byte[batchSize][];
+        msgs = new byte[batchSize][];
+        for (int i = 0; i < batchSize; i++) {
+            SM2KeyPair keyPair = keyPairs[i % identities];
+            msgs[i] = CryptoUtil.genByteArray(32);
+            publicKeys[i] = keyPair.getPublickey();
+            signatures[i] = sm2.sign(keyPair.getPrivatekey(), msgs[i]);
+        }
+        ECCurve.Fp curve = new ECCurve.Fp(
+                new BigInteger("FFFFFFFEFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF00000000FFFFFFFFFFFFFFFF", 16),
+                new BigInteger("FFFFFFFEFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF00000000FFFFFFFFFFFFFFFC", 16),
+                new BigInteger("28E9FA9E9D9F5E344D5A9E4BCF6509A7F39789F515AB8F92DDBCBD414D940E93", 16));
+        domain = new ECDomainParameters(curve, curve.createPoint(
+                new BigInteger("32C4AE2C1F1981195F9904466A39C9948FE30BBFF2660BE1715A4589334C74C7", 16),
+                new BigInteger("BC3736A2F4F6779C59BDCEE36B692153D0A9877CC62A474002DF32E52139F0A0", 16)),
+                new BigInteger("FFFFFFFEFFFFFFFFFFFFFFFFFFFFFFFF7203DF6B21C6052B53BBF40939D54123", 16));
+    }
+
+    @Benchmark
+    public int legacy() {
+        int valid = 0;
+        for (int i = 0; i < batchSize; i++) {
+            SM2Signer signer = new SM2Signer();
+            signer.init(false, new ECPublicKeyParameters(domain.getCurve().decodePoint(publicKeys[i]), domain));
+            signer.update(msgs[i], 0, msgs[i].length);
+            if (signer.verifySignature(signatures[i])) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public int single() throws Exception {
+        int valid = 0;
+        for (int i = 0; i < batchSize; i++) {
+            if (sm2.verify(publicKeys[i], signatures[i], msgs[i])) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public boolean[] batch() throws Exception {
+        return sm2.batchVerify(publicKeys, signatures, msgs);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(SM2VerifyBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,179 @@
+package org.bcia.julongchain.events.producer;
+
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.node.EventsPackage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 事件分发测试, 1000个订阅者中有部分订阅者处理过慢
+ *
+ * @author zhouhui
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class EventProcessorFanOutTest {
+    private static JulongChainLog log = JulongChainLogFactory.getLog(EventProcessorFanOutTest.class);
+
+    private static final EventsPackage.Interest BLOCK_INTEREST = EventsPackage.Interest.newBuilder()
+            .setEventType(EventsPackage.EventType.BLOCK)
+            .build();
+
+    private EventProcessor processor;
+
+    @After
+    public void tearDown() {
+        if (processor != null) {
+            processor.shutdown();
+        }
+    }
+
+    @Test
+    public void slowSubscribersDoNotStallOthers() throws Exception {
+        int numSubscribers = 1000;
+        int numSlow = 10;
+        int numEvents = 200;
+        long slowMillis = 20;
+        processor = new EventProcessor(new EventsServerConfig(100, 10, 0, null, 32,
+                EventsServerConfig.OverflowPolicy.DROP));
+        processor.start();
+
+        CountDownLatch fastDone = new CountDownLatch(numSubscribers - numSlow);
+        List<Subscriber> subscribers = new ArrayList<>();
+        for (int i = 0; i < numSubscribers; i++) {
+            Subscriber subscriber = new Subscriber(i < numSlow ? slowMillis : 0, numEvents, i < numSlow ? null : fastDone);
+            subscriber.handler = new EventHandler(processor, subscriber);
+            processor.getEventConsumers().get(EventsPackage.EventType.BLOCK_VALUE).add(BLOCK_INTEREST, subscriber.handler);
+            subscribers.add(subscriber);
+        }
+
+        //每5毫秒产生一个区块事件, 慢订阅者每秒只能处理1000 / slowMillis个
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < numEvents; i++) {
+            Assert.assertTrue(processor.send(newBlockEvent(i)));
+            Thread.sleep(5);
+        }
+        Assert.assertTrue("fast subscribers did not receive all events", fastDone.await(30, TimeUnit.SECONDS));
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Fan out " + numEvents + " events to " + numSubscribers + " subscribers: " + elapsed + "ms");
+
+        //慢订阅者串行处理全部事件需要numEvents * slowMillis
+        Assert.assertTrue("elapsed " + elapsed + "ms", elapsed < numEvents * slowMillis);
+        for (int i = numSlow; i < numSubscribers; i++) {
+            Subscriber subscriber = subscribers.get(i);
+            Assert.assertEquals(numEvents, subscriber.received.size());
+            for (int j = 0; j < numEvents; j++) {
+                Assert.assertEquals(j, subscriber.received.get(j).longValue());
+            }
+        }
+        for (int i = 0; i < numSlow; i++) {
+            EventSubscriberQueue subscriberQueue = processor.getSubscriberQueue(subscribers.get(i).handler);
+            Assert.assertTrue(subscriberQueue.getDropped() > 0);
+            Assert.assertTrue(subscriberQueue.size() <= 32);
+            //已收到的事件保持顺序
+            List<Long> received = new ArrayList<>(subscribers.get(i).received);
+            for (int j = 1; j < received.size(); j++) {
+                Assert.assertTrue(received.get(j) > received.get(j - 1));
+            }
+        }
+    }
+
+    @Test
+    public void disconnectSlowSubscriber() throws Exception {
+        int numEvents = 20;
+        processor = new EventProcessor(new EventsServerConfig(100, 10, 0, null, 4,
+                EventsServerConfig.OverflowPolicy.DISCONNECT));
+        processor.start();
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(1);
+        Subscriber slow = new Subscriber(0, numEvents, null) {
+            @Override
+            public void sendMessage(EventsPackage.Event event) {
+                try {
+                    blocked.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.sendMessage(event);
+            }
+        };
+        Subscriber fast = new Subscriber(0, numEvents, fastDone);
+        IHandlerList handlerList = processor.getEventConsumers().get(EventsPackage.EventType.BLOCK_VALUE);
+        slow.handler = new EventHandler(processor, slow);
+        fast.handler = new EventHandler(processor, fast);
+        handlerList.add(BLOCK_INTEREST, slow.handler);
+        handlerList.add(BLOCK_INTEREST, fast.handler);
+
+        for (int i = 0; i < numEvents; i++) {
+            Assert.assertTrue(processor.send(newBlockEvent(i)));
+            Thread.sleep(5);
+        }
+        Assert.assertTrue(fastDone.await(10, TimeUnit.SECONDS));
+        blocked.countDown();
+
+        Assert.assertTrue(slow.disconnected.get());
+        Assert.assertFalse(fast.disconnected.get());
+        //断开后删除订阅
+        Assert.assertFalse(handlerList.delete(BLOCK_INTEREST, slow.handler));
+        Assert.assertTrue(handlerList.delete(BLOCK_INTEREST, fast.handler));
+        Assert.assertTrue(slow.received.size() < numEvents);
+    }
+
+    private static EventsPackage.Event newBlockEvent(long number) {
+        return EventsPackage.Event.newBuilder()
+                .setBlock(Common.Block.newBuilder()
+                        .setHeader(Common.BlockHeader.newBuilder().setNumber(number).build())
+                        .build())
+                .build();
+    }
+
+    /**
+     * 模拟的订阅者, 记录收到的区块号
+     */
+    private static class Subscriber implements EventHubServer.Callback {
+        private final long delayMillis;
+        private final int expected;
+        private final CountDownLatch done;
+        private final List<Long> received = new ArrayList<>();
+        private final AtomicBoolean disconnected = new AtomicBoolean();
+        private EventHandler handler;
+
+        Subscriber(long delayMillis, int expected, CountDownLatch done) {
+            this.delayMillis = delayMillis;
+            this.expected = expected;
+            this.done = done;
+        }
+
+        @Override
+        public void sendMessage(EventsPackage.Event event) {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (received) {
+                received.add(event.getBlock().getHeader().getNumber());
+                if (received.size() == expected && done != null) {
+                    done.countDown();
+                }
+            }
+        }
+
+        @Override
+        public void disconnect() {
+            disconnected.set(true);
+        }
+    }
+}
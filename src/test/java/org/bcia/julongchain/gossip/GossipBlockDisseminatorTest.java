@@ -0,0 +1,145 @@
+package org.bcia.julongchain.gossip;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.ByteString;
+import org.apache.gossip.manager.GossipManager;
+import org.apache.gossip.model.SharedDataMessage;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.protos.common.Common;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramSocket;
+import java.util.Random;
+
+/**
+ * GossipBlockDisseminator测试类
+ *
+ * @author wanliangbing
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class GossipBlockDisseminatorTest {
+
+    private static JulongChainLog log = JulongChainLogFactory.getLog(GossipBlockDisseminatorTest.class);
+
+    private GossipManager gossipManager;
+
+    @Before
+    public void setUp() throws Exception {
+        int port;
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        gossipManager = GossipServiceUtil.newGossipService("127.0.0.1:" + port);
+        gossipManager.init();
+    }
+
+    @After
+    public void tearDown() {
+        gossipManager.shutdown();
+    }
+
+    @Test
+    public void addAndGetBlock() throws Exception {
+        GossipBlockDisseminator disseminator = new GossipBlockDisseminator(gossipManager, 10, 60000, 1024);
+        //随机数据不可压缩, 分为多个分片
+        Common.Block block = newBlock(0, 10000, new Random(1));
+        disseminator.addBlock("myGroup", 0, block);
+
+        Assert.assertEquals(block, disseminator.getBlock("myGroup", 0));
+        Assert.assertNull(disseminator.getBlock("myGroup", 1));
+        Assert.assertNull(disseminator.getBlock("otherGroup", 0));
+        Assert.assertEquals(1, disseminator.getRetainedBlocks());
+        Assert.assertTrue(disseminator.getRetainedBytes() > 10000);
+        Assert.assertNotNull(gossipManager.findSharedGossipData("block-myGroup-0-9"));
+    }
+
+    @Test
+    public void evictByHeight() throws Exception {
+        GossipBlockDisseminator disseminator = new GossipBlockDisseminator(gossipManager, 10, 60000, 1024);
+        Random random = new Random(2);
+        for (int i = 0; i < 25; i++) {
+            disseminator.addBlock("myGroup", i, newBlock(i, 3000, random));
+        }
+        Assert.assertEquals(10, disseminator.getRetainedBlocks());
+        for (int i = 0; i < 15; i++) {
+            Assert.assertNull(disseminator.getBlock("myGroup", i));
+        }
+        for (int i = 15; i < 25; i++) {
+            Assert.assertEquals(i, disseminator.getBlock("myGroup", i).getHeader().getNumber());
+        }
+        //其他群组独立保留
+        disseminator.addBlock("otherGroup", 0, newBlock(0, 3000, random));
+        Assert.assertEquals(11, disseminator.getRetainedBlocks());
+        Assert.assertNotNull(disseminator.getBlock("myGroup", 15));
+    }
+
+    @Test
+    public void binaryPayloadSerialization() throws Exception {
+        //与gossip-protocol-jackson的ObjectMapper配置相同, byte[]分片经UDP传输后类型不变
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.enableDefaultTyping();
+        objectMapper.configure(JsonGenerator.Feature.WRITE_NUMBERS_AS_STRINGS, true);
+
+        SharedDataMessage message = new SharedDataMessage();
+        message.setKey("block-myGroup-0-0");
+        message.setPayload(new byte[]{0, 1, (byte) 0xff});
+        message.setTimestamp(1L);
+        message.setExpireAt(2L);
+        SharedDataMessage received = objectMapper.readValue(objectMapper.writeValueAsString(message), SharedDataMessage.class);
+        Assert.assertArrayEquals(new byte[]{0, 1, (byte) 0xff}, (byte[]) received.getPayload());
+    }
+
+    /**
+     * 广播10万个区块, 保留区块数固定时堆内存不随区块数增长
+     */
+    @Test
+    public void soak() throws Exception {
+        int numBlocks = 100000;
+        GossipBlockDisseminator disseminator = new GossipBlockDisseminator(gossipManager, 100, 60000,
+                GossipBlockDisseminator.DEFAULT_CHUNK_SIZE);
+        Random random = new Random(3);
+        long baseline = 0;
+        long maxUsed = 0;
+        for (int i = 0; i < numBlocks; i++) {
+            disseminator.addBlock("myGroup", i, newBlock(i, 2000, random));
+            if ((i + 1) % 10000 == 0) {
+                long used = usedHeap();
+                log.info("Disseminated " + (i + 1) + " blocks, used heap " + used / 1024 + "KB, retained "
+                        + disseminator.getRetainedBytes() / 1024 + "KB");
+                if (i + 1 == 10000) {
+                    baseline = used;
+                }
+                maxUsed = Math.max(maxUsed, used);
+            }
+        }
+        Assert.assertEquals(100, disseminator.getRetainedBlocks());
+        Assert.assertNotNull(disseminator.getBlock("myGroup", numBlocks - 1));
+        Assert.assertNull(disseminator.getBlock("myGroup", numBlocks - 101));
+        //覆盖后立即过期的数据由DataReaper每5秒回收一次, 允许一个周期内的增长
+        Assert.assertTrue("baseline " + baseline + ", max " + maxUsed, maxUsed - baseline < 32 * 1024 * 1024);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Common.Block newBlock(long number, int size, Random random) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return Common.Block.newBuilder()
+                .setHeader(Common.BlockHeader.newBuilder().setNumber(number).build())
+                .setData(Common.BlockData.newBuilder().addData(ByteString.copyFrom(data)).build())
+                .build();
+    }
+}
@@ -0,0 +1,227 @@
+package org.bcia.julongchain.gossip;
+
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.apache.commons.io.FileUtils;
+import org.bcia.julongchain.common.exception.LedgerException;
+import org.bcia.julongchain.common.ledger.blockledger.ReadWriteBase;
+import org.bcia.julongchain.common.ledger.blockledger.file.FileLedgerFactory;
+import org.bcia.julongchain.common.log.JulongChainLog;
+import org.bcia.julongchain.common.log.JulongChainLogFactory;
+import org.bcia.julongchain.core.ledger.ledgerconfig.LedgerConfig;
+import org.bcia.julongchain.protos.common.Common;
+import org.bcia.julongchain.protos.gossip.GossipGrpc;
+import org.bcia.julongchain.protos.gossip.Message;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 区块拉取测试, 共识节点的GossipService与拉取区块的节点通过进程内gRPC连接
+ * 共识节点账本中有NUM_BLOCKS个区块, 统计节点从0追赶到最新区块的时间
+ *
+ * @author wanliangbing
+ * @date 2018/10/18
+ * @company Dingxuan
+ */
+public class GossipStateTransferTest {
+
+    private static JulongChainLog log = JulongChainLogFactory.getLog(GossipStateTransferTest.class);
+
+    private static final int NUM_BLOCKS = 50000;
+
+    /**
+     * 逐个区块拉取只统计前LEGACY_BLOCKS个区块
+     */
+    private static final int LEGACY_BLOCKS = 2000;
+
+    private static final String GROUP = "stateTransferGroup" + System.nanoTime();
+
+    private static String rootPath;
+    private static int maxBlockfileSize;
+    private static File dir;
+    private static ReadWriteBase consenterLedger;
+    private static Server server;
+    private static String serverName;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        rootPath = LedgerConfig.getRootPath();
+        maxBlockfileSize = LedgerConfig.getMaxBlockfileSize();
+        dir = Files.createTempDirectory("gossipStateTransfer").toFile();
+        FileLedgerFactory factory = new FileLedgerFactory(dir.getAbsolutePath());
+        consenterLedger = factory.getOrCreate(GROUP);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            consenterLedger.append(newBlock(i));
+        }
+        log.info("Append " + NUM_BLOCKS + " blocks: " + (System.currentTimeMillis() - start) + "ms");
+
+        serverName = "gossipStateTransfer-" + System.nanoTime();
+        server = InProcessServerBuilder.forName(serverName).addService(new GossipService(factory)).build().start();
+    }
+
+    @AfterClass
+    public static void afterClass() throws Exception {
+        if (server != null) {
+            server.shutdownNow();
+        }
+        LedgerConfig.setRootPath(rootPath);
+        LedgerConfig.setMaxBlockfileSize(maxBlockfileSize);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void rangeCatchUp() throws Exception {
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            MemoryCommitter committer = new MemoryCommitter();
+            GossipStatePuller puller = new GossipStatePuller(new GossipClientStream(channel), GROUP, committer,
+                    GossipStatePuller.DEFAULT_BATCH_BLOCKS);
+            int requests = 0;
+            long start = System.currentTimeMillis();
+            while (committer.getHeight() < NUM_BLOCKS) {
+                puller.pullOnce(10000);
+                requests++;
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            log.info("Range catch-up of " + NUM_BLOCKS + " blocks: " + elapsed + "ms, " + requests + " requests");
+
+            Assert.assertEquals(NUM_BLOCKS, committer.blocks.size());
+            for (int i = 0; i < NUM_BLOCKS; i++) {
+                Assert.assertEquals(i, committer.blocks.get(i).getHeader().getNumber());
+            }
+            Assert.assertEquals(newBlock(NUM_BLOCKS - 1), committer.blocks.get(NUM_BLOCKS - 1));
+            //每次请求最多返回DEFAULT_BATCH_BLOCKS个区块
+            Assert.assertTrue(requests >= NUM_BLOCKS / GossipStatePuller.DEFAULT_BATCH_BLOCKS);
+            Assert.assertTrue("requests " + requests, requests < NUM_BLOCKS / 10);
+        } finally {
+            channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void singleBlockCatchUp() throws Exception {
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            //batchBlocks为1时请求的起止区块相同, 共识节点按原协议返回一个区块
+            MemoryCommitter committer = new MemoryCommitter();
+            GossipStatePuller puller = new GossipStatePuller(new GossipClientStream(channel), GROUP, committer, 1);
+            long start = System.currentTimeMillis();
+            while (committer.getHeight() < LEGACY_BLOCKS) {
+                Assert.assertEquals(1, puller.pullOnce(10000));
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            log.info("Single block catch-up of " + LEGACY_BLOCKS + " blocks: " + elapsed + "ms, estimated "
+                    + elapsed * NUM_BLOCKS / LEGACY_BLOCKS + "ms for " + NUM_BLOCKS + " blocks");
+            Assert.assertEquals(LEGACY_BLOCKS - 1, committer.blocks.get(LEGACY_BLOCKS - 1).getHeader().getNumber());
+        } finally {
+            channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void emptyResponseWhenCaughtUp() throws Exception {
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        try {
+            //已是最新区块时, 共识节点立即返回空响应, 不等待下一个区块写入
+            MemoryCommitter committer = new MemoryCommitter();
+            for (int i = 0; i < NUM_BLOCKS; i++) {
+                committer.commit(newBlock(i));
+            }
+            GossipStatePuller puller = new GossipStatePuller(new GossipClientStream(channel), GROUP, committer, 10);
+            long start = System.currentTimeMillis();
+            Assert.assertEquals(0, puller.pullOnce(10000));
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+
+            consenterLedger.append(newBlock(NUM_BLOCKS));
+            Assert.assertEquals(1, puller.pullOnce(10000));
+            Assert.assertEquals(0, puller.pullOnce(10000));
+            Assert.assertEquals(NUM_BLOCKS + 1, committer.getHeight());
+        } finally {
+            channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void noResendWhileOutstanding() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        String silentName = "gossipSilent-" + System.nanoTime();
+        //不回复的共识节点
+        Server silent = InProcessServerBuilder.forName(silentName).addService(new GossipGrpc.GossipImplBase() {
+            @Override
+            public StreamObserver<Message.Envelope> gossipStream(StreamObserver<Message.Envelope> responseObserver) {
+                return new StreamObserver<Message.Envelope>() {
+                    @Override
+                    public void onNext(Message.Envelope envelope) {
+                        requests.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                };
+            }
+        }).build().start();
+        ManagedChannel channel = InProcessChannelBuilder.forName(silentName).build();
+        try {
+            GossipStatePuller puller = new GossipStatePuller(new GossipClientStream(channel), GROUP, new MemoryCommitter(), 10);
+            Assert.assertEquals(0, puller.pullOnce(100));
+            Assert.assertEquals(0, puller.pullOnce(100));
+            Assert.assertEquals(0, puller.pullOnce(100));
+            Assert.assertEquals(1, requests.get());
+        } finally {
+            channel.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            silent.shutdownNow();
+        }
+    }
+
+    private static Common.Block newBlock(long number) {
+        return Common.Block.newBuilder()
+                .setHeader(Common.BlockHeader.newBuilder()
+                        .setNumber(number)
+                        .setDataHash(ByteString.copyFromUtf8("dataHash" + number))
+                        .build())
+                .setData(Common.BlockData.newBuilder().addData(ByteString.copyFrom(new byte[512])).build())
+                .setMetadata(Common.BlockMetadata.newBuilder()
+                        .addMetadata(ByteString.EMPTY)
+                        .addMetadata(ByteString.EMPTY)
+                        .addMetadata(ByteString.EMPTY)
+                        .addMetadata(ByteString.EMPTY)
+                        .build())
+                .build();
+    }
+
+    /**
+     * 区块保存在内存中
+     */
+    private static class MemoryCommitter implements GossipStatePuller.IBlockCommitter {
+        private final List<Common.Block> blocks = new ArrayList<>();
+
+        @Override
+        public long getHeight() throws LedgerException {
+            return blocks.size();
+        }
+
+        @Override
+        public void commit(Common.Block block) throws LedgerException {
+            blocks.add(block);
+        }
+    }
+}
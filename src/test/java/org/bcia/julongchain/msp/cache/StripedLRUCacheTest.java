@@ -0,0 +1,83 @@
+package org.bcia.julongchain.msp.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 分段LRU缓存测试
+ *
+ * @author zhangmingyang
+ * @date 2018/10/17
+ * @company Dingxuan
+ */
+public class StripedLRUCacheTest {
+    @Test
+    public void lruCacheSize() {
+        LRUCache<Integer, Integer> cache = new LRUCache<>(3);
+        for (int i = 0; i < 4; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(3, cache.size());
+        assertFalse(cache.containsKey(0));
+    }
+
+    @Test
+    public void getAndPut() {
+        StripedLRUCache<String, String> cache = new StripedLRUCache<>(100);
+        assertNull(cache.get("a"));
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void bounded() {
+        StripedLRUCache<Integer, Integer> cache = new StripedLRUCache<>(64, 4);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+            //保持0为最近使用
+            cache.get(0);
+        }
+        assertTrue(cache.size() <= 64);
+        assertEquals(Integer.valueOf(0), cache.get(0));
+        assertEquals(Integer.valueOf(999), cache.get(999));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        StripedLRUCache<Integer, Integer> cache = new StripedLRUCache<>(256);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    Integer value = cache.get(i % 512);
+                    if (value == null) {
+                        cache.put(i % 512, i % 512);
+                    } else {
+                        assertEquals(i % 512, value.intValue());
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        assertTrue(cache.size() <= 256);
+        assertEquals(40000, cache.getHits() + cache.getMisses());
+    }
+}
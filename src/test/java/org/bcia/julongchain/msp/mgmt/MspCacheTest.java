@@ -0,0 +1,50 @@
+package org.bcia.julongchain.msp.mgmt;
+
+import org.bcia.julongchain.msp.IIdentity;
+import org.bcia.julongchain.msp.mspconfig.MspConfig;
+import org.bcia.julongchain.msp.mspconfig.MspConfigFactory;
+import org.bcia.julongchain.msp.util.MspConfigBuilder;
+import org.bcia.julongchain.protos.msp.MspConfigPackage;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * msp身份与验证结果缓存测试
+ *
+ * @author zhangmingyang
+ * @date 2018/10/17
+ * @company Dingxuan
+ */
+public class MspCacheTest {
+    private MspConfigPackage.MSPConfig config;
+    private Msp msp;
+    private byte[] serializedIdentity;
+
+    @Before
+    public void setUp() {
+        MspConfig mspConfig = MspConfigFactory.loadMspConfig();
+        config = MspConfigBuilder.buildMspConfig(mspConfig.getNode().getMspConfigPath(), mspConfig.getNode().getLocalMspId());
+        msp = (Msp) new Msp().setup(config);
+        serializedIdentity = msp.getDefaultSigningIdentity().getIdentity().serialize();
+    }
+
+    @Test
+    public void deserializeIdentity() throws Exception {
+        IIdentity identity = msp.deserializeIdentity(serializedIdentity);
+        //再次反序列化不再解析证书, 返回同一身份
+        assertSame(identity, msp.deserializeIdentity(serializedIdentity.clone()));
+
+        identity.validate();
+        identity.validate();
+        assertArrayEquals(msp.getCertChainIdentifier(identity), msp.getCertChainIdentifier(identity));
+        assertEquals(1, identity.getOrganizationalUnits().length);
+
+        //重新配置后缓存失效
+        msp.setup(config);
+        IIdentity reloaded = msp.deserializeIdentity(serializedIdentity);
+        assertNotSame(identity, reloaded);
+        reloaded.validate();
+    }
+}
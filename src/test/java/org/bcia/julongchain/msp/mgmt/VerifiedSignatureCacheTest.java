@@ -0,0 +1,91 @@
+package org.bcia.julongchain.msp.mgmt;
+
+import org.bcia.julongchain.msp.entity.IdentityIdentifier;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * 已验证签名缓存测试
+ *
+ * @author zhangmingyang
+ * @date 2018/10/17
+ * @company Dingxuan
+ */
+public class VerifiedSignatureCacheTest {
+    private static final IdentityIdentifier ALICE = new IdentityIdentifier("Org1MSP", "alice");
+    private static final IdentityIdentifier BOB = new IdentityIdentifier("Org1MSP", "bob");
+
+    @Test
+    public void hitAfterPut() {
+        VerifiedSignatureCache cache = new VerifiedSignatureCache(100, 60000);
+        VerifiedSignatureCache.Key key = cache.newKey(ALICE, bytes("msg"), bytes("sig"));
+        assertFalse(cache.contains(key));
+        cache.put(key);
+        assertTrue(cache.contains(cache.newKey(ALICE, bytes("msg"), bytes("sig"))));
+
+        //身份、消息、签名任一不同都不命中
+        assertFalse(cache.contains(cache.newKey(BOB, bytes("msg"), bytes("sig"))));
+        assertFalse(cache.contains(cache.newKey(ALICE, bytes("msg2"), bytes("sig"))));
+        assertFalse(cache.contains(cache.newKey(ALICE, bytes("msg"), bytes("sig2"))));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(0.2, cache.getHitRatio(), 1e-9);
+    }
+
+    @Test
+    public void expire() throws Exception {
+        VerifiedSignatureCache cache = new VerifiedSignatureCache(100, 50);
+        VerifiedSignatureCache.Key key1 = cache.newKey(ALICE, bytes("msg1"), bytes("sig1"));
+        VerifiedSignatureCache.Key key2 = cache.newKey(ALICE, bytes("msg2"), bytes("sig2"));
+        cache.put(key1);
+        cache.put(key2);
+        assertTrue(cache.contains(key1));
+        Thread.sleep(100);
+        assertFalse(cache.contains(key1));
+        assertEquals(1, cache.getExpirations());
+        cache.purgeExpired();
+        assertEquals(2, cache.getExpirations());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void purgeOnPut() throws Exception {
+        VerifiedSignatureCache cache = new VerifiedSignatureCache(100, 50);
+        cache.put(cache.newKey(ALICE, bytes("msg1"), bytes("sig1")));
+        Thread.sleep(100);
+        //超过ttl后的写入清理失效记录, 未被再次访问的记录不会一直占用缓存
+        cache.put(cache.newKey(ALICE, bytes("msg2"), bytes("sig2")));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getExpirations());
+    }
+
+    @Test
+    public void sizeLimit() {
+        VerifiedSignatureCache cache = new VerifiedSignatureCache(160, 60000);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(cache.newKey(ALICE, bytes("msg" + i), bytes("sig" + i)));
+        }
+        assertTrue(cache.size() <= 160);
+        assertEquals(1000 - cache.size(), cache.getEvictions());
+        //最近写入的签名仍在缓存中
+        assertTrue(cache.contains(cache.newKey(ALICE, bytes("msg999"), bytes("sig999"))));
+    }
+
+    @Test
+    public void disabled() {
+        VerifiedSignatureCache cache = new VerifiedSignatureCache(0, 60000);
+        VerifiedSignatureCache.Key key = cache.newKey(ALICE, bytes("msg"), bytes("sig"));
+        assertNull(key);
+        cache.put(key);
+        assertFalse(cache.contains(key));
+        assertEquals(0, cache.size());
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}